@@ -0,0 +1,97 @@
+package com.workshare.msnos.core;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import com.google.gson.JsonObject;
+import com.workshare.msnos.core.Message.Payload;
+import com.workshare.msnos.core.payloads.FltPayload;
+import com.workshare.msnos.core.payloads.GenericPayload;
+import com.workshare.msnos.core.payloads.HealthcheckPayload;
+import com.workshare.msnos.core.payloads.Presence;
+import com.workshare.msnos.core.payloads.QnePayload;
+import com.workshare.msnos.core.payloads.TracePayload;
+import com.workshare.msnos.core.protocols.ip.BaseEndpoint;
+import com.workshare.msnos.core.protocols.ip.Endpoint;
+import com.workshare.msnos.core.protocols.ip.HttpEndpoint;
+import com.workshare.msnos.core.protocols.ip.Network;
+import com.workshare.msnos.core.protocols.ip.NullGateway;
+import com.workshare.msnos.usvc.api.RestApi;
+
+/**
+ * Sample messages used by the benchmarks, built without any network access
+ */
+public class Samples {
+
+    public static final Iden CLOUD = new Iden(Iden.Type.CLD, new UUID(1, 1));
+    public static final Iden AGENT_ONE = new Iden(Iden.Type.AGT, new UUID(2, 1));
+    public static final Iden AGENT_TWO = new Iden(Iden.Type.AGT, new UUID(2, 2));
+
+    public static final Network NETWORK = new Network(new byte[]{10, 10, 10, 1}, (short) 24);
+
+    static {
+        System.setProperty("com.ws.nsnos.time.local", "true");
+    }
+
+    private Samples() {
+    }
+
+    public static Cloud newCloud() {
+        return new Cloud(CLOUD.getUUID(), null, new HashSet<Gateway>(Arrays.asList(new NullGateway())));
+    }
+
+    public static Cloud.Internal internal(Cloud cloud) {
+        return cloud.internal();
+    }
+
+    public static Message message(Message.Type type) {
+        return new MessageBuilder(type, AGENT_ONE, CLOUD).with(payload(type)).make();
+    }
+
+    public static Message message(Message.Type type, Iden to) {
+        return new MessageBuilder(type, AGENT_ONE, to).with(payload(type)).make();
+    }
+
+    public static Payload payload(Message.Type type) {
+        switch (type) {
+            case PRS:
+                return new Presence(true, endpoints());
+            case QNE:
+                return new QnePayload("sample", apis(8).toArray(new RestApi[0]));
+            case FLT:
+                return new FltPayload(AGENT_TWO);
+            case HCK:
+                return new HealthcheckPayload(new LocalAgent(AGENT_TWO.getUUID()), true);
+            case TRC:
+                return new TracePayload(AGENT_ONE).crumbed(AGENT_ONE.getUUID(), AGENT_TWO.getUUID(), new NullGateway(), 3);
+            case APP: {
+                JsonObject data = new JsonObject();
+                data.addProperty("name", "sample");
+                data.addProperty("value", 42);
+                return new GenericPayload(data);
+            }
+            default:
+                return null;
+        }
+    }
+
+    public static Set<Endpoint> endpoints() {
+        Set<Endpoint> endpoints = new HashSet<Endpoint>();
+        endpoints.add(new BaseEndpoint(Endpoint.Type.UDP, NETWORK, (short) 3728));
+        endpoints.add(new HttpEndpoint(NETWORK, "http://10.10.10.1:9999/msnos"));
+        return endpoints;
+    }
+
+    public static <T> Set<T> asSet(T... items) {
+        return new HashSet<T>(Arrays.asList(items));
+    }
+
+    public static Set<RestApi> apis(int count) {
+        Set<RestApi> apis = new HashSet<RestApi>();
+        for (int i = 0; i < count; i++)
+            apis.add(new RestApi("/sample/path/" + i, 8080 + i, "10.10.10.1"));
+        return apis;
+    }
+}
@@ -0,0 +1,57 @@
+package com.workshare.msnos.core.cloud;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.workshare.msnos.core.Cloud;
+import com.workshare.msnos.core.Message;
+import com.workshare.msnos.core.MessageBuilder;
+import com.workshare.msnos.core.Samples;
+import com.workshare.msnos.core.cloud.MessageValidators.Result;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MessageValidatorsBenchmark {
+
+    private MessageValidators validators;
+    private Message duplicate;
+    private long sequence;
+
+    @Setup
+    public void setup() {
+        Cloud cloud = Samples.newCloud();
+        validators = cloud.validators();
+
+        duplicate = Samples.message(Message.Type.APP);
+        validators.isReceivable(duplicate);
+    }
+
+    @Benchmark
+    public Result isReceivableFresh() {
+        Message message = new MessageBuilder(Message.Type.APP, Samples.AGENT_ONE, Samples.CLOUD)
+            .with(new UUID(sequence++, 42L))
+            .make();
+
+        return validators.isReceivable(message);
+    }
+
+    @Benchmark
+    public Result isReceivableDuplicate() {
+        return validators.isReceivable(duplicate);
+    }
+}
@@ -0,0 +1,83 @@
+package com.workshare.msnos.core.routing;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.workshare.msnos.core.Cloud;
+import com.workshare.msnos.core.Identifiable;
+import com.workshare.msnos.core.Message;
+import com.workshare.msnos.core.Message.Status;
+import com.workshare.msnos.core.Receipt;
+import com.workshare.msnos.core.RemoteAgent;
+import com.workshare.msnos.core.Samples;
+import com.workshare.msnos.core.protocols.ip.Endpoint;
+import com.workshare.msnos.core.protocols.ip.HttpEndpoint;
+import com.workshare.msnos.core.protocols.ip.Network;
+import com.workshare.msnos.core.protocols.ip.http.HttpGateway;
+import com.workshare.msnos.core.receipts.SingleReceipt;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RouterBenchmark {
+
+    private Router router;
+    private Message direct;
+    private Message broadcast;
+
+    @Setup
+    public void setup() {
+        Cloud cloud = Samples.newCloud();
+        router = new Router(cloud, null, new InMemoryHttpGateway(), null);
+
+        RemoteAgent remote = null;
+        for (int i = 0; i < 16; i++) {
+            Network network = new Network(new byte[]{25, 25, (byte) i, 1}, (short) 24);
+            Set<Endpoint> endpoints = new HashSet<Endpoint>();
+            endpoints.add(new HttpEndpoint(network, "http://25.25." + i + ".1:9999/msnos"));
+            remote = new RemoteAgent(new UUID(3, i), cloud, endpoints);
+            Samples.internal(cloud).remoteAgents().add(remote);
+        }
+
+        direct = Samples.message(Message.Type.APP, remote.getIden());
+        broadcast = Samples.message(Message.Type.PRS);
+    }
+
+    @Benchmark
+    public Receipt routeDirect() {
+        return router.route(direct);
+    }
+
+    @Benchmark
+    public Receipt routeBroadcast() {
+        return router.route(broadcast);
+    }
+
+    static class InMemoryHttpGateway extends HttpGateway {
+        InMemoryHttpGateway() {
+            super(null);
+        }
+
+        @Override
+        public Receipt send(Cloud cloud, Message message, Identifiable to) throws IOException {
+            return new SingleReceipt(this, Status.DELIVERED, message);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.workshare.msnos.core.security;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.workshare.msnos.core.Message;
+import com.workshare.msnos.core.Samples;
+import com.workshare.msnos.core.serializers.WireSerializers;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SignerBenchmark {
+
+    private static final String KEY_ID = "bench";
+
+    @Param({Signer.ALGO_LEGACY, Signer.ALGO_SHA256})
+    public String algorithm;
+
+    private Signer signer;
+    private Message message;
+    private Message signed;
+
+    @Setup
+    public void setup() throws IOException {
+        signer = new Signer(WireSerializers.getWireSerializer(), new KeysStore() {
+            @Override
+            public String get(String id) {
+                return "this-is-a-benchmark-key";
+            }
+
+            @Override
+            public boolean isEmpty() {
+                return false;
+            }
+        }, algorithm);
+
+        message = Samples.message(Message.Type.QNE);
+        signed = signer.signed(message, KEY_ID);
+    }
+
+    @Benchmark
+    public Message signed() throws IOException {
+        return signer.signed(message, KEY_ID);
+    }
+
+    @Benchmark
+    public boolean verify() throws IOException {
+        return signer.verify(signed, KEY_ID);
+    }
+}
@@ -0,0 +1,54 @@
+package com.workshare.msnos.core.serializers;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.workshare.msnos.core.Message;
+import com.workshare.msnos.core.Samples;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class WireSerializerBenchmark {
+
+    @Param({"PRS", "QNE", "FLT", "HCK", "PON", "TRC", "APP"})
+    public String type;
+
+    @Param({WireSerializers.FORMAT_JSON, WireSerializers.FORMAT_BINARY})
+    public String format;
+
+    private WireSerializer sz;
+    private Message message;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        sz = WireSerializers.getWireSerializer(format);
+        message = Samples.message(Message.Type.valueOf(type));
+        encoded = sz.toBytes(message);
+    }
+
+    @Benchmark
+    public byte[] toBytes() {
+        return sz.toBytes(message);
+    }
+
+    @Benchmark
+    public Message fromBytes() {
+        return sz.fromBytes(encoded, Message.class);
+    }
+}
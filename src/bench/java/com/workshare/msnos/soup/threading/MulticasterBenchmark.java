@@ -0,0 +1,78 @@
+package com.workshare.msnos.soup.threading;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.workshare.msnos.core.Message;
+import com.workshare.msnos.core.Samples;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MulticasterBenchmark {
+
+    public interface Listener {
+        public void onMessage(Message message);
+    }
+
+    @Param({"1", "4"})
+    public int listeners;
+
+    private Multicaster<Listener, Message> syncCaster;
+    private Multicaster<Listener, Message> asyncCaster;
+    private Message message;
+
+    @Setup
+    public void setup(final Blackhole hole) {
+        syncCaster = newMulticaster();
+        asyncCaster = newMulticaster();
+
+        for (int i = 0; i < listeners; i++) {
+            Listener listener = new Listener() {
+                @Override
+                public void onMessage(Message message) {
+                    hole.consume(message);
+                }
+            };
+
+            syncCaster.addSynchronousListener(listener);
+            asyncCaster.addListener(listener);
+        }
+
+        message = Samples.message(Message.Type.APP);
+    }
+
+    @Benchmark
+    public void dispatchSync() {
+        syncCaster.dispatch(message);
+    }
+
+    @Benchmark
+    public void dispatchAsync() {
+        asyncCaster.dispatch(message);
+    }
+
+    private Multicaster<Listener, Message> newMulticaster() {
+        return new Multicaster<Listener, Message>() {
+            @Override
+            protected void dispatch(Listener listener, Message message) {
+                listener.onMessage(message);
+            }
+        };
+    }
+}
@@ -0,0 +1,66 @@
+package com.workshare.msnos.usvc.api.routing;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.workshare.msnos.core.Cloud;
+import com.workshare.msnos.core.RemoteAgent;
+import com.workshare.msnos.core.Samples;
+import com.workshare.msnos.core.protocols.ip.Endpoint;
+import com.workshare.msnos.core.protocols.ip.HttpEndpoint;
+import com.workshare.msnos.core.protocols.ip.Network;
+import com.workshare.msnos.usvc.Microservice;
+import com.workshare.msnos.usvc.RemoteMicroservice;
+import com.workshare.msnos.usvc.api.RestApi;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ApiListBenchmark {
+
+    @Param({"2", "16", "128"})
+    public int endpoints;
+
+    private ApiList apis;
+    private Microservice from;
+
+    @Setup
+    public void setup() {
+        Cloud cloud = Samples.newCloud();
+        from = new Microservice("bench");
+        apis = new ApiList();
+
+        for (int i = 0; i < endpoints; i++) {
+            Network network = new Network(new byte[]{25, 25, (byte) (i / 256), (byte) (i % 256)}, (short) 24);
+            Set<Endpoint> points = new HashSet<Endpoint>();
+            points.add(new HttpEndpoint(network, "http://25.25.0." + i + ":9999/msnos"));
+
+            RestApi api = new RestApi("/bench", 8080, network.getHostString());
+            RemoteAgent agent = new RemoteAgent(new UUID(4, i), cloud, points);
+            RemoteMicroservice remote = new RemoteMicroservice("bench", agent, Samples.asSet(api));
+            apis.add(remote, api);
+        }
+    }
+
+    @Benchmark
+    public RestApi get() {
+        return apis.get(from);
+    }
+}
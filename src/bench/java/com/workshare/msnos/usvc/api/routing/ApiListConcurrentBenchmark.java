@@ -0,0 +1,132 @@
+package com.workshare.msnos.usvc.api.routing;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.workshare.msnos.core.Cloud;
+import com.workshare.msnos.core.RemoteAgent;
+import com.workshare.msnos.core.Samples;
+import com.workshare.msnos.core.protocols.ip.Endpoint;
+import com.workshare.msnos.core.protocols.ip.HttpEndpoint;
+import com.workshare.msnos.core.protocols.ip.Network;
+import com.workshare.msnos.usvc.Microservice;
+import com.workshare.msnos.usvc.RemoteMicroservice;
+import com.workshare.msnos.usvc.api.RestApi;
+
+/**
+ * Many threads sharing the same api list: besides the time per selection,
+ * reports for each iteration how many times the most and the least selected
+ * apis were selected, that should stay close to each other
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Threads(64)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ApiListConcurrentBenchmark {
+
+    @Param({"4", "16"})
+    public int endpoints;
+
+    private ApiList apis;
+    private Microservice from;
+    private Map<RestApi, AtomicLong> counts;
+    private AtomicBoolean reported;
+
+    @Setup
+    public void setup() {
+        Cloud cloud = Samples.newCloud();
+        from = new Microservice("bench");
+        apis = new ApiList();
+        counts = new ConcurrentHashMap<RestApi, AtomicLong>();
+        reported = new AtomicBoolean();
+
+        for (int i = 0; i < endpoints; i++) {
+            Network network = new Network(new byte[]{25, 25, (byte) (i / 256), (byte) (i % 256)}, (short) 24);
+            Set<Endpoint> points = new HashSet<Endpoint>();
+            points.add(new HttpEndpoint(network, "http://25.25.0." + i + ":9999/msnos"));
+
+            RestApi api = new RestApi("/bench", 8080, network.getHostString());
+            RemoteAgent agent = new RemoteAgent(new UUID(4, i), cloud, points);
+            RemoteMicroservice remote = new RemoteMicroservice("bench", agent, Samples.asSet(api));
+            apis.add(remote, api);
+            counts.put(api, new AtomicLong());
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        for (AtomicLong count : counts.values())
+            count.set(0);
+    }
+
+    @Benchmark
+    public RestApi get(Spread spread) {
+        final RestApi api = apis.get(from);
+        counts.get(api).incrementAndGet();
+        return api;
+    }
+
+    /**
+     * The selections of the most and the least selected apis: the counters
+     * of all the threads are summed up, so only one thread reports them
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Spread {
+
+        private Map<RestApi, AtomicLong> counts;
+        private boolean reporter;
+
+        @Setup
+        public void setup(ApiListConcurrentBenchmark benchmark) {
+            counts = benchmark.counts;
+            reporter = benchmark.reported.compareAndSet(false, true);
+        }
+
+        public long most() {
+            if (!reporter)
+                return 0;
+
+            long max = 0;
+            for (AtomicLong count : counts.values())
+                max = Math.max(max, count.get());
+
+            return max;
+        }
+
+        public long least() {
+            if (!reporter)
+                return 0;
+
+            long min = Long.MAX_VALUE;
+            for (AtomicLong count : counts.values())
+                min = Math.min(min, count.get());
+
+            return min;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.workshare.msnos.usvc.api.routing;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.workshare.msnos.core.Cloud;
+import com.workshare.msnos.core.RemoteAgent;
+import com.workshare.msnos.core.Samples;
+import com.workshare.msnos.core.protocols.ip.Endpoint;
+import com.workshare.msnos.usvc.Microservice;
+import com.workshare.msnos.usvc.RemoteMicroservice;
+import com.workshare.msnos.usvc.api.RestApi;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ApiRepositoryBenchmark {
+
+    private static final int APIS_PER_SERVICE = 10;
+
+    @Param({"10000"})
+    public int apis;
+
+    private ApiRepository repository;
+    private Microservice from;
+    private long lastId;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Cloud cloud = Samples.newCloud();
+        from = new Microservice("bench");
+        repository = new ApiRepository();
+
+        final int services = apis / APIS_PER_SERVICE;
+        for (int i = 0; i < services; i++) {
+            Set<RestApi> published = new HashSet<RestApi>();
+            for (int j = 0; j < APIS_PER_SERVICE; j++) {
+                final String host = "25.25." + (i / 256) + "." + (i % 256);
+                switch (j) {
+                    case 0:
+                        published.add(new RestApi("/svc" + i + "/items/{id}", 8080, host));
+                        break;
+                    case 1:
+                        published.add(new RestApi("/svc" + i + "/files/*", 8080, host));
+                        break;
+                    default:
+                        published.add(new RestApi("/svc" + i + "/api" + j, 8080, host));
+                }
+            }
+
+            RemoteAgent agent = new RemoteAgent(new UUID(4, i), cloud, new HashSet<Endpoint>());
+            RemoteMicroservice remote = new RemoteMicroservice("bench" + i, agent, published);
+            repository.register(remote);
+            for (RestApi api : published)
+                lastId = Math.max(lastId, api.getId());
+        }
+    }
+
+    @Benchmark
+    public RestApi searchById() {
+        return repository.searchApiById(lastId - (next++ % apis));
+    }
+
+    @Benchmark
+    public RestApi searchExact() {
+        return repository.searchApi(from, "/svc" + (next++ % (apis / APIS_PER_SERVICE)) + "/api5");
+    }
+
+    @Benchmark
+    public RestApi searchTemplate() {
+        return repository.searchApi(from, "/svc" + (next++ % (apis / APIS_PER_SERVICE)) + "/items/42");
+    }
+
+    @Benchmark
+    public RestApi searchPrefix() {
+        return repository.searchApi(from, "/svc" + (next++ % (apis / APIS_PER_SERVICE)) + "/files/docs/report.pdf");
+    }
+}
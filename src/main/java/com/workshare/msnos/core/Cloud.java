@@ -2,7 +2,9 @@ package com.workshare.msnos.core;
 
 import static com.workshare.msnos.core.Message.Type.PRS;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -21,6 +23,7 @@ import com.workshare.msnos.core.MsnosException.Code;
 import com.workshare.msnos.core.cloud.AgentWatchdog;
 import com.workshare.msnos.core.cloud.IdentifiablesList;
 import com.workshare.msnos.core.cloud.IdentifiablesList.Callback;
+import com.workshare.msnos.core.cloud.LatencyTable;
 import com.workshare.msnos.core.cloud.MessageValidators;
 import com.workshare.msnos.core.cloud.Multicaster;
 import com.workshare.msnos.core.payloads.FltPayload;
@@ -31,6 +34,8 @@ import com.workshare.msnos.core.protocols.ip.http.HttpGateway;
 import com.workshare.msnos.core.receipts.SingleReceipt;
 import com.workshare.msnos.core.routing.Router;
 import com.workshare.msnos.core.security.Signer;
+import com.workshare.msnos.core.serializers.WireSerializer;
+import com.workshare.msnos.core.serializers.WireSerializers;
 import com.workshare.msnos.soup.ShutdownHooks;
 import com.workshare.msnos.soup.ShutdownHooks.Hook;
 import com.workshare.msnos.soup.json.Json;
@@ -42,6 +47,8 @@ public class Cloud implements Identifiable {
 
     private static final ScheduledExecutorService DEFAULT_SCHEDULER = ExecutorServices.newSingleThreadScheduledExecutor();
 
+    private static final WireSerializer BATCH_SERIALIZER = WireSerializers.getWireSerializer();
+
     private static final Logger log = LoggerFactory.getLogger(Cloud.class);
 
     public static interface Listener {
@@ -62,6 +69,7 @@ public class Cloud implements Identifiable {
     transient private final Receiver receiver;
     transient private final Map<UUID, Iden> enquiries;
     transient private final MessageValidators validators;
+    transient private final LatencyTable latencies;
 
     public class Internal {
         public IdentifiablesList<LocalAgent> localAgents() {
@@ -80,6 +88,10 @@ public class Cloud implements Identifiable {
             return Cloud.this.sign(message);
         }
 
+        public boolean verify(Message message) {
+            return Cloud.this.verify(message);
+        }
+
         public Cloud cloud() {
             return Cloud.this;
         }
@@ -108,6 +120,7 @@ public class Cloud implements Identifiable {
 
         this.gates = Collections.unmodifiableSet(gates);
         this.internal = new Internal();
+        this.latencies = new LatencyTable();
 
         this.signer = signer;
         this.signid = signid;
@@ -336,6 +349,17 @@ public class Cloud implements Identifiable {
         }
     }
 
+    private boolean verify(Message message) {
+        if (signid == null)
+            return true;
+        try {
+            return signer.verify(message, signid);
+        } catch (IOException e) {
+            log.warn("Failed to verify message {} using key {}", message, signid);
+            return false;
+        }
+    }
+
     public RemoteAgent find(final Iden iden) {
         RemoteAgent remoteAgent = null;
         for (RemoteAgent agent : getRemoteAgents()) {
@@ -351,10 +375,50 @@ public class Cloud implements Identifiable {
         receiver.process(message, gateName);
     }
 
+    /**
+     * Processes a whole batch of messages, one per line, as posted by the
+     * HTTP gateway: unreadable lines are skipped
+     *
+     * @return the number of messages processed
+     */
+    public int process(Reader batch, String gateName) throws IOException {
+        final BufferedReader in = new BufferedReader(batch);
+        int total = 0;
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.trim().length() == 0)
+                continue;
+
+            final Message message;
+            try {
+                message = BATCH_SERIALIZER.fromText(line, Message.class);
+            } catch (RuntimeException ex) {
+                log.warn("Skipping unreadable message in batch: {}", line);
+                continue;
+            }
+
+            if (message != null) {
+                receiver.process(message, gateName);
+                total++;
+            }
+        }
+
+        return total;
+    }
+
     public Ring getRing() {
         return ring;
     }
 
+    /**
+     * Returns the round trip times to the remote agents, measured with the
+     * pings sent to the quiet ones
+     */
+    public LatencyTable getLatencies() {
+        return latencies;
+    }
+
     Internal internal() {
         return internal;
     }
@@ -425,6 +489,7 @@ public class Cloud implements Identifiable {
 
             @Override
             public void onRemove(RemoteAgent agent) {
+                latencies.remove(agent.getIden().getUUID());
                 for(Endpoint endpoint : agent.getEndpoints(Endpoint.Type.HTTP)) {
                     try {
                         unregisterRemoteMsnosEndpoint((HttpEndpoint) endpoint);
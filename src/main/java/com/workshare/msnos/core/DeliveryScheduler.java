@@ -0,0 +1,352 @@
+package com.workshare.msnos.core;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.workshare.msnos.core.Message.Type;
+import com.workshare.msnos.core.Sender.Transmission;
+import com.workshare.msnos.core.receipts.SingleReceipt;
+import com.workshare.msnos.soup.metrics.Histogram;
+import com.workshare.msnos.soup.metrics.Meter;
+
+/**
+ * Schedules the transmissions of the sender on a bounded queue for each
+ * destination (the target agent, or the ring for messages directed to the
+ * cloud), so that a slow destination cannot delay the others and memory
+ * cannot grow without limits while a peer is down.
+ *
+ * Queues are drained in round robin, one message at a time, by a limited
+ * number of drainers running on the executor. A destination is out of the
+ * line while one of its messages is being sent, so that its messages leave
+ * in order and a slow destination holds at most one drainer. When a queue
+ * is full, the
+ * policy of the message type decides what happens:
+ * <ul>
+ * <li>NEVER_DROP: the message is sent on the calling thread, slowing it down</li>
+ * <li>DROP_OLDEST: the oldest queued message of the same type is dropped, or
+ * the new one if there is none</li>
+ * <li>REJECT: the new message is dropped</li>
+ * </ul>
+ * Dropped messages have their receipt failed.
+ */
+public class DeliveryScheduler {
+
+    public static final String SYSP_QUEUE_SIZE = "com.ws.msnos.sender.queue.size";
+    public static final String SYSP_POLICY_PREFIX = "com.ws.msnos.sender.policy.";
+
+    public static enum Policy {
+        NEVER_DROP, DROP_OLDEST, REJECT
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(DeliveryScheduler.class);
+
+    private final Executor executor;
+    private final int drainers;
+    private final int capacity;
+    private final Map<Type, Policy> policies;
+
+    private final ConcurrentMap<Object, Destination> destinations = new ConcurrentHashMap<Object, Destination>();
+    private final Queue<Destination> ready = new ConcurrentLinkedQueue<Destination>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger depth = new AtomicInteger();
+
+    private final Histogram waits = new Histogram();
+    private final Meter rejections = new Meter();
+    private final Meter drops = new Meter();
+    private final Meter callerRuns = new Meter();
+
+    public DeliveryScheduler(Executor executor, int drainers) {
+        this(executor, drainers, Integer.getInteger(SYSP_QUEUE_SIZE, 256), loadPolicies());
+    }
+
+    public DeliveryScheduler(Executor executor, int drainers, int capacity, Map<Type, Policy> policies) {
+        if (drainers <= 0 || capacity <= 0)
+            throw new IllegalArgumentException("Drainers and capacity must be positive");
+
+        this.executor = executor;
+        this.drainers = drainers;
+        this.capacity = capacity;
+        this.policies = new EnumMap<Type, Policy>(policies);
+    }
+
+    public void submit(Transmission tx) {
+        final Object key = keyOf(tx);
+        final Policy policy = policyOf(tx.message().getType());
+
+        Transmission dropped = null;
+        boolean runHere = false;
+        while (true) {
+            final Destination destination = destinationOf(key);
+            synchronized (destination) {
+                if (destination.removed)
+                    continue;
+
+                if (destination.size() >= capacity) {
+                    if (policy == Policy.NEVER_DROP) {
+                        runHere = true;
+                        break;
+                    }
+
+                    dropped = (policy == Policy.DROP_OLDEST ? destination.evictOldest(tx.message().getType()) : null);
+                    if (dropped == null) {
+                        dropped = tx;
+                        break;
+                    }
+                }
+
+                destination.add(new Entry(destination, tx, System.nanoTime()));
+                if (!destination.scheduled) {
+                    destination.scheduled = true;
+                    ready.add(destination);
+                }
+                break;
+            }
+        }
+
+        if (runHere) {
+            callerRuns.mark();
+            log.debug("Queue for {} is full, sending on caller thread {}", key, tx.message());
+            tx.run();
+        } else if (dropped != null) {
+            fail(dropped, dropped == tx ? rejections : drops);
+        } else {
+            depth.incrementAndGet();
+        }
+
+        startDrainerIfNeeded();
+    }
+
+    /**
+     * Returns the total number of transmissions currently queued
+     */
+    public int depth() {
+        return depth.get();
+    }
+
+    /**
+     * Returns the number of transmissions currently queued for a destination
+     */
+    public int depth(Object key) {
+        final Destination destination = destinations.get(key);
+        if (destination == null)
+            return 0;
+
+        synchronized (destination) {
+            return destination.size();
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public Policy policyOf(Type type) {
+        final Policy policy = policies.get(type);
+        return policy == null ? Policy.NEVER_DROP : policy;
+    }
+
+    /**
+     * The time spent by transmissions in the queues, in nanoseconds
+     */
+    public Histogram waits() {
+        return waits;
+    }
+
+    public Meter rejections() {
+        return rejections;
+    }
+
+    public Meter drops() {
+        return drops;
+    }
+
+    public Meter callerRuns() {
+        return callerRuns;
+    }
+
+    @Override
+    public String toString() {
+        return "depth=" + depth() + ", destinations=" + destinations.size() + ", rejections=" + rejections.count() + ", drops=" + drops.count() + ", callerRuns=" + callerRuns.count() + ", waits=[" + waits + "]";
+    }
+
+    public static Object keyOf(Transmission tx) {
+        final Iden to = tx.message().getTo();
+        if (to.getType() == Iden.Type.CLD && tx.cloud() != null)
+            return tx.cloud().getRing();
+        else
+            return to;
+    }
+
+    public static Map<Type, Policy> defaultPolicies() {
+        final Map<Type, Policy> policies = new EnumMap<Type, Policy>(Type.class);
+        for (Type type : Type.values())
+            policies.put(type, Policy.NEVER_DROP);
+
+        policies.put(Type.PIN, Policy.DROP_OLDEST);
+        policies.put(Type.PON, Policy.DROP_OLDEST);
+        policies.put(Type.HCK, Policy.DROP_OLDEST);
+        policies.put(Type.HCD, Policy.DROP_OLDEST);
+        policies.put(Type.TRC, Policy.DROP_OLDEST);
+        return policies;
+    }
+
+    private static Map<Type, Policy> loadPolicies() {
+        final Map<Type, Policy> policies = defaultPolicies();
+        for (Type type : Type.values()) {
+            final String value = System.getProperty(SYSP_POLICY_PREFIX + type.name());
+            if (value == null)
+                continue;
+
+            try {
+                policies.put(type, Policy.valueOf(value.trim().toUpperCase()));
+            } catch (IllegalArgumentException ex) {
+                log.warn("Invalid delivery policy {} for message type {}, ignored", value, type);
+            }
+        }
+
+        return policies;
+    }
+
+    private Destination destinationOf(Object key) {
+        Destination destination = destinations.get(key);
+        if (destination == null) {
+            destination = new Destination(key);
+            Destination existing = destinations.putIfAbsent(key, destination);
+            if (existing != null)
+                destination = existing;
+        }
+
+        return destination;
+    }
+
+    private void fail(Transmission tx, Meter meter) {
+        meter.mark();
+        log.debug("Queue for {} is full, dropping message {}", keyOf(tx), tx.message());
+        tx.receipt().update(SingleReceipt.failure(tx.message()));
+    }
+
+    private void startDrainerIfNeeded() {
+        while (!ready.isEmpty()) {
+            final int current = active.get();
+            if (current >= drainers)
+                return;
+
+            if (active.compareAndSet(current, current + 1)) {
+                executor.execute(new Drainer());
+                return;
+            }
+        }
+    }
+
+    // takes one transmission from the next destination in line: the
+    // destination is back in line only when the transmission is done
+    private Entry next() {
+        while (true) {
+            final Destination destination = ready.poll();
+            if (destination == null)
+                return null;
+
+            synchronized (destination) {
+                final Entry entry = destination.poll();
+                if (entry != null)
+                    return entry;
+
+                retire(destination);
+            }
+        }
+    }
+
+    // puts the destination back at the end of the line if it has more
+    private void done(Destination destination) {
+        synchronized (destination) {
+            if (destination.isEmpty())
+                retire(destination);
+            else
+                ready.add(destination);
+        }
+    }
+
+    // called under the destination lock
+    private void retire(Destination destination) {
+        destination.scheduled = false;
+        destination.removed = true;
+        destinations.remove(destination.key, destination);
+    }
+
+    private class Drainer implements Runnable {
+        @Override
+        public void run() {
+            while (true) {
+                final Entry entry = next();
+                if (entry != null) {
+                    depth.decrementAndGet();
+                    waits.update(System.nanoTime() - entry.queued);
+                    try {
+                        entry.tx.run();
+                    } catch (RuntimeException ex) {
+                        log.warn("Unexpected exception sending message " + entry.tx.message(), ex);
+                    } finally {
+                        done(entry.destination);
+                    }
+                    continue;
+                }
+
+                // make sure nothing was queued while we were leaving
+                active.decrementAndGet();
+                if (ready.isEmpty())
+                    return;
+
+                final int current = active.get();
+                if (current >= drainers || !active.compareAndSet(current, current + 1))
+                    return;
+            }
+        }
+    }
+
+    private static class Entry {
+        private final Destination destination;
+        private final Transmission tx;
+        private final long queued;
+
+        Entry(Destination destination, Transmission tx, long queued) {
+            this.destination = destination;
+            this.tx = tx;
+            this.queued = queued;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static class Destination extends ArrayDeque<Entry> {
+        private final Object key;
+        private boolean scheduled;
+        private boolean removed;
+
+        Destination(Object key) {
+            this.key = key;
+        }
+
+        Transmission evictOldest(Type type) {
+            final Iterator<Entry> entries = iterator();
+            while (entries.hasNext()) {
+                final Entry entry = entries.next();
+                if (entry.tx.message().getType() == type) {
+                    entries.remove();
+                    return entry.tx;
+                }
+            }
+
+            return null;
+        }
+    }
+}
@@ -20,7 +20,7 @@ import com.workshare.msnos.core.protocols.ip.http.HttpGateway;
 import com.workshare.msnos.core.protocols.ip.udp.UDPGateway;
 import com.workshare.msnos.core.protocols.ip.udp.UDPServer;
 import com.workshare.msnos.core.protocols.ip.www.WWWGateway;
-import com.workshare.msnos.core.serializers.WireJsonSerializer;
+import com.workshare.msnos.core.serializers.WireSerializers;
 import com.workshare.msnos.soup.ShutdownHooks;
 import com.workshare.msnos.soup.ShutdownHooks.Hook;
 import com.workshare.msnos.soup.threading.ExecutorServices;
@@ -153,7 +153,7 @@ public class Gateways {
         }
         
         try {
-            WWWGateway gate = new WWWGateway(newHttpClient(), newScheduler(), new WireJsonSerializer(), newMulticaster()); 
+            WWWGateway gate = new WWWGateway(newHttpClient(), newScheduler(), WireSerializers.getWireSerializer(), newMulticaster()); 
             log.info("Succesfully connected to WWW gateway at {}", gate.root());
             return gate;
         } catch (Throwable ex) {
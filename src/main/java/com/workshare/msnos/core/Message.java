@@ -7,6 +7,7 @@ import java.util.UUID;
 import com.workshare.msnos.core.payloads.NullPayload;
 import com.workshare.msnos.core.payloads.PongPayload;
 import com.workshare.msnos.core.payloads.TracePayload;
+import com.workshare.msnos.core.serializers.WireSerializer;
 import com.workshare.msnos.soup.json.Json;
 import com.workshare.msnos.soup.time.SystemTime;
 
@@ -23,7 +24,7 @@ public class Message {
     }
 
     public enum Type {
-        APP, PRS, DSC, PIN, PON, ACK, ENQ, FLT, QNE, HCK, TRC, CRT
+        APP, PRS, DSC, PIN, PON, ACK, ENQ, FLT, QNE, HCK, TRC, CRT, HCD
     }
 
     private final Version version = Version.V1_0;
@@ -39,6 +40,13 @@ public class Message {
 
     private final String sig;
     private final String rnd;
+    private final transient int hash;
+
+    // encoded forms, lazily computed: as the message is immutable they are
+    // valid for its whole life, any copy starts with an empty cache
+    private transient volatile Encoded encoded;
+    private transient volatile String json;
+    private transient volatile String dataJson;
 
     private static final SecureRandom random = new SecureRandom();
 
@@ -71,6 +79,8 @@ public class Message {
         } else {
             this.data = data;
         }
+
+        this.hash = computeHash();
     }
 
     public UUID getUuid() {
@@ -121,33 +131,107 @@ public class Message {
         return gateName;
     }
 
+    /**
+     * Returns this message encoded by the serializer: the result is cached
+     * and shared, so it must never be modified
+     */
+    public byte[] toBytes(WireSerializer sz) {
+        Encoded current = encoded;
+        if (current == null || current.serializer != sz)
+            current = new Encoded(sz, null, null);
+
+        if (current.bytes == null) {
+            current = new Encoded(sz, sz.toBytes(this), current.text);
+            encoded = current;
+        }
+
+        return current.bytes;
+    }
+
+    public String toText(WireSerializer sz) {
+        Encoded current = encoded;
+        if (current == null || current.serializer != sz)
+            current = new Encoded(sz, null, null);
+
+        if (current.text == null) {
+            current = new Encoded(sz, current.bytes, sz.toText(this));
+            encoded = current;
+        }
+
+        return current.text;
+    }
+
+    public String getDataAsJson() {
+        String current = dataJson;
+        if (current == null) {
+            current = Json.toJsonString(data);
+            dataJson = current;
+        }
+
+        return current;
+    }
+
     @Override
     public String toString() {
-        return Json.toJsonString(this);
+        String current = json;
+        if (current == null) {
+            current = Json.toJsonString(this);
+            json = current;
+        }
+
+        return current;
     }
 
     @Override
     public boolean equals(Object o) {
-        try {
-            String jsonThis = Json.toJsonString(this);
-            String jsonThat = Json.toJsonString(o);
-            return jsonThis.equals(jsonThat);
-        } catch (Exception any) {
+        if (this == o)
+            return true;
+        if (!(o instanceof Message))
             return false;
-        }
+
+        Message other = (Message) o;
+        return hash == other.hash
+                && hops == other.hops
+                && when == other.when
+                && reliable == other.reliable
+                && type == other.type
+                && areEquals(uuid, other.uuid)
+                && areEquals(from, other.from)
+                && areEquals(to, other.to)
+                && areEquals(sig, other.sig)
+                && areEquals(rnd, other.rnd)
+                && areEquals(gateName, other.gateName)
+                && areEquals(version, other.version)
+                && areEquals(data, other.data);
     }
 
     @Override
     public int hashCode() {
+        return hash;
+    }
+
+    // the payload is left out, it can be expensive and the uuid is already very selective
+    private int computeHash() {
         int result = uuid != null ? uuid.hashCode() : 0;
         result = 31 * result + (type != null ? type.hashCode() : 0);
         result = 31 * result + (from != null ? from.hashCode() : 0);
         result = 31 * result + (to != null ? to.hashCode() : 0);
         result = 31 * result + (sig != null ? sig.hashCode() : 0);
         result = 31 * result + (rnd != null ? rnd.hashCode() : 0);
+        result = 31 * result + hops;
+        result = 31 * result + (int) (when ^ (when >>> 32));
         return result;
     }
 
+    private static boolean areEquals(Object o1, Object o2) {
+        if (o1 == o2)
+            return true;
+        else if (o1 == null || o2 == null)
+            return false;
+        else
+            return o1.equals(o2);
+    }
+
     public Message data(Payload load) {
         return new Message(type, from, to, hops, reliable, load, uuid, sig, rnd, when, gateName);
     }
@@ -176,4 +260,15 @@ public class Message {
         }
     }
 
+    private static class Encoded {
+        private final WireSerializer serializer;
+        private final byte[] bytes;
+        private final String text;
+
+        Encoded(WireSerializer serializer, byte[] bytes, String text) {
+            this.serializer = serializer;
+            this.bytes = bytes;
+            this.text = text;
+        }
+    }
 }
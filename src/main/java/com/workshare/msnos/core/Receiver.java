@@ -14,7 +14,6 @@ import com.workshare.msnos.core.cloud.MessageValidators;
 import com.workshare.msnos.core.cloud.MessageValidators.Result;
 import com.workshare.msnos.core.cloud.Multicaster;
 import com.workshare.msnos.core.routing.Router;
-import com.workshare.msnos.soup.json.Json;
 
 public class Receiver {
 
@@ -98,7 +97,7 @@ public class Receiver {
             return;
 
         final String muid = shorten(msg.getUuid());
-        final String payload = Json.toJsonString(msg.getData());
+        final String payload = msg.getDataAsJson();
 
         Iden from = msg.getFrom();
         if (internal.localAgents().containsKey(from))
@@ -112,7 +111,7 @@ public class Receiver {
             return;
 
         final String muid = shorten(msg.getUuid());
-        final String payload = Json.toJsonString(msg.getData());
+        final String payload = msg.getDataAsJson();
         proto.info("RX({}): {} {} {} {} {} {}", shorten(gateName, 3), msg.getType(), muid, msg.getWhen(), msg.getFrom(), msg.getTo(), payload);
     }
 }
@@ -24,6 +24,9 @@ public class RemoteAgent extends RemoteEntity implements Agent {
     @GuardedBy("this") 
     private transient Map<Type, Set<Endpoint>> endpointsByType;
 
+    // the wire version advertised by the agent, zero if json only
+    private volatile int wire;
+
     public RemoteAgent(UUID uuid, Cloud cloud, Set<Endpoint> endpoints) {
         this(uuid, cloud, endpoints, Ring.make(endpoints));
     }
@@ -67,6 +70,14 @@ public class RemoteAgent extends RemoteEntity implements Agent {
         return getIden().hashCode();
     }
 
+    public int getWireVersion() {
+        return wire;
+    }
+
+    public void setWireVersion(int version) {
+        this.wire = version;
+    }
+
     public void update(Set<Endpoint> newEndpoints) {
         touch();
 
@@ -10,7 +10,6 @@ import org.slf4j.LoggerFactory;
 
 import com.workshare.msnos.core.receipts.SingleReceipt;
 import com.workshare.msnos.core.routing.Router;
-import com.workshare.msnos.soup.json.Json;
 import com.workshare.msnos.soup.threading.ExecutorServices;
 
 public class Sender {
@@ -18,6 +17,7 @@ public class Sender {
     private static final ExecutorService DEFAULT_EXECUTOR_SERVICE = ExecutorServices.newFixedDaemonThreadPool(getThreadNum());
 
     public static final String SYSP_SENDER_THREADS_NUM = "com.ws.msnos.sender.threads.num";
+    public static final String SYSP_SENDER_SCHEDULER = "com.ws.msnos.sender.scheduler";
     
     private static final Logger log = LoggerFactory.getLogger(Sender.class);
     private static final Logger proto = LoggerFactory.getLogger("protocol");
@@ -54,26 +54,43 @@ public class Sender {
 
     private final Executor executor;
     private final Router router;
+    private final DeliveryScheduler scheduler;
 
     Sender(Router router) {
         this(router, DEFAULT_EXECUTOR_SERVICE);
     }
 
     Sender(Router router, Executor executor) {
+        this(router, executor, Boolean.getBoolean(SYSP_SENDER_SCHEDULER) ? new DeliveryScheduler(executor, getThreadNum()) : null);
+    }
+
+    Sender(Router router, Executor executor, DeliveryScheduler scheduler) {
         this.router = router;
         this.executor = executor;
+        this.scheduler = scheduler;
     }
 
     public Receipt send(final Cloud cloud, final Message amessage) throws MsnosException {  
         log.debug("Accepted message for delivery {} on cloud {}", amessage, cloud);
         Transmission tx = new Transmission(amessage.hopped(), cloud);
-        executor.execute(tx);
+        if (scheduler != null)
+            scheduler.submit(tx);
+        else
+            executor.execute(tx);
         return tx.receipt();
     }
 
+    /**
+     * Returns the delivery scheduler, or null when messages are handed
+     * directly to the executor
+     */
+    public DeliveryScheduler scheduler() {
+        return scheduler;
+    }
+
     void sendSync(final Cloud cloud, final Message message, final SingleReceipt receipt) {
         Receipt current = router.send(message);
-        receipt.update(current);
+        receipt.follow(current);
         log.debug("Message {} routed, receipt {}", message, receipt);
 
         logTX(message, receipt.getGate());
@@ -88,7 +105,7 @@ public class Sender {
             return;
 
         final String muid = shorten(msg.getUuid());
-        final String payload = Json.toJsonString(msg.getData());
+        final String payload = msg.getDataAsJson();
         proto.info("TX({}): {} {} {} {} {} {}", gateName, msg.getType(), muid, msg.getWhen(), msg.getFrom(), msg.getTo(), payload);
     }
 }
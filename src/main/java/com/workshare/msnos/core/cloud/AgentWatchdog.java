@@ -13,6 +13,12 @@ import java.util.UUID;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Pings the agents gone quiet, removing the ones that do not answer, and a
+ * sample of the active ones whose round trip is not known or is about to
+ * expire, so that the latencies are measured for all the agents alive and
+ * not only for the ones suspected dead
+ */
 public class AgentWatchdog {
 
     private static Logger log = LoggerFactory.getLogger(AgentWatchdog.class);
@@ -22,6 +28,7 @@ public class AgentWatchdog {
 
     private static final long AGENT_TIMEOUT = Long.getLong("msnos.core.agents.timeout.millis", 90000L);
     private static final long AGENT_RETRIES = Long.getLong("msnos.core.agents.retries.num", 3);
+    private static final int LATENCY_SAMPLES = Integer.getInteger("msnos.core.agents.latency.samples", 64);
 
     public AgentWatchdog(Cloud cloud, ScheduledExecutorService executor) {
         this.cloud = cloud;
@@ -41,16 +48,18 @@ public class AgentWatchdog {
 
     private void probeQuietAgents() {
         log.trace("Probing quite agents...");
+        final LatencyTable latencies = cloud.getLatencies();
+        int samples = LATENCY_SAMPLES;
         for (RemoteEntity agent : cloud.getRemoteAgents()) {
             final long currentTime = SystemTime.asMillis();
             final long agentTime = agent.getAccessTime();
             if (agentTime < currentTime - AGENT_TIMEOUT) {
                 log.debug("- sending ping to "+uuidOf(agent)+" - agentTime {}, currentTime {}", agentTime, currentTime);
-                try {
-                    cloud.send(new MessageBuilder(Message.Type.PIN, cloud, agent).make());
-                } catch (IOException e) {
-                    log.debug("Unexpected exception pinging agent " + agent, e);
-                }
+                ping(agent, latencies);
+            } else if (samples > 0 && latencies.isStale(uuidOf(agent))) {
+                log.trace("- sending ping to {} to measure its round trip", uuidOf(agent));
+                ping(agent, latencies);
+                samples--;
             }
             if (agentTime < currentTime - (AGENT_TIMEOUT * AGENT_RETRIES)) {
                 log.debug("- remote agent {} removed due to inactivity: {}", uuidOf(agent), agent);
@@ -60,6 +69,15 @@ public class AgentWatchdog {
         log.trace("Done!");
     }
 
+    private void ping(RemoteEntity agent, LatencyTable latencies) {
+        try {
+            latencies.pinged(uuidOf(agent));
+            cloud.send(new MessageBuilder(Message.Type.PIN, cloud, agent).make());
+        } catch (IOException e) {
+            log.debug("Unexpected exception pinging agent " + agent, e);
+        }
+    }
+
     private UUID uuidOf(RemoteEntity agent) {
         return agent.getIden().getUUID();
     }
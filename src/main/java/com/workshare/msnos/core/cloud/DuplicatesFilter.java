@@ -0,0 +1,235 @@
+package com.workshare.msnos.core.cloud;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.workshare.msnos.soup.metrics.Meter;
+import com.workshare.msnos.soup.time.SystemTime;
+
+/**
+ * A lock-free, fixed memory set of recently seen uuids, used to suppress
+ * duplicate messages.
+ *
+ * Time is divided in slices, each one stored in a ring of open addressing
+ * tables of 64 bits fingerprints: an uuid is guaranteed to be remembered for
+ * at least the given window, after which its ring is reused. The chance of a
+ * false positive is bound by (entries * probes / 2^64), negligible in
+ * practice. When a table is full the uuid is simply not remembered, so that
+ * overflows can only let a duplicate pass, never drop a new message.
+ */
+public class DuplicatesFilter {
+
+    private static final int RINGS = 4;
+    private static final int MAX_PROBES = 32;
+    private static final long EMPTY = 0L;
+    private static final long CLEARING = Long.MIN_VALUE;
+
+    private final long sliceMillis;
+    private final Ring[] rings;
+
+    private final Meter lookups = new Meter();
+    private final Meter hits = new Meter();
+    private final AtomicLong overflows = new AtomicLong();
+    private final AtomicLong lastSlice = new AtomicLong(Long.MIN_VALUE + 1);
+
+    /**
+     * @param windowMillis how long an uuid is remembered at least
+     * @param capacity how many uuids are expected to be seen in the window
+     */
+    public DuplicatesFilter(long windowMillis, int capacity) {
+        if (windowMillis <= 0 || capacity <= 0)
+            throw new IllegalArgumentException("Window and capacity must be positive");
+
+        this.sliceMillis = Math.max(1, (windowMillis + RINGS - 2) / (RINGS - 1));
+
+        // each slice gets its share of the capacity, at half load
+        final int slots = nextPowerOfTwo(Math.max(MAX_PROBES, 2 * capacity / (RINGS - 1)));
+        this.rings = new Ring[RINGS];
+        for (int i = 0; i < RINGS; i++)
+            rings[i] = new Ring(slots);
+    }
+
+    /**
+     * Checks if the uuid was already seen and records it
+     *
+     * @return true if the uuid was already seen
+     */
+    public boolean seen(UUID uuid) {
+        lookups.mark();
+
+        final long fingerprint = fingerprint(uuid);
+        final long slice = currentSlice();
+
+        for (long s = slice - RINGS + 1; s < slice; s++) {
+            final Ring ring = rings[index(s)];
+            if (ring.epoch.get() == s && ring.contains(fingerprint)) {
+                hits.mark();
+                return true;
+            }
+        }
+
+        final Ring current = rings[index(slice)];
+        if (!current.rotate(slice)) {
+            overflows.incrementAndGet();
+            return false;
+        }
+
+        final int result = current.add(fingerprint);
+        if (result < 0) {
+            overflows.incrementAndGet();
+            return false;
+        }
+
+        if (result == 0) {
+            hits.mark();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the number of uuids currently remembered
+     */
+    public int occupancy() {
+        final long slice = currentSlice();
+
+        int total = 0;
+        for (long s = slice - RINGS + 1; s <= slice; s++) {
+            final Ring ring = rings[index(s)];
+            if (ring.epoch.get() == s)
+                total += ring.size.get();
+        }
+
+        return total;
+    }
+
+    public int capacity() {
+        return rings[0].slots.length() * RINGS;
+    }
+
+    public double hitRate() {
+        final long total = lookups.count();
+        return total == 0 ? 0.0 : (double) hits.count() / total;
+    }
+
+    public Meter lookups() {
+        return lookups;
+    }
+
+    public Meter hits() {
+        return hits;
+    }
+
+    public long overflows() {
+        return overflows.get();
+    }
+
+    @Override
+    public String toString() {
+        return "occupancy=" + occupancy() + ", capacity=" + capacity() + ", hitRate=" + hitRate() + ", overflows=" + overflows();
+    }
+
+    // never goes back, so that a clock adjustment cannot make us forget
+    private long currentSlice() {
+        final long slice = SystemTime.asMillis() / sliceMillis;
+        while (true) {
+            final long last = lastSlice.get();
+            if (slice <= last)
+                return last;
+            if (lastSlice.compareAndSet(last, slice))
+                return slice;
+        }
+    }
+
+    private static int index(long slice) {
+        return (int) (slice & (RINGS - 1));
+    }
+
+    // finalizer of murmur3, applied on both halves of the uuid
+    private static long fingerprint(UUID uuid) {
+        long h = uuid.getMostSignificantBits();
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= uuid.getLeastSignificantBits();
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (h == EMPTY || h == CLEARING) ? 1L : h;
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        int result = 1;
+        while (result < value)
+            result <<= 1;
+        return result;
+    }
+
+    private static class Ring {
+        private final AtomicLong epoch = new AtomicLong(-1);
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicLongArray slots;
+        private final int mask;
+
+        Ring(int capacity) {
+            this.slots = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+        }
+
+        // makes sure the ring holds the given slice, clearing it if needed:
+        // returns false if another thread is still clearing it
+        boolean rotate(long slice) {
+            final long current = epoch.get();
+            if (current == slice)
+                return true;
+            if (current == CLEARING || current > slice)
+                return false;
+            if (!epoch.compareAndSet(current, CLEARING))
+                return epoch.get() == slice;
+
+            for (int i = 0; i < slots.length(); i++)
+                slots.set(i, EMPTY);
+            size.set(0);
+
+            epoch.set(slice);
+            return true;
+        }
+
+        boolean contains(long fingerprint) {
+            int index = (int) fingerprint & mask;
+            for (int probe = 0; probe < MAX_PROBES; probe++) {
+                final long value = slots.get(index);
+                if (value == fingerprint)
+                    return true;
+                if (value == EMPTY)
+                    return false;
+                index = (index + 1) & mask;
+            }
+            return false;
+        }
+
+        // returns 1 if added, 0 if already there, -1 if full
+        int add(long fingerprint) {
+            int index = (int) fingerprint & mask;
+            for (int probe = 0; probe < MAX_PROBES; probe++) {
+                final long value = slots.get(index);
+                if (value == fingerprint)
+                    return 0;
+
+                if (value == EMPTY) {
+                    if (slots.compareAndSet(index, EMPTY, fingerprint)) {
+                        size.incrementAndGet();
+                        return 1;
+                    }
+                    if (slots.get(index) == fingerprint)
+                        return 0;
+                }
+
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.workshare.msnos.core.cloud;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.workshare.msnos.soup.time.SystemTime;
+
+/**
+ * The round trip times to the remote agents, measured from the pings sent
+ * by the cloud and the pongs received back. Each agent has a moving average
+ * where the weight of the old samples decays with the time passed since,
+ * and a measure not refreshed for a while is forgotten, so that an agent is
+ * never considered close on old data
+ */
+public class LatencyTable {
+
+    public static final String SYSP_DECAY = "msnos.core.latency.decay";
+    public static final String SYSP_TTL = "msnos.core.latency.ttl";
+
+    public static final long UNKNOWN = -1L;
+
+    private static final long DECAY = Long.getLong(SYSP_DECAY, 60000L);
+    private static final long TTL = Long.getLong(SYSP_TTL, 5 * 60 * 1000L);
+
+    private final ConcurrentMap<UUID, Entry> entries;
+
+    public LatencyTable() {
+        this.entries = new ConcurrentHashMap<UUID, Entry>();
+    }
+
+    /**
+     * Records that a ping was sent to the agent: only the first ping still
+     * waiting for its pong counts, so that the round trip is not shortened
+     * by pings sent later
+     */
+    public void pinged(UUID agent) {
+        entryOf(agent).pinged(SystemTime.asMillis());
+    }
+
+    /**
+     * Records that a pong was received from the agent, measuring the round
+     * trip from the pending ping, if any
+     */
+    public void ponged(UUID agent) {
+        final Entry entry = entries.get(agent);
+        if (entry != null)
+            entry.ponged(SystemTime.asMillis());
+    }
+
+    public void record(UUID agent, long roundTrip, TimeUnit unit) {
+        entryOf(agent).record(unit.toMillis(roundTrip), SystemTime.asMillis());
+    }
+
+    /**
+     * Returns the round trip time in milliseconds to the agent, or
+     * {@link #UNKNOWN} if not measured recently
+     */
+    public long get(UUID agent) {
+        final Entry entry = entries.get(agent);
+        if (entry == null)
+            return UNKNOWN;
+
+        return entry.roundTrip(SystemTime.asMillis());
+    }
+
+    /**
+     * Tells if the agent should be pinged to refresh its round trip, that
+     * is when never measured or when the measure is halfway to expiring
+     */
+    public boolean isStale(UUID agent) {
+        final Entry entry = entries.get(agent);
+        if (entry == null)
+            return true;
+
+        return entry.isStale(SystemTime.asMillis());
+    }
+
+    public void remove(UUID agent) {
+        entries.remove(agent);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private Entry entryOf(UUID agent) {
+        Entry entry = entries.get(agent);
+        if (entry == null) {
+            final Entry created = new Entry();
+            entry = entries.putIfAbsent(agent, created);
+            if (entry == null)
+                entry = created;
+        }
+
+        return entry;
+    }
+
+    private static class Entry {
+        private double average;
+        private long pingedAt;
+        private long measuredAt;
+
+        synchronized void pinged(long now) {
+            if (pingedAt == 0 || now - pingedAt > TTL)
+                pingedAt = now;
+        }
+
+        synchronized void ponged(long now) {
+            if (pingedAt == 0)
+                return;
+
+            record(now - pingedAt, now);
+            pingedAt = 0;
+        }
+
+        synchronized void record(long roundTrip, long now) {
+            if (measuredAt == 0) {
+                average = roundTrip;
+            } else {
+                final double weight = Math.exp(-Math.max(0, now - measuredAt) / (double) DECAY);
+                average = average * weight + roundTrip * (1.0 - weight);
+            }
+
+            measuredAt = now;
+        }
+
+        synchronized boolean isStale(long now) {
+            return measuredAt == 0 || now - measuredAt > TTL / 2;
+        }
+
+        synchronized long roundTrip(long now) {
+            if (measuredAt == 0 || now - measuredAt > TTL)
+                return UNKNOWN;
+
+            return Math.round(average);
+        }
+    }
+}
@@ -2,10 +2,6 @@ package com.workshare.msnos.core.cloud;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.UUID;
-import java.util.concurrent.TimeUnit;
-
-import net.jodah.expiringmap.ExpiringMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +15,7 @@ import com.workshare.msnos.soup.time.SystemTime;
 public class MessageValidators {
 
     private static final String SYSP_MESSAGE_LIFETIME = "msnos.core.message.lifetime";
+    private static final String SYSP_DUPLICATES_CAPACITY = "msnos.core.message.duplicates.capacity";
 
     public enum Reason {
         TO_LOCAL,       // directed to local agent
@@ -60,9 +57,13 @@ public class MessageValidators {
     private final Cloud.Internal cloud;
     private final List<Validator> receivingValidators;
     private final List<Validator> forwardingValidators;
+    private final DuplicatesFilter receivingDuplicates;
+    private final DuplicatesFilter forwardingDuplicates;
 
     public MessageValidators(Cloud.Internal aCloud) {
         this.cloud = aCloud;
+        this.receivingDuplicates = new DuplicatesFilter(getMessageLifetime(), getDuplicatesCapacity());
+        this.forwardingDuplicates = new DuplicatesFilter(getMessageLifetime(), getDuplicatesCapacity());
 
         final Validator notToLocal = shouldNotDirectedToLocalAgent();
         final Validator notFromLocal = shouldNotComeFromLocalAgent();
@@ -75,13 +76,13 @@ public class MessageValidators {
                 notFromLocal, 
                 notAddressedOutside,
                 notTooOld,
-                shouldNeverSeenMessage(), 
+                shouldNeverSeenMessage(receivingDuplicates), 
                 withValidSignature);
 
         this.forwardingValidators = Arrays.asList(
                 notToLocal, 
                 notTooOld,
-                shouldNeverSeenMessage(), 
+                shouldNeverSeenMessage(forwardingDuplicates), 
                 withValidSignature);
     }
 
@@ -105,37 +106,35 @@ public class MessageValidators {
         return SUCCESS;
     }
 
+    public DuplicatesFilter receivingDuplicates() {
+        return receivingDuplicates;
+    }
+
+    public DuplicatesFilter forwardingDuplicates() {
+        return forwardingDuplicates;
+    }
+
     private long getMessageLifetime() {
         return Long.getLong(SYSP_MESSAGE_LIFETIME, 60000);
     }
 
+    private int getDuplicatesCapacity() {
+        return Integer.getInteger(SYSP_DUPLICATES_CAPACITY, 16384);
+    }
+
     private Validator shouldHaveValidSignature() {
         return new AbstractMessageValidator(Reason.BAD_SIGNED) {
             @Override
             public Result isValid(Message message) {
-                Message signed = cloud.sign(message);
-                return asResult(parseNull(message.getSig()).equals(parseNull(signed.getSig())));
-            }
-            
-            private String parseNull(String signature) {
-                return (signature == null ? "" : signature);
+                return asResult(cloud.verify(message));
             }};
     }
 
-    private Validator shouldNeverSeenMessage() {
+    private Validator shouldNeverSeenMessage(final DuplicatesFilter duplicates) {
         return new AbstractMessageValidator(Reason.DUPLICATE) {
-            
-            private final ExpiringMap<UUID, Message> messages = ExpiringMap.builder()
-                        .expiration(getMessageLifetime(), TimeUnit.SECONDS)
-                        .build();            
-
             @Override
             public Result isValid(Message message) {
-                if (messages.containsKey(message.getUuid()))
-                    return failure;
-                
-                messages.put(message.getUuid(), message);
-                return SUCCESS;
+                return asResult(!duplicates.seen(message.getUuid()));
             }
         };
     }
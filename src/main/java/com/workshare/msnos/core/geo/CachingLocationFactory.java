@@ -0,0 +1,181 @@
+package com.workshare.msnos.core.geo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.workshare.msnos.soup.metrics.Meter;
+import com.workshare.msnos.soup.threading.ExecutorServices;
+import com.workshare.msnos.soup.time.SystemTime;
+
+/**
+ * Remembers the locations made by another factory, as each one may cost a
+ * database lookup and a name resolution. The cache is a bounded LRU keyed by
+ * host; unknown locations are kept for a shorter time, as they are often
+ * due to a temporary failure.
+ *
+ * An expired location is still returned while a fresh one is made in the
+ * background, so that only the first lookup of a host waits; a refresh
+ * failing does not replace a known location with an unknown one.
+ */
+public class CachingLocationFactory implements LocationFactory {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingLocationFactory.class);
+
+    public static final String SYSP_MAX_SIZE = "msnos.core.geo.cache.max";
+    public static final String SYSP_TTL = "msnos.core.geo.cache.ttl";
+    public static final String SYSP_NEGATIVE_TTL = "msnos.core.geo.cache.negative.ttl";
+
+    private final LocationFactory delegate;
+    private final Executor refresher;
+    private final long ttl;
+    private final long negativeTtl;
+    private final LinkedHashMap<String, Cached> entries;
+
+    private final Meter hits = new Meter();
+    private final Meter misses = new Meter();
+    private final Meter refreshes = new Meter();
+    private final Meter evictions = new Meter();
+
+    public CachingLocationFactory(LocationFactory delegate) {
+        this(delegate, ExecutorServices.newFixedDaemonThreadPool(1),
+                Integer.getInteger(SYSP_MAX_SIZE, 1000),
+                Long.getLong(SYSP_TTL, 60 * 60 * 1000L),
+                Long.getLong(SYSP_NEGATIVE_TTL, 60 * 1000L));
+    }
+
+    public CachingLocationFactory(LocationFactory delegate, Executor refresher, final int maxSize, long ttlMillis, long negativeTtlMillis) {
+        this.delegate = delegate;
+        this.refresher = refresher;
+        this.ttl = ttlMillis;
+        this.negativeTtl = negativeTtlMillis;
+        this.entries = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                final boolean full = size() > maxSize;
+                if (full)
+                    evictions.mark();
+                return full;
+            }
+        };
+    }
+
+    @Override
+    public Location make(final String host) {
+        if (host == null)
+            return delegate.make(host);
+
+        final long now = SystemTime.asMillis();
+        final Cached entry;
+        synchronized (entries) {
+            entry = entries.get(host);
+        }
+
+        if (entry == null) {
+            misses.mark();
+            final Location location = delegate.make(host);
+            store(host, location, now);
+            return location;
+        }
+
+        hits.mark();
+        if (entry.isExpired(now) && entry.startRefresh())
+            refresh(host, entry);
+
+        return entry.location;
+    }
+
+    public long hits() {
+        return hits.count();
+    }
+
+    public long misses() {
+        return misses.count();
+    }
+
+    public long refreshes() {
+        return refreshes.count();
+    }
+
+    public long evictions() {
+        return evictions.count();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "size=" + size() + ", hits=" + hits() + ", misses=" + misses() + ", refreshes=" + refreshes() + ", evictions=" + evictions();
+    }
+
+    private void refresh(final String host, final Cached stale) {
+        refreshes.mark();
+        try {
+            refresher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final Location location = delegate.make(host);
+                        final long now = SystemTime.asMillis();
+                        if (isUnknown(location) && !isUnknown(stale.location))
+                            store(host, new Cached(stale.location, now + negativeTtl));
+                        else
+                            store(host, location, now);
+                    } catch (Throwable any) {
+                        log.debug("Unable to refresh the location of " + host, any);
+                        stale.refreshing = false;
+                    }
+                }
+            });
+        } catch (Throwable any) {
+            log.debug("Unable to refresh the location of " + host, any);
+            stale.refreshing = false;
+        }
+    }
+
+    private void store(String host, Location location, long now) {
+        store(host, new Cached(location, now + (isUnknown(location) ? negativeTtl : ttl)));
+    }
+
+    private void store(String host, Cached entry) {
+        synchronized (entries) {
+            entries.put(host, entry);
+        }
+    }
+
+    private static boolean isUnknown(Location location) {
+        return location == null || location == Location.UNKNOWN;
+    }
+
+    private static class Cached {
+        private final Location location;
+        private final long expiry;
+        private volatile boolean refreshing;
+
+        Cached(Location location, long expiry) {
+            this.location = location;
+            this.expiry = expiry;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiry;
+        }
+
+        synchronized boolean startRefresh() {
+            if (refreshing)
+                return false;
+
+            refreshing = true;
+            return true;
+        }
+    }
+}
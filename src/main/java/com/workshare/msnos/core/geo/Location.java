@@ -60,6 +60,8 @@ public class Location {
     }
 
     public static class GPS {
+        private static final double EARTH_RADIUS_KM = 6371.0;
+
         @JsonProperty("lat")
         private final Double latitude;
         @JsonProperty("lon")
@@ -68,9 +70,31 @@ public class Location {
         private final Integer accuracy;
         
         public GPS(com.maxmind.geoip2.record.Location maxlocation) {
-            this.latitude = maxlocation.getLatitude();
-            this.longitude = maxlocation.getLongitude();
-            this.accuracy = maxlocation.getAccuracyRadius();
+            this(maxlocation.getLatitude(), maxlocation.getLongitude(), maxlocation.getAccuracyRadius());
+        }
+
+        public GPS(Double latitude, Double longitude, Integer accuracy) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.accuracy = accuracy;
+        }
+
+        public boolean isValid() {
+            return latitude != null && longitude != null;
+        }
+
+        /**
+         * Returns the great circle distance in kilometers, using the
+         * haversine formula
+         */
+        public double distanceTo(GPS other) {
+            final double lat1 = Math.toRadians(latitude);
+            final double lat2 = Math.toRadians(other.latitude);
+            final double dlat = lat2 - lat1;
+            final double dlon = Math.toRadians(other.longitude - longitude);
+
+            final double a = Math.sin(dlat / 2) * Math.sin(dlat / 2) + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dlon / 2) * Math.sin(dlon / 2);
+            return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
         }
 
         public Double getLatitude() {
@@ -161,6 +185,8 @@ public class Location {
     private final int precision;
     private final GPS gps;
 
+    private transient volatile int id;
+
     public Location(OmniResponse response) {
         this(
             makeContinent(response.getContinent()),
@@ -221,6 +247,14 @@ public class Location {
         return precision;
     }
 
+    // the interned id, see LocationIndex
+    int id() {
+        if (id == 0)
+            id = LocationIndex.intern(this);
+
+        return id;
+    }
+
     public Match match(Location other) {
         return new Match(this, other == null ? UNKNOWN : other);
     }
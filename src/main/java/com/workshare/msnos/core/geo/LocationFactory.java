@@ -4,5 +4,5 @@ public interface LocationFactory {
 
     public abstract Location make(String host);
 
-    public static final LocationFactory DEFAULT = OfflineLocationFactory.build();
+    public static final LocationFactory DEFAULT = new CachingLocationFactory(OfflineLocationFactory.build());
 }
\ No newline at end of file
@@ -0,0 +1,111 @@
+package com.workshare.msnos.core.geo;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.workshare.msnos.core.geo.Location.Place;
+
+/**
+ * Interns places and locations into small integer ids, so that two locations
+ * can be matched comparing a few integers: no match object is created and no
+ * equals is invoked. The score is the same as the value of a
+ * {@link Location.Match}.
+ *
+ * Unknown places all get the id zero, which never matches; each location gets
+ * its own id, starting from one, which can be used to index arrays.
+ */
+public class LocationIndex {
+
+    public static final int MAX_SCORE = 15;
+
+    private static final int[] WEIGHTS = {1, 2, 4, 8};
+
+    private static final ConcurrentMap<Place, Integer> places = new ConcurrentHashMap<Place, Integer>();
+    private static final ConcurrentMap<Location, Integer> locations = new ConcurrentHashMap<Location, Integer>();
+
+    // the place ids of each location, indexed by the location id
+    private static volatile int[][] placesOfLocations = new int[16][];
+
+    private LocationIndex() {
+    }
+
+    public static int idOf(Place place) {
+        if (place == null || place == Place.NOWHERE)
+            return 0;
+
+        Integer id = places.get(place);
+        if (id == null) {
+            synchronized (places) {
+                id = places.get(place);
+                if (id == null) {
+                    id = places.size() + 1;
+                    places.put(place, id);
+                }
+            }
+        }
+
+        return id;
+    }
+
+    /**
+     * Returns the id of the location, which is cached by the location itself
+     */
+    public static int idOf(Location location) {
+        return (location == null ? Location.UNKNOWN : location).id();
+    }
+
+    static int intern(Location location) {
+        Integer id = locations.get(location);
+        if (id == null) {
+            synchronized (locations) {
+                id = locations.get(location);
+                if (id == null) {
+                    id = locations.size() + 1;
+                    store(id, new int[] {
+                            idOf(location.getContinent()),
+                            idOf(location.getCountry()),
+                            idOf(location.getRegion()),
+                            idOf(location.getCity())});
+                    locations.put(location, id);
+                }
+            }
+        }
+
+        return id;
+    }
+
+    /**
+     * Returns the match score between two locations ids
+     */
+    public static int score(int source, int target) {
+        final int[][] all = placesOfLocations;
+        final int[] alfa = all[source];
+        final int[] beta = all[target];
+
+        int total = 0;
+        for (int i = 0; i < WEIGHTS.length; i++) {
+            if (alfa[i] != 0 && alfa[i] == beta[i])
+                total += WEIGHTS[i];
+        }
+
+        return total;
+    }
+
+    public static int score(Location source, Location target) {
+        return score(idOf(source), idOf(target));
+    }
+
+    // called under lock, the array is replaced when grown so that the
+    // readers always see the complete rows
+    private static void store(int id, int[] placeIds) {
+        int[][] all = placesOfLocations;
+        if (id >= all.length) {
+            final int[][] grown = new int[all.length * 2][];
+            System.arraycopy(all, 0, grown, 0, all.length);
+            all = grown;
+        }
+
+        all[id] = placeIds;
+        placesOfLocations = all;
+    }
+}
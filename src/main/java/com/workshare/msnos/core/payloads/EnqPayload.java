@@ -0,0 +1,80 @@
+package com.workshare.msnos.core.payloads;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.workshare.msnos.soup.json.Json;
+import com.workshare.msnos.usvc.api.RestApi;
+
+/**
+ * An enquiry carrying the version of the api catalog already known by the
+ * sender, so that the receiver can avoid sending it again when unchanged.
+ *
+ * The version alone does not prove that the whole catalog is known, as a
+ * catalog split on more messages may have been received only in part, so
+ * the enquiry also carries a digest of the apis known: enquiries without a
+ * digest are always answered with the whole catalog.
+ */
+public class EnqPayload extends PayloadAdapter {
+
+    private final long version;
+    private final Integer digest;
+
+    public EnqPayload(long version) {
+        this(version, (Integer) null);
+    }
+
+    public EnqPayload(long version, Collection<RestApi> known) {
+        this(version, digestOf(known));
+    }
+
+    private EnqPayload(long version, Integer digest) {
+        this.version = version;
+        this.digest = digest;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Tells if the sender knows exactly the given catalog at the given version
+     */
+    public boolean knows(long version, Collection<RestApi> apis) {
+        return this.version == version && digest != null && digest.intValue() == digestOf(apis);
+    }
+
+    // the host is left out, as the receiver of a catalog fills it in when
+    // missing, possibly once for each endpoint of the sender
+    static int digestOf(Collection<RestApi> apis) {
+        final Set<String> keys = new HashSet<String>();
+        for (RestApi api : apis)
+            keys.add(api.getType() + ":" + api.getPath() + ":" + api.getPort() + ":" + api.hasAffinity() + ":" + api.getPriority());
+
+        return keys.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return Json.toJsonString(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        EnqPayload that = (EnqPayload) o;
+
+        if (digest == null ? that.digest != null : !digest.equals(that.digest)) return false;
+        return this.version == that.version;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (version ^ (version >>> 32));
+        result = 31 * result + (digest == null ? 0 : digest.hashCode());
+        return result;
+    }
+}
@@ -0,0 +1,84 @@
+package com.workshare.msnos.core.payloads;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.workshare.msnos.core.Iden;
+import com.workshare.msnos.soup.json.Json;
+
+/**
+ * The outcome of the healthchecks run by a node in a sweep, sent in one go
+ * to the cloud instead of one HCK message per service checked
+ */
+public class HealthDigestPayload extends PayloadAdapter {
+
+    private final List<Entry> entries;
+
+    public HealthDigestPayload(List<Entry> entries) {
+        if (entries == null)
+            throw new IllegalArgumentException("Entries cannot be null!");
+
+        this.entries = Collections.unmodifiableList(new ArrayList<Entry>(entries));
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    @Override
+    public String toString() {
+        return Json.toJsonString(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        HealthDigestPayload that = (HealthDigestPayload) o;
+
+        return this.entries.equals(that.entries);
+    }
+
+    @Override
+    public int hashCode() {
+        return entries.hashCode();
+    }
+
+    public static class Entry {
+        private final Iden agent;
+        private final boolean working;
+
+        public Entry(Iden agent, boolean working) {
+            if (agent == null)
+                throw new IllegalArgumentException("Agent cannot be null!");
+
+            this.agent = agent;
+            this.working = working;
+        }
+
+        public Iden getIden() {
+            return agent;
+        }
+
+        public boolean isWorking() {
+            return working;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Entry that = (Entry) o;
+
+            return this.agent.equals(that.agent) && this.working == that.working;
+        }
+
+        @Override
+        public int hashCode() {
+            return agent.hashCode();
+        }
+    }
+}
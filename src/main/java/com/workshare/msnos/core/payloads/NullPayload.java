@@ -6,4 +6,14 @@ public class NullPayload extends PayloadAdapter implements Payload  {
 
     public static final NullPayload INSTANCE = new NullPayload();
 
+    @Override
+    public int hashCode() {
+        return "null".hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof NullPayload;
+    }
+
 }
@@ -1,5 +1,6 @@
 package com.workshare.msnos.core.payloads;
 
+import com.workshare.msnos.core.Cloud;
 import com.workshare.msnos.core.Cloud.Internal;
 import com.workshare.msnos.core.Message;
 import com.workshare.msnos.core.Message.Payload;
@@ -13,6 +14,11 @@ public class PongPayload implements Message.Payload {
 
     @Override
     public boolean process(Message message, Internal internal) {
+        // the round trip from the ping sent by the cloud, if any
+        final Cloud cloud = internal.cloud();
+        if (cloud != null && message.getFrom() != null)
+            cloud.getLatencies().ponged(message.getFrom().getUUID());
+
         return false;
     }
 
@@ -16,6 +16,7 @@ import com.workshare.msnos.core.MsnosException;
 import com.workshare.msnos.core.RemoteAgent;
 import com.workshare.msnos.core.protocols.ip.Endpoint;
 import com.workshare.msnos.core.protocols.ip.HttpEndpoint;
+import com.workshare.msnos.core.serializers.WireSerializers;
 import com.workshare.msnos.soup.json.Json;
 
 public class Presence implements Message.Payload {
@@ -24,10 +25,17 @@ public class Presence implements Message.Payload {
 
     private final boolean present;
     private final Set<Endpoint> endpoints;
+    // missing in the presences of nodes reading json only
+    private final Integer wire;
 
     public Presence(boolean present, Set<Endpoint> endpoints) {
+        this(present, endpoints, WireSerializers.WIRE_VERSION);
+    }
+
+    public Presence(boolean present, Set<Endpoint> endpoints, Integer wire) {
         this.present = present;
         this.endpoints = endpoints;
+        this.wire = wire;
         log.trace(present ? "Presence message created: {}" : "Absence message created: {}", this);
     }
 
@@ -43,6 +51,13 @@ public class Presence implements Message.Payload {
         return endpoints;
     }
 
+    /**
+     * The wire version read by the sender, zero if json only
+     */
+    public int getWireVersion() {
+        return wire == null ? WireSerializers.WIRE_JSON : wire;
+    }
+
     @Override
     public String toString() {
         return Json.toJsonString(this);
@@ -62,8 +77,8 @@ public class Presence implements Message.Payload {
         }
 
         return new Payload[]{
-                new Presence(present, netOne),
-                new Presence(present, netTwo)
+                new Presence(present, netOne, wire),
+                new Presence(present, netTwo, wire)
         };
     }
 
@@ -92,6 +107,7 @@ public class Presence implements Message.Payload {
 
         if (isPresent()) {
             RemoteAgent agent = new RemoteAgent(from.getUUID(), internal.cloud(), extractEndpoints(from));
+            agent.setWireVersion(getWireVersion());
             log.debug("Discovered new agent from network: {}", agent.toString());
             internal.remoteAgents().add(agent);
         } else {
@@ -8,36 +8,126 @@ import com.workshare.msnos.usvc.api.RestApi;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
+/**
+ * The announcement of the apis of a microservice.
+ *
+ * A versioned announcement carries the version of the catalog of the
+ * microservice and is either full, when it lists all the apis, or a delta,
+ * when it lists the apis added and removed since the previous version.
+ * Unversioned announcements are only ever added to what is known.
+ */
 public class  QnePayload implements Payload {
     
     private String name;
     private Set<RestApi> apis;
+    private Long version;
+    private Set<RestApi> removed;
 
     public QnePayload(String name, RestApi... apis) {
         this(name,  Collections.unmodifiableSet(new HashSet<RestApi>(Arrays.asList(apis))));
     }
 
     public QnePayload(String name, Set<RestApi> apis) {
+        this(name, apis, null, null);
+    }
+
+    private QnePayload(String name, Set<RestApi> apis, Long version, Set<RestApi> removed) {
         this.name = name;
         this.apis = apis;
+        this.version = version;
+        this.removed = removed;
+    }
+
+    public static QnePayload full(String name, long version, Set<RestApi> apis) {
+        return new QnePayload(name, apis, version, null);
     }
 
+    public static QnePayload delta(String name, long version, Set<RestApi> added, Set<RestApi> removed) {
+        return new QnePayload(name, added, version, removed);
+    }
+
+    /**
+     * All the apis of the microservice or, when this is a delta, the apis added
+     */
     public Set<RestApi> getApis() {
         return apis;
     }
 
+    /**
+     * The apis removed, empty unless this is a delta
+     */
+    public Set<RestApi> getRemoved() {
+        return removed == null ? Collections.<RestApi>emptySet() : removed;
+    }
+
     public String getName() {
         return name;
     }
 
+    public boolean isVersioned() {
+        return version != null;
+    }
+
+    public boolean isDelta() {
+        return removed != null;
+    }
+
+    /**
+     * The version of the catalog, or zero if this payload is not versioned
+     */
+    public long getVersion() {
+        return version == null ? 0L : version.longValue();
+    }
+
     @Override
     public String toString() {
         return Json.toJsonString(this);
     }
 
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + ((name == null) ? 0 : name.hashCode());
+        result = prime * result + ((apis == null) ? 0 : apis.hashCode());
+        result = prime * result + ((version == null) ? 0 : version.hashCode());
+        return result;
+    }
+
+    // apis do not consider the priority in their equality, but it's part of the announcement
+    @Override
+    public boolean equals(Object obj) {
+        try {
+            QnePayload other = (QnePayload) obj;
+            if (name == null ? other.name != null : !name.equals(other.name))
+                return false;
+            if (version == null ? other.version != null : !version.equals(other.version))
+                return false;
+            if (removed == null ? other.removed != null : !removed.equals(other.removed))
+                return false;
+            if (apis == null || other.apis == null)
+                return apis == other.apis;
+            if (!apis.equals(other.apis))
+                return false;
+
+            Map<RestApi, Integer> priorities = new HashMap<RestApi, Integer>();
+            for (RestApi api : other.apis)
+                priorities.put(api, api.getPriority());
+            for (RestApi api : apis)
+                if (priorities.get(api).intValue() != api.getPriority())
+                    return false;
+
+            return true;
+        } catch (Exception any) {
+            return false;
+        }
+    }
+
 
     @Override
     public Payload[] split() {
@@ -54,6 +144,15 @@ public class  QnePayload implements Payload {
         }
         
         
+        // the second half of a versioned payload is always a delta with no
+        // removals, so that it can be applied again at the same version
+        if (isVersioned()) {
+            return new Payload[] {
+                new QnePayload(name, apisOne, version, removed),
+                new QnePayload(name, apisTwo, version, Collections.<RestApi>emptySet())
+            };
+        }
+
         return new Payload[] {
             new QnePayload(name, apisOne),
             new QnePayload(name, apisTwo)
@@ -90,15 +90,9 @@ public class Network {
         return getHostString() + "/" + prefix;
     }
 
-    // TODO: dumb implementation, should be improved
     @Override
     public int hashCode() {
-        int tot = prefix;
-        for (byte b : address) {
-            int i = 1 + b;
-            tot *= i;
-        }
-        return tot;
+        return 31 * Arrays.hashCode(address) + prefix;
     }
 
     @Override
@@ -0,0 +1,129 @@
+package com.workshare.msnos.core.protocols.ip.http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.workshare.msnos.core.Iden;
+import com.workshare.msnos.core.Message;
+import com.workshare.msnos.core.protocols.ip.HttpEndpoint;
+import com.workshare.msnos.core.receipts.SingleReceipt;
+
+/**
+ * Holds the messages directed to each endpoint for a short time, so that
+ * they can be posted together: a batch is handed to the sink when the
+ * linger time elapsed since its first message was added or when it is
+ * full, whichever happens first.
+ */
+class HttpBatcher {
+
+    private static Logger logger = LoggerFactory.getLogger(HttpBatcher.class);
+
+    interface Sink {
+        public void send(HttpEndpoint endpoint, List<Message> messages, List<SingleReceipt> receipts);
+    }
+
+    private final Sink sink;
+    private final int maxSize;
+    private final long lingerMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Map<Iden, Batch> batches;
+
+    HttpBatcher(int maxSize, long lingerMillis, ScheduledExecutorService scheduler, Sink sink) {
+        this.sink = sink;
+        this.maxSize = maxSize;
+        this.lingerMillis = lingerMillis;
+        this.scheduler = scheduler;
+        this.batches = new ConcurrentHashMap<Iden, Batch>();
+    }
+
+    public void add(HttpEndpoint endpoint, Message message, SingleReceipt receipt) {
+        final Batch batch = batchOf(endpoint);
+        synchronized (batch) {
+            batch.messages.add(message);
+            batch.receipts.add(receipt);
+
+            if (batch.messages.size() >= maxSize)
+                schedule(batch, batch.generation, 0);
+            else if (batch.messages.size() == 1)
+                schedule(batch, batch.generation, lingerMillis);
+        }
+    }
+
+    public void flush() {
+        for (Batch batch : batches.values())
+            flush(batch, -1);
+    }
+
+    public void remove(Iden target) {
+        final Batch batch = batches.remove(target);
+        if (batch != null)
+            flush(batch, -1);
+    }
+
+    private Batch batchOf(HttpEndpoint endpoint) {
+        Batch batch = batches.get(endpoint.getTarget());
+        if (batch == null || batch.endpoint != endpoint) {
+            synchronized (batches) {
+                batch = batches.get(endpoint.getTarget());
+                if (batch == null || batch.endpoint != endpoint) {
+                    batch = new Batch(endpoint);
+                    batches.put(endpoint.getTarget(), batch);
+                }
+            }
+        }
+
+        return batch;
+    }
+
+    private void schedule(final Batch batch, final long expected, long delay) {
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush(batch, expected);
+                } catch (Exception ex) {
+                    logger.warn("Unable to send batch of messages to " + batch.endpoint.getUrl(), ex);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    // flushes the batch if still at the expected generation, or anyway when negative
+    private void flush(Batch batch, long expected) {
+        final List<Message> messages;
+        final List<SingleReceipt> receipts;
+        synchronized (batch) {
+            if (expected >= 0 && batch.generation != expected)
+                return;
+            if (batch.messages.isEmpty())
+                return;
+
+            messages = batch.messages;
+            receipts = batch.receipts;
+            batch.messages = new ArrayList<Message>();
+            batch.receipts = new ArrayList<SingleReceipt>();
+            batch.generation++;
+        }
+
+        logger.debug("Sending batch of {} messages to {}", messages.size(), batch.endpoint.getUrl());
+        sink.send(batch.endpoint, messages, receipts);
+    }
+
+    private static class Batch {
+        private final HttpEndpoint endpoint;
+        private List<Message> messages = new ArrayList<Message>();
+        private List<SingleReceipt> receipts = new ArrayList<SingleReceipt>();
+        private long generation;
+
+        Batch(HttpEndpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+    }
+}
@@ -2,13 +2,21 @@ package com.workshare.msnos.core.protocols.ip.http;
 
 import java.io.IOException;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 
 import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
@@ -27,20 +35,111 @@ import com.workshare.msnos.core.protocols.ip.Endpoint;
 import com.workshare.msnos.core.protocols.ip.Endpoints;
 import com.workshare.msnos.core.protocols.ip.HttpEndpoint;
 import com.workshare.msnos.core.receipts.SingleReceipt;
-import com.workshare.msnos.core.serializers.WireJsonSerializer;
+import com.workshare.msnos.core.serializers.WireSerializer;
+import com.workshare.msnos.core.serializers.WireSerializers;
+import com.workshare.msnos.soup.threading.ExecutorServices;
+import com.workshare.msnos.soup.time.SystemTime;
 
+/**
+ * Delivers messages to remote agents by posting them to their HTTP endpoints.
+ *
+ * By default every message is posted on the calling thread. In asynchronous
+ * mode the post is handed to a pool of workers and a pending receipt is
+ * returned immediately, updated once the post completes: the number of
+ * posts in flight towards the same destination is bound, and a message
+ * exceeding the limit is failed straight away so that the router can look
+ * for another route.
+ *
+ * When a linger time is configured, the messages directed to the same
+ * endpoint are held for that time and posted together, one per line, in a
+ * request marked with the batch header: the receiving side ingests them
+ * with {@link Cloud#process(java.io.Reader, String)}. A peer refusing a
+ * batch with a client error is considered unable to handle them, and for a
+ * while it receives every message in its own request. Any other failure of
+ * a batch fails all of its messages, as the peer may have processed some of
+ * them already.
+ */
 public class HttpGateway implements Gateway {
 
+    public static final String SYSP_ASYNC = "com.ws.msnos.http.async";
+    public static final String SYSP_ASYNC_THREADS = "com.ws.msnos.http.async.threads";
+    public static final String SYSP_MAX_INFLIGHT = "com.ws.msnos.http.inflight.max";
+    public static final String SYSP_BATCH_LINGER = "com.ws.msnos.http.batch.linger.millis";
+    public static final String SYSP_BATCH_SIZE = "com.ws.msnos.http.batch.size";
+    public static final String SYSP_BATCH_REFUSAL_TTL = "com.ws.msnos.http.batch.refusal.ttl.millis";
+
+    public static final String HEADER_BATCH = "X-Msnos-Batch";
+
     private static Logger log = LoggerFactory.getLogger(HttpGateway.class);
 
     private final Map<Iden, HttpEndpoint> endpoints;
+    private final ConcurrentMap<Iden, Semaphore> inflights;
+    private final ConcurrentMap<Iden, Long> unbatchables;
+    private final long unbatchableTtl;
     private final HttpClient client;
-    private final WireJsonSerializer serializer;
+    private final WireSerializer serializer;
+    private final ExecutorService executor;
+    private final int maxInflight;
+    private final ScheduledExecutorService scheduler;
+    private final HttpBatcher batcher;
     
     public HttpGateway(HttpClient client) {
+        this(client, WireSerializers.getWireSerializer());
+    }
+
+    public HttpGateway(HttpClient client, WireSerializer serializer) {
+        this(client, serializer, Boolean.getBoolean(SYSP_ASYNC) ? ExecutorServices.newFixedDaemonThreadPool(Integer.getInteger(SYSP_ASYNC_THREADS, 8)) : null);
+    }
+
+    /**
+     * @param executor the executor running the posts, or null to post on the calling thread
+     */
+    public HttpGateway(HttpClient client, WireSerializer serializer, ExecutorService executor) {
+        this(client, serializer, executor, Long.getLong(SYSP_BATCH_LINGER, 0L) > 0 ? ExecutorServices.newSingleThreadScheduledExecutor() : null);
+    }
+
+    /**
+     * @param executor the executor running the posts, or null to post on the calling thread
+     * @param scheduler the scheduler flushing the batches, or null to disable batching
+     */
+    public HttpGateway(HttpClient client, WireSerializer serializer, ExecutorService executor, ScheduledExecutorService scheduler) {
         this.client = client;
         this.endpoints = new ConcurrentHashMap<Iden, HttpEndpoint>();
-        this.serializer = new WireJsonSerializer();
+        this.inflights = new ConcurrentHashMap<Iden, Semaphore>();
+        this.unbatchables = new ConcurrentHashMap<Iden, Long>();
+        this.unbatchableTtl = Long.getLong(SYSP_BATCH_REFUSAL_TTL, 5*60*1000L);
+        this.serializer = serializer;
+        this.executor = executor;
+        this.maxInflight = Integer.getInteger(SYSP_MAX_INFLIGHT, 4);
+
+        this.scheduler = scheduler;
+        if (scheduler != null) {
+            final long linger = Math.max(1L, Long.getLong(SYSP_BATCH_LINGER, 5L));
+            this.batcher = new HttpBatcher(Integer.getInteger(SYSP_BATCH_SIZE, 64), linger, scheduler, new HttpBatcher.Sink() {
+                @Override
+                public void send(HttpEndpoint endpoint, List<Message> messages, List<SingleReceipt> receipts) {
+                    sendBatch(endpoint, messages, receipts);
+                }
+            });
+        } else {
+            this.batcher = null;
+        }
+    }
+
+    public boolean isAsync() {
+        return executor != null;
+    }
+
+    public boolean isBatching() {
+        return batcher != null;
+    }
+
+    /**
+     * Returns the number of posts currently in flight towards the destination
+     */
+    public int inflight(Iden destination) {
+        Semaphore permits = inflights.get(destination);
+        return permits == null ? 0 : maxInflight - permits.availablePermits();
     }
 
     @Override
@@ -58,14 +157,165 @@ public class HttpGateway implements Gateway {
         HttpEndpoint endpoint = endpoints.get(destination);
         if (endpoint == null)
             return new SingleReceipt(this, Status.FAILED, message);
-        else
+        else if (batcher != null && !isUnbatchable(destination))
+            return sendBatched(message, endpoint);
+        else if (executor == null)
             return sendTo(message, endpoint);
+        else
+            return sendAsync(message, destination, endpoint);
+    }
+
+    private Receipt sendAsync(final Message message, final Iden destination, final HttpEndpoint endpoint) {
+        final Semaphore permits = permitsFor(destination);
+        if (!permits.tryAcquire()) {
+            log.debug("Too many messages in flight to {}, failing message {}", destination, message);
+            return new SingleReceipt(this, Status.FAILED, message);
+        }
+
+        final SingleReceipt receipt = new SingleReceipt(this, Status.PENDING, message);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        receipt.update(sendTo(message, endpoint));
+                    } finally {
+                        permits.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            permits.release();
+            log.warn("Unable to schedule delivery of message {} to url {}", message, endpoint.getUrl());
+            return new SingleReceipt(this, Status.FAILED, message);
+        }
+
+        return receipt;
+    }
+
+    private Receipt sendBatched(Message message, HttpEndpoint endpoint) {
+        final SingleReceipt receipt = new SingleReceipt(this, Status.PENDING, message);
+        batcher.add(endpoint, message, receipt);
+        return receipt;
+    }
+
+    private void sendBatch(final HttpEndpoint endpoint, final List<Message> messages, final List<SingleReceipt> receipts) {
+        if (executor == null) {
+            postBatch(endpoint, messages, receipts);
+            return;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    postBatch(endpoint, messages, receipts);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            log.warn("Unable to schedule delivery of {} messages to url {}", messages.size(), endpoint.getUrl());
+            for (int i = 0; i < messages.size(); i++)
+                receipts.get(i).update(new SingleReceipt(this, Status.FAILED, messages.get(i)));
+        }
+    }
+
+    private void postBatch(HttpEndpoint endpoint, List<Message> messages, List<SingleReceipt> receipts) {
+        if (messages.size() == 1 || isUnbatchable(endpoint.getTarget())) {
+            postSingles(endpoint, messages, receipts);
+            return;
+        }
+
+        Status status;
+        try {
+            HttpPost request = new HttpPost(endpoint.getUrl());
+            request.setHeader(HEADER_BATCH, Integer.toString(messages.size()));
+            request.setEntity(new StringEntity(toBatchText(messages), ContentType.create("text/plain", "UTF-8")));
+            HttpResponse res = client.execute(request);
+            consume(res);
+
+            final StatusLine line = res.getStatusLine();
+            if (isRefusal(line)) {
+                log.info("Endpoint {} refused a batch of messages, falling back to single messages", endpoint.getUrl());
+                unbatchables.put(endpoint.getTarget(), SystemTime.asMillis() + unbatchableTtl);
+                postSingles(endpoint, messages, receipts);
+                return;
+            }
+
+            if (isSuccess(line)) {
+                status = Status.DELIVERED;
+            } else {
+                log.warn("Endpoint {} failed a batch of {} messages: {}", endpoint.getUrl(), messages.size(), line);
+                status = Status.FAILED;
+            }
+        }
+        catch (IOException ex) {
+            if (log.isDebugEnabled())
+                log.debug("Unexpected exception sending batch of "+messages.size()+" messages to url "+endpoint.getUrl(), ex);
+            else
+                log.warn("Unexpected exception sending batch of "+messages.size()+" messages to url "+endpoint.getUrl());
+
+            status = Status.FAILED;
+        }
+
+        for (int i = 0; i < messages.size(); i++)
+            receipts.get(i).update(new SingleReceipt(this, status, messages.get(i)));
+    }
+
+    private void postSingles(HttpEndpoint endpoint, List<Message> messages, List<SingleReceipt> receipts) {
+        for (int i = 0; i < messages.size(); i++)
+            receipts.get(i).update(sendTo(messages.get(i), endpoint));
+    }
+
+    private String toBatchText(List<Message> messages) {
+        final StringBuilder text = new StringBuilder();
+        for (Message message : messages) {
+            if (text.length() > 0)
+                text.append('\n');
+            text.append(message.toText(serializer));
+        }
+
+        return text.toString();
+    }
+
+    private boolean isUnbatchable(Iden destination) {
+        final Long until = unbatchables.get(destination);
+        if (until == null)
+            return false;
+
+        if (SystemTime.asMillis() < until)
+            return true;
+
+        unbatchables.remove(destination, until);
+        return false;
+    }
+
+    private static boolean isSuccess(StatusLine status) {
+        final int code = status.getStatusCode();
+        return code >= 200 && code < 300;
+    }
+
+    // peers not knowing the batch header reject the request as malformed
+    private static boolean isRefusal(StatusLine status) {
+        final int code = status.getStatusCode();
+        return code >= 400 && code < 500;
+    }
+
+    private Semaphore permitsFor(Iden destination) {
+        Semaphore permits = inflights.get(destination);
+        if (permits == null) {
+            permits = new Semaphore(maxInflight);
+            Semaphore existing = inflights.putIfAbsent(destination, permits);
+            if (existing != null)
+                permits = existing;
+        }
+
+        return permits;
     }
 
     private Receipt sendTo(Message message, HttpEndpoint endpoint) {
         try {
             HttpPost request = new HttpPost(endpoint.getUrl());
-            request.setEntity(new StringEntity(serializer.toText(message)));
+            request.setEntity(new StringEntity(message.toText(serializer)));
             HttpResponse res = client.execute(request);
             consume(res);
             return new SingleReceipt(this, Status.DELIVERED, message);
@@ -82,6 +332,13 @@ public class HttpGateway implements Gateway {
 
     @Override
     public void close() throws IOException {
+        if (batcher != null) {
+            batcher.flush();
+            scheduler.shutdown();
+        }
+
+        if (executor != null)
+            executor.shutdown();
     }
 
     @Override
@@ -103,7 +360,12 @@ public class HttpGateway implements Gateway {
 
             @Override
             public Endpoint remove(Endpoint endpoint) throws MsnosException {
-                endpoints.remove(ensureHttp(endpoint).getTarget());
+                final Iden target = ensureHttp(endpoint).getTarget();
+                endpoints.remove(target);
+                inflights.remove(target);
+                unbatchables.remove(target);
+                if (batcher != null)
+                    batcher.remove(target);
                 log.debug("Removed endpoint {}, all: {}",endpoint, endpoints);
                 return endpoint;
             }
@@ -0,0 +1,121 @@
+package com.workshare.msnos.core.protocols.ip.udp;
+
+/**
+ * A datagram carrying more than one serialized message: it starts with a
+ * magic byte followed by a sequence of [varint length][frame] entries.
+ *
+ * The magic byte never starts a single message frame (json frames start
+ * with a brace, binary ones with their version byte) so old style packets
+ * containing just one message are still recognized.
+ */
+class UDPBatch {
+
+    static final byte MAGIC = (byte) 0xBA;
+
+    interface Visitor {
+        public void frame(byte[] data, int offset, int length);
+    }
+
+    private final byte[] buffer;
+    private int size;
+    private int count;
+    private int lastOffset;
+    private int lastLength;
+
+    UDPBatch(int maxSize) {
+        this.buffer = new byte[maxSize];
+        clear();
+    }
+
+    public boolean fits(int frameLength) {
+        return size + varIntSize(frameLength) + frameLength <= buffer.length;
+    }
+
+    public void add(byte[] frame) {
+        if (!fits(frame.length))
+            throw new IllegalArgumentException("Frame of " + frame.length + " bytes does not fit the batch");
+
+        size = writeVarInt(buffer, size, frame.length);
+        System.arraycopy(frame, 0, buffer, size, frame.length);
+        lastOffset = size;
+        lastLength = frame.length;
+        size += frame.length;
+        count++;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Returns the datagram to be sent: a batch containing just one frame is
+     * sent as a plain single message packet
+     */
+    public byte[] toBytes() {
+        final byte[] result;
+        if (count == 1) {
+            result = new byte[lastLength];
+            System.arraycopy(buffer, lastOffset, result, 0, lastLength);
+        } else {
+            result = new byte[size];
+            System.arraycopy(buffer, 0, result, 0, size);
+        }
+
+        return result;
+    }
+
+    public void clear() {
+        buffer[0] = MAGIC;
+        size = 1;
+        count = 0;
+    }
+
+    public static boolean isBatch(byte[] data, int offset, int length) {
+        return length > 0 && data[offset] == MAGIC;
+    }
+
+    public static void unpack(byte[] data, int offset, int length, Visitor visitor) {
+        final int end = offset + length;
+        int pos = offset + 1;
+        while (pos < end) {
+            int frameLength = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (pos >= end || shift > 28)
+                    throw new IllegalArgumentException("Malformed batch, invalid frame length");
+                b = data[pos++];
+                frameLength |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            if (frameLength < 0 || frameLength > end - pos)
+                throw new IllegalArgumentException("Malformed batch, frame of " + frameLength + " bytes exceeds the packet");
+
+            visitor.frame(data, pos, frameLength);
+            pos += frameLength;
+        }
+    }
+
+    private static int writeVarInt(byte[] data, int pos, int value) {
+        while ((value & ~0x7f) != 0) {
+            data[pos++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        data[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
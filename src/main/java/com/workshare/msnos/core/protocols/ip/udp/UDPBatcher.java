@@ -0,0 +1,102 @@
+package com.workshare.msnos.core.protocols.ip.udp;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces serialized messages into batch datagrams: the batch is sent
+ * when the next message would not fit the packet or when the linger time
+ * elapsed since the first message was added, whichever happens first.
+ */
+class UDPBatcher {
+
+    private static Logger logger = LoggerFactory.getLogger(UDPBatcher.class);
+
+    interface Sink {
+        public void send(byte[] datagram) throws IOException;
+    }
+
+    private final Sink sink;
+    private final UDPBatch batch;
+    private final long lingerMicros;
+    private final ScheduledExecutorService scheduler;
+
+    private long generation;
+
+    UDPBatcher(int packetSize, long lingerMicros, ScheduledExecutorService scheduler, Sink sink) {
+        this.sink = sink;
+        this.batch = new UDPBatch(packetSize);
+        this.lingerMicros = lingerMicros;
+        this.scheduler = scheduler;
+    }
+
+    // the datagrams are always sent outside the lock, as sending may
+    // block, so that the producers never wait for a send in progress
+    public void add(byte[] frame) throws IOException {
+        final byte[] full;
+        synchronized (this) {
+            full = batch.fits(frame.length) ? null : take();
+            if (batch.fits(frame.length)) {
+                batch.add(frame);
+                if (batch.count() == 1)
+                    schedule(generation);
+                frame = null;
+            }
+        }
+
+        if (full != null)
+            sink.send(full);
+        if (frame != null)
+            sink.send(frame);
+    }
+
+    public void flush() throws IOException {
+        final byte[] datagram;
+        synchronized (this) {
+            datagram = take();
+        }
+
+        if (datagram != null)
+            sink.send(datagram);
+    }
+
+    // swaps out the current batch, if any
+    private byte[] take() {
+        if (batch.isEmpty())
+            return null;
+
+        final byte[] datagram = batch.toBytes();
+        final int count = batch.count();
+        batch.clear();
+        generation++;
+
+        logger.debug("Sending batch of {} messages, {} bytes", count, datagram.length);
+        return datagram;
+    }
+
+    private void schedule(final long expected) {
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                final byte[] datagram;
+                synchronized (UDPBatcher.this) {
+                    if (generation != expected)
+                        return;
+
+                    datagram = take();
+                }
+
+                try {
+                    if (datagram != null)
+                        sink.send(datagram);
+                } catch (Exception ex) {
+                    logger.warn("Unable to send batch of messages", ex);
+                }
+            }
+        }, lingerMicros, TimeUnit.MICROSECONDS);
+    }
+}
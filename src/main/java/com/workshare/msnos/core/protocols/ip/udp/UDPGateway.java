@@ -12,6 +12,7 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +31,8 @@ import com.workshare.msnos.core.protocols.ip.MulticastSocketFactory;
 import com.workshare.msnos.core.protocols.ip.Network;
 import com.workshare.msnos.core.receipts.SingleReceipt;
 import com.workshare.msnos.core.serializers.WireSerializer;
+import com.workshare.msnos.core.serializers.WireSerializers;
+import com.workshare.msnos.soup.threading.ExecutorServices;
 import com.workshare.msnos.soup.threading.Multicaster;
 import com.workshare.msnos.soup.time.SystemTime;
 
@@ -42,6 +45,7 @@ public class UDPGateway implements Gateway {
     public static final String SYSP_UDP_GROUP = "com.ws.nsnos.udp.group";
     public static final String SYSP_UDP_PACKET_SIZE = "com.ws.nsnos.udp.packet.size";
     public static final String SYSP_RETRY_TIMES = "com.ws.nsnos.udp.group.retry.times";
+    public static final String SYSP_BATCH_LINGER = "com.ws.nsnos.udp.batch.linger.micros";
 
     public static final String SYSP_NET_IPV6ALSO = "com.ws.msnos.network.ipv6also";
     public static final String SYSP_NET_VIRTUAL = "com.ws.msnos.network.includevirtual";
@@ -52,20 +56,37 @@ public class UDPGateway implements Gateway {
 
     private final Multicaster<Listener, Message> caster;
     private final WireSerializer sz;
+    private final String format;
     private final int packetSize;
     private final int retries;
     private final Endpoints endpoints;
     private final UDPServer server;
-
+    private final UDPBatcher batcher;
+    private final ScheduledExecutorService scheduler;
 
     public UDPGateway(MulticastSocketFactory sockets, UDPServer aServer, Multicaster<Listener, Message> caster) throws IOException {
         this.caster = caster;
         this.sz = aServer.serializer();
+        this.format = System.getProperty(WireSerializers.SYSP_WIRE_FORMAT, WireSerializers.FORMAT_JSON);
         this.retries = Integer.getInteger(SYSP_RETRY_TIMES, 3);
         this.packetSize = Integer.getInteger(SYSP_UDP_PACKET_SIZE, 512);
         this.endpoints = createEndpoints();
         this.server = aServer;
         
+        final long linger = Long.getLong(SYSP_BATCH_LINGER, 0L);
+        if (linger > 0) {
+            this.scheduler = ExecutorServices.newSingleThreadScheduledExecutor();
+            this.batcher = new UDPBatcher(packetSize, linger, scheduler, new UDPBatcher.Sink() {
+                @Override
+                public void send(byte[] datagram) throws IOException {
+                    sendToAllPorts(datagram);
+                }
+            });
+        } else {
+            this.scheduler = null;
+            this.batcher = null;
+        }
+
         loadPorts();
         openSocket(sockets);
         startServer(aServer);
@@ -78,6 +99,11 @@ public class UDPGateway implements Gateway {
 
     @Override
     public void close() throws IOException {
+        if (batcher != null) {
+            batcher.flush();
+            scheduler.shutdown();
+        }
+
         server.stop();
         socket.close();
     }
@@ -115,9 +141,15 @@ public class UDPGateway implements Gateway {
         logger.info("Joined group " + group);
     }
 
+    // when the server is pipelined the messages already reach the gateway
+    // on the worker of their sender: dispatching them again to a pool would
+    // lose their order and queue them without a bound
     @Override
     public void addListener(Cloud cloud, Listener listener) {
-        caster.addListener(listener);
+        if (server.isPipelined())
+            caster.addSynchronousListener(listener);
+        else
+            caster.addListener(listener);
     }
 
     @Override
@@ -130,33 +162,49 @@ public class UDPGateway implements Gateway {
 
         logger.debug("send message {} ", message);
 
-        List<Payload> payloads;
-        int fullMsgLength = sz.toBytes(message).length;
-        int lengthWithoutPayload = fullMsgLength - sz.toBytes(message.getData()).length;
-
-        if (fullMsgLength > packetSize) {
-            payloads = getSplitPayloads(new ArrayList<Payload>(), message.getData(), lengthWithoutPayload);
+        final WireSerializer wire = serializerFor(cloud, message);
+        final byte[] full = message.toBytes(wire);
+        if (full.length <= packetSize) {
+            send(full);
         } else {
-            payloads = Arrays.asList(message.getData());
-        }
-
-        for (Payload load : payloads) {
-            Message msg = message.data(load);
-            byte[] payload = sz.toBytes(msg);
-
-            for (int port : ports) {
-                DatagramPacket packet = new DatagramPacket(
-                        payload,
-                        payload.length,
-                        group,
-                        port);
-                doSend(packet);
+            int lengthWithoutPayload = full.length - wire.toBytes(message.getData()).length;
+            List<Payload> payloads = getSplitPayloads(wire, new ArrayList<Payload>(), message.getData(), lengthWithoutPayload);
+            for (Payload load : payloads) {
+                send(message.data(load).toBytes(wire));
             }
         }
 
         return new SingleReceipt(this, Status.PENDING, message);
     }
 
+    // every node in the group gets the datagram: binary only when all the
+    // agents known read it, and never for presences, which must also reach
+    // the nodes not known yet
+    private WireSerializer serializerFor(Cloud cloud, Message message) {
+        if (cloud == null || message.getType() == Message.Type.PRS)
+            return WireSerializers.forAgents(WireSerializers.FORMAT_JSON, null);
+
+        return WireSerializers.forAgents(format, cloud.getRemoteAgents());
+    }
+
+    private void send(byte[] payload) throws IOException {
+        if (batcher != null)
+            batcher.add(payload);
+        else
+            sendToAllPorts(payload);
+    }
+
+    private void sendToAllPorts(byte[] payload) throws IOException {
+        for (int port : ports) {
+            DatagramPacket packet = new DatagramPacket(
+                    payload,
+                    payload.length,
+                    group,
+                    port);
+            doSend(packet);
+        }
+    }
+
     private void doSend(DatagramPacket packet) throws IOException {
         int count = retries;
         long wait = 0;
@@ -183,14 +231,14 @@ public class UDPGateway implements Gateway {
         catch (InterruptedException ex) {Thread.interrupted();}
     }
 
-    private List<Payload> getSplitPayloads(List<Payload> payloads, Payload payload, int msgLength) throws IOException {
+    private List<Payload> getSplitPayloads(WireSerializer wire, List<Payload> payloads, Payload payload, int msgLength) throws IOException {
         Payload[] loads = payload.split();
         if (loads == null)
             throw new IOException("Unable to send message: the payload is too big and unsplittable");
 
         for (Payload load : loads) {
-            if (sz.toBytes(load).length + msgLength > packetSize) {
-                getSplitPayloads(payloads, load, msgLength);
+            if (wire.toBytes(load).length + msgLength > packetSize) {
+                getSplitPayloads(wire, payloads, load, msgLength);
             } else {
                 payloads.add(load);
             }
@@ -9,8 +9,9 @@ import java.util.logging.Logger;
 
 import com.workshare.msnos.core.Gateway.Listener;
 import com.workshare.msnos.core.Message;
-import com.workshare.msnos.core.serializers.WireJsonSerializer;
 import com.workshare.msnos.core.serializers.WireSerializer;
+import com.workshare.msnos.core.serializers.WireSerializers;
+import com.workshare.msnos.soup.metrics.Meter;
 import com.workshare.msnos.soup.threading.Multicaster;
 import com.workshare.msnos.soup.threading.ThreadFactories;
 
@@ -18,14 +19,35 @@ public class UDPServer {
 
     private static Logger logger = Logger.getLogger(UDPServer.class.getName());
     private static final String THREAD_NAME = "UDP-Server";
-    
+
+    public static final String SYSP_WORKERS_NUM = "com.ws.nsnos.udp.server.workers.num";
+    public static final String SYSP_WORKERS_QUEUE_SIZE = "com.ws.nsnos.udp.server.workers.queue.size";
+
     private final ThreadFactory threads;
     private final Multicaster<Listener, Message> multicaster;
     private final WireSerializer sz;
+    private final Meter packets = new Meter();
+    private final Meter bytes = new Meter();
+    private final Meter dropped = new Meter();
+    private final Meter processed = new Meter();
+    private final int workersNum;
+    private final int workersQueueSize;
 
     private Thread thread;
     private int maxPacketSize;
     private MulticastSocket socket;
+    private UDPWorkers workers;
+
+    private final UDPBatch.Visitor decoder = new UDPBatch.Visitor() {
+        @Override
+        public void frame(byte[] data, int offset, int length) {
+            try {
+                decode(data, offset, length);
+            } catch (Exception ex) {
+                logger.log(Level.WARNING, "Unable to process message in batch", ex);
+            }
+        }
+    };
 
     public UDPServer() {
         this(ThreadFactories.DEFAULT, new Multicaster<Listener, Message>() {
@@ -37,9 +59,15 @@ public class UDPServer {
     }
 
     public UDPServer(ThreadFactory threads, Multicaster<Listener, Message> caster) {
-        this.sz = new WireJsonSerializer();        // hard dependency to remove in future?
+        this(threads, caster, WireSerializers.getWireSerializer());
+    }
+
+    public UDPServer(ThreadFactory threads, Multicaster<Listener, Message> caster, WireSerializer sz) {
+        this.sz = sz;
         this.threads = threads;
         this.multicaster = caster;
+        this.workersNum = Integer.getInteger(SYSP_WORKERS_NUM, 0);
+        this.workersQueueSize = Integer.getInteger(SYSP_WORKERS_QUEUE_SIZE, 256);
     }
 
     public synchronized void start(MulticastSocket socket, int maxPacketSize) {
@@ -50,10 +78,23 @@ public class UDPServer {
         this.socket = socket;
         this.maxPacketSize = maxPacketSize;
 
+        if (workersNum > 0) {
+            workers = new UDPWorkers(threads, workersNum, workersQueueSize, new UDPWorkers.Handler() {
+                @Override
+                public void handle(byte[] data, int length) {
+                    process(data, 0, length);
+                }
+            }, dropped, processed);
+            workers.start();
+        }
+
         thread = threads.newThread(new Runnable() {
             @Override
             public void run() {
-                loop();
+                if (workers == null)
+                    loop();
+                else
+                    pipeline();
             }
         });
 
@@ -69,26 +110,35 @@ public class UDPServer {
 
         thread.setName("-ghost-");
         thread.interrupt();
+
+        if (workers != null)
+            workers.stop();
     }
 
     private void loop() {
 
-        byte[] buf = new byte[maxPacketSize];
+        // one buffer and one packet for the whole life of the loop: the
+        // length must be restored before each receive as it gets trimmed
+        final byte[] buf = new byte[maxPacketSize];
+        final DatagramPacket packet = new DatagramPacket(buf, buf.length);
 
         logger.info("Listening loop started on port " + socket.getLocalPort());
         while (!thread.isInterrupted()) {
-            DatagramPacket packet = new DatagramPacket(buf, buf.length);
+            packet.setData(buf, 0, buf.length);
             try {
                 socket.receive(packet);
             } catch (IOException e) {
                 logger.log(Level.FINEST, "IOException receiving UDP packet", e);
+                continue;
             }
 
             if (thread.isInterrupted())
                 break;
 
             try {
-                process(packet);
+                received(packet);
+                process(packet.getData(), packet.getOffset(), packet.getLength());
+                processed.mark();
             } catch (Exception ex) {
                 logger.log(Level.WARNING, "Unable to process packet", ex);
             }
@@ -98,9 +148,85 @@ public class UDPServer {
         logger.info("Listening loop ended!");
     }
 
-    private void process(DatagramPacket packet) {
-        Message message = (Message) sz.fromBytes(packet.getData(), 0, packet.getLength(), Message.class);
-        logger.log(Level.FINEST, "Received message {} ", message.toString());
+    // receives into pooled buffers, decoding and dispatching is done by the
+    // workers: the sender hash keeps messages from the same agent in order
+    private void pipeline() {
+
+        final DatagramPacket packet = new DatagramPacket(new byte[0], 0);
+
+        logger.info("Listening pipeline started on port " + socket.getLocalPort() + " with " + workersNum + " workers");
+        while (!thread.isInterrupted()) {
+            final byte[] buf = workers.acquire(maxPacketSize);
+            packet.setData(buf, 0, buf.length);
+            try {
+                socket.receive(packet);
+            } catch (IOException e) {
+                logger.log(Level.FINEST, "IOException receiving UDP packet", e);
+                workers.release(buf);
+                continue;
+            }
+
+            if (thread.isInterrupted()) {
+                workers.release(buf);
+                break;
+            }
+
+            received(packet);
+
+            if (UDPBatch.isBatch(buf, 0, packet.getLength())) {
+                try {
+                    split(packet);
+                } catch (Exception ex) {
+                    logger.log(Level.WARNING, "Unable to split packet", ex);
+                } finally {
+                    workers.release(buf);
+                }
+            } else {
+                workers.submit(buf, packet.getLength(), senderHash(packet, buf, 0, packet.getLength()));
+            }
+        }
+
+        Thread.interrupted();
+        logger.info("Listening pipeline ended!");
+    }
+
+    // each message in a batch goes to its own worker, so that ordering by
+    // sender is kept regardless of the way messages were packed
+    private void split(final DatagramPacket packet) {
+        UDPBatch.unpack(packet.getData(), packet.getOffset(), packet.getLength(), new UDPBatch.Visitor() {
+            @Override
+            public void frame(byte[] data, int offset, int length) {
+                final byte[] buf = workers.acquire(maxPacketSize);
+                System.arraycopy(data, offset, buf, 0, length);
+                workers.submit(buf, length, senderHash(packet, buf, 0, length));
+            }
+        });
+    }
+
+    private int senderHash(DatagramPacket packet, byte[] data, int offset, int length) {
+        int hash = WireSerializers.senderHash(data, offset, length);
+        if (hash == 0 && packet.getAddress() != null)
+            hash = 31 * packet.getAddress().hashCode() + packet.getPort();
+
+        return hash;
+    }
+
+    private void received(DatagramPacket packet) {
+        packets.mark();
+        bytes.mark(packet.getLength());
+    }
+
+    private void process(byte[] data, int offset, int length) {
+        if (UDPBatch.isBatch(data, offset, length))
+            UDPBatch.unpack(data, offset, length, decoder);
+        else
+            decode(data, offset, length);
+    }
+
+    private void decode(byte[] data, int offset, int length) {
+        Message message = sz.fromBytes(data, offset, length, Message.class);
+        if (logger.isLoggable(Level.FINEST))
+            logger.log(Level.FINEST, "Received message {0}", message);
 
         sendToListeners(message);
     }
@@ -109,11 +235,41 @@ public class UDPServer {
         multicaster.dispatch(message);
     }
 
+    // with workers the listeners are invoked on the worker thread, so that
+    // the messages of a sender are delivered in order and the bounded queues
+    // of the workers are the only place where messages wait
     public void addListener(final Listener listener) {
-        multicaster.addListener(listener);
+        if (isPipelined())
+            multicaster.addSynchronousListener(listener);
+        else
+            multicaster.addListener(listener);
+    }
+
+    public boolean isPipelined() {
+        return workersNum > 0;
     }
 
     public WireSerializer serializer() {
         return sz;
     }
+
+    public Meter packets() {
+        return packets;
+    }
+
+    public Meter bytes() {
+        return bytes;
+    }
+
+    public Meter dropped() {
+        return dropped;
+    }
+
+    public Meter processed() {
+        return processed;
+    }
+
+    public int backlog() {
+        return workers == null ? 0 : workers.backlog();
+    }
 }
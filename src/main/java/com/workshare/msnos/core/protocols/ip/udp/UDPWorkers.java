@@ -0,0 +1,142 @@
+package com.workshare.msnos.core.protocols.ip.udp;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.workshare.msnos.soup.metrics.Meter;
+
+/**
+ * A fixed set of workers processing the raw datagrams received by the
+ * server: each datagram is assigned to a worker by the hash of its sender,
+ * so that messages from the same agent are always processed in order.
+ *
+ * Each worker has a bounded queue: when full, the oldest datagram is
+ * dropped to make room for the new one. Buffers are pooled and returned
+ * to the pool once the datagram is processed.
+ */
+class UDPWorkers {
+
+    private static Logger logger = Logger.getLogger(UDPWorkers.class.getName());
+    private static final String THREAD_NAME = "UDP-Worker-";
+
+    interface Handler {
+        public void handle(byte[] data, int length);
+    }
+
+    static class Datagram {
+        final byte[] data;
+        final int length;
+
+        Datagram(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    private final ThreadFactory threads;
+    private final Handler handler;
+    private final BlockingQueue<Datagram>[] queues;
+    private final BlockingQueue<byte[]> pool;
+    private final Thread[] workers;
+
+    private final Meter dropped;
+    private final Meter processed;
+
+    @SuppressWarnings("unchecked")
+    UDPWorkers(ThreadFactory threads, int count, int queueSize, Handler handler, Meter dropped, Meter processed) {
+        this.threads = threads;
+        this.handler = handler;
+        this.dropped = dropped;
+        this.processed = processed;
+        this.workers = new Thread[count];
+        this.queues = (BlockingQueue<Datagram>[]) new BlockingQueue<?>[count];
+        for (int i = 0; i < count; i++)
+            queues[i] = new ArrayBlockingQueue<Datagram>(queueSize);
+
+        // enough to fill all the queues plus one in-flight buffer per worker
+        this.pool = new ArrayBlockingQueue<byte[]>(count * (queueSize + 1));
+    }
+
+    public synchronized void start() {
+        for (int i = 0; i < workers.length; i++) {
+            final BlockingQueue<Datagram> queue = queues[i];
+            final Thread thread = threads.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    loop(queue);
+                }
+            });
+
+            thread.setDaemon(true);
+            thread.setName(THREAD_NAME + i);
+            thread.start();
+            workers[i] = thread;
+        }
+    }
+
+    public synchronized void stop() {
+        for (int i = 0; i < workers.length; i++) {
+            if (workers[i] != null) {
+                workers[i].interrupt();
+                workers[i] = null;
+            }
+        }
+    }
+
+    public byte[] acquire(int size) {
+        final byte[] buffer = pool.poll();
+        if (buffer == null || buffer.length != size)
+            return new byte[size];
+        else
+            return buffer;
+    }
+
+    public void release(byte[] buffer) {
+        pool.offer(buffer);
+    }
+
+    public void submit(byte[] data, int length, int hash) {
+        final BlockingQueue<Datagram> queue = queues[(hash & Integer.MAX_VALUE) % queues.length];
+        final Datagram datagram = new Datagram(data, length);
+        while (!queue.offer(datagram)) {
+            final Datagram oldest = queue.poll();
+            if (oldest != null) {
+                dropped.mark();
+                release(oldest.data);
+            }
+        }
+    }
+
+    private void loop(BlockingQueue<Datagram> queue) {
+        final Thread current = Thread.currentThread();
+        while (!current.isInterrupted()) {
+            final Datagram datagram;
+            try {
+                datagram = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            try {
+                handler.handle(datagram.data, datagram.length);
+                processed.mark();
+            } catch (Exception ex) {
+                logger.log(Level.WARNING, "Unable to process packet", ex);
+            } finally {
+                release(datagram.data);
+            }
+        }
+
+        logger.fine("Worker loop ended!");
+    }
+
+    public int backlog() {
+        int total = 0;
+        for (BlockingQueue<Datagram> queue : queues)
+            total += queue.size();
+        return total;
+    }
+}
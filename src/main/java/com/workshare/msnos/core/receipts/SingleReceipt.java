@@ -1,5 +1,7 @@
 package com.workshare.msnos.core.receipts;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
@@ -16,6 +18,7 @@ public class SingleReceipt implements Receipt {
     
     private String gate;
     private Status status;
+    private List<Runnable> callbacks;
 
     public SingleReceipt(Gateway gateway, Status status, Message message) {
         this(gateway.name(), status, message);
@@ -37,13 +40,61 @@ public class SingleReceipt implements Receipt {
         return status;
     }
 
-    public synchronized void update(Receipt other) {
+    public void update(Receipt other) {
         if (!messageUuid.equals(other.getMessageUuid()))
             throw new IllegalArgumentException("You cannot update a receipt related to another message!");
 
-        this.gate = other.getGate();
-        this.status = other.getStatus();
-        notifyAll();
+        final List<Runnable> completed;
+        synchronized (this) {
+            this.gate = other.getGate();
+            this.status = other.getStatus();
+            notifyAll();
+
+            completed = (isCompleted() ? callbacks : null);
+            if (completed != null)
+                callbacks = null;
+        }
+
+        if (completed != null)
+            for (Runnable callback : completed)
+                callback.run();
+    }
+
+    /**
+     * Updates this receipt with another one, and again when the other one
+     * completes if it is still pending
+     */
+    public void follow(final Receipt other) {
+        update(other);
+        if (other.getStatus() == Status.PENDING && other instanceof SingleReceipt) {
+            ((SingleReceipt) other).onCompletion(new Runnable() {
+                @Override
+                public void run() {
+                    update(other);
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs the callback once the message is delivered or failed, on the
+     * thread completing the receipt, or immediately if already completed
+     */
+    public void onCompletion(Runnable callback) {
+        synchronized (this) {
+            if (!isCompleted()) {
+                if (callbacks == null)
+                    callbacks = new ArrayList<Runnable>(1);
+                callbacks.add(callback);
+                return;
+            }
+        }
+
+        callback.run();
+    }
+
+    private boolean isCompleted() {
+        return status == Status.DELIVERED || status == Status.FAILED;
     }
 
     @Override
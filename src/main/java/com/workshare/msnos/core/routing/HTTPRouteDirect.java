@@ -1,7 +1,6 @@
 package com.workshare.msnos.core.routing;
 
 import com.workshare.msnos.core.Message;
-import com.workshare.msnos.core.Message.Status;
 import com.workshare.msnos.core.Receipt;
 import com.workshare.msnos.core.RemoteAgent;
 
@@ -17,7 +16,7 @@ public class HTTPRouteDirect extends Route {
         if (remote != null) {
             if (router.hasRouteFor(remote)) {
                 final Receipt receipt = router.sendViaHTTP(message, remote, 0, "HTTP-DIRECT");
-                if (receipt.getStatus() == Status.DELIVERED) {
+                if (isAccepted(receipt)) {
                     return receipt;
                 }
             }
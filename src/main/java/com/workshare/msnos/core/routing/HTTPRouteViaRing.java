@@ -1,12 +1,15 @@
 package com.workshare.msnos.core.routing;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 
 import com.workshare.msnos.core.Message;
-import com.workshare.msnos.core.Message.Status;
 import com.workshare.msnos.core.Receipt;
 import com.workshare.msnos.core.RemoteAgent;
 import com.workshare.msnos.core.Ring;
+import com.workshare.msnos.core.receipts.SingleReceipt;
 
 public class HTTPRouteViaRing extends Route {
 
@@ -21,6 +24,7 @@ public class HTTPRouteViaRing extends Route {
             return null;
 
         Ring ring = remote.getRing();
+        List<RemoteAgent> candidates = new ArrayList<RemoteAgent>();
         Collection<RemoteAgent> agents = cloud.getRemoteAgents();
         for (RemoteAgent agent : agents) {
             if (agent.getIden().equals(message.getTo()))
@@ -32,8 +36,27 @@ public class HTTPRouteViaRing extends Route {
             if (!router.hasRouteFor(agent))
                 continue;
 
-            final Receipt receipt = router.sendViaHTTP(message, agent, 1, "HTTP-RINGD");
-            if (receipt.getStatus() == Status.DELIVERED) {
+            candidates.add(agent);
+        }
+
+        return send(message, candidates.iterator());
+    }
+
+    // a pending delivery failing later moves on to the other agents of the
+    // ring, before the router falls back on the routes that follow
+    private Receipt send(final Message message, final Iterator<RemoteAgent> agents) {
+        while (agents.hasNext()) {
+            final Receipt receipt = router.sendViaHTTP(message, agents.next(), 1, "HTTP-RINGD");
+            if (router.isCompletedLater(receipt)) {
+                return router.continueOnFailure(message, (SingleReceipt) receipt, new Router.Continuation() {
+                    @Override
+                    public Receipt next() {
+                        return send(message, agents);
+                    }
+                });
+            }
+
+            if (isAccepted(receipt)) {
                 return receipt;
             }
         }
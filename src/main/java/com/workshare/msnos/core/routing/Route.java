@@ -7,6 +7,7 @@ import org.slf4j.LoggerFactory;
 
 import com.workshare.msnos.core.Cloud;
 import com.workshare.msnos.core.Message;
+import com.workshare.msnos.core.Message.Status;
 import com.workshare.msnos.core.Receipt;
 
 abstract class Route {
@@ -25,4 +26,15 @@ abstract class Route {
      * @throws IOException 
      */
     public abstract Receipt send(Message message);
+
+    /**
+     * A receipt still pending is accepted as well, as asynchronous gateways
+     * complete the delivery later without blocking the router: should the
+     * delivery of an HTTP receipt fail, the router carries on with the routes
+     * that follow
+     */
+    protected static boolean isAccepted(Receipt receipt) {
+        final Status status = receipt.getStatus();
+        return status == Status.DELIVERED || status == Status.PENDING;
+    }
 }
\ No newline at end of file
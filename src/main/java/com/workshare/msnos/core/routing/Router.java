@@ -109,14 +109,26 @@ public class Router {
 
     Receipt route(Message message) {
         logger.debug("Routing message {}", message);
- 
-        for (Route route : routes) {
-            Receipt receipt = route.send(message);
+        return route(message, 0);
+    }
+
+    private Receipt route(final Message message, final int first) {
+        for (int i = first; i < routes.length; i++) {
+            Receipt receipt = routes[i].send(message);
             if (receipt != null) {
                 if (logger.isDebugEnabled())
-                    logger.debug("Message {} routed via {}, result is {}", message, route.getClass().getSimpleName(), receipt);
+                    logger.debug("Message {} routed via {}, result is {}", message, routes[i].getClass().getSimpleName(), receipt);
+
+                if (!isCompletedLater(receipt))
+                    return receipt;
 
-                return receipt;
+                final int next = i + 1;
+                return continueOnFailure(message, (SingleReceipt) receipt, new Continuation() {
+                    @Override
+                    public Receipt next() {
+                        return route(message, next);
+                    }
+                });
             }
         }
         
@@ -125,6 +137,52 @@ public class Router {
         return SingleReceipt.failure(message);
     }
 
+    interface Continuation {
+        /**
+         * @return the receipt of the next attempt, or null if there is none
+         */
+        Receipt next();
+    }
+
+    /**
+     * Only receipts of the HTTP gateway are completed once the delivery is
+     * known: UDP ones stay pending forever, so nothing can follow them
+     */
+    boolean isCompletedLater(Receipt receipt) {
+        return receipt.getStatus() == Message.Status.PENDING 
+            && receipt instanceof SingleReceipt 
+            && httpGate.name().equals(receipt.getGate());
+    }
+
+    // a pending delivery failing later carries on with the continuation, as
+    // a failure known straight away would have done
+    Receipt continueOnFailure(final Message message, final SingleReceipt pending, final Continuation continuation) {
+        final Mode current = mode.get();
+        final SingleReceipt result = SingleReceipt.unknown(message);
+        result.update(pending);
+
+        pending.onCompletion(new Runnable() {
+            @Override
+            public void run() {
+                if (pending.getStatus() == Message.Status.DELIVERED) {
+                    result.update(pending);
+                    return;
+                }
+
+                logger.debug("Pending delivery of message {} failed, trying next routes", message);
+                mode.set(current);
+                try {
+                    final Receipt next = continuation.next();
+                    result.follow(next != null ? next : pending);
+                } finally {
+                    mode.remove();
+                }
+            }
+        });
+
+        return result;
+    }
+
     Cloud cloud() {
         return cloud;
     }
@@ -1,54 +1,213 @@
 package com.workshare.msnos.core.security;
 
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import javax.xml.bind.DatatypeConverter;
 
+import com.workshare.msnos.core.Iden;
 import com.workshare.msnos.core.Message;
 import com.workshare.msnos.core.serializers.WireJsonSerializer;
 import com.workshare.msnos.core.serializers.WireSerializer;
+import com.workshare.msnos.core.serializers.WireSerializers;
+import com.workshare.msnos.soup.metrics.Histogram;
 
+/**
+ * Signs and verifies messages using HMAC.
+ *
+ * The legacy algorithm (HmacSHA1) signs the wire text of the message and is
+ * still the default. HmacSHA256 signs a canonical encoding of the message
+ * fields that do not change in transit, and its signatures are tagged so
+ * that the receiving side always knows how to verify them, whatever
+ * algorithm it uses to sign.
+ *
+ * Mac instances are cached per thread and per key id.
+ */
 public class Signer {
 
+    public static final String SYSP_ALGORITHM = "com.ws.msnos.signer.algorithm";
+
+    public static final String ALGO_LEGACY = "HmacSHA1";
+    public static final String ALGO_SHA256 = "HmacSHA256";
+
     public static final KeysStore DEFAULT_KEYSSTORE = new SystemPropertiesKeysStore();
 
+    private static final String TAG_SHA256 = "S2.";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     private final WireSerializer sz;
     private final KeysStore keys;
+    private final String algorithm;
+
+    private final Histogram signLatency = new Histogram();
+    private final Histogram verifyLatency = new Histogram();
+
+    private final ThreadLocal<Map<String, CachedMac>> macs = new ThreadLocal<Map<String, CachedMac>>() {
+        @Override
+        protected Map<String, CachedMac> initialValue() {
+            return new HashMap<String, CachedMac>();
+        }
+    };
 
     public Signer() {
         this(DEFAULT_KEYSSTORE);
     }
-    
+
     public Signer(KeysStore keys) {
-        this(new WireJsonSerializer(), keys);
+        this(WireSerializers.getWireSerializer(), keys);
     }
-    
+
     public Signer(WireSerializer sz, KeysStore keys) {
+        this(sz, keys, System.getProperty(SYSP_ALGORITHM, ALGO_LEGACY));
+    }
+
+    public Signer(WireSerializer sz, KeysStore keys, String algorithm) {
+        if (!ALGO_LEGACY.equals(algorithm) && !ALGO_SHA256.equals(algorithm))
+            throw new IllegalArgumentException("Unsupported signing algorithm " + algorithm);
+
         this.sz = sz;
         this.keys = keys;
+        this.algorithm = algorithm;
     }
 
     public Message signed(Message message, String keyId) throws IOException {
         String key = keys.get(keyId);
         if (key == null)
             return message;
-        else
-            return message.signed(keyId, signText(key, sz.toText(message)));
+
+        final long start = System.nanoTime();
+        try {
+            return message.signed(keyId, signature(message, keyId, key, algorithm));
+        } finally {
+            signLatency.update(System.nanoTime() - start);
+        }
     }
 
-    private String signText(String key, String text) throws IOException {
-        byte[] keyBytes = key.getBytes("UTF-8");
-        SecretKeySpec signingKey = new SecretKeySpec(keyBytes, "HmacSHA1");
-        Mac mac;
+    /**
+     * Verifies the message signature against the given key: messages are
+     * always valid when the key is not available, as no signing can happen
+     */
+    public boolean verify(Message message, String keyId) throws IOException {
+        String key = keys.get(keyId);
+        if (key == null)
+            return true;
+
+        final String sig = message.getSig();
+        if (sig == null)
+            return false;
+
+        final long start = System.nanoTime();
         try {
-            mac = Mac.getInstance("HmacSHA1");
-            mac.init(signingKey);
-            byte[] textBytes = mac.doFinal(text.getBytes("UTF-8"));
-            return DatatypeConverter.printHexBinary(textBytes);
-        } catch (Exception e) {
-            throw new IOException(e);
+            final int separator = sig.lastIndexOf(':');
+            final String sigValue = sig.substring(separator + 1);
+            final String sigAlgorithm = sigValue.startsWith(TAG_SHA256) ? ALGO_SHA256 : ALGO_LEGACY;
+
+            final String expected = keyId + ":" + signature(message, keyId, key, sigAlgorithm);
+            return MessageDigest.isEqual(expected.getBytes(UTF8), sig.getBytes(UTF8));
+        } finally {
+            verifyLatency.update(System.nanoTime() - start);
+        }
+    }
+
+    public String algorithm() {
+        return algorithm;
+    }
+
+    public Histogram signLatency() {
+        return signLatency;
+    }
+
+    public Histogram verifyLatency() {
+        return verifyLatency;
+    }
+
+    private String signature(Message message, String keyId, String key, String algo) throws IOException {
+        final Mac mac = mac(keyId, key, algo);
+        if (ALGO_SHA256.equals(algo)) {
+            updateCanonical(mac, message);
+            return TAG_SHA256 + DatatypeConverter.printHexBinary(mac.doFinal());
+        } else {
+            return DatatypeConverter.printHexBinary(mac.doFinal(message.toText(sz).getBytes(UTF8)));
+        }
+    }
+
+    private Mac mac(String keyId, String key, String algo) throws IOException {
+        final Map<String, CachedMac> cache = macs.get();
+        final String cacheKey = algo + ":" + keyId;
+
+        CachedMac cached = cache.get(cacheKey);
+        if (cached == null || !cached.key.equals(key)) {
+            try {
+                Mac mac = Mac.getInstance(algo);
+                mac.init(new SecretKeySpec(key.getBytes(UTF8), algo));
+                cached = new CachedMac(key, mac);
+                cache.put(cacheKey, cached);
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+
+        return cached.mac;
+    }
+
+    // hops, gate, signature and random are left out as they are not known
+    // at signing time or change while the message travels; the payload is
+    // taken as it goes on the wire, so that local state is never signed
+    private void updateCanonical(Mac mac, Message message) {
+        update(mac, message.getVersion().getMajor());
+        update(mac, message.getVersion().getMinor());
+        update(mac, message.getType().name());
+        update(mac, message.getFrom());
+        update(mac, message.getTo());
+        update(mac, message.getUuid());
+        update(mac, message.getWhen());
+        mac.update((byte) (message.isReliable() ? 1 : 0));
+        update(mac, WireJsonSerializer.toCanonicalText(message.getData()));
+    }
+
+    private void update(Mac mac, Iden iden) {
+        update(mac, iden.getType().name());
+        update(mac, iden.getUUID());
+    }
+
+    private void update(Mac mac, UUID uuid) {
+        update(mac, uuid.getMostSignificantBits());
+        update(mac, uuid.getLeastSignificantBits());
+    }
+
+    private void update(Mac mac, String text) {
+        if (text == null) {
+            update(mac, -1);
+        } else {
+            final byte[] data = text.getBytes(UTF8);
+            update(mac, data.length);
+            mac.update(data);
+        }
+    }
+
+    private void update(Mac mac, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8)
+            mac.update((byte) (value >>> shift));
+    }
+
+    private void update(Mac mac, int value) {
+        for (int shift = 24; shift >= 0; shift -= 8)
+            mac.update((byte) (value >>> shift));
+    }
+
+    private static class CachedMac {
+        private final String key;
+        private final Mac mac;
+
+        CachedMac(String key, Mac mac) {
+            this.key = key;
+            this.mac = mac;
         }
     }
 }
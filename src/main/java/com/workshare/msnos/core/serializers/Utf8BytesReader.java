@@ -0,0 +1,97 @@
+package com.workshare.msnos.core.serializers;
+
+import java.io.Reader;
+
+/**
+ * A reader that decodes UTF-8 straight from a portion of a byte array,
+ * so that we can parse a packet without copying it into a string first
+ */
+class Utf8BytesReader extends Reader {
+
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private final byte[] data;
+    private final int limit;
+    private int pos;
+    private int pending = -1;
+
+    Utf8BytesReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+        if (len == 0)
+            return 0;
+
+        int count = 0;
+        while (count < len) {
+            if (pending >= 0) {
+                cbuf[off + count++] = (char) pending;
+                pending = -1;
+                continue;
+            }
+
+            if (pos >= limit)
+                break;
+
+            final int b = data[pos] & 0xff;
+            if (b < 0x80) {
+                cbuf[off + count++] = (char) b;
+                pos++;
+            } else {
+                final int codepoint = decode(b);
+                if (codepoint >= 0x10000) {
+                    final int value = codepoint - 0x10000;
+                    cbuf[off + count++] = (char) (0xD800 + (value >> 10));
+                    pending = 0xDC00 + (value & 0x3FF);
+                } else {
+                    cbuf[off + count++] = (char) codepoint;
+                }
+            }
+        }
+
+        return count == 0 ? -1 : count;
+    }
+
+    private int decode(int b) {
+        final int extra;
+        int codepoint;
+        if (b >= 0xF0 && b <= 0xF7) {
+            extra = 3;
+            codepoint = b & 0x07;
+        } else if (b >= 0xE0 && b <= 0xEF) {
+            extra = 2;
+            codepoint = b & 0x0F;
+        } else if (b >= 0xC0 && b <= 0xDF) {
+            extra = 1;
+            codepoint = b & 0x1F;
+        } else {
+            pos++;
+            return REPLACEMENT;
+        }
+
+        if (pos + extra >= limit) {
+            pos = limit;
+            return REPLACEMENT;
+        }
+
+        for (int i = 1; i <= extra; i++) {
+            final int next = data[pos + i] & 0xff;
+            if ((next & 0xC0) != 0x80) {
+                pos += i;
+                return REPLACEMENT;
+            }
+            codepoint = (codepoint << 6) | (next & 0x3F);
+        }
+
+        pos += extra + 1;
+        return codepoint;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,538 @@
+package com.workshare.msnos.core.serializers;
+
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import com.google.gson.JsonParser;
+import com.workshare.msnos.core.Iden;
+import com.workshare.msnos.core.Message;
+import com.workshare.msnos.core.Message.Payload;
+import com.workshare.msnos.core.MessageBuilder;
+import com.workshare.msnos.core.payloads.EnqPayload;
+import com.workshare.msnos.core.payloads.FltPayload;
+import com.workshare.msnos.core.payloads.GenericPayload;
+import com.workshare.msnos.core.payloads.HealthDigestPayload;
+import com.workshare.msnos.core.payloads.HealthcheckPayload;
+import com.workshare.msnos.core.payloads.NullPayload;
+import com.workshare.msnos.core.payloads.PongPayload;
+import com.workshare.msnos.core.payloads.Presence;
+import com.workshare.msnos.core.payloads.QnePayload;
+import com.workshare.msnos.core.payloads.TracePayload;
+import com.workshare.msnos.core.protocols.ip.BaseEndpoint;
+import com.workshare.msnos.core.protocols.ip.Endpoint;
+import com.workshare.msnos.core.protocols.ip.HttpEndpoint;
+import com.workshare.msnos.core.protocols.ip.Network;
+import com.workshare.msnos.usvc.api.RestApi;
+
+/**
+ * A compact binary encoding of messages: every frame starts with a version
+ * byte (which can never be confused with the opening brace of a json frame)
+ * so that a node can read both formats. Nodes advertise the version they
+ * understand in their presence, and binary frames are only sent when every
+ * agent known understands them (see {@link WireSerializers}).
+ *
+ * The text form is always json, so that signatures and the line based
+ * protocols are not affected by the choice of the wire format
+ */
+public class WireBinarySerializer implements WireSerializer {
+
+    public static final byte VERSION_1 = (byte) 0xB1;
+
+    private static final int SECTION_NONE = 0;
+    private static final int SECTION_JSON = 1;
+    private static final int SECTION_PRS = 2;
+    private static final int SECTION_QNE = 3;
+    private static final int SECTION_FLT = 4;
+    private static final int SECTION_PON = 5;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Message.Type[] MESSAGE_TYPES = Message.Type.values();
+    private static final Iden.Type[] IDEN_TYPES = Iden.Type.values();
+    private static final Endpoint.Type[] ENDPOINT_TYPES = Endpoint.Type.values();
+    private static final RestApi.Type[] API_TYPES = RestApi.Type.values();
+
+    private final WireJsonSerializer json;
+
+    public WireBinarySerializer() {
+        this(new WireJsonSerializer());
+    }
+
+    public WireBinarySerializer(WireJsonSerializer json) {
+        this.json = json;
+    }
+
+    public static boolean isBinary(byte[] array, int offset, int length) {
+        return length > 0 && array[offset] == VERSION_1;
+    }
+
+    @Override
+    public <T> T fromText(String text, Class<T> clazz) {
+        return json.fromText(text, clazz);
+    }
+
+    @Override
+    public String toText(Object anyObject) {
+        return json.toText(anyObject);
+    }
+
+    @Override
+    public <T> T fromReader(Reader reader, Class<T> clazz) {
+        return json.fromReader(reader, clazz);
+    }
+
+    @Override
+    public <T> T fromBytes(byte[] array, Class<T> clazz) {
+        return fromBytes(array, 0, array.length, clazz);
+    }
+
+    @Override
+    public <T> T fromBytes(byte[] array, int offset, int length, Class<T> clazz) {
+        if (!isBinary(array, offset, length))
+            return json.fromBytes(array, offset, length, clazz);
+
+        final Input in = new Input(array, offset + 1, length - 1);
+        if (clazz == Message.class)
+            return clazz.cast(readMessage(in));
+        else if (Payload.class.isAssignableFrom(clazz))
+            return clazz.cast(readPayload(in, null, clazz));
+        else
+            throw new IllegalArgumentException("Unsupported binary type " + clazz);
+    }
+
+    @Override
+    public byte[] toBytes(Object anyObject) {
+        final Output out;
+        if (anyObject instanceof Message) {
+            out = new Output(128);
+            out.writeByte(VERSION_1);
+            writeMessage(out, (Message) anyObject);
+        } else if (anyObject instanceof Payload) {
+            out = new Output(64);
+            out.writeByte(VERSION_1);
+            writePayload(out, (Payload) anyObject);
+        } else {
+            return json.toBytes(anyObject);
+        }
+
+        return out.toByteArray();
+    }
+
+    private void writeMessage(Output out, Message msg) {
+        out.writeByte(msg.getVersion().getMajor());
+        out.writeByte(msg.getVersion().getMinor());
+        out.writeByte(msg.getType().ordinal());
+
+        int flags = 0;
+        if (msg.isReliable())
+            flags |= 1;
+        if (msg.getSig() != null)
+            flags |= 2;
+        if (msg.getRnd() != null)
+            flags |= 4;
+        out.writeByte(flags);
+
+        writeIden(out, msg.getFrom());
+        writeIden(out, msg.getTo());
+        out.writeVarLong(zigzag(msg.getHops()));
+        out.writeVarLong(zigzag(msg.getWhen()));
+        out.writeUUID(msg.getUuid());
+        if (msg.getSig() != null)
+            out.writeString(msg.getSig());
+        if (msg.getRnd() != null)
+            out.writeString(msg.getRnd());
+
+        writePayload(out, msg.getData());
+    }
+
+    private Message readMessage(Input in) {
+        in.readByte();  // major, we only have one version so far
+        in.readByte();  // minor
+        final Message.Type type = valueOf(MESSAGE_TYPES, in.readByte());
+        final int flags = in.readByte();
+
+        final Iden from = readIden(in);
+        final Iden to = readIden(in);
+        final int hops = (int) unzigzag(in.readVarLong());
+        final long when = unzigzag(in.readVarLong());
+        final UUID uuid = in.readUUID();
+        final String sig = ((flags & 2) != 0 ? in.readString() : null);
+        final String rnd = ((flags & 4) != 0 ? in.readString() : null);
+        final Payload data = readPayload(in, type, Payload.class);
+
+        return new MessageBuilder(type, from, to)
+                .withHops(hops)
+                .with(data)
+                .with(uuid)
+                .at(when)
+                .reliable((flags & 1) != 0)
+                .signed(sig, rnd)
+                .make();
+    }
+
+    private void writePayload(Output out, Payload data) {
+        if (data == null || data instanceof NullPayload) {
+            out.writeByte(SECTION_NONE);
+            return;
+        }
+
+        final Output section = new Output(64);
+        final int kind;
+        if (data instanceof Presence) {
+            kind = SECTION_PRS;
+            final Presence presence = (Presence) data;
+            section.writeBoolean(presence.isPresent());
+            section.writeVarLong(presence.getEndpoints().size());
+            for (Endpoint endpoint : presence.getEndpoints())
+                writeEndpoint(section, endpoint);
+            // optional trailer, ignored by older readers
+            section.writeVarLong(presence.getWireVersion());
+        } else if (data instanceof QnePayload) {
+            kind = SECTION_QNE;
+            final QnePayload qne = (QnePayload) data;
+            section.writeString(qne.getName());
+            section.writeVarLong(qne.getApis().size());
+            for (RestApi api : qne.getApis())
+                writeRestApi(section, api);
+            // optional trailer, ignored by older readers: version, then
+            // the count of removed apis plus one, zero if not a delta
+            if (qne.isVersioned()) {
+                section.writeVarLong(qne.getVersion());
+                if (qne.isDelta()) {
+                    section.writeVarLong(qne.getRemoved().size() + 1);
+                    for (RestApi api : qne.getRemoved())
+                        writeRestApi(section, api);
+                } else {
+                    section.writeVarLong(0);
+                }
+            }
+        } else if (data instanceof FltPayload) {
+            kind = SECTION_FLT;
+            writeIden(section, ((FltPayload) data).getAbout());
+        } else if (data instanceof PongPayload) {
+            kind = SECTION_PON;
+        } else {
+            kind = SECTION_JSON;
+            if (data instanceof GenericPayload)
+                section.writeBytes(json.toBytes(((GenericPayload) data).getData()));
+            else
+                section.writeBytes(json.toBytes(data));
+        }
+
+        out.writeByte(kind);
+        out.writeVarLong(section.size());
+        out.writeBytes(section.array(), 0, section.size());
+    }
+
+    private Payload readPayload(Input in, Message.Type type, Class<?> clazz) {
+        final int kind = in.readByte();
+        if (kind == SECTION_NONE)
+            return null;
+
+        final int length = (int) in.readVarLong();
+        final Input section = in.slice(length);
+        switch (kind) {
+            case SECTION_PRS: {
+                final boolean present = section.readBoolean();
+                final int count = (int) section.readVarLong();
+                final Set<Endpoint> endpoints = new HashSet<Endpoint>();
+                for (int i = 0; i < count; i++)
+                    endpoints.add(readEndpoint(section));
+                final Integer wire = (section.remaining() == 0 ? null : (int) section.readVarLong());
+                return new Presence(present, endpoints, wire);
+            }
+            case SECTION_QNE: {
+                final String name = section.readString();
+                final int count = (int) section.readVarLong();
+                final Set<RestApi> apis = new HashSet<RestApi>();
+                for (int i = 0; i < count; i++)
+                    apis.add(readRestApi(section));
+                if (section.remaining() == 0)
+                    return new QnePayload(name, apis);
+
+                final long version = section.readVarLong();
+                final int removedCount = (int) section.readVarLong() - 1;
+                if (removedCount < 0)
+                    return QnePayload.full(name, version, apis);
+
+                final Set<RestApi> removed = new HashSet<RestApi>();
+                for (int i = 0; i < removedCount; i++)
+                    removed.add(readRestApi(section));
+                return QnePayload.delta(name, version, apis, removed);
+            }
+            case SECTION_FLT:
+                return new FltPayload(readIden(section));
+            case SECTION_PON:
+                return new PongPayload();
+            case SECTION_JSON:
+                return readJsonPayload(section, type, clazz);
+            default:
+                throw new IllegalArgumentException("Unknown payload section " + kind);
+        }
+    }
+
+    private Payload readJsonPayload(Input section, Message.Type type, Class<?> clazz) {
+        final Class<?> target;
+        if (type == null)
+            target = clazz;
+        else if (type == Message.Type.ACK || type == Message.Type.TRC)
+            target = TracePayload.class;
+        else if (type == Message.Type.HCK)
+            target = HealthcheckPayload.class;
+        else if (type == Message.Type.HCD)
+            target = HealthDigestPayload.class;
+        else if (type == Message.Type.ENQ)
+            target = EnqPayload.class;
+        else
+            target = GenericPayload.class;
+
+        if (target == GenericPayload.class) {
+            final String text = new String(section.array(), section.position(), section.remaining(), UTF8);
+            return new GenericPayload(new JsonParser().parse(text));
+        }
+
+        try {
+            return (Payload) json.fromBytes(section.array(), section.position(), section.remaining(), target);
+        } catch (RuntimeException ex) {
+            if (type == Message.Type.ACK)
+                return null;
+            else
+                throw ex;
+        }
+    }
+
+    private void writeIden(Output out, Iden iden) {
+        out.writeByte(iden.getType().ordinal());
+        out.writeUUID(iden.getUUID());
+    }
+
+    private Iden readIden(Input in) {
+        final Iden.Type type = valueOf(IDEN_TYPES, in.readByte());
+        return new Iden(type, in.readUUID());
+    }
+
+    private void writeEndpoint(Output out, Endpoint endpoint) {
+        out.writeByte(endpoint.getType().ordinal());
+        out.writeVarLong(endpoint.getPort() & 0xffff);
+        final Network network = endpoint.getNetwork();
+        out.writeByte(network.getAddress().length);
+        out.writeBytes(network.getAddress());
+        out.writeVarLong(network.getPrefix() & 0xffff);
+        if (endpoint instanceof HttpEndpoint)
+            out.writeString(((HttpEndpoint) endpoint).getUrl());
+    }
+
+    private Endpoint readEndpoint(Input in) {
+        final Endpoint.Type type = valueOf(ENDPOINT_TYPES, in.readByte());
+        final short port = (short) in.readVarLong();
+        final byte[] address = in.readBytes(in.readByte());
+        final short prefix = (short) in.readVarLong();
+        final Network network = new Network(address, prefix);
+
+        if (type == Endpoint.Type.HTTP)
+            return new HttpEndpoint(network, in.readString());
+        else
+            return new BaseEndpoint(type, network, port);
+    }
+
+    private void writeRestApi(Output out, RestApi api) {
+        out.writeByte(api.getType().ordinal());
+        out.writeString(api.getPath());
+        out.writeString(api.getHost());
+        out.writeVarLong(zigzag(api.getPort()));
+        out.writeBoolean(api.hasAffinity());
+        out.writeVarLong(zigzag(api.getPriority()));
+    }
+
+    private RestApi readRestApi(Input in) {
+        final RestApi.Type type = valueOf(API_TYPES, in.readByte());
+        final String path = in.readString();
+        final String host = in.readString();
+        final int port = (int) unzigzag(in.readVarLong());
+        final boolean sticky = in.readBoolean();
+        final int priority = (int) unzigzag(in.readVarLong());
+        return new RestApi(path, port, host, type, sticky, priority);
+    }
+
+    private static <T> T valueOf(T[] values, int ordinal) {
+        if (ordinal < 0 || ordinal >= values.length)
+            throw new IllegalArgumentException("Unknown " + values.getClass().getComponentType().getSimpleName() + " " + ordinal);
+
+        return values[ordinal];
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static class Output {
+        private byte[] data;
+        private int size;
+
+        Output(int capacity) {
+            this.data = new byte[capacity];
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            data[size++] = (byte) value;
+        }
+
+        void writeBoolean(boolean value) {
+            writeByte(value ? 1 : 0);
+        }
+
+        void writeBytes(byte[] bytes) {
+            writeBytes(bytes, 0, bytes.length);
+        }
+
+        void writeBytes(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, data, size, length);
+            size += length;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8)
+                data[size++] = (byte) (value >>> shift);
+        }
+
+        void writeUUID(UUID uuid) {
+            writeLong(uuid.getMostSignificantBits());
+            writeLong(uuid.getLeastSignificantBits());
+        }
+
+        // zero means null, otherwise it's the length plus one
+        void writeString(String text) {
+            if (text == null) {
+                writeVarLong(0);
+            } else {
+                final byte[] bytes = text.getBytes(UTF8);
+                writeVarLong(bytes.length + 1);
+                writeBytes(bytes);
+            }
+        }
+
+        byte[] array() {
+            return data;
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, size);
+        }
+
+        private void ensure(int more) {
+            if (size + more > data.length)
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + more));
+        }
+    }
+
+    static class Input {
+        private final byte[] data;
+        private final int limit;
+        private int pos;
+
+        Input(byte[] data, int offset, int length) {
+            this.data = data;
+            this.pos = offset;
+            this.limit = offset + length;
+        }
+
+        int readByte() {
+            check(1);
+            return data[pos++] & 0xff;
+        }
+
+        boolean readBoolean() {
+            return readByte() != 0;
+        }
+
+        byte[] readBytes(int length) {
+            check(length);
+            final byte[] res = Arrays.copyOfRange(data, pos, pos + length);
+            pos += length;
+            return res;
+        }
+
+        long readVarLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return result;
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        long readLong() {
+            check(8);
+            long result = 0;
+            for (int i = 0; i < 8; i++)
+                result = (result << 8) | (data[pos++] & 0xff);
+            return result;
+        }
+
+        UUID readUUID() {
+            final long msb = readLong();
+            final long lsb = readLong();
+            return new UUID(msb, lsb);
+        }
+
+        String readString() {
+            final int length = (int) readVarLong();
+            if (length == 0)
+                return null;
+
+            check(length - 1);
+            final String text = new String(data, pos, length - 1, UTF8);
+            pos += length - 1;
+            return text;
+        }
+
+        Input slice(int length) {
+            check(length);
+            final Input res = new Input(data, pos, length);
+            pos += length;
+            return res;
+        }
+
+        byte[] array() {
+            return data;
+        }
+
+        int position() {
+            return pos;
+        }
+
+        int remaining() {
+            return limit - pos;
+        }
+
+        private void check(int length) {
+            if (length < 0 || pos + length > limit)
+                throw new IllegalArgumentException("Truncated binary frame");
+        }
+    }
+}
@@ -3,6 +3,11 @@ package com.workshare.msnos.core.serializers;
 import java.io.Reader;
 import java.lang.reflect.Type;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import org.slf4j.Logger;
@@ -10,6 +15,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
@@ -24,8 +30,10 @@ import com.workshare.msnos.core.Message;
 import com.workshare.msnos.core.Message.Payload;
 import com.workshare.msnos.core.MessageBuilder;
 import com.workshare.msnos.core.Version;
+import com.workshare.msnos.core.payloads.EnqPayload;
 import com.workshare.msnos.core.payloads.FltPayload;
 import com.workshare.msnos.core.payloads.GenericPayload;
+import com.workshare.msnos.core.payloads.HealthDigestPayload;
 import com.workshare.msnos.core.payloads.HealthcheckPayload;
 import com.workshare.msnos.core.payloads.NullPayload;
 import com.workshare.msnos.core.payloads.PongPayload;
@@ -44,6 +52,8 @@ public class WireJsonSerializer implements WireSerializer {
 
     private static Logger log = LoggerFactory.getLogger(WireSerializer.class);
 
+    private WireBinarySerializer binary;
+
     @Override
     public <T> T fromText(String text, Class<T> clazz) {
         try {
@@ -59,6 +69,15 @@ public class WireJsonSerializer implements WireSerializer {
         return gson.toJson(anyObject);
     }
 
+    /**
+     * Serializes the object as it would go on the wire, but with the elements
+     * of any set sorted, so that the same content always gives the same text
+     * whatever the iteration order of the set
+     */
+    public static String toCanonicalText(Object anyObject) {
+        return canonical.toJson(anyObject);
+    }
+
     @Override
     public <T> T fromReader(Reader reader, Class<T> clazz) {
         return gson.fromReader(reader, clazz);
@@ -66,12 +85,20 @@ public class WireJsonSerializer implements WireSerializer {
 
     @Override
     public <T> T fromBytes(byte[] array, Class<T> clazz) {
-        return fromText(new String(array, Charset.forName("UTF-8")), clazz);
+        return fromBytes(array, 0, array.length, clazz);
     }
 
     @Override
     public <T> T fromBytes(byte[] array, int offset, int length, Class<T> clazz) {
-        return fromText(new String(array, offset, length, Charset.forName("UTF-8")), clazz);
+        if (WireBinarySerializer.isBinary(array, offset, length))
+            return binary().fromBytes(array, offset, length, clazz);
+
+        try {
+            return gson.fromReader(new Utf8BytesReader(array, offset, length), clazz);
+        } catch (JsonParseException ex) {
+            log.warn("Error parsing JSON content: {}", new String(array, offset, length, Charset.forName("UTF-8")));
+            throw ex;
+        }
     }
 
     @Override
@@ -80,6 +107,13 @@ public class WireJsonSerializer implements WireSerializer {
         return json.getBytes(Charset.forName("UTF-8"));
     }
 
+    // binary frames are always understood, whatever we use to send
+    private WireBinarySerializer binary() {
+        if (binary == null)
+            binary = new WireBinarySerializer(this);
+        return binary;
+    }
+
     private static final JsonSerializer<Boolean> ENC_BOOL = new JsonSerializer<Boolean>() {
         @Override
         public JsonElement serialize(Boolean value, Type typeof, JsonSerializationContext context) {
@@ -304,12 +338,18 @@ public class WireJsonSerializer implements WireSerializer {
                     case QNE:
                         data = (Payload) gson.fromJsonTree(dataJson, QnePayload.class);
                         break;
+                    case ENQ:
+                        data = (Payload) gson.fromJsonTree(dataJson, EnqPayload.class);
+                        break;
                     case FLT:
                         data = (Payload) gson.fromJsonTree(dataJson, FltPayload.class);
                         break;
                     case HCK:
                         data = (Payload) gson.fromJsonTree(dataJson, HealthcheckPayload.class);
                         break;
+                    case HCD:
+                        data = (Payload) gson.fromJsonTree(dataJson, HealthDigestPayload.class);
+                        break;
                     case PON:
                         data = (Payload) gson.fromJsonTree(dataJson, PongPayload.class);
                         break;
@@ -333,44 +373,75 @@ public class WireJsonSerializer implements WireSerializer {
         }
     };
 
+    private static final JsonSerializer<Set<?>> ENC_SORTED_SET = new JsonSerializer<Set<?>>() {
+        @Override
+        public JsonElement serialize(Set<?> set, Type typeOfSrc, JsonSerializationContext context) {
+            final List<JsonElement> items = new ArrayList<JsonElement>(set.size());
+            for (Object item : set)
+                items.add(context.serialize(item));
+
+            Collections.sort(items, new Comparator<JsonElement>() {
+                @Override
+                public int compare(JsonElement alfa, JsonElement beta) {
+                    return alfa.toString().compareTo(beta.toString());
+                }
+            });
+
+            final JsonArray res = new JsonArray();
+            for (JsonElement item : items)
+                res.add(item);
+            return res;
+        }
+    };
+
     private static final ThreadSafeGson gson = new ThreadSafeGson() {
         protected Gson newGson() {
-            GsonBuilder builder = new GsonBuilder();
+            return newGsonBuilder().create();
+        }
+    };
+
+    private static final ThreadSafeGson canonical = new ThreadSafeGson() {
+        protected Gson newGson() {
+            return newGsonBuilder().registerTypeHierarchyAdapter(Set.class, ENC_SORTED_SET).create();
+        }
+    };
 
-            builder.registerTypeAdapter(Boolean.class, ENC_BOOL);
-            builder.registerTypeAdapter(boolean.class, ENC_BOOL);
-            builder.registerTypeAdapter(Boolean.class, DEC_BOOL);
-            builder.registerTypeAdapter(boolean.class, DEC_BOOL);
+    private static GsonBuilder newGsonBuilder() {
+        GsonBuilder builder = new GsonBuilder();
 
-            builder.registerTypeAdapter(Byte.class, ENC_BYTE);
-            builder.registerTypeAdapter(byte.class, ENC_BYTE);
+        builder.registerTypeAdapter(Boolean.class, ENC_BOOL);
+        builder.registerTypeAdapter(boolean.class, ENC_BOOL);
+        builder.registerTypeAdapter(Boolean.class, DEC_BOOL);
+        builder.registerTypeAdapter(boolean.class, DEC_BOOL);
 
-            builder.registerTypeAdapter(Iden.class, ENC_IDEN);
-            builder.registerTypeAdapter(Iden.class, DEC_IDEN);
+        builder.registerTypeAdapter(Byte.class, ENC_BYTE);
+        builder.registerTypeAdapter(byte.class, ENC_BYTE);
 
-            builder.registerTypeAdapter(UUID.class, ENC_UUID);
-            builder.registerTypeAdapter(UUID.class, DEC_UUID);
+        builder.registerTypeAdapter(Iden.class, ENC_IDEN);
+        builder.registerTypeAdapter(Iden.class, DEC_IDEN);
 
-            builder.registerTypeAdapter(Network.class, ENC_NETWORK);
-            builder.registerTypeAdapter(Network.class, DEC_NETWORK);
+        builder.registerTypeAdapter(UUID.class, ENC_UUID);
+        builder.registerTypeAdapter(UUID.class, DEC_UUID);
 
-            builder.registerTypeAdapter(Version.class, ENC_VERSION);
-            builder.registerTypeAdapter(Version.class, DEC_VERSION);
+        builder.registerTypeAdapter(Network.class, ENC_NETWORK);
+        builder.registerTypeAdapter(Network.class, DEC_NETWORK);
 
-            builder.registerTypeAdapter(Message.class, ENC_MESSAGE);
-            builder.registerTypeAdapter(Message.class, DEC_MESSAGE);
+        builder.registerTypeAdapter(Version.class, ENC_VERSION);
+        builder.registerTypeAdapter(Version.class, DEC_VERSION);
 
-            builder.registerTypeAdapter(RestApi.class, ENC_RESTAPI);
-            builder.registerTypeAdapter(RestApi.class, DEC_RESTAPI);
+        builder.registerTypeAdapter(Message.class, ENC_MESSAGE);
+        builder.registerTypeAdapter(Message.class, DEC_MESSAGE);
 
-            builder.registerTypeAdapter(Endpoint.class, DEC_ENDPOINT);
-            builder.registerTypeAdapter(Endpoint.class, ENC_ENDPOINT);
-            builder.registerTypeAdapter(BaseEndpoint.class, ENC_ENDPOINT);
-            builder.registerTypeAdapter(HttpEndpoint.class, ENC_ENDPOINT);
+        builder.registerTypeAdapter(RestApi.class, ENC_RESTAPI);
+        builder.registerTypeAdapter(RestApi.class, DEC_RESTAPI);
 
-            return builder.create();
-        }
-    };
+        builder.registerTypeAdapter(Endpoint.class, DEC_ENDPOINT);
+        builder.registerTypeAdapter(Endpoint.class, ENC_ENDPOINT);
+        builder.registerTypeAdapter(BaseEndpoint.class, ENC_ENDPOINT);
+        builder.registerTypeAdapter(HttpEndpoint.class, ENC_ENDPOINT);
+
+        return builder;
+    }
 
     private static final JsonPrimitive serializeIden(Iden iden, boolean includeSuid) {
         String text = iden.getType() + ":" + serializeUUIDToShortString(iden.getUUID());
@@ -0,0 +1,114 @@
+package com.workshare.msnos.core.serializers;
+
+import java.util.Collection;
+
+import com.workshare.msnos.core.RemoteAgent;
+
+/**
+ * Builds the serializer to be used on the wire: json is the default, the
+ * binary format can be chosen on each node. Nodes from before the binary
+ * format only read json, so every node advertises in its presence the
+ * binary version it reads, and binary frames are only sent when all the
+ * agents known can read them
+ */
+public class WireSerializers {
+
+    public static final String SYSP_WIRE_FORMAT = "com.ws.msnos.wire.format";
+
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_BINARY = "binary";
+
+    // position of the sender uuid in a binary frame: version, major, minor, type, flags, iden type
+    private static final int BINARY_FROM_UUID_OFFSET = 6;
+    private static final int UUID_SIZE = 16;
+
+    private static final byte[] JSON_FROM_MARKER = "\"fr\":\"".getBytes();
+
+    /**
+     * The wire version read by this node, advertised to the others: zero
+     * stands for json only
+     */
+    public static final int WIRE_VERSION = WireBinarySerializer.VERSION_1 & 0xff;
+    public static final int WIRE_JSON = 0;
+
+    private static final WireJsonSerializer JSON = new WireJsonSerializer();
+    private static final WireBinarySerializer BINARY = new WireBinarySerializer(JSON);
+
+    private WireSerializers() {
+    }
+
+    /**
+     * Returns the serializer of the format chosen on this node: instances are
+     * shared, so that a message encoded once is reused by every component
+     */
+    public static WireSerializer getWireSerializer() {
+        return getWireSerializer(System.getProperty(SYSP_WIRE_FORMAT, FORMAT_JSON));
+    }
+
+    public static WireSerializer getWireSerializer(String format) {
+        if (FORMAT_BINARY.equalsIgnoreCase(format))
+            return BINARY;
+        else
+            return JSON;
+    }
+
+    /**
+     * Returns the serializer for frames reaching all the agents given: binary
+     * only when that is the format chosen and every agent reads it, json
+     * otherwise, also when no agent is known yet
+     */
+    public static WireSerializer forAgents(String format, Collection<RemoteAgent> agents) {
+        if (!FORMAT_BINARY.equalsIgnoreCase(format) || agents == null || agents.isEmpty())
+            return JSON;
+
+        for (RemoteAgent agent : agents) {
+            if (agent.getWireVersion() < WIRE_VERSION)
+                return JSON;
+        }
+
+        return BINARY;
+    }
+
+    /**
+     * Computes an hash of the sender of a message directly on its wire
+     * representation, without deserializing it: returns zero when the sender
+     * cannot be found
+     */
+    public static int senderHash(byte[] array, int offset, int length) {
+        if (WireBinarySerializer.isBinary(array, offset, length)) {
+            final int start = offset + BINARY_FROM_UUID_OFFSET;
+            if (length < BINARY_FROM_UUID_OFFSET + UUID_SIZE)
+                return 0;
+            return hash(array, start, start + UUID_SIZE);
+        }
+
+        final int end = offset + length;
+        final int start = indexOf(array, offset, end, JSON_FROM_MARKER);
+        if (start < 0)
+            return 0;
+
+        int pos = start;
+        while (pos < end && array[pos] != '"')
+            pos++;
+
+        return pos < end ? hash(array, start, pos) : 0;
+    }
+
+    private static int hash(byte[] array, int start, int end) {
+        int hash = 1;
+        for (int i = start; i < end; i++)
+            hash = 31 * hash + array[i];
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static int indexOf(byte[] array, int start, int end, byte[] marker) {
+        final int last = end - marker.length;
+        outer: for (int i = start; i <= last; i++) {
+            for (int j = 0; j < marker.length; j++)
+                if (array[i + j] != marker[j])
+                    continue outer;
+            return i + marker.length;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,54 @@
+package com.workshare.msnos.soup.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import com.workshare.msnos.soup.time.SystemTime;
+
+/**
+ * A peak sensitive, exponentially weighted moving average over time: a
+ * sample higher than the average replaces it straight away, lower samples
+ * are blended in with a weight depending on the time elapsed since the
+ * previous one. With no samples the average decays towards zero, so that
+ * an old spike is eventually forgotten
+ */
+public class Ewma {
+
+    private final double decay;
+
+    private double value;
+    private long stamp;
+
+    public Ewma(long decay, TimeUnit unit) {
+        if (decay <= 0)
+            throw new IllegalArgumentException("Decay must be positive!");
+
+        this.decay = unit.toMillis(decay);
+        this.stamp = SystemTime.asMillis();
+    }
+
+    public synchronized void update(double sample) {
+        final long now = SystemTime.asMillis();
+        if (sample > value) {
+            value = sample;
+        } else {
+            final double weight = weight(now);
+            value = value * weight + sample * (1.0 - weight);
+        }
+
+        stamp = now;
+    }
+
+    public synchronized double value() {
+        return value * weight(SystemTime.asMillis());
+    }
+
+    private double weight(long now) {
+        final long elapsed = Math.max(0, now - stamp);
+        return Math.exp(-elapsed / decay);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.3f", value());
+    }
+}
@@ -0,0 +1,80 @@
+package com.workshare.msnos.soup.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non negative values (i.e. latencies in
+ * nanoseconds) using power of two buckets: percentiles are approximated
+ * by the upper bound of the bucket they fall into
+ */
+public class Histogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void update(long value) {
+        if (value < 0)
+            value = 0;
+
+        buckets.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value))
+                break;
+        }
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        final long samples = count.get();
+        return samples == 0 ? 0.0 : (double) total.get() / samples;
+    }
+
+    /**
+     * Returns the approximated value below which the given fraction of the
+     * samples falls (i.e. 0.99 for the 99th percentile)
+     */
+    public long percentile(double fraction) {
+        final long samples = count.get();
+        if (samples == 0)
+            return 0;
+
+        final long rank = (long) Math.ceil(fraction * samples);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank)
+                return Math.min(upperBoundOf(i), max.get());
+        }
+
+        return max.get();
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count() + ", mean=" + mean() + ", p50=" + percentile(0.50) + ", p99=" + percentile(0.99) + ", max=" + max();
+    }
+
+    private static int bucketOf(long value) {
+        return value == 0 ? 0 : 64 - Long.numberOfLeadingZeros(value) - 1;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        return bucket >= 62 ? Long.MAX_VALUE : (2L << bucket) - 1;
+    }
+}
@@ -0,0 +1,63 @@
+package com.workshare.msnos.soup.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.workshare.msnos.soup.time.SystemTime;
+
+/**
+ * A simple counter that also provides the rate of events per second,
+ * computed over windows of (at least) one second
+ */
+public class Meter {
+
+    private static final long WINDOW_MILLIS = 1000L;
+
+    private final AtomicLong count = new AtomicLong();
+
+    private volatile long windowStart;
+    private volatile long windowCount;
+    private volatile double rate;
+
+    public Meter() {
+        this.windowStart = SystemTime.asMillis();
+    }
+
+    public void mark() {
+        mark(1);
+    }
+
+    public void mark(long events) {
+        count.addAndGet(events);
+        tick();
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public double rate() {
+        tick();
+        return rate;
+    }
+
+    private void tick() {
+        final long now = SystemTime.asMillis();
+        if (now - windowStart < WINDOW_MILLIS)
+            return;
+
+        synchronized (this) {
+            final long elapsed = now - windowStart;
+            if (elapsed >= WINDOW_MILLIS) {
+                final long total = count.get();
+                rate = (total - windowCount) * 1000.0 / elapsed;
+                windowCount = total;
+                windowStart = now;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count() + ", rate=" + rate();
+    }
+}
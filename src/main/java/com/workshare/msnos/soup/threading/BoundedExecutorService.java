@@ -0,0 +1,93 @@
+package com.workshare.msnos.soup.threading;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An executor running at most a fixed number of tasks at once on another
+ * executor, queueing the others as a fixed thread pool would do. It bounds
+ * executors starting a thread per task, such as the virtual threads ones,
+ * so that pools sized on purpose keep their size.
+ */
+class BoundedExecutorService extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+    private final Queue<Runnable> tasks;
+
+    BoundedExecutorService(ExecutorService delegate, int size) {
+        this.delegate = delegate;
+        this.permits = new Semaphore(size);
+        this.tasks = new ConcurrentLinkedQueue<Runnable>();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (delegate.isShutdown())
+            throw new RejectedExecutionException("Executor is shut down");
+
+        tasks.add(command);
+        startWorkers();
+    }
+
+    // a worker keeps running tasks while there are any, and checks again
+    // after releasing its permit, so that no task is left behind
+    private void startWorkers() {
+        while (!tasks.isEmpty() && permits.tryAcquire()) {
+            try {
+                delegate.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        do {
+                            try {
+                                Runnable task;
+                                while ((task = tasks.poll()) != null)
+                                    task.run();
+                            } finally {
+                                permits.release();
+                            }
+                        } while (!tasks.isEmpty() && permits.tryAcquire());
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                permits.release();
+                throw ex;
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        final List<Runnable> pending = new ArrayList<Runnable>(tasks);
+        tasks.clear();
+        delegate.shutdownNow();
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,180 @@
+package com.workshare.msnos.soup.threading;
+
+/**
+ * A map from primitive longs to values, split in stripes each guarded by
+ * its own lock so that there is no global lock and no boxing of the keys.
+ * Each stripe is an open addressing table with linear probing.
+ *
+ * Null values are not supported.
+ */
+public class ConcurrentLongMap<V> {
+
+    private static final int DEFAULT_STRIPES = 16;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Stripe[] stripes;
+    private final int mask;
+
+    public ConcurrentLongMap() {
+        this(DEFAULT_STRIPES);
+    }
+
+    public ConcurrentLongMap(int concurrency) {
+        int count = 1;
+        while (count < concurrency)
+            count <<= 1;
+
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++)
+            stripes[i] = new Stripe();
+        this.mask = count - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        final long hash = mix(key);
+        return (V) stripeOf(hash).get(key, hash);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null)
+            throw new IllegalArgumentException("Null values are not supported");
+
+        final long hash = mix(key);
+        return (V) stripeOf(hash).put(key, hash, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        final long hash = mix(key);
+        return (V) stripeOf(hash).remove(key, hash);
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes)
+            size += stripe.size();
+        return size;
+    }
+
+    public void clear() {
+        for (Stripe stripe : stripes)
+            stripe.clear();
+    }
+
+    private Stripe stripeOf(long hash) {
+        return stripes[(int) (hash >>> 32) & mask];
+    }
+
+    // the murmur3 64 bit finalizer, as ids are often sequential
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private static class Stripe {
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private Object[] values = new Object[INITIAL_CAPACITY];
+        private int size;
+
+        synchronized Object get(long key, long hash) {
+            final int index = indexOf(key, hash);
+            return index < 0 ? null : values[index];
+        }
+
+        synchronized Object put(long key, long hash, Object value) {
+            final int index = indexOf(key, hash);
+            if (index >= 0) {
+                final Object old = values[index];
+                values[index] = value;
+                return old;
+            }
+
+            if ((size + 1) * 4 > values.length * 3)
+                resize();
+
+            insert(key, hash, value);
+            size++;
+            return null;
+        }
+
+        synchronized Object remove(long key, long hash) {
+            int index = indexOf(key, hash);
+            if (index < 0)
+                return null;
+
+            final Object old = values[index];
+            values[index] = null;
+            size--;
+
+            // shifts back the following entries of the cluster, so that
+            // lookups never stop at the hole just made
+            final int slots = values.length - 1;
+            int next = (index + 1) & slots;
+            while (values[next] != null) {
+                final int home = (int) mix(keys[next]) & slots;
+                if (((next - home) & slots) >= ((next - index) & slots)) {
+                    keys[index] = keys[next];
+                    values[index] = values[next];
+                    values[next] = null;
+                    index = next;
+                }
+                next = (next + 1) & slots;
+            }
+
+            return old;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized void clear() {
+            keys = new long[INITIAL_CAPACITY];
+            values = new Object[INITIAL_CAPACITY];
+            size = 0;
+        }
+
+        private int indexOf(long key, long hash) {
+            final int slots = values.length - 1;
+            int index = (int) hash & slots;
+            while (values[index] != null) {
+                if (keys[index] == key)
+                    return index;
+                index = (index + 1) & slots;
+            }
+
+            return -1;
+        }
+
+        private void insert(long key, long hash, Object value) {
+            final int slots = values.length - 1;
+            int index = (int) hash & slots;
+            while (values[index] != null)
+                index = (index + 1) & slots;
+
+            keys[index] = key;
+            values[index] = value;
+        }
+
+        private void resize() {
+            final long[] oldKeys = keys;
+            final Object[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new Object[oldValues.length * 2];
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null)
+                    insert(oldKeys[i], mix(oldKeys[i]), oldValues[i]);
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.workshare.msnos.soup.threading;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -9,15 +10,33 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.workshare.msnos.soup.threading.ThreadFactories.Customizer;
 
 /**
  * An enhanced executor service factory
  * 
+ * When virtual threads are enabled and the JVM supports them (JDK 21+) the
+ * pools running blocking tasks are replaced by executors starting a new
+ * virtual thread for each task, so that blocking network calls scale with
+ * the number of peers rather than with the size of the pools. Fixed pools
+ * still run at most as many tasks at once as their size. Schedulers stay
+ * on platform threads: each has its own thread, so a task blocking on it,
+ * as the WWW gateway sync does, only delays the timers of that scheduler.
+ * 
  * @author bossola
  */
 public class ExecutorServices {
 
+    public static final String SYSP_VIRTUAL_THREADS = "com.ws.msnos.threads.virtual";
+
+    private static final Logger log = LoggerFactory.getLogger(ExecutorServices.class);
+
+    private static final Method VIRTUAL_EXECUTOR_FACTORY = findVirtualExecutorFactory();
+    private static final boolean USE_VIRTUAL_THREADS = useVirtualThreads(Boolean.getBoolean(SYSP_VIRTUAL_THREADS), VIRTUAL_EXECUTOR_FACTORY);
+
 	private static ThreadFactory DAEMON_THREAD_FACTORY= ThreadFactories.newCustomThreadFactory(new Customizer(){
         @Override
         public void apply(Thread thread) {
@@ -35,6 +54,9 @@ public class ExecutorServices {
 
 
     public static ExecutorService newFixedDaemonThreadPool(final int size) {
+        if (USE_VIRTUAL_THREADS)
+            return new BoundedExecutorService(newVirtualThreadPerTaskExecutor(), size);
+
         return new ThreadPoolExecutor(size, size,
                 0L, TimeUnit.MILLISECONDS,
                 new LinkedBlockingQueue<Runnable>(),
@@ -48,6 +70,59 @@ public class ExecutorServices {
 
 
     public static ExecutorService newCachedDaemonThreadPool() {
+        if (USE_VIRTUAL_THREADS)
+            return newVirtualThreadPerTaskExecutor();
+
         return Executors.newCachedThreadPool(DAEMON_THREAD_FACTORY);
     }
+
+    /**
+     * Returns an executor starting a new virtual thread for each task or, if
+     * virtual threads are not supported by the JVM, a cached pool of daemon
+     * threads
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        return newVirtualThreadPerTaskExecutor(VIRTUAL_EXECUTOR_FACTORY);
+    }
+
+    static ExecutorService newVirtualThreadPerTaskExecutor(Method factory) {
+        if (factory == null)
+            return Executors.newCachedThreadPool(DAEMON_THREAD_FACTORY);
+
+        try {
+            return (ExecutorService) factory.invoke(null);
+        } catch (Exception ex) {
+            log.warn("Unable to create virtual threads executor, using platform threads", ex);
+            return Executors.newCachedThreadPool(DAEMON_THREAD_FACTORY);
+        }
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        return VIRTUAL_EXECUTOR_FACTORY != null;
+    }
+
+    public static boolean isUsingVirtualThreads() {
+        return USE_VIRTUAL_THREADS;
+    }
+
+    private static Method findVirtualExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    static boolean useVirtualThreads(boolean requested, Method factory) {
+        if (!requested)
+            return false;
+
+        if (factory == null) {
+            log.warn("Virtual threads requested but not supported by this JVM, using platform threads");
+            return false;
+        }
+
+        log.info("Using virtual threads for blocking tasks");
+        return true;
+    }
 }
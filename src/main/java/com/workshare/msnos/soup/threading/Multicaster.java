@@ -64,7 +64,7 @@ public abstract class Multicaster<L, M> {
     }
 
     public void dispatch(final M message) {
-        if (log.isTraceEnabled()) {
+        if (log.isTraceEnabled() && asyncExecutor instanceof ThreadPoolExecutor) {
             ThreadPoolExecutor pool = (ThreadPoolExecutor) asyncExecutor;
             int active = pool.getActiveCount();
             int queued = pool.getQueue().size();
@@ -0,0 +1,61 @@
+package com.workshare.msnos.usvc;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import com.workshare.msnos.core.Iden;
+
+/**
+ * Spreads the responsibility of checking the microservices over the nodes
+ * of the cloud, hashing the iden of each service on a ring of the node
+ * idens, each placed many times to keep the load even. As every node
+ * builds the ring from (more or less) the same view of the cloud, every
+ * service ends up checked by one node only.
+ *
+ * The hash only depends on the idens, so that every node computes the same
+ * ring whatever the JVM
+ */
+class HealthcheckRing {
+
+    private static final int VNODES = 64;
+
+    private final TreeMap<Long, Iden> ring;
+
+    HealthcheckRing(Collection<Iden> nodes) {
+        this.ring = new TreeMap<Long, Iden>();
+        for (Iden node : nodes)
+            for (int i = 0; i < VNODES; i++)
+                ring.put(hash(node.getUUID(), i + 1), node);
+    }
+
+    public Iden ownerOf(Iden service) {
+        if (ring.isEmpty())
+            return null;
+
+        Map.Entry<Long, Iden> entry = ring.ceilingEntry(hash(service.getUUID(), 0));
+        if (entry == null)
+            entry = ring.firstEntry();
+
+        return entry.getValue();
+    }
+
+    public int size() {
+        return ring.size() / VNODES;
+    }
+
+    static long hash(UUID uuid, int salt) {
+        return mix(uuid.getMostSignificantBits() ^ mix(uuid.getLeastSignificantBits() + salt * 0x9E3779B97F4A7C15L));
+    }
+
+    // the murmur3 64 bit finalizer
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -1,42 +1,125 @@
 package com.workshare.msnos.usvc;
 
 import static com.workshare.msnos.core.Message.Type.ENQ;
+import static com.workshare.msnos.core.Message.Type.HCD;
 import static com.workshare.msnos.core.Message.Type.HCK;
 
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.workshare.msnos.core.Iden;
+import com.workshare.msnos.core.LocalAgent;
 import com.workshare.msnos.core.Message;
 import com.workshare.msnos.core.MessageBuilder;
 import com.workshare.msnos.core.MsnosException;
+import com.workshare.msnos.core.payloads.EnqPayload;
+import com.workshare.msnos.core.payloads.HealthDigestPayload;
 import com.workshare.msnos.core.payloads.HealthcheckPayload;
 import com.workshare.msnos.core.protocols.ip.HttpClientFactory;
+import com.workshare.msnos.soup.metrics.Histogram;
+import com.workshare.msnos.soup.threading.ExecutorServices;
 import com.workshare.msnos.soup.time.SystemTime;
 import com.workshare.msnos.usvc.api.RestApi;
 import com.workshare.msnos.usvc.api.RestApi.Type;
 
+/**
+ * Periodically checks the health of the remote microservices, calling their
+ * healthcheck apis.
+ *
+ * Services are checked concurrently, with a bound on the checks in flight,
+ * by the checkers: the scheduler only queues the services due and never
+ * waits for them, and a service is not queued again while its check is
+ * still pending. Each service is checked on its own schedule: the interval of a service found working
+ * twice in a row is doubled, up to a maximum, while a service found faulty
+ * is probed again after the minimum interval. Intervals are jittered so that
+ * checks do not synchronize over time.
+ *
+ * In cooperative mode every service is checked by one node only, chosen by
+ * consistent hashing over the nodes known to cooperate, and the outcomes of
+ * a sweep are sent to the cloud as a single digest (HCD) which also tells
+ * the other nodes that this one is cooperating. Services not reported by
+ * their owner for a while are checked anyway, so that nothing goes unchecked
+ * when a node disappears.
+ */
 public class Healthchecker {
     private static final Logger log = LoggerFactory.getLogger(Healthchecker.class);
 
     public static final String SYSP_CHECK_PERIOD = "msnos.usvc.health.check.time";
+    public static final String SYSP_CHECK_PERIOD_MIN = "msnos.usvc.health.check.time.min";
+    public static final String SYSP_CHECK_PERIOD_MAX = "msnos.usvc.health.check.time.max";
+    public static final String SYSP_CHECK_CONCURRENCY = "msnos.usvc.health.check.concurrency";
     public static final String SYSP_ENQ_PERIOD = "msnos.usvc.health.enq.period";
+    public static final String SYSP_COOPERATIVE = "msnos.usvc.health.cooperative";
 
     public static final long CHECK_PERIOD = Long.getLong(SYSP_CHECK_PERIOD, 60000L);
+    public static final long CHECK_PERIOD_MIN = Long.getLong(SYSP_CHECK_PERIOD_MIN, Math.max(1L, CHECK_PERIOD / 4));
+    public static final long CHECK_PERIOD_MAX = Long.getLong(SYSP_CHECK_PERIOD_MAX, 4 * CHECK_PERIOD);
+    public static final int CHECK_CONCURRENCY = Integer.getInteger(SYSP_CHECK_CONCURRENCY, 16);
     public static final long ENQ_PERIOD = Long.getLong(SYSP_ENQ_PERIOD, 5 * CHECK_PERIOD);
+    public static final boolean COOPERATIVE = Boolean.getBoolean(SYSP_COOPERATIVE);
     public static final int TIMEOUT_CONN = HttpClientFactory.getHttpConnectTimeout();
     public static final int TIMEOUT_READ = HttpClientFactory.getHttpSocketTimeout();
 
+    private static final double JITTER = 0.1;
+    private static final long PEER_TIMEOUT = 3 * CHECK_PERIOD;
+    private static final long ORPHAN_TIMEOUT = 2 * CHECK_PERIOD_MAX;
+
     private final Microcloud microcloud;
     private final ScheduledExecutorService scheduler;
+    private final Executor checkers;
+    private final HttpClient client;
+    private final Semaphore inflight;
+    private final Queue<Check> pending;
+    private final Map<RemoteMicroservice, Status> statuses;
+    private final Histogram sweepDuration;
+    private final Random random;
+    private final boolean cooperative;
+    private final Map<Iden, Long> peers;
+
+    private long lastEnquiry;
 
     public Healthchecker(Microcloud microcloud, ScheduledExecutorService executorService) {
+        this(microcloud, executorService, ExecutorServices.newCachedDaemonThreadPool(), HttpClientFactory.sharedHttpClient());
+    }
+
+    public Healthchecker(Microcloud microcloud, ScheduledExecutorService executorService, Executor checkers, HttpClient client) {
+        this(microcloud, executorService, checkers, client, COOPERATIVE);
+    }
+
+    public Healthchecker(Microcloud microcloud, ScheduledExecutorService executorService, Executor checkers, HttpClient client, boolean cooperative) {
         this.microcloud = microcloud;
         this.scheduler = executorService;
+        this.checkers = checkers;
+        this.client = client;
+        this.inflight = new Semaphore(CHECK_CONCURRENCY);
+        this.pending = new ConcurrentLinkedQueue<Check>();
+        this.statuses = new ConcurrentHashMap<RemoteMicroservice, Status>();
+        this.sweepDuration = new Histogram();
+        this.random = new Random();
+        this.cooperative = cooperative;
+        this.peers = new ConcurrentHashMap<Iden, Long>();
     }
 
     public void start() {
@@ -45,37 +128,220 @@ public class Healthchecker {
                 healthCheckApis();
                 enquiryApis();
             }
-        }, CHECK_PERIOD, CHECK_PERIOD, TimeUnit.MILLISECONDS);
+        }, CHECK_PERIOD_MIN, CHECK_PERIOD_MIN, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The duration of each sweep over the services due for a check, in milliseconds
+     */
+    public Histogram sweepDuration() {
+        return sweepDuration;
+    }
+
+    /**
+     * The latency of the checks of a service, in milliseconds, or null if
+     * the service was never checked
+     */
+    public Histogram latency(RemoteMicroservice remote) {
+        final Status status = statuses.get(remote);
+        return status == null ? null : status.latency;
+    }
+
+    public boolean isCooperative() {
+        return cooperative;
+    }
+
+    /**
+     * Records a digest received from another node, which is then known to
+     * cooperate in checking the services
+     */
+    void onDigest(Iden from) {
+        if (cooperative && from.getType() == Iden.Type.AGT)
+            peers.put(from, SystemTime.asMillis());
+    }
+
+    /**
+     * The current checking interval of a service, in milliseconds
+     */
+    public long interval(RemoteMicroservice remote) {
+        final Status status = statuses.get(remote);
+        return status == null ? CHECK_PERIOD : status.interval;
     }
 
     private void healthCheckApis() {
-        for (RemoteMicroservice remote : microcloud.getMicroServices()) {
-            final long elapsed = SystemTime.asMillis() - remote.getLastChecked();
-            if (elapsed > 0 && elapsed < CHECK_PERIOD) {
+        final long start = SystemTime.asMillis();
+        final List<RemoteMicroservice> remotes = microcloud.getMicroServices();
+        statuses.keySet().retainAll(new HashSet<RemoteMicroservice>(remotes));
+
+        final Iden self = (cooperative ? self() : null);
+        final HealthcheckRing owners = (self == null ? null : owners(self, start));
+
+        final List<RemoteMicroservice> due = new ArrayList<RemoteMicroservice>();
+        for (RemoteMicroservice remote : remotes) {
+            final Status status = statusOf(remote);
+            if (status.checking || start < status.due)
+                continue;
+
+            if (owners != null && !self.equals(owners.ownerOf(remote.getAgent().getIden()))) {
+                final long reported = Math.max(remote.getLastChecked(), status.created);
+                if (start - reported < ORPHAN_TIMEOUT)
+                    continue;
+
+                log.debug("Checking microservice {} on behalf of its owner, not reported since {}", remote, reported);
+            }
+
+            final long elapsed = start - remote.getLastChecked();
+            if (remote.getLastChecked() > status.checked && elapsed > 0 && elapsed < status.interval) {
                 log.debug("Skipping check for microservice {}: recently reported checked", remote);
+                status.due = remote.getLastChecked() + jittered(status.interval);
                 continue;
             }
 
-            Boolean faulty = null;
-            for (RestApi rest : remote.getApis()) {
-                if (rest.getType() == Type.HEALTHCHECK) {
-                    if (isReportingHealthy(remote, rest)) {
-                        faulty = Boolean.FALSE;
-                        break;
-                    } else {
-                        faulty = Boolean.TRUE;
+            due.add(remote);
+        }
+
+        final Sweep sweep = new Sweep(self, start, due.size());
+        if (due.isEmpty()) {
+            sweep.complete();
+            return;
+        }
+
+        for (RemoteMicroservice remote : due)
+            pending.add(new Check(remote, statusOf(remote), sweep));
+
+        startCheckers();
+    }
+
+    // starts a checker per free slot while checks are pending: each one
+    // runs checks until none is left, then tries again after leaving its
+    // slot, so that a check queued meanwhile is never left behind
+    private void startCheckers() {
+        while (!pending.isEmpty() && inflight.tryAcquire()) {
+            try {
+                checkers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            Check check;
+                            while ((check = pending.poll()) != null)
+                                check.run();
+                        } finally {
+                            inflight.release();
+                        }
+
+                        startCheckers();
                     }
+                });
+            } catch (RejectedExecutionException ex) {
+                inflight.release();
+                Check check;
+                while ((check = pending.poll()) != null) {
+                    log.warn("Unable to schedule healthcheck of microservice {}", check.remote);
+                    check.skip();
+                }
+            }
+        }
+    }
+
+    // the local agent with the lowest uuid stands for this node
+    private Iden self() {
+        Iden self = null;
+        for (LocalAgent agent : microcloud.getCloud().getLocalAgents()) {
+            final UUID uuid = agent.getIden().getUUID();
+            if (self == null || uuid.compareTo(self.getUUID()) < 0)
+                self = agent.getIden();
+        }
+
+        return self;
+    }
+
+    private HealthcheckRing owners(Iden self, long now) {
+        final Set<Iden> nodes = new HashSet<Iden>();
+        nodes.add(self);
+        for (Map.Entry<Iden, Long> peer : peers.entrySet()) {
+            if (now - peer.getValue() < PEER_TIMEOUT)
+                nodes.add(peer.getKey());
+            else
+                peers.remove(peer.getKey());
+        }
+
+        return new HealthcheckRing(nodes);
+    }
+
+    private void sendDigest(Iden self, List<HealthDigestPayload.Entry> digest) {
+        final HealthDigestPayload payload;
+        synchronized (digest) {
+            payload = new HealthDigestPayload(digest);
+        }
+
+        try {
+            microcloud.send(new MessageBuilder(HCD, self, microcloud.getCloud().getIden()).with(payload).make());
+        } catch (MsnosException e) {
+            log.warn("Unable to send health digest message to the cloud", e);
+        }
+    }
+
+    private void healthCheck(RemoteMicroservice remote, List<HealthDigestPayload.Entry> digest) {
+        final Status status = statusOf(remote);
+        final long start = SystemTime.asMillis();
+
+        Boolean faulty = null;
+        for (RestApi rest : remote.getApis()) {
+            if (rest.getType() == Type.HEALTHCHECK) {
+                if (isReportingHealthy(remote, rest)) {
+                    faulty = Boolean.FALSE;
+                    break;
+                } else {
+                    faulty = Boolean.TRUE;
                 }
             }
+        }
+
+        final long now = SystemTime.asMillis();
+        if (faulty != null)
+            status.latency.update(now - start);
 
+        status.update(faulty, now);
+        if (digest == null)
             reporServiceStatus(remote, faulty);
+        else if (markServiceStatus(remote, faulty))
+            digest.add(new HealthDigestPayload.Entry(remote.getAgent().getIden(), !faulty));
+    }
+
+    private Status statusOf(RemoteMicroservice remote) {
+        Status status = statuses.get(remote);
+        if (status == null) {
+            status = new Status();
+            statuses.put(remote, status);
+        }
+
+        return status;
+    }
+
+    private long jittered(long interval) {
+        final double factor;
+        synchronized (random) {
+            factor = 1.0 + JITTER * (2 * random.nextDouble() - 1);
         }
+
+        return (long) (interval * factor);
     }
 
     private void reporServiceStatus(RemoteMicroservice remote, Boolean faulty) {
+        if (!markServiceStatus(remote, faulty))
+            return;
+
+        try {
+            microcloud.send(newHealthMessage(remote, !faulty));
+        } catch (MsnosException e) {
+            log.warn("Unable to send health status message to the cloud", e);
+        }
+    }
+
+    private boolean markServiceStatus(RemoteMicroservice remote, Boolean faulty) {
         if (faulty == null) {
             log.debug("Cannot healtheck microservice {}: no endpoints", remote);
-            return;
+            return false;
         }
 
         if (faulty == Boolean.TRUE) {
@@ -86,36 +352,26 @@ public class Healthchecker {
             remote.markWorking();
         }
 
-        try {
-            microcloud.send(newHealthMessage(remote, !faulty));
-        } catch (MsnosException e) {
-            log.warn("Unable to send health status message to the cloud", e);
-        }
+        return true;
     }
 
     private boolean isReportingHealthy(RemoteMicroservice remote, RestApi rest) {
         try {
-            HttpURLConnection connection = null;
+            final String url = rest.getUrl();
+            log.debug("Healtcheck running agains url {}...", url);
+
+            final HttpResponse response = client.execute(new HttpHead(url));
             try {
-                final URL url = new URL(rest.getUrl());
-                log.debug("Healtcheck running agains url {}...", url);
-               
-                connection = (HttpURLConnection) url.openConnection();
-                connection.setConnectTimeout(TIMEOUT_CONN);
-                connection.setReadTimeout(TIMEOUT_READ);
-                connection.setRequestMethod("HEAD");
-                int responseCode = connection.getResponseCode();
+                int responseCode = response.getStatusLine().getStatusCode();
                 final boolean working = responseCode == 200;
                 if (working) {
-                    log.debug("Remote microservice {} found working on healthcheck {}", remote);
+                    log.debug("Remote microservice {} found working on healthcheck {}", remote, url);
                     return true;
                 } else {
-                    log.debug("Remote microservice {} found faulty on healthcheck {} with status {}", remote, responseCode);
+                    log.debug("Remote microservice {} found faulty on healthcheck {} with status {}", remote, url, responseCode);
                 }
             } finally {
-                if (connection != null) {
-                    connection.disconnect();
-                }
+                EntityUtils.consumeQuietly(response.getEntity());
             }
         } catch (Throwable ex) {
             log.warn("Unrecoverable exception while accessing remote microservice {} at URL {}: {}", remote.getName(), rest.getUrl(), toString(ex));
@@ -132,6 +388,10 @@ public class Healthchecker {
 
     private void enquiryApis() {
         long now = SystemTime.asMillis();
+        if (now - lastEnquiry < CHECK_PERIOD)
+            return;
+
+        lastEnquiry = now;
         for (RemoteMicroservice remote : microcloud.getMicroServices()) {
             if (remote.isFaulty())
                 continue;
@@ -140,7 +400,7 @@ public class Healthchecker {
                 continue;
 
             try {
-                Message message = new MessageBuilder(ENQ, microcloud.getCloud(), remote.getAgent()).make();
+                Message message = new MessageBuilder(ENQ, microcloud.getCloud(), remote.getAgent()).with(new EnqPayload(remote.getVersion(), remote.getApis())).make();
                 microcloud.send(message);
             } catch (Exception ex) {
                 log.error("Unable to send an ENQ to remote agent " + remote.getAgent(), ex);
@@ -152,4 +412,83 @@ public class Healthchecker {
         return new MessageBuilder(HCK, microcloud.getCloud(), microcloud.getCloud()).with(new HealthcheckPayload(remote.getAgent(), working)).make();
     }
 
+    private class Check {
+        private final RemoteMicroservice remote;
+        private final Status status;
+        private final Sweep sweep;
+
+        Check(RemoteMicroservice remote, Status status, Sweep sweep) {
+            this.remote = remote;
+            this.status = status;
+            this.sweep = sweep;
+            status.checking = true;
+        }
+
+        void run() {
+            try {
+                healthCheck(remote, sweep.digest);
+            } finally {
+                skip();
+            }
+        }
+
+        void skip() {
+            status.checking = false;
+            sweep.done();
+        }
+    }
+
+    // completed by the last of its checks, wherever it runs
+    private class Sweep {
+        private final Iden self;
+        private final long start;
+        private final int size;
+        private final AtomicInteger remaining;
+        private final List<HealthDigestPayload.Entry> digest;
+
+        Sweep(Iden self, long start, int size) {
+            this.self = self;
+            this.start = start;
+            this.size = size;
+            this.remaining = new AtomicInteger(size);
+            this.digest = (self == null ? null : Collections.synchronizedList(new ArrayList<HealthDigestPayload.Entry>()));
+        }
+
+        void done() {
+            if (remaining.decrementAndGet() == 0)
+                complete();
+        }
+
+        void complete() {
+            if (digest != null)
+                sendDigest(self, digest);
+
+            final long elapsed = SystemTime.asMillis() - start;
+            sweepDuration.update(elapsed);
+            log.debug("Healthcheck sweep of {} microservices completed in {} ms", size, elapsed);
+        }
+    }
+
+    private class Status {
+        private final Histogram latency = new Histogram();
+        private final long created = SystemTime.asMillis();
+        private volatile long interval = CHECK_PERIOD;
+        private volatile long checked;
+        private volatile long due;
+        private volatile boolean checking;
+        private Boolean faulty;
+
+        void update(Boolean nowFaulty, long now) {
+            if (nowFaulty == Boolean.TRUE)
+                interval = CHECK_PERIOD_MIN;
+            else if (nowFaulty == Boolean.FALSE && faulty == Boolean.FALSE)
+                interval = Math.min(interval * 2, CHECK_PERIOD_MAX);
+            else
+                interval = CHECK_PERIOD;
+
+            faulty = nowFaulty;
+            checked = now;
+            due = now + jittered(interval);
+        }
+    }
 }
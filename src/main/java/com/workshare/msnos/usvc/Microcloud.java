@@ -4,7 +4,10 @@ package com.workshare.msnos.usvc;
 import static com.workshare.msnos.core.Message.Type.PRS;
 import static com.workshare.msnos.core.Message.Type.QNE;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -30,14 +33,19 @@ import com.workshare.msnos.core.MsnosException;
 import com.workshare.msnos.core.PassiveAgent;
 import com.workshare.msnos.core.Receipt;
 import com.workshare.msnos.core.RemoteAgent;
+import com.workshare.msnos.core.payloads.EnqPayload;
 import com.workshare.msnos.core.payloads.FltPayload;
+import com.workshare.msnos.core.payloads.HealthDigestPayload;
 import com.workshare.msnos.core.payloads.HealthcheckPayload;
 import com.workshare.msnos.core.payloads.Presence;
 import com.workshare.msnos.core.payloads.QnePayload;
 import com.workshare.msnos.core.protocols.ip.Endpoint;
 import com.workshare.msnos.core.protocols.ip.HttpEndpoint;
+import com.workshare.msnos.core.protocols.ip.http.HttpGateway;
 import com.workshare.msnos.soup.json.Json;
 import com.workshare.msnos.soup.threading.ExecutorServices;
+import com.workshare.msnos.soup.threading.Multicaster;
+import com.workshare.msnos.usvc.api.CircuitBreaker;
 import com.workshare.msnos.usvc.api.RestApi;
 import com.workshare.msnos.usvc.api.RestApi.Type;
 import com.workshare.msnos.usvc.api.routing.ApiRepository;
@@ -56,6 +64,8 @@ public class Microcloud {
     private final Cloud cloud;
     private final Map<UUID, Iden> enquiries;
     private final ScheduledExecutorService executor;
+    private final Healthchecker healthchecker;
+    private final Multicaster<CircuitBreaker.Listener, CircuitBreaker.Event> circuits;
 
     public Microcloud(Cloud cloud) {
         this(cloud, DEFAULT_EXECUTOR);
@@ -76,13 +86,25 @@ public class Microcloud {
 
         remoteServices = new ConcurrentHashMap<Iden, RemoteMicroservice>();
         passiveServices = new ConcurrentHashMap<UUID, PassiveService>();
-        apis = new ApiRepository();
+        circuits = new Multicaster<CircuitBreaker.Listener, CircuitBreaker.Event>() {
+            @Override
+            protected void dispatch(CircuitBreaker.Listener listener, CircuitBreaker.Event event) {
+                listener.onStateChange(event);
+            }
+        };
+        apis = new ApiRepository(new CircuitBreaker.Listener() {
+            @Override
+            public void onStateChange(CircuitBreaker.Event event) {
+                log.info("Changed {}", event);
+                circuits.dispatch(event);
+            }
+        });
 
         this.executor = executor;
         this.enquiries = ExpiringMap.builder().expiration(ENQUIRY_EXPIRE, TimeUnit.SECONDS).build();
 
-        Healthchecker healthcheck = new Healthchecker(this, executor);
-        healthcheck.start();
+        healthchecker = new Healthchecker(this, executor);
+        healthchecker.start();
     }
 
     public Receipt send(Message message) throws MsnosException {
@@ -93,6 +115,16 @@ public class Microcloud {
         cloud.process(message, endpoint.toString());
     }
 
+    /**
+     * Processes a batch of messages, as received on an HTTP endpoint when the
+     * request carries the {@link HttpGateway#HEADER_BATCH} header
+     *
+     * @return the number of messages processed
+     */
+    public int process(Reader batch, Endpoint.Type endpoint) throws IOException {
+        return cloud.process(batch, endpoint.toString());
+    }
+
     public Listener addListener(Listener listener) {
         return cloud.addListener(listener);
     }
@@ -101,6 +133,18 @@ public class Microcloud {
         cloud.removeListener(listener);
     }
 
+    /**
+     * Adds a listener notified, asynchronously, when the circuit of any of
+     * the remote apis changes state
+     */
+    public CircuitBreaker.Listener addCircuitListener(CircuitBreaker.Listener listener) {
+        return circuits.addListener(listener);
+    }
+
+    public void removeCircuitListener(CircuitBreaker.Listener listener) {
+        circuits.removeListener(listener);
+    }
+
     public Cloud getCloud() {
         return cloud;
     }
@@ -121,6 +165,14 @@ public class Microcloud {
         return getApis().searchApi(microservice, path);
     }
 
+    public RestApi searchApi(IMicroservice microservice, String path, String session) {
+        return getApis().searchApi(microservice, path, session);
+    }
+
+    public RestApi searchApiByKey(IMicroservice microservice, String path, String key) {
+        return getApis().searchApiByKey(microservice, path, key);
+    }
+
     public RestApi searchApiById(long id) {
         return getApis().searchApiById(id);
     }
@@ -161,6 +213,9 @@ public class Microcloud {
             case HCK:
                 processHealthcheck(message);
                 break;
+            case HCD:
+                processHealthDigest(message);
+                break;
             default:
                 break;
         }
@@ -194,7 +249,21 @@ public class Microcloud {
 
     private void processHealthcheck(Message message) {
         final HealthcheckPayload payload = ((HealthcheckPayload) message.getData());
-        final Iden iden = payload.getIden();
+        processHealthcheck(payload.getIden(), payload.isWorking());
+    }
+
+    private void processHealthDigest(Message message) {
+        final HealthDigestPayload payload = ((HealthDigestPayload) message.getData());
+        if (payload == null)
+            return;
+
+        if (healthchecker != null)
+            healthchecker.onDigest(message.getFrom());
+        for (HealthDigestPayload.Entry entry : payload.getEntries())
+            processHealthcheck(entry.getIden(), entry.isWorking());
+    }
+
+    private void processHealthcheck(final Iden iden, final boolean working) {
         final RemoteMicroservice remote = remoteServices.get(iden);
         if (remote == null) {
             if (!cloud.containsAgent(iden) && !passiveServices.containsKey(iden)) {
@@ -203,7 +272,7 @@ public class Microcloud {
             return;
         }
 
-        if (payload.isWorking()) {
+        if (working) {
             log.debug("Marking remote {} as working after cloud message received", remote.getName());
             remote.markWorking();
         } else {
@@ -218,7 +287,9 @@ public class Microcloud {
         final Iden iden = message.getFrom();
         RemoteAgent remoteAgent = cloud.find(iden);
 
-        if (remoteAgent != null) {
+        if (remoteAgent != null && qnePayload.isVersioned()) {
+            processVersionedQNE(remoteAgent, qnePayload);
+        } else if (remoteAgent != null) {
             RemoteMicroservice remote;
             Iden remoteKey = remoteAgent.getIden();
 
@@ -236,6 +307,68 @@ public class Microcloud {
         }
     }
 
+    // deltas are applied only in sequence, and again at the same version as
+    // that is harmless; on a gap the whole catalog is asked for again
+    private void processVersionedQNE(RemoteAgent remoteAgent, QnePayload qnePayload) throws MsnosException {
+        final Iden remoteKey = remoteAgent.getIden();
+        final long version = qnePayload.getVersion();
+        final Set<RestApi> added = RestApi.ensureHostIsPresent(remoteAgent, qnePayload.getApis());
+
+        RemoteMicroservice remote = remoteServices.get(remoteKey);
+        final Set<RestApi> removed;
+        if (qnePayload.isDelta()) {
+            if (remote == null || version > remote.getVersion() + 1) {
+                log.debug("Gap in api catalog of {} at version {}, asking for all", remoteKey, version);
+                send(new MessageBuilder(Message.Type.ENQ, cloud, remoteKey).with(remote == null ? new EnqPayload(0L) : new EnqPayload(remote.getVersion(), remote.getApis())).make());
+                return;
+            }
+
+            if (version < remote.getVersion()) {
+                remote.touch();
+                return;
+            }
+
+            removed = remote.updateApis(version, added, qnePayload.getRemoved());
+        } else if (remote == null) {
+            remote = new RemoteMicroservice(qnePayload.getName(), remoteAgent, added);
+            remote.updateApis(version, added, Collections.<RestApi>emptySet());
+            remoteServices.put(remoteKey, remote);
+            removed = Collections.emptySet();
+        } else if (version > remote.getVersion()) {
+            removed = remote.replaceApis(version, added);
+        } else {
+            removed = remote.updateApis(version, added, Collections.<RestApi>emptySet());
+        }
+
+        if (!removed.isEmpty()) {
+            apis.unregister(remote, removed);
+            unregisterRemoteMsnosEndpoints(remote, removed);
+        }
+
+        if (!added.isEmpty()) {
+            registerRemoteMsnosEndpoints(remote);
+            apis.register(remote, instancesOf(remote, added));
+        }
+    }
+
+    private Set<RestApi> instancesOf(RemoteMicroservice remote, Set<RestApi> apis) {
+        final Set<RestApi> result = new HashSet<RestApi>();
+        for (RestApi api : remote.getApis()) {
+            if (apis.contains(api))
+                result.add(api);
+        }
+
+        return result;
+    }
+
+    private void unregisterRemoteMsnosEndpoints(RemoteMicroservice remote, Set<RestApi> removed) throws MsnosException {
+        for (RestApi restApi : removed) {
+            if (restApi.getType() == RestApi.Type.MSNOS_HTTP) {
+                cloud.unregisterRemoteMsnosEndpoint(new HttpEndpoint(remote, restApi));
+            }
+        }
+    }
+
     private void registerRemoteMsnosEndpoints(RemoteMicroservice remote) throws MsnosException {
         Set<RestApi> remoteApis = remote.getApis();
         for (RestApi restApi : remoteApis) {
@@ -268,15 +401,23 @@ public class Microcloud {
         return remoteServices.get(iden);
     }
 
-    void publish(Microservice microservice, RestApi... apis) throws MsnosException {
+    void publish(Microservice microservice, long version, RestApi... apis) throws MsnosException {
         LocalAgent agent = microservice.getAgent();
 
-        Message message = new MessageBuilder(QNE, agent, cloud).with(new QnePayload(microservice.getName(), apis)).make();
+        final Set<RestApi> added = new HashSet<RestApi>(Arrays.asList(apis));
+        Message message = new MessageBuilder(QNE, agent, cloud).with(QnePayload.delta(microservice.getName(), version, added, Collections.<RestApi>emptySet())).make();
         cloud.send(message);
 
         handleMsnosApis(microservice, apis);
     }
 
+    void unpublish(Microservice microservice, long version, Set<RestApi> removed) throws MsnosException {
+        LocalAgent agent = microservice.getAgent();
+
+        Message message = new MessageBuilder(QNE, agent, cloud).with(QnePayload.delta(microservice.getName(), version, Collections.<RestApi>emptySet(), removed)).make();
+        cloud.send(message);
+    }
+
     private void handleMsnosApis(Microservice microservice, RestApi... apis) throws MsnosException {
         Set<RestApi> msnosApis = new HashSet<RestApi>();
         for (RestApi api : apis) {
@@ -1,12 +1,14 @@
 package com.workshare.msnos.usvc;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +21,7 @@ import com.workshare.msnos.core.Message;
 import com.workshare.msnos.core.MessageBuilder;
 import com.workshare.msnos.core.MsnosException;
 import com.workshare.msnos.core.geo.Location;
+import com.workshare.msnos.core.payloads.EnqPayload;
 import com.workshare.msnos.core.payloads.QnePayload;
 import com.workshare.msnos.core.protocols.ip.AddressResolver;
 import com.workshare.msnos.core.protocols.ip.BaseEndpoint;
@@ -27,6 +30,7 @@ import com.workshare.msnos.core.protocols.ip.Endpoint.Type;
 import com.workshare.msnos.core.protocols.ip.Network;
 import com.workshare.msnos.soup.json.Json;
 import com.workshare.msnos.soup.threading.ExecutorServices;
+import com.workshare.msnos.soup.time.SystemTime;
 import com.workshare.msnos.usvc.api.RestApi;
 import com.workshare.msnos.usvc.api.routing.strategies.PriorityRoutingStrategy;
 
@@ -40,6 +44,7 @@ public class Microservice implements IMicroservice {
     private final LocalAgent agent;
     private final Location location;
     private final List<RestApi> localApis;
+    private final AtomicLong version;
     transient private final Listener listener;
 
     transient private Microcloud cloud;
@@ -57,6 +62,8 @@ public class Microservice implements IMicroservice {
         this.agent = agent;
         this.location = computeLocation(agent);
         this.localApis = new CopyOnWriteArrayList<RestApi>();
+        // seeded with the clock, so that a restarted microservice never goes back
+        this.version = new AtomicLong(SystemTime.asMillis());
 
         this.listener = new Cloud.Listener() {
             @Override
@@ -119,14 +126,53 @@ public class Microservice implements IMicroservice {
         return cloud.searchApi(this, path);
     }
 
+    public RestApi searchApi(String path, String session) {
+        return cloud.searchApi(this, path, session);
+    }
+
+    public RestApi searchApiByKey(String path, String key) {
+        return cloud.searchApiByKey(this, path, key);
+    }
+
     public List<RestApi> getLocalApis() {
         return localApis;
     }
 
     public void publish(RestApi... apis) throws MsnosException {
         final RestApi[] all = enforcePriorityIfRequired(apis);
-        localApis.addAll(Arrays.asList(all));
-        cloud.publish(this, all);
+        final long current;
+        synchronized (localApis) {
+            localApis.addAll(Arrays.asList(all));
+            current = version.incrementAndGet();
+        }
+
+        cloud.publish(this, current, all);
+    }
+
+    public void unpublish(RestApi... apis) throws MsnosException {
+        final Set<RestApi> removed = new HashSet<RestApi>();
+        final long current;
+        synchronized (localApis) {
+            for (RestApi api : apis) {
+                if (localApis.remove(api))
+                    removed.add(api);
+            }
+
+            if (removed.isEmpty())
+                return;
+
+            current = version.incrementAndGet();
+        }
+
+        cloud.unpublish(this, current, removed);
+    }
+
+    /**
+     * The version of the api catalog of this microservice, increased on
+     * every publish or unpublish
+     */
+    public long getVersion() {
+        return version.get();
     }
 
     public void join(final Microcloud cumulus) throws MsnosException {
@@ -154,13 +200,26 @@ public class Microservice implements IMicroservice {
     private void process(Message message) throws MsnosException {
         if (!message.getFrom().equals(agent.getIden())) {
             if (message.getType() == Message.Type.ENQ) {
-                processENQ();
+                processENQ(message);
             }
         }
     }
 
-    private void processENQ() throws MsnosException {
-        Message message = new MessageBuilder(Message.Type.QNE, agent, cloud.getCloud()).with(new QnePayload(name, new HashSet<RestApi>(getLocalApis()))).make();
+    // when the enquirer proves to know the whole current catalog an empty
+    // delta is enough to confirm it, otherwise the whole catalog is sent
+    private void processENQ(Message enquiry) throws MsnosException {
+        final EnqPayload known = (enquiry.getData() instanceof EnqPayload) ? (EnqPayload) enquiry.getData() : null;
+
+        final QnePayload payload;
+        synchronized (localApis) {
+            final long current = version.get();
+            if (known != null && known.knows(current, localApis))
+                payload = QnePayload.delta(name, current, Collections.<RestApi>emptySet(), Collections.<RestApi>emptySet());
+            else
+                payload = QnePayload.full(name, current, new HashSet<RestApi>(getLocalApis()));
+        }
+
+        Message message = new MessageBuilder(Message.Type.QNE, agent, cloud.getCloud()).with(payload).make();
         agent.send(message);
     }
 
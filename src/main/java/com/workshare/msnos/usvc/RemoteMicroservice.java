@@ -7,6 +7,7 @@ import com.workshare.msnos.soup.time.SystemTime;
 import com.workshare.msnos.usvc.api.RestApi;
 
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -20,6 +21,7 @@ public class RemoteMicroservice implements IMicroservice {
     private final AtomicBoolean faulty;
     private final AtomicLong lastUpdated;
     private final AtomicLong lastChecked;
+    private final AtomicLong version;
 
     private Location location;
     
@@ -30,6 +32,7 @@ public class RemoteMicroservice implements IMicroservice {
         this.faulty = new AtomicBoolean(false);
         this.lastUpdated = new AtomicLong(SystemTime.asMillis());
         this.lastChecked = new AtomicLong(SystemTime.asMillis());
+        this.version = new AtomicLong(0L);
         this.location = Location.computeMostPreciseLocation(agent.getEndpoints());
         
         final Ring ring = agent.getRing();
@@ -46,6 +49,56 @@ public class RemoteMicroservice implements IMicroservice {
         }
     }
 
+    /**
+     * Applies a change to the api catalog of this microservice, moving it to
+     * the given version (but never back)
+     *
+     * @return the apis actually removed
+     */
+    protected Set<RestApi> updateApis(long newVersion, Set<RestApi> added, Set<RestApi> removed) {
+        lastUpdated.set(SystemTime.asMillis());
+        final Set<RestApi> gone = new HashSet<RestApi>();
+        synchronized (apis) {
+            for (RestApi api : RestApi.ensureHostIsPresent(agent, removed)) {
+                if (apis.remove(api))
+                    gone.add(api);
+            }
+
+            apis.addAll(RestApi.ensureHostIsPresent(agent, added));
+            if (newVersion > version.get())
+                version.set(newVersion);
+        }
+
+        return gone;
+    }
+
+    /**
+     * Replaces the api catalog of this microservice with the one at the given version
+     *
+     * @return the apis removed
+     */
+    protected Set<RestApi> replaceApis(long newVersion, Set<RestApi> restApis) {
+        final Set<RestApi> current = RestApi.ensureHostIsPresent(agent, restApis);
+        final Set<RestApi> removed;
+        synchronized (apis) {
+            removed = new HashSet<RestApi>(apis);
+            removed.removeAll(current);
+        }
+
+        return updateApis(newVersion, current, removed);
+    }
+
+    protected void touch() {
+        lastUpdated.set(SystemTime.asMillis());
+    }
+
+    /**
+     * The version of the api catalog, zero if unknown
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
     @Override
     public String getName() {
         return name;
@@ -0,0 +1,267 @@
+package com.workshare.msnos.usvc.api;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.workshare.msnos.soup.time.SystemTime;
+
+/**
+ * A circuit breaker for the calls to an api, fed by the feedback methods of
+ * the api itself. The circuit opens when the rate of errors over a sliding
+ * window goes beyond a threshold; after a while it becomes half open, and
+ * lets a limited number of trial calls through, counted as the api gets
+ * selected: it closes again if they all succeed or the api is found working
+ * by a healthcheck, it opens again as soon as one fails.
+ *
+ * Checking the state is lock free: only recording an outcome while closed
+ * locks, to update the window. A closed circuit is checked without reading
+ * the clock.
+ */
+public class CircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public static final String SYSP_WINDOW = "msnos.usvc.api.circuit.window";
+    public static final String SYSP_THRESHOLD = "msnos.usvc.api.circuit.threshold";
+    public static final String SYSP_MIN_CALLS = "msnos.usvc.api.circuit.min.calls";
+    public static final String SYSP_OPEN_TIME = "msnos.usvc.api.circuit.open.time";
+    public static final String SYSP_TRIALS = "msnos.usvc.api.circuit.trials";
+
+    private static final int BUCKETS = 10;
+
+    private static final long WINDOW = Long.getLong(SYSP_WINDOW, 10000L);
+    private static final int THRESHOLD = Integer.getInteger(SYSP_THRESHOLD, 50);
+    private static final int MIN_CALLS = Integer.getInteger(SYSP_MIN_CALLS, 10);
+    private static final long OPEN_TIME = Long.getLong(SYSP_OPEN_TIME, 5000L);
+    private static final int TRIALS = Integer.getInteger(SYSP_TRIALS, 3);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    public static interface Listener {
+        public void onStateChange(Event event);
+    }
+
+    public static class Event {
+        private final RestApi api;
+        private final State from;
+        private final State to;
+
+        public Event(RestApi api, State from, State to) {
+            this.api = api;
+            this.from = from;
+            this.to = to;
+        }
+
+        public RestApi getApi() {
+            return api;
+        }
+
+        public State getFrom() {
+            return from;
+        }
+
+        public State getTo() {
+            return to;
+        }
+
+        @Override
+        public String toString() {
+            return "circuit of " + api.getUrl() + " from " + from + " to " + to;
+        }
+    }
+
+    private final RestApi api;
+    private final AtomicReference<State> state;
+    private final AtomicInteger trials;
+    private final AtomicInteger trialSuccesses;
+
+    private final long bucketSize;
+    private final long[] bucketStarts;
+    private final int[] successes;
+    private final int[] failures;
+
+    private volatile long stateSince;
+    private volatile Listener listener;
+    private final List<Listener> watchers;
+
+    CircuitBreaker(RestApi api) {
+        this.api = api;
+        this.state = new AtomicReference<State>(State.CLOSED);
+        this.trials = new AtomicInteger();
+        this.trialSuccesses = new AtomicInteger();
+
+        this.bucketSize = Math.max(1, WINDOW / BUCKETS);
+        this.bucketStarts = new long[BUCKETS];
+        this.successes = new int[BUCKETS];
+        this.failures = new int[BUCKETS];
+
+        this.stateSince = SystemTime.asMillis();
+        this.watchers = new CopyOnWriteArrayList<Listener>();
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Adds a listener notified of the changes besides the one set, i.e. by
+     * the structures tracking the circuits of their apis
+     */
+    public void addListener(Listener watcher) {
+        watchers.add(watcher);
+    }
+
+    public void removeListener(Listener watcher) {
+        watchers.remove(watcher);
+    }
+
+    public State getState() {
+        final State current = state.get();
+        final long now = SystemTime.asMillis();
+        if (current == State.OPEN) {
+            if (now - stateSince >= OPEN_TIME) {
+                trials.set(TRIALS);
+                trialSuccesses.set(0);
+                transition(State.OPEN, State.HALF_OPEN, now);
+                return state.get();
+            }
+        } else if (current == State.HALF_OPEN) {
+            // the outcome of the trials was never reported, time for new ones
+            if (trials.get() <= 0 && now - stateSince >= OPEN_TIME) {
+                stateSince = now;
+                trialSuccesses.set(0);
+                trials.set(TRIALS);
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * Returns true when the calls should not be sent to the api: either the
+     * circuit is open or it's half open and all the trial calls are running
+     */
+    public boolean isOpen() {
+        if (isClosed())
+            return false;
+
+        final State current = getState();
+        return current == State.OPEN || (current == State.HALF_OPEN && trials.get() <= 0);
+    }
+
+    public boolean isClosed() {
+        return state.get() == State.CLOSED;
+    }
+
+    void onSelected() {
+        if (getState() == State.HALF_OPEN)
+            trials.decrementAndGet();
+    }
+
+    void onWorking() {
+        if (getState() == State.HALF_OPEN) {
+            resetWindow();
+            transition(State.HALF_OPEN, State.CLOSED, SystemTime.asMillis());
+        }
+    }
+
+    void onSuccess() {
+        final State current = getState();
+        if (current == State.HALF_OPEN) {
+            if (trialSuccesses.incrementAndGet() >= TRIALS) {
+                resetWindow();
+                transition(State.HALF_OPEN, State.CLOSED, SystemTime.asMillis());
+            }
+        } else if (current == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    void onFailure() {
+        final State current = getState();
+        if (current == State.HALF_OPEN) {
+            transition(State.HALF_OPEN, State.OPEN, SystemTime.asMillis());
+        } else if (current == State.CLOSED && record(true)) {
+            transition(State.CLOSED, State.OPEN, SystemTime.asMillis());
+        }
+    }
+
+    // returns true if the circuit should open
+    private synchronized boolean record(boolean failure) {
+        final long now = SystemTime.asMillis();
+        final long start = now - now % bucketSize;
+        final int index = (int) ((now / bucketSize) % BUCKETS);
+        if (bucketStarts[index] != start) {
+            bucketStarts[index] = start;
+            successes[index] = 0;
+            failures[index] = 0;
+        }
+
+        if (failure)
+            failures[index]++;
+        else
+            successes[index]++;
+
+        if (!failure)
+            return false;
+
+        int total = 0;
+        int failed = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (now - bucketStarts[i] < WINDOW) {
+                total += successes[i] + failures[i];
+                failed += failures[i];
+            }
+        }
+
+        return total >= MIN_CALLS && failed * 100 >= THRESHOLD * total;
+    }
+
+    private synchronized void resetWindow() {
+        for (int i = 0; i < BUCKETS; i++) {
+            bucketStarts[i] = 0;
+            successes[i] = 0;
+            failures[i] = 0;
+        }
+    }
+
+    // the time is set first so that nobody sees the new state with the old time
+    private void transition(State from, State to, long now) {
+        if (state.get() != from)
+            return;
+
+        stateSince = now;
+        if (!state.compareAndSet(from, to))
+            return;
+
+        final Event event = new Event(api, from, to);
+        log.debug("Changed {}", event);
+
+        final Listener current = listener;
+        if (current != null)
+            notify(current, event);
+
+        for (Listener watcher : watchers)
+            notify(watcher, event);
+    }
+
+    private void notify(Listener target, Event event) {
+        try {
+            target.onStateChange(event);
+        } catch (Throwable any) {
+            log.warn("Unexpected error notifying " + event, any);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getState().toString();
+    }
+}
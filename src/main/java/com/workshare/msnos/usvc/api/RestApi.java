@@ -2,6 +2,7 @@ package com.workshare.msnos.usvc.api;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -14,6 +15,7 @@ import com.workshare.msnos.core.Agent;
 import com.workshare.msnos.core.protocols.ip.Endpoint;
 import com.workshare.msnos.core.protocols.ip.Network;
 import com.workshare.msnos.soup.json.Json;
+import com.workshare.msnos.soup.metrics.Ewma;
 
 public class RestApi {
 
@@ -30,6 +32,12 @@ public class RestApi {
         MSNOS_HTTP
     }
 
+    public static final String SYSP_LATENCY_DECAY = "msnos.usvc.api.latency.decay";
+    public static final String SYSP_FAILURE_PENALTY = "msnos.usvc.api.failure.penalty";
+
+    private static final long LATENCY_DECAY = Long.getLong(SYSP_LATENCY_DECAY, 10000L);
+    private static final long FAILURE_PENALTY = Long.getLong(SYSP_FAILURE_PENALTY, 1000L);
+
     private static final AtomicLong NEXT_ID = new AtomicLong(0);
 
     private final transient long id;
@@ -44,6 +52,10 @@ public class RestApi {
     private final AtomicInteger tempFaults;
     private boolean faulty;
 
+    private final transient AtomicInteger inFlight;
+    private final transient Ewma latency;
+    private final transient CircuitBreaker circuit;
+
     public RestApi(String path, int port) {
         this(path, port, null);
     }
@@ -69,6 +81,9 @@ public class RestApi {
         this.priority = priority;
         this.id = NEXT_ID.getAndIncrement();
         tempFaults = new AtomicInteger();
+        inFlight = new AtomicInteger();
+        latency = new Ewma(LATENCY_DECAY, TimeUnit.MILLISECONDS);
+        circuit = new CircuitBreaker(this);
     }
 
     public RestApi asHealthCheck() {
@@ -115,10 +130,12 @@ public class RestApi {
     public void markWorking() {
         tempFaults.set(0);
         faulty = false;
+        circuit.onWorking();
     }
 
     public RestApi markTempFault() {
         tempFaults.incrementAndGet();
+        circuit.onFailure();
         return this;
     }
 
@@ -126,6 +143,92 @@ public class RestApi {
         return tempFaults.get();
     }
 
+    /**
+     * Marks this api as selected for a call: while the circuit is half open
+     * the call counts as one of the trials
+     */
+    public RestApi markSelected() {
+        circuit.onSelected();
+        return this;
+    }
+
+    /**
+     * Marks the start of a call to this api, to be followed by either
+     * markCompleted or markFailed when the call is over
+     */
+    public RestApi markStarted() {
+        inFlight.incrementAndGet();
+        return this;
+    }
+
+    public RestApi markCompleted(long elapsed, TimeUnit unit) {
+        finished();
+        latency.update(millis(elapsed, unit));
+        circuit.onSuccess();
+        return this;
+    }
+
+    /**
+     * Marks a failed call, counting as a temporary fault and as a call that
+     * took at least the failure penalty, so that the api is avoided for a
+     * while by latency aware routing
+     */
+    public RestApi markFailed(long elapsed, TimeUnit unit) {
+        finished();
+        latency.update(Math.max(millis(elapsed, unit), FAILURE_PENALTY));
+        return markTempFault();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Returns the moving average of the latency of the calls, in milliseconds
+     */
+    public double getLatency() {
+        return latency.value();
+    }
+
+    public CircuitBreaker getCircuit() {
+        return circuit;
+    }
+
+    public void setCircuitListener(CircuitBreaker.Listener listener) {
+        circuit.setListener(listener);
+    }
+
+    public void addCircuitListener(CircuitBreaker.Listener listener) {
+        circuit.addListener(listener);
+    }
+
+    public void removeCircuitListener(CircuitBreaker.Listener listener) {
+        circuit.removeListener(listener);
+    }
+
+    /**
+     * Returns true when the circuit of the api does not let calls through
+     */
+    public boolean isCircuitOpen() {
+        return circuit.isOpen();
+    }
+
+    public boolean isCircuitClosed() {
+        return circuit.isClosed();
+    }
+
+    private void finished() {
+        int current;
+        while ((current = inFlight.get()) > 0) {
+            if (inFlight.compareAndSet(current, current - 1))
+                break;
+        }
+    }
+
+    private static double millis(long elapsed, TimeUnit unit) {
+        return unit.toNanos(elapsed) / 1000000.0;
+    }
+
     public int getPriority() {
         return priority;
     }
@@ -186,7 +289,7 @@ public class RestApi {
         if (sticky != restApi.sticky) return false;
         if (!path.equals(restApi.path)) return false;
         if (type != restApi.type) return false;
-        if (!host.equals(restApi.host)) return false;
+        if (host != null ? !host.equals(restApi.host) : restApi.host != null) return false;
 
         return true;
     }
@@ -0,0 +1,270 @@
+package com.workshare.msnos.usvc.api.routing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.workshare.msnos.soup.metrics.Meter;
+import com.workshare.msnos.soup.time.SystemTime;
+import com.workshare.msnos.usvc.IMicroservice;
+import com.workshare.msnos.usvc.api.RestApi;
+
+/**
+ * Remembers which api was selected for each caller, where the caller is a
+ * microservice and optionally a session, so that sticky apis keep serving
+ * the same callers. The table is bounded and split in stripes, each one
+ * evicting its least recently used entry when full; entries also expire
+ * when not used for a while. Lookups take no lock.
+ *
+ * When an api joins, the entries pinned to the apis serving more than their
+ * fair share are dropped, least recently used first within each stripe, so
+ * that the callers spread again over all the apis
+ */
+public class AffinityTable {
+
+    public static final String SYSP_MAX_SIZE = "msnos.usvc.api.affinity.max";
+    public static final String SYSP_TTL = "msnos.usvc.api.affinity.ttl";
+
+    private static final int STRIPES = 16;
+
+    private final Stripe[] stripes;
+    private final long ttl;
+
+    private final Meter hits = new Meter();
+    private final Meter misses = new Meter();
+    private final Meter evictions = new Meter();
+
+    public AffinityTable() {
+        this(Integer.getInteger(SYSP_MAX_SIZE, 10000), Long.getLong(SYSP_TTL, 30 * 60 * 1000L));
+    }
+
+    public AffinityTable(int maxSize, long ttlMillis) {
+        final int stripeSize = Math.max(1, (maxSize + STRIPES - 1) / STRIPES);
+        this.stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new Stripe(stripeSize);
+        this.ttl = ttlMillis;
+    }
+
+    public RestApi get(IMicroservice from, String session) {
+        final Key key = new Key(from, session);
+        final RestApi api = stripeOf(key).get(key, SystemTime.asMillis());
+        if (api == null)
+            misses.mark();
+        else
+            hits.mark();
+
+        return api;
+    }
+
+    public void put(IMicroservice from, String session, RestApi api) {
+        final Key key = new Key(from, session);
+        stripeOf(key).put(key, new Pin(api, SystemTime.asMillis()));
+    }
+
+    public void remove(IMicroservice from, String session) {
+        final Key key = new Key(from, session);
+        stripeOf(key).remove(key);
+    }
+
+    /**
+     * Forgets all the callers pinned to the api
+     */
+    public void remove(RestApi api) {
+        for (Stripe stripe : stripes)
+            stripe.removeAll(api);
+    }
+
+    /**
+     * Drops the entries exceeding the fair share of each api, now that the
+     * apis are the given number
+     */
+    public void rebalance(int apisCount) {
+        if (apisCount <= 1)
+            return;
+
+        final Map<RestApi, Integer> counts = new HashMap<RestApi, Integer>();
+        int total = 0;
+        for (Stripe stripe : stripes)
+            total += stripe.count(counts);
+
+        final int fair = (total + apisCount - 1) / apisCount;
+        for (Stripe stripe : stripes)
+            stripe.trim(counts, fair);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes)
+            size += stripe.size();
+        return size;
+    }
+
+    public long hits() {
+        return hits.count();
+    }
+
+    public long misses() {
+        return misses.count();
+    }
+
+    public long evictions() {
+        return evictions.count();
+    }
+
+    @Override
+    public String toString() {
+        return "size=" + size() + ", hits=" + hits() + ", misses=" + misses() + ", evictions=" + evictions();
+    }
+
+    private Stripe stripeOf(Key key) {
+        final int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    // reads are lock free, as they happen on every selection: the time of
+    // use is just stamped on the entry, and writes, rare, are serialized
+    // to keep the stripe within its size
+    private class Stripe {
+        private final ConcurrentMap<Key, Pin> entries;
+        private final int maxSize;
+
+        Stripe(int maxSize) {
+            this.entries = new ConcurrentHashMap<Key, Pin>();
+            this.maxSize = maxSize;
+        }
+
+        RestApi get(Key key, long now) {
+            final Pin entry = entries.get(key);
+            if (entry == null)
+                return null;
+
+            if (now - entry.used > ttl) {
+                if (entries.remove(key, entry))
+                    evictions.mark();
+                return null;
+            }
+
+            entry.touch(now);
+            return entry.api;
+        }
+
+        synchronized void put(Key key, Pin entry) {
+            if (entries.put(key, entry) == null && entries.size() > maxSize)
+                evictEldest();
+        }
+
+        void remove(Key key) {
+            entries.remove(key);
+        }
+
+        void removeAll(RestApi api) {
+            final Iterator<Pin> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().api == api)
+                    iterator.remove();
+            }
+        }
+
+        int count(Map<RestApi, Integer> counts) {
+            int total = 0;
+            for (Pin entry : entries.values()) {
+                final Integer count = counts.get(entry.api);
+                counts.put(entry.api, count == null ? 1 : count + 1);
+                total++;
+            }
+
+            return total;
+        }
+
+        // the counts are shared by all the stripes, so the trimming is
+        // spread among them, oldest first within each one
+        synchronized void trim(Map<RestApi, Integer> counts, int fair) {
+            for (Map.Entry<Key, Pin> entry : eldestFirst()) {
+                final RestApi api = entry.getValue().api;
+                final Integer count = counts.get(api);
+                if (count != null && count > fair && entries.remove(entry.getKey(), entry.getValue()))
+                    counts.put(api, count - 1);
+            }
+        }
+
+        int size() {
+            return entries.size();
+        }
+
+        private void evictEldest() {
+            Map.Entry<Key, Pin> eldest = null;
+            for (Map.Entry<Key, Pin> entry : entries.entrySet()) {
+                if (eldest == null || entry.getValue().used < eldest.getValue().used)
+                    eldest = entry;
+            }
+
+            if (eldest != null && entries.remove(eldest.getKey(), eldest.getValue()))
+                evictions.mark();
+        }
+
+        private List<Map.Entry<Key, Pin>> eldestFirst() {
+            final List<Map.Entry<Key, Pin>> result = new ArrayList<Map.Entry<Key, Pin>>(entries.entrySet());
+            Collections.sort(result, new Comparator<Map.Entry<Key, Pin>>() {
+                @Override
+                public int compare(Map.Entry<Key, Pin> one, Map.Entry<Key, Pin> two) {
+                    final long alfa = one.getValue().used;
+                    final long beta = two.getValue().used;
+                    return alfa < beta ? -1 : (alfa == beta ? 0 : 1);
+                }
+            });
+
+            return result;
+        }
+    }
+
+    private static class Pin {
+        private final RestApi api;
+        private volatile long used;
+
+        Pin(RestApi api, long used) {
+            this.api = api;
+            this.used = used;
+        }
+
+        void touch(long now) {
+            if (used != now)
+                used = now;
+        }
+    }
+
+    // callers are compared by identity, being long lived objects whose
+    // equality can be expensive (or even not available before joining)
+    private static class Key {
+        private final IMicroservice from;
+        private final String session;
+        private final int hash;
+
+        Key(IMicroservice from, String session) {
+            this.from = from;
+            this.session = session;
+            this.hash = 31 * System.identityHashCode(from) + (session == null ? 0 : session.hashCode());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key that = (Key) o;
+
+            return from == that.from && (session == null ? that.session == null : session.equals(that.session));
+        }
+    }
+}
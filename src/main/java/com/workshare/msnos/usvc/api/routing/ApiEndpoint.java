@@ -39,6 +39,14 @@ public class ApiEndpoint {
         return api.isFaulty();
     }
 
+    public boolean isOpen() {
+        return api.isCircuitOpen();
+    }
+
+    public boolean isClosed() {
+        return api.isCircuitClosed();
+    }
+
     public int priority() {
         return api.getPriority();
     }
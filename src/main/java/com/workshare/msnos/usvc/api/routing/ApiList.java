@@ -13,10 +13,14 @@ import org.slf4j.LoggerFactory;
 
 import com.workshare.msnos.usvc.IMicroservice;
 import com.workshare.msnos.usvc.RemoteMicroservice;
+import com.workshare.msnos.usvc.api.CircuitBreaker;
 import com.workshare.msnos.usvc.api.RestApi;
 import com.workshare.msnos.usvc.api.routing.strategies.CachingRoutingStrategy;
 import com.workshare.msnos.usvc.api.routing.strategies.CompositeStrategy;
+import com.workshare.msnos.usvc.api.routing.strategies.ConsistentHashRoutingStrategy;
+import com.workshare.msnos.usvc.api.routing.strategies.DistanceBasedStrategy;
 import com.workshare.msnos.usvc.api.routing.strategies.LocationBasedStrategy;
+import com.workshare.msnos.usvc.api.routing.strategies.PowerOfTwoChoicesRoutingStrategy;
 import com.workshare.msnos.usvc.api.routing.strategies.PriorityRoutingStrategy;
 import com.workshare.msnos.usvc.api.routing.strategies.RoundRobinRoutingStrategy;
 import com.workshare.msnos.usvc.api.routing.strategies.SkipFaultiesRoutingStrategy;
@@ -26,27 +30,48 @@ public class ApiList {
     private static Logger log = LoggerFactory.getLogger(ApiList.class);
 
     private volatile List<ApiEndpoint> endpointsList;
-    private volatile RestApi affinite;
+    private volatile List<RestApi> apisList;
+    private final AffinityTable affinities;
+    // the apis with affinity: without any the table is never looked up
+    private volatile int stickies;
 
     transient private final RoutingStrategy routing;
+    // the ring is only built on the first keyed lookup, as most lists never get one
+    transient private volatile ConsistentHashRoutingStrategy hashing;
 
     transient private final Lock addRemoveLock = new ReentrantLock();
 
+    // the strategies follow the circuits of the list instead of checking them all at every selection
+    transient private final CircuitBreaker.Listener circuits = new CircuitBreaker.Listener() {
+        @Override
+        public void onStateChange(CircuitBreaker.Event event) {
+            notifyCircuitChanged(event);
+        }
+    };
+
     public ApiList() {
         this(defaultRoutingStrategy());
     }
 
     public ApiList(RoutingStrategy routingStrategy) {
         this.endpointsList = new ArrayList<ApiEndpoint>();
+        this.apisList = Collections.emptyList();
         this.routing = routingStrategy;
+        this.affinities = new AffinityTable();
     }
 
     public void add(RemoteMicroservice remote, RestApi rest) {
         addRemoveLock.lock();
         try {
             LinkedHashSet<ApiEndpoint> newEndpoints = new LinkedHashSet<ApiEndpoint>(endpointsList);
-            newEndpoints.add(new ApiEndpoint(remote, rest));
-            endpointsList = new ArrayList<ApiEndpoint>(newEndpoints);
+            final ApiEndpoint endpoint = new ApiEndpoint(remote, rest);
+            if (!newEndpoints.add(endpoint))
+                return;
+
+            update(new ArrayList<ApiEndpoint>(newEndpoints));
+            notifyAdded(endpoint);
+            rest.addCircuitListener(circuits);
+            affinities.rebalance(endpointsList.size());
         } finally {
             addRemoveLock.unlock();
         }
@@ -60,15 +85,34 @@ public class ApiList {
                 final ApiEndpoint endpoint = newEndpoints.get(i);
                 if (endpoint.service().equals(toRemove)) {
                     newEndpoints.remove(i);
+                    endpoint.api().removeCircuitListener(circuits);
                     endpoint.api().markFaulty();
-                    if (affinite == endpoint.api()) {
-                        affinite = null;
-                    }
-                    
+                    affinities.remove(endpoint.api());
+                    update(newEndpoints);
+                    notifyRemoved(endpoint);
                     break;
                 }
             }
-            endpointsList = newEndpoints;
+        } finally {
+            addRemoveLock.unlock();
+        }
+    }
+
+    public void remove(RemoteMicroservice remote, RestApi rest) {
+        final ApiEndpoint toRemove = new ApiEndpoint(remote, rest);
+        addRemoveLock.lock();
+        try {
+            List<ApiEndpoint> newEndpoints = new ArrayList<ApiEndpoint>(endpointsList);
+            final int index = newEndpoints.indexOf(toRemove);
+            if (index < 0)
+                return;
+
+            final ApiEndpoint endpoint = newEndpoints.remove(index);
+            endpoint.api().removeCircuitListener(circuits);
+            affinities.remove(endpoint.api());
+
+            update(newEndpoints);
+            notifyRemoved(endpoint);
         } finally {
             addRemoveLock.unlock();
         }
@@ -78,38 +122,139 @@ public class ApiList {
         return endpointsList.size();
     }
 
-    // TODO FIXME this need to be changed for performance reason 
-    // as we are creating a new list every time
     public List<RestApi> getApis() {
-        List<RestApi> result = new ArrayList<RestApi>();
-        for (ApiEndpoint api : endpointsList) {
-            result.add(api.api());
-        }
-        return result;
+        return apisList;
     }
 
     public List<ApiEndpoint> getEndpoints() {
         return Collections.unmodifiableList(endpointsList);
     }
 
+    public AffinityTable getAffinities() {
+        return affinities;
+    }
+
     public RestApi get(IMicroservice from) {
+        return get(from, null);
+    }
+
+    /**
+     * Selects an api for the caller, where the session is optional: a caller
+     * that got an api with affinity gets the same api again, as long as it
+     * is working
+     */
+    public RestApi get(IMicroservice from, String session) {
         if (endpointsList.size() == 0)
             return null;
 
-        if (affinite != null && !affinite.isFaulty()) {
+        final RestApi affinite = (stickies > 0 ? affinities.get(from, session) : null);
+        if (affinite != null && !affinite.isFaulty() && !affinite.isCircuitOpen()) {
+            affinite.markSelected();
             return affinite;
         }
         
         RestApi result = getUsingStrategies(from);
 
-        affinite = null;
         if (result != null && result.hasAffinity()) {
-            affinite = result;
+            affinities.put(from, session, result);
+        } else if (affinite != null) {
+            affinities.remove(from, session);
         }
         
+        if (result != null)
+            result.markSelected();
+
         return result;
     }
 
+    /**
+     * Selects the api owning the routing key, so that the same key keeps
+     * going to the same api while the apis do not change; without a key,
+     * the api is selected as usual
+     */
+    public RestApi getByKey(IMicroservice from, String key) {
+        if (key == null)
+            return get(from);
+
+        if (endpointsList.size() == 0)
+            return null;
+
+        ApiEndpoint res;
+        try {
+            res = hashing().select(from, endpointsList, key).get(0);
+        } catch (Throwable ex) {
+            log.warn("Unexpected error selecting API by key", ex);
+            res = endpointsList.size() > 0 ? endpointsList.get(0) : null;
+        }
+        if (res == null)
+            return null;
+
+        res.api().markSelected();
+        return res.api();
+    }
+
+    private ConsistentHashRoutingStrategy hashing() {
+        ConsistentHashRoutingStrategy current = hashing;
+        if (current != null)
+            return current;
+
+        addRemoveLock.lock();
+        try {
+            current = hashing;
+            if (current == null) {
+                current = new ConsistentHashRoutingStrategy();
+                for (ApiEndpoint endpoint : endpointsList)
+                    current.onAdd(endpoint);
+                hashing = current;
+            }
+
+            return current;
+        } finally {
+            addRemoveLock.unlock();
+        }
+    }
+
+    private void notifyAdded(ApiEndpoint endpoint) {
+        if (hashing != null)
+            hashing.onAdd(endpoint);
+        if (routing instanceof ApiListAware)
+            ((ApiListAware) routing).onAdd(endpoint);
+    }
+
+    private void notifyRemoved(ApiEndpoint endpoint) {
+        if (hashing != null)
+            hashing.onRemove(endpoint);
+        if (routing instanceof ApiListAware)
+            ((ApiListAware) routing).onRemove(endpoint);
+    }
+
+    private void notifyCircuitChanged(CircuitBreaker.Event event) {
+        if (!(routing instanceof ApiListAware))
+            return;
+
+        for (ApiEndpoint endpoint : endpointsList) {
+            if (endpoint.api() == event.getApi()) {
+                ((ApiListAware) routing).onCircuitChange(endpoint, event.getTo());
+                return;
+            }
+        }
+    }
+
+    // the apis are rebuilt here, as the endpoints change way less often than they are read
+    private void update(List<ApiEndpoint> newEndpoints) {
+        List<RestApi> newApis = new ArrayList<RestApi>(newEndpoints.size());
+        int newStickies = 0;
+        for (ApiEndpoint endpoint : newEndpoints) {
+            newApis.add(endpoint.api());
+            if (endpoint.api().hasAffinity())
+                newStickies++;
+        }
+
+        apisList = Collections.unmodifiableList(newApis);
+        stickies = newStickies;
+        endpointsList = newEndpoints;
+    }
+
     private RestApi getUsingStrategies(IMicroservice from) {
         ApiEndpoint res;
         try {
@@ -124,16 +269,22 @@ public class ApiList {
 
     @Override
     public String toString() {
-        return "endpoints="+this.endpointsList+", affinite="+affinite+",hashcode="+super.hashCode();
+        return "endpoints="+this.endpointsList+", affinities="+affinities+",hashcode="+super.hashCode();
     }
 
+    // only the filtering is cached, so that the final selection still
+    // happens over the candidates for every call
     static RoutingStrategy defaultRoutingStrategy() {
-        List<RoutingStrategy> strategies = new ArrayList<RoutingStrategy>(Arrays.asList(new SkipFaultiesRoutingStrategy(), new LocationBasedStrategy(), new RoundRobinRoutingStrategy()));
+        List<RoutingStrategy> filters = new ArrayList<RoutingStrategy>(Arrays.asList(new SkipFaultiesRoutingStrategy(), new LocationBasedStrategy()));
         if (PriorityRoutingStrategy.isEnabled()) {
-            strategies.add(1, new PriorityRoutingStrategy());
+            filters.add(1, new PriorityRoutingStrategy());
+        }
+        if (DistanceBasedStrategy.isEnabled()) {
+            filters.add(new DistanceBasedStrategy());
         }
 
-        final CompositeStrategy composite = new CompositeStrategy(strategies.toArray(new RoutingStrategy[strategies.size()]));
-        return new CachingRoutingStrategy(composite);
+        final CompositeStrategy composite = new CompositeStrategy(filters.toArray(new RoutingStrategy[filters.size()]));
+        final RoutingStrategy selector = PowerOfTwoChoicesRoutingStrategy.isEnabled() ? new PowerOfTwoChoicesRoutingStrategy() : new RoundRobinRoutingStrategy();
+        return new CompositeStrategy(new CachingRoutingStrategy(composite), selector);
     }
 }
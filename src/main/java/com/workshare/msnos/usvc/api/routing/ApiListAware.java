@@ -0,0 +1,20 @@
+package com.workshare.msnos.usvc.api.routing;
+
+import com.workshare.msnos.usvc.api.CircuitBreaker;
+
+/**
+ * A routing strategy that wants to know when the endpoints of its api list
+ * change, i.e. to keep its own structures up to date instead of rebuilding
+ * them at every selection
+ */
+public interface ApiListAware {
+
+    public void onAdd(ApiEndpoint endpoint);
+
+    public void onRemove(ApiEndpoint endpoint);
+
+    /**
+     * Called when the circuit of an endpoint of the list changes state
+     */
+    public void onCircuitChange(ApiEndpoint endpoint, CircuitBreaker.State state);
+}
@@ -1,26 +1,46 @@
 package com.workshare.msnos.usvc.api.routing;
 
-import com.workshare.msnos.soup.threading.ConcurrentBuildingMap;
+import com.workshare.msnos.soup.threading.ConcurrentLongMap;
 import com.workshare.msnos.usvc.IMicroservice;
 import com.workshare.msnos.usvc.RemoteMicroservice;
+import com.workshare.msnos.usvc.api.CircuitBreaker;
 import com.workshare.msnos.usvc.api.RestApi;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 
+/**
+ * The apis published by the remote microservices, indexed by path, by id
+ * and by the microservice publishing them. The indexes are all concurrent,
+ * so that searching never waits for a registration
+ */
 public class ApiRepository {
 
-    private final Map<String, ApiList> remoteApis;
+    private final ConcurrentMap<String, ApiList> remoteApis;
+    private final ConcurrentLongMap<RestApi> apisById;
+    private final ConcurrentMap<RemoteMicroservice, Set<RestApi>> apisByService;
+    private final PathIndex paths;
+    private final CircuitBreaker.Listener circuitListener;
 
     public ApiRepository() {
-        this.remoteApis = new ConcurrentBuildingMap<String, ApiList>(new ConcurrentBuildingMap.Factory<ApiList>() {
-            @Override
-            public ApiList make() {
-                return new ApiList();
-            }
-        });
+        this(null);
+    }
+
+    /**
+     * Creates a repository where the changes of the circuits of all the apis
+     * registered are notified to the given listener
+     */
+    public ApiRepository(CircuitBreaker.Listener circuitListener) {
+        this.circuitListener = circuitListener;
+        this.remoteApis = new ConcurrentHashMap<String, ApiList>();
+        this.apisById = new ConcurrentLongMap<RestApi>();
+        this.apisByService = new ConcurrentHashMap<RemoteMicroservice, Set<RestApi>>();
+        this.paths = new PathIndex();
     }
 
     public Map<String, ApiList> getRemoteApis() {
@@ -28,49 +48,141 @@ public class ApiRepository {
     }
 
     public RestApi searchApiById(long id) {
-        Collection<ApiList> apiListCol = getRemoteApis().values();
-        for (ApiList apiList : apiListCol) {
-            for (RestApi rest : apiList.getApis()) {
-                if (rest.getId() == id) {
-                    return rest;
-                }
-            }
-        }
-        return null;
+        return apisById.get(id);
     }
 
+    /**
+     * Searches an api serving the path, by exact match first, then against
+     * the templated and the prefix paths registered
+     */
     public RestApi searchApi(IMicroservice from, String path) {
-        ApiList apiList = getRemoteApis().get(path);
-        return apiList == null ? null : apiList.get(from);
+        return searchApi(from, path, null);
+    }
+
+    /**
+     * Searches an api serving the path as above, keeping the affinity of
+     * the caller within the given session
+     */
+    public RestApi searchApi(IMicroservice from, String path, String session) {
+        ApiList apiList = remoteApis.get(path);
+        if (apiList == null || apiList.size() == 0)
+            apiList = paths.match(path);
+
+        return apiList == null ? null : apiList.get(from, session);
     }
 
+    /**
+     * Searches an api serving the path as above, selecting the one owning
+     * the routing key, i.e. a user or a document id
+     */
+    public RestApi searchApiByKey(IMicroservice from, String path, String key) {
+        ApiList apiList = remoteApis.get(path);
+        if (apiList == null || apiList.size() == 0)
+            apiList = paths.match(path);
+
+        return apiList == null ? null : apiList.getByKey(from, key);
+    }
 
     public boolean canServe(String path) {
-        return getRemoteApis().get(path) != null;
+        return remoteApis.containsKey(path) || paths.match(path) != null;
+    }
+
+    /**
+     * Returns the apis registered for the remote microservice
+     */
+    public Set<RestApi> getApis(RemoteMicroservice remote) {
+        final Set<RestApi> apis = apisByService.get(remote);
+        return apis == null ? Collections.<RestApi>emptySet() : Collections.unmodifiableSet(apis);
     }
 
     public void register(RemoteMicroservice remote) {
-        Set<RestApi> apis = new CopyOnWriteArraySet<RestApi>(remote.getApis());
+        register(remote, new CopyOnWriteArraySet<RestApi>(remote.getApis()));
+    }
 
+    /**
+     * Registers only the given apis of the remote microservice
+     */
+    public void register(RemoteMicroservice remote, Collection<RestApi> apis) {
+        final Set<RestApi> registered = registeredApisOf(remote);
         for (RestApi rest : apis) {
-            final String key = rest.getPath();
-            if (getRemoteApis().containsKey(key)) {
-                getRemoteApis().get(key).add(remote, rest);
-            } else {
-                ApiList apiList = new ApiList();
-                apiList.add(remote, rest);
-                getRemoteApis().put(key, apiList);
+            apiListOf(rest.getPath()).add(remote, rest);
+            if (registered.add(rest)) {
+                apisById.put(rest.getId(), rest);
+                if (circuitListener != null)
+                    rest.setCircuitListener(circuitListener);
             }
         }
     }
 
     public void unregister(RemoteMicroservice faulty) {
-        for (RestApi rest : faulty.getApis()) {
-            final String key = rest.getPath();
-            if (getRemoteApis().containsKey(key)) {
-                ApiList apiList = getRemoteApis().get(key);
-                apiList.remove(faulty);
+        final Set<RestApi> registered = apisByService.remove(faulty);
+        if (registered == null)
+            return;
+
+        for (RestApi rest : registered) {
+            apisById.remove(rest.getId());
+            final ApiList apiList = remoteApis.get(rest.getPath());
+            if (apiList != null)
+                apiList.remove(faulty, rest);
+            rest.markFaulty();
+        }
+    }
+
+    /**
+     * Unregisters only the given apis of the remote microservice
+     */
+    public void unregister(RemoteMicroservice remote, Collection<RestApi> apis) {
+        final Set<RestApi> registered = apisByService.get(remote);
+        if (registered == null)
+            return;
+
+        for (RestApi rest : apis) {
+            final RestApi instance = find(registered, rest);
+            if (instance == null)
+                continue;
+
+            registered.remove(instance);
+            apisById.remove(instance.getId());
+            final ApiList apiList = remoteApis.get(rest.getPath());
+            if (apiList != null)
+                apiList.remove(remote, instance);
+        }
+    }
+
+    private RestApi find(Set<RestApi> registered, RestApi rest) {
+        if (!registered.contains(rest))
+            return null;
+
+        for (RestApi instance : registered)
+            if (instance.equals(rest))
+                return instance;
+
+        return null;
+    }
+
+    private Set<RestApi> registeredApisOf(RemoteMicroservice remote) {
+        Set<RestApi> registered = apisByService.get(remote);
+        if (registered == null) {
+            final Set<RestApi> created = Collections.newSetFromMap(new ConcurrentHashMap<RestApi, Boolean>());
+            registered = apisByService.putIfAbsent(remote, created);
+            if (registered == null)
+                registered = created;
+        }
+
+        return registered;
+    }
+
+    private ApiList apiListOf(String path) {
+        ApiList apiList = remoteApis.get(path);
+        if (apiList == null) {
+            final ApiList created = new ApiList();
+            apiList = remoteApis.putIfAbsent(path, created);
+            if (apiList == null) {
+                apiList = created;
+                paths.put(path, apiList);
             }
         }
+
+        return apiList;
     }
 }
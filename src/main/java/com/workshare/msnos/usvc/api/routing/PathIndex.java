@@ -0,0 +1,126 @@
+package com.workshare.msnos.usvc.api.routing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A trie on the segments of the paths of the apis, so that a request path
+ * can be matched against templated paths, as in <code>/users/{id}</code>,
+ * and against prefixes, as in <code>/files/*</code>.
+ *
+ * When more than one path matches, a literal segment wins over a template,
+ * and a template wins over a prefix; between prefixes, the longest wins.
+ * Only lists with at least one endpoint are returned.
+ */
+class PathIndex {
+
+    private static final String WILDCARD = "*";
+
+    private final Node root = new Node();
+
+    public void put(String path, ApiList list) {
+        Node node = root;
+        final List<String> segments = segments(path);
+        for (int i = 0; i < segments.size(); i++) {
+            final String segment = segments.get(i);
+            if (WILDCARD.equals(segment) && i == segments.size() - 1) {
+                node.prefix = list;
+                return;
+            }
+
+            node = isTemplate(segment) ? node.template() : node.child(segment);
+        }
+
+        node.exact = list;
+    }
+
+    public ApiList match(String path) {
+        final List<String> segments = segments(path);
+        return match(root, segments, 0);
+    }
+
+    private ApiList match(Node node, List<String> segments, int index) {
+        if (index == segments.size()) {
+            if (isServing(node.exact))
+                return node.exact;
+        } else {
+            final String segment = segments.get(index);
+
+            final Node child = node.children.get(segment);
+            if (child != null) {
+                final ApiList result = match(child, segments, index + 1);
+                if (result != null)
+                    return result;
+            }
+
+            final Node template = node.template.get();
+            if (template != null) {
+                final ApiList result = match(template, segments, index + 1);
+                if (result != null)
+                    return result;
+            }
+        }
+
+        return isServing(node.prefix) ? node.prefix : null;
+    }
+
+    private static boolean isServing(ApiList list) {
+        return list != null && list.size() > 0;
+    }
+
+    private static boolean isTemplate(String segment) {
+        return segment.length() > 1 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}';
+    }
+
+    static List<String> segments(String path) {
+        final List<String> result = new ArrayList<String>();
+        if (path == null)
+            return result;
+
+        int end = path.indexOf('?');
+        if (end < 0)
+            end = path.length();
+
+        int start = 0;
+        while (start < end) {
+            int slash = path.indexOf('/', start);
+            if (slash < 0 || slash > end)
+                slash = end;
+
+            if (slash > start)
+                result.add(path.substring(start, slash));
+
+            start = slash + 1;
+        }
+
+        return result;
+    }
+
+    private static class Node {
+        private final ConcurrentMap<String, Node> children = new ConcurrentHashMap<String, Node>();
+        private final AtomicReference<Node> template = new AtomicReference<Node>();
+
+        private volatile ApiList exact;
+        private volatile ApiList prefix;
+
+        Node child(String segment) {
+            Node node = children.get(segment);
+            if (node == null) {
+                final Node created = new Node();
+                node = children.putIfAbsent(segment, created);
+                if (node == null)
+                    node = created;
+            }
+
+            return node;
+        }
+
+        Node template() {
+            template.compareAndSet(null, new Node());
+            return template.get();
+        }
+    }
+}
@@ -1,74 +1,156 @@
 package com.workshare.msnos.usvc.api.routing.strategies;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.workshare.msnos.usvc.IMicroservice;
+import com.workshare.msnos.usvc.api.CircuitBreaker;
 import com.workshare.msnos.usvc.api.routing.ApiEndpoint;
+import com.workshare.msnos.usvc.api.routing.ApiListAware;
 import com.workshare.msnos.usvc.api.routing.RoutingStrategy;
 
-public class CachingRoutingStrategy implements RoutingStrategy {
+/**
+ * Caches the selection of the delegate for a while. The cache is an
+ * immutable snapshot replaced with a single volatile write, so that callers
+ * never lock and never see a half updated state; the snapshot is only
+ * valid for the same caller and the same list of endpoints.
+ *
+ * The snapshot is dropped as soon as a circuit of the list changes state,
+ * and only the circuits of the selection that were not closed are checked
+ * again at every hit, as half open ones run out of trials without notice.
+ */
+public class CachingRoutingStrategy implements RoutingStrategy, ApiListAware {
     private static final Logger log = LoggerFactory.getLogger(CachingRoutingStrategy.class);
 
     public static final String SYSP_TIMEOUT = "com.ws.nsnos.usvc.api.routing.strategy.caching.timeout";
 
     private final RoutingStrategy delegate;
+    private final Set<ApiEndpoint> unclosed;
 
-    private long timeout;
-    private List<ApiEndpoint> result;
-
-    private long lastrun;
-    private long lastend;
+    private volatile long timeout;
+    private volatile Snapshot snapshot;
 
     public CachingRoutingStrategy(RoutingStrategy delegate) {
         this.delegate = delegate;
+        this.unclosed = Collections.newSetFromMap(new ConcurrentHashMap<ApiEndpoint, Boolean>());
         this.timeout = getDefaultTimeout();
-        this.result = Collections.emptyList();
-
-        this.lastrun = System.currentTimeMillis();
-        this.lastend = lastrun - 1;
+        this.snapshot = Snapshot.EMPTY;
     }
 
     private static long getDefaultTimeout() {
         return Long.getLong(SYSP_TIMEOUT, 250l);
     }
 
-    private void reset() {
-        this.lastrun = System.currentTimeMillis();
-        this.lastend = System.currentTimeMillis() + timeout;
-    }
-
     @Override
     public List<ApiEndpoint> select(IMicroservice from, List<ApiEndpoint> apis) {
         if (timeout == 0L) {
             return delegate.select(from, apis);
         }
 
-        if (System.currentTimeMillis() > lastend || isFaulty(result)) {
-            reset();
-            result = delegate.select(from, apis);
+        final long now = System.currentTimeMillis();
+        final Snapshot current = snapshot;
+        if (current.isValid(from, apis, now) && !isFaulty(current)) {
+            return current.result;
         }
 
+        final List<ApiEndpoint> result = delegate.select(from, apis);
+        snapshot = new Snapshot(from, apis, result, watched(result), now + timeout);
         return result;
     }
 
     public CachingRoutingStrategy withTimeout(int duration, TimeUnit unit) {
         this.timeout = TimeUnit.MILLISECONDS.convert(duration, unit);
+        this.snapshot = Snapshot.EMPTY;
         return this;
     }
 
-    private boolean isFaulty(List<ApiEndpoint> eps) {
-        for (ApiEndpoint ep : eps) {
+    @Override
+    public void onAdd(ApiEndpoint endpoint) {
+        snapshot = Snapshot.EMPTY;
+        if (!endpoint.isClosed())
+            unclosed.add(endpoint);
+        if (delegate instanceof ApiListAware)
+            ((ApiListAware) delegate).onAdd(endpoint);
+    }
+
+    @Override
+    public void onRemove(ApiEndpoint endpoint) {
+        snapshot = Snapshot.EMPTY;
+        unclosed.remove(endpoint);
+        if (delegate instanceof ApiListAware)
+            ((ApiListAware) delegate).onRemove(endpoint);
+    }
+
+    @Override
+    public void onCircuitChange(ApiEndpoint endpoint, CircuitBreaker.State state) {
+        if (state == CircuitBreaker.State.CLOSED)
+            unclosed.remove(endpoint);
+        else
+            unclosed.add(endpoint);
+
+        snapshot = Snapshot.EMPTY;
+        if (delegate instanceof ApiListAware)
+            ((ApiListAware) delegate).onCircuitChange(endpoint, state);
+    }
+
+    private List<ApiEndpoint> watched(List<ApiEndpoint> result) {
+        if (unclosed.isEmpty())
+            return Collections.emptyList();
+
+        final List<ApiEndpoint> watched = new ArrayList<ApiEndpoint>();
+        for (ApiEndpoint ep : result) {
+            if (unclosed.contains(ep))
+                watched.add(ep);
+        }
+
+        return watched;
+    }
+
+    private boolean isFaulty(Snapshot current) {
+        for (ApiEndpoint ep : current.result) {
             if (ep.isFaulty()) {
                 log.debug("Current endpoints list is faulty on endpoint {}", ep);
                 return true;
             }
         }
-        
+
+        for (ApiEndpoint ep : current.watched) {
+            if (ep.isOpen()) {
+                log.debug("Current endpoints list is faulty on endpoint {}", ep);
+                return true;
+            }
+        }
+
         return false;
     }
+
+    private static class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(null, null, Collections.<ApiEndpoint>emptyList(), Collections.<ApiEndpoint>emptyList(), Long.MIN_VALUE);
+
+        private final IMicroservice from;
+        private final List<ApiEndpoint> apis;
+        private final List<ApiEndpoint> result;
+        // the endpoints selected with a circuit not closed
+        private final List<ApiEndpoint> watched;
+        private final long expiry;
+
+        Snapshot(IMicroservice from, List<ApiEndpoint> apis, List<ApiEndpoint> result, List<ApiEndpoint> watched, long expiry) {
+            this.from = from;
+            this.apis = apis;
+            this.result = result;
+            this.watched = watched;
+            this.expiry = expiry;
+        }
+
+        boolean isValid(IMicroservice from, List<ApiEndpoint> apis, long now) {
+            return now <= expiry && this.from == from && this.apis == apis;
+        }
+    }
 }
@@ -3,10 +3,12 @@ package com.workshare.msnos.usvc.api.routing.strategies;
 import java.util.List;
 
 import com.workshare.msnos.usvc.IMicroservice;
+import com.workshare.msnos.usvc.api.CircuitBreaker;
 import com.workshare.msnos.usvc.api.routing.ApiEndpoint;
+import com.workshare.msnos.usvc.api.routing.ApiListAware;
 import com.workshare.msnos.usvc.api.routing.RoutingStrategy;
 
-public class CompositeStrategy implements RoutingStrategy {
+public class CompositeStrategy implements RoutingStrategy, ApiListAware {
 
     private final RoutingStrategy[] strategies;
 
@@ -24,4 +26,27 @@ public class CompositeStrategy implements RoutingStrategy {
         return result;
     }
 
+    @Override
+    public void onAdd(ApiEndpoint endpoint) {
+        for (RoutingStrategy strategy : strategies) {
+            if (strategy instanceof ApiListAware)
+                ((ApiListAware) strategy).onAdd(endpoint);
+        }
+    }
+
+    @Override
+    public void onRemove(ApiEndpoint endpoint) {
+        for (RoutingStrategy strategy : strategies) {
+            if (strategy instanceof ApiListAware)
+                ((ApiListAware) strategy).onRemove(endpoint);
+        }
+    }
+
+    @Override
+    public void onCircuitChange(ApiEndpoint endpoint, CircuitBreaker.State state) {
+        for (RoutingStrategy strategy : strategies) {
+            if (strategy instanceof ApiListAware)
+                ((ApiListAware) strategy).onCircuitChange(endpoint, state);
+        }
+    }
 }
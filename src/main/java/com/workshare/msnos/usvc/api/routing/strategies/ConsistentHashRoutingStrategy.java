@@ -0,0 +1,138 @@
+package com.workshare.msnos.usvc.api.routing.strategies;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.workshare.msnos.soup.SingleElementList;
+import com.workshare.msnos.usvc.IMicroservice;
+import com.workshare.msnos.usvc.api.CircuitBreaker;
+import com.workshare.msnos.usvc.api.routing.ApiEndpoint;
+import com.workshare.msnos.usvc.api.routing.ApiListAware;
+import com.workshare.msnos.usvc.api.routing.RoutingStrategy;
+
+/**
+ * Selects the endpoint owning a routing key on a ring of virtual nodes, so
+ * that the same key always goes to the same endpoint (and its caches) while
+ * the endpoints do not change; when they do, only the keys of the endpoint
+ * joining or leaving move.
+ *
+ * The load is bounded: an endpoint with more calls in flight than a factor
+ * of the average is passed over, as faulty ones and ones with an open
+ * circuit, in favour of the next one on the ring.
+ */
+public class ConsistentHashRoutingStrategy implements RoutingStrategy, ApiListAware {
+
+    public static final String SYSP_VNODES = "com.ws.nsnos.usvc.api.routing.strategy.hash.vnodes";
+    public static final String SYSP_LOAD_FACTOR = "com.ws.nsnos.usvc.api.routing.strategy.hash.load.factor";
+
+    private static final int VNODES = Integer.getInteger(SYSP_VNODES, 100);
+    private static final double LOAD_FACTOR = Double.parseDouble(System.getProperty(SYSP_LOAD_FACTOR, "1.25"));
+
+    private final ConcurrentNavigableMap<Long, ApiEndpoint> ring;
+
+    public ConsistentHashRoutingStrategy() {
+        this.ring = new ConcurrentSkipListMap<Long, ApiEndpoint>();
+    }
+
+    @Override
+    public void onAdd(ApiEndpoint endpoint) {
+        final String name = nameOf(endpoint);
+        for (int i = 0; i < VNODES; i++)
+            ring.put(hash(name, i), endpoint);
+    }
+
+    @Override
+    public void onRemove(ApiEndpoint endpoint) {
+        final String name = nameOf(endpoint);
+        for (int i = 0; i < VNODES; i++)
+            ring.remove(hash(name, i), endpoint);
+    }
+
+    // open circuits are passed over while walking the ring
+    @Override
+    public void onCircuitChange(ApiEndpoint endpoint, CircuitBreaker.State state) {
+    }
+
+    /**
+     * Without a key there's nothing to hash: the endpoints are returned as
+     * they are, for the next strategy to choose
+     */
+    @Override
+    public List<ApiEndpoint> select(IMicroservice from, List<ApiEndpoint> apis) {
+        return apis;
+    }
+
+    public List<ApiEndpoint> select(IMicroservice from, List<ApiEndpoint> apis, String key) {
+        List<ApiEndpoint> result = new SingleElementList<ApiEndpoint>();
+        if (apis.isEmpty() || ring.isEmpty())
+            return result;
+
+        final long position = hash(key, 0);
+        final long bound = maxLoad(apis);
+
+        // clockwise from the position of the key, wrapping around once
+        final Iterator<ApiEndpoint> tail = ring.tailMap(position, true).values().iterator();
+        final Iterator<ApiEndpoint> head = ring.headMap(position, false).values().iterator();
+
+        ApiEndpoint owner = null;
+        ApiEndpoint fallback = null;
+        while (tail.hasNext() || head.hasNext()) {
+            final ApiEndpoint endpoint = tail.hasNext() ? tail.next() : head.next();
+            if (owner == null)
+                owner = endpoint;
+            if (!isWorking(endpoint))
+                continue;
+
+            if (endpoint.api().getInFlight() < bound) {
+                result.add(endpoint);
+                return result;
+            }
+
+            if (fallback == null)
+                fallback = endpoint;
+        }
+
+        // nobody under the bound: the first working one, or the owner anyway
+        result.add(fallback != null ? fallback : owner);
+        return result;
+    }
+
+    public int size() {
+        return ring.size() / VNODES;
+    }
+
+    private long maxLoad(List<ApiEndpoint> apis) {
+        long total = 0;
+        for (ApiEndpoint endpoint : apis)
+            total += endpoint.api().getInFlight();
+
+        return (long) Math.ceil(LOAD_FACTOR * (total + 1) / apis.size());
+    }
+
+    private static boolean isWorking(ApiEndpoint endpoint) {
+        return !endpoint.isFaulty() && !endpoint.isOpen();
+    }
+
+    private static String nameOf(ApiEndpoint endpoint) {
+        return endpoint.api().getUrl() + "#" + endpoint.service().getUuid();
+    }
+
+    // FNV-1a, then the murmur3 64 bit finalizer to spread it on the ring
+    static long hash(String text, int salt) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= salt * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,113 @@
+package com.workshare.msnos.usvc.api.routing.strategies;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.workshare.msnos.core.Cloud;
+import com.workshare.msnos.core.RemoteAgent;
+import com.workshare.msnos.core.cloud.LatencyTable;
+import com.workshare.msnos.core.geo.Location;
+import com.workshare.msnos.core.geo.Location.GPS;
+import com.workshare.msnos.usvc.IMicroservice;
+import com.workshare.msnos.usvc.api.routing.ApiEndpoint;
+import com.workshare.msnos.usvc.api.routing.RoutingStrategy;
+
+/**
+ * Selects the endpoints closest to the caller, where close is the round trip
+ * time measured by the cloud when available, otherwise the one estimated by
+ * the great circle distance between the gps coordinates. The endpoints are
+ * returned nearest first, including all the ones within a tolerance of the
+ * nearest; endpoints with no measure and no coordinates are only returned
+ * when nothing else is known.
+ *
+ * A measure includes the time spent in the network stacks and in the queues
+ * while an estimate is a lower bound, so the two are never compared: when
+ * any endpoint is measured only the measured ones are considered. The cloud
+ * samples the round trips of the active agents as well as of the quiet
+ * ones, so an endpoint waits at most a probe period before being measured.
+ */
+public class DistanceBasedStrategy implements RoutingStrategy {
+
+    public static final String SYSP_DISTANCE_ENABLED = "com.ws.nsnos.usvc.api.routing.strategy.distance.enabled";
+    public static final String SYSP_TOLERANCE = "com.ws.nsnos.usvc.api.routing.strategy.distance.tolerance";
+    public static final String SYSP_SLACK = "com.ws.nsnos.usvc.api.routing.strategy.distance.slack";
+
+    // the light in a fiber goes around 200 km per millisecond, and back
+    private static final double KM_PER_RTT_MILLIS = 100.0;
+
+    private static final int TOLERANCE = Integer.getInteger(SYSP_TOLERANCE, 20);
+    private static final long SLACK = Long.getLong(SYSP_SLACK, 5L);
+
+    @Override
+    public List<ApiEndpoint> select(IMicroservice from, List<ApiEndpoint> apis) {
+        if (apis.size() < 2)
+            return apis;
+
+        final double[] costs = new double[apis.size()];
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < costs.length; i++) {
+            costs[i] = roundTripOf(apis.get(i));
+            if (costs[i] >= 0 && costs[i] < best)
+                best = costs[i];
+        }
+
+        if (best == Double.MAX_VALUE) {
+            final GPS origin = gpsOf(from.getLocation());
+            for (int i = 0; i < costs.length; i++) {
+                costs[i] = estimateOf(origin, apis.get(i));
+                if (costs[i] >= 0 && costs[i] < best)
+                    best = costs[i];
+            }
+        }
+
+        if (best == Double.MAX_VALUE)
+            return apis;
+
+        final double limit = best * (100 + TOLERANCE) / 100.0 + SLACK;
+        final List<ApiEndpoint> result = new ArrayList<ApiEndpoint>();
+        final List<Double> resultCosts = new ArrayList<Double>();
+        for (int i = 0; i < costs.length; i++) {
+            if (costs[i] >= 0 && costs[i] <= limit)
+                insert(result, resultCosts, apis.get(i), costs[i]);
+        }
+
+        return result;
+    }
+
+    // the estimated round trip in milliseconds, negative when unknown
+    private static double estimateOf(GPS origin, ApiEndpoint endpoint) {
+        final GPS target = gpsOf(endpoint.location());
+        if (origin == null || target == null)
+            return -1;
+
+        return origin.distanceTo(target) / KM_PER_RTT_MILLIS;
+    }
+
+    private static long roundTripOf(ApiEndpoint endpoint) {
+        final RemoteAgent agent = endpoint.service().getAgent();
+        final Cloud cloud = (agent == null ? null : agent.getCloud());
+        if (cloud == null)
+            return LatencyTable.UNKNOWN;
+
+        return cloud.getLatencies().get(agent.getIden().getUUID());
+    }
+
+    private static GPS gpsOf(Location location) {
+        final GPS gps = (location == null ? null : location.getGPS());
+        return (gps != null && gps.isValid()) ? gps : null;
+    }
+
+    // keeps the result sorted, nearest first, the lists being short
+    private static void insert(List<ApiEndpoint> result, List<Double> costs, ApiEndpoint endpoint, double cost) {
+        int index = costs.size();
+        while (index > 0 && costs.get(index - 1) > cost)
+            index--;
+
+        result.add(index, endpoint);
+        costs.add(index, cost);
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(SYSP_DISTANCE_ENABLED);
+    }
+}
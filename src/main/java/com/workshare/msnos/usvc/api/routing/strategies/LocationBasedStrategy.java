@@ -1,29 +1,55 @@
 package com.workshare.msnos.usvc.api.routing.strategies;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import com.workshare.msnos.core.geo.Location;
-import com.workshare.msnos.core.geo.Location.Match;
+import com.workshare.msnos.core.geo.LocationIndex;
 import com.workshare.msnos.usvc.IMicroservice;
+import com.workshare.msnos.usvc.api.CircuitBreaker;
 import com.workshare.msnos.usvc.api.routing.ApiEndpoint;
+import com.workshare.msnos.usvc.api.routing.ApiListAware;
 import com.workshare.msnos.usvc.api.routing.RoutingStrategy;
 
-public class LocationBasedStrategy implements RoutingStrategy {
+/**
+ * Selects the endpoints closest to the caller, where close means in the same
+ * city, then region, country and continent.
+ *
+ * When used by an api list, the endpoints are kept grouped by their match
+ * score against each caller location, and the groups are updated as the
+ * endpoints are added and removed: when the endpoints received are all the
+ * ones of the list (no filtering happened before) the best group is just
+ * looked up. Otherwise the scores are computed on the endpoints received.
+ * The list of the api list is replaced at every change and published before
+ * the strategy hears of it, so a list is compared in full with the members
+ * the first time it is received, and by identity afterwards.
+ */
+public class LocationBasedStrategy implements RoutingStrategy, ApiListAware {
+
+    private final Object lock = new Object();
+
+    private volatile List<ApiEndpoint> members = Collections.emptyList();
+    // the last list received holding exactly the members
+    private volatile List<ApiEndpoint> known = null;
+    // the groups of each caller location, indexed by the location id
+    private volatile Groups[] groups = new Groups[16];
 
     @Override
     public List<ApiEndpoint> select(IMicroservice from, List<ApiEndpoint> apis) {
         final Location target = from.getLocation();
         if (target == null || target == Location.UNKNOWN)
             return apis;
-        
+
+        final int source = LocationIndex.idOf(target);
+        if (apis.size() > 0 && isMembers(apis))
+            return groupsOf(source).best;
+
         final List<ApiEndpoint> result = new ArrayList<ApiEndpoint>();
 
         int currentBestMatch = 0;
         for (ApiEndpoint api : apis) {
-            final Location location = api.location();
-            final Match match = target.match(location);
-            final int value = match.value();
+            final int value = LocationIndex.score(source, LocationIndex.idOf(api.location()));
             if (value > currentBestMatch) {
                 currentBestMatch = value;
                 result.clear();
@@ -32,8 +58,134 @@ public class LocationBasedStrategy implements RoutingStrategy {
                 result.add(api);
             }
         }
-        
+
         return result;
     }
 
+    @Override
+    public void onAdd(ApiEndpoint endpoint) {
+        synchronized (lock) {
+            members = copyAndAdd(members, endpoint);
+            known = null;
+            for (Groups current : groups) {
+                if (current != null)
+                    current.add(endpoint);
+            }
+        }
+    }
+
+    @Override
+    public void onRemove(ApiEndpoint endpoint) {
+        synchronized (lock) {
+            members = copyAndRemove(members, endpoint);
+            known = null;
+            for (Groups current : groups) {
+                if (current != null)
+                    current.remove(endpoint);
+            }
+        }
+    }
+
+    @Override
+    public void onCircuitChange(ApiEndpoint endpoint, CircuitBreaker.State state) {
+    }
+
+    private boolean isMembers(List<ApiEndpoint> apis) {
+        if (apis == known)
+            return true;
+
+        final List<ApiEndpoint> current = members;
+        if (!apis.equals(current))
+            return false;
+
+        synchronized (lock) {
+            if (members == current)
+                known = apis;
+        }
+
+        return true;
+    }
+
+    private Groups groupsOf(int source) {
+        final Groups[] all = groups;
+        if (source < all.length && all[source] != null)
+            return all[source];
+
+        synchronized (lock) {
+            Groups[] current = groups;
+            if (source < current.length && current[source] != null)
+                return current[source];
+
+            if (source >= current.length) {
+                final Groups[] grown = new Groups[Math.max(source + 1, current.length * 2)];
+                System.arraycopy(current, 0, grown, 0, current.length);
+                current = grown;
+            }
+
+            final Groups created = new Groups(source);
+            for (ApiEndpoint endpoint : members)
+                created.add(endpoint);
+
+            current[source] = created;
+            groups = current;
+            return created;
+        }
+    }
+
+    private static List<ApiEndpoint> copyAndAdd(List<ApiEndpoint> list, ApiEndpoint endpoint) {
+        final List<ApiEndpoint> result = new ArrayList<ApiEndpoint>(list.size() + 1);
+        result.addAll(list);
+        result.add(endpoint);
+        return Collections.unmodifiableList(result);
+    }
+
+    private static List<ApiEndpoint> copyAndRemove(List<ApiEndpoint> list, ApiEndpoint endpoint) {
+        final List<ApiEndpoint> result = new ArrayList<ApiEndpoint>(list);
+        result.remove(endpoint);
+        return Collections.unmodifiableList(result);
+    }
+
+    // the endpoints grouped by score against one caller location, only
+    // changed under the lock of the strategy
+    private static class Groups {
+        private final int source;
+        private final List<ApiEndpoint>[] byScore;
+
+        private volatile List<ApiEndpoint> best = Collections.emptyList();
+
+        @SuppressWarnings("unchecked")
+        Groups(int source) {
+            this.source = source;
+            this.byScore = (List<ApiEndpoint>[]) new List<?>[LocationIndex.MAX_SCORE + 1];
+            for (int i = 0; i < byScore.length; i++)
+                byScore[i] = Collections.emptyList();
+        }
+
+        void add(ApiEndpoint endpoint) {
+            final int score = scoreOf(endpoint);
+            byScore[score] = copyAndAdd(byScore[score], endpoint);
+            updateBest();
+        }
+
+        void remove(ApiEndpoint endpoint) {
+            final int score = scoreOf(endpoint);
+            byScore[score] = copyAndRemove(byScore[score], endpoint);
+            updateBest();
+        }
+
+        private int scoreOf(ApiEndpoint endpoint) {
+            return LocationIndex.score(source, LocationIndex.idOf(endpoint.location()));
+        }
+
+        private void updateBest() {
+            for (int i = byScore.length - 1; i >= 0; i--) {
+                if (!byScore[i].isEmpty()) {
+                    best = byScore[i];
+                    return;
+                }
+            }
+
+            best = Collections.emptyList();
+        }
+    }
 }
@@ -0,0 +1,87 @@
+package com.workshare.msnos.usvc.api.routing.strategies;
+
+import java.util.List;
+import java.util.Random;
+
+import com.workshare.msnos.soup.SingleElementList;
+import com.workshare.msnos.usvc.IMicroservice;
+import com.workshare.msnos.usvc.api.RestApi;
+import com.workshare.msnos.usvc.api.routing.ApiEndpoint;
+import com.workshare.msnos.usvc.api.routing.RoutingStrategy;
+
+/**
+ * Picks two endpoints at random and selects the cheaper one, where the cost
+ * is the moving average of the latency times the calls in flight. This
+ * relies on the callers reporting on the calls through the feedback methods
+ * of the api (markStarted, markCompleted, markFailed): without feedback all
+ * the costs are the same and the selection is just random.
+ */
+public class PowerOfTwoChoicesRoutingStrategy implements RoutingStrategy {
+
+    public static final String SYSP_P2C_ENABLED = "com.ws.nsnos.usvc.api.routing.strategy.p2c.enabled";
+
+    private static final ThreadLocal<Random> RANDOM = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    @Override
+    public List<ApiEndpoint> select(IMicroservice from, List<ApiEndpoint> apis) {
+        List<ApiEndpoint> result = new SingleElementList<ApiEndpoint>();
+
+        final int size = apis.size();
+        if (size == 0)
+            return result;
+
+        final ApiEndpoint selected;
+        if (size == 1) {
+            selected = apis.get(0);
+        } else {
+            final Random random = RANDOM.get();
+            final int first = random.nextInt(size);
+            final int second = (first + 1 + random.nextInt(size - 1)) % size;
+            selected = cheaper(apis.get(first), apis.get(second));
+        }
+
+        if (isUnavailable(selected)) {
+            final ApiEndpoint working = firstWorking(apis);
+            result.add(working == null ? selected : working);
+        } else {
+            result.add(selected);
+        }
+
+        return result;
+    }
+
+    private ApiEndpoint cheaper(ApiEndpoint one, ApiEndpoint two) {
+        if (isUnavailable(one))
+            return two;
+        if (isUnavailable(two))
+            return one;
+
+        return cost(two.api()) < cost(one.api()) ? two : one;
+    }
+
+    private ApiEndpoint firstWorking(List<ApiEndpoint> apis) {
+        for (ApiEndpoint api : apis) {
+            if (!isUnavailable(api))
+                return api;
+        }
+
+        return null;
+    }
+
+    private static boolean isUnavailable(ApiEndpoint api) {
+        return api.isFaulty() || api.isOpen();
+    }
+
+    static double cost(RestApi api) {
+        return (api.getLatency() + 1.0) * (api.getInFlight() + 1);
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(SYSP_P2C_ENABLED);
+    }
+}
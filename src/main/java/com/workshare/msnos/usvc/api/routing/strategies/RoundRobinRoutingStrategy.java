@@ -1,6 +1,7 @@
 package com.workshare.msnos.usvc.api.routing.strategies;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.workshare.msnos.soup.SingleElementList;
 import com.workshare.msnos.usvc.IMicroservice;
@@ -8,27 +9,43 @@ import com.workshare.msnos.usvc.RemoteMicroservice;
 import com.workshare.msnos.usvc.api.routing.ApiEndpoint;
 import com.workshare.msnos.usvc.api.routing.RoutingStrategy;
 
+/**
+ * Rotates over the endpoints. Every caller takes its own turn from an
+ * atomic counter, so that concurrent callers never get the same turn and
+ * the load stays even, without any lock
+ */
 public class RoundRobinRoutingStrategy implements RoutingStrategy {
 
-    private int index = 0;
+    private final AtomicInteger index = new AtomicInteger();
    
     @Override
     public List<ApiEndpoint> select(IMicroservice from, List<ApiEndpoint> apis) {
         List<ApiEndpoint> result = new SingleElementList<ApiEndpoint>();
 
+        final int size = apis.size();
+        if (size == 0)
+            return result;
+
+        final int turn = index.getAndIncrement();
+        final int start = (turn & Integer.MAX_VALUE) % size;
+
         RemoteMicroservice skipMe = null;
-        for (int attempt = 0; attempt < apis.size(); attempt++) {
-            final int current = (index + attempt) % apis.size();
+        for (int attempt = 0; attempt < size; attempt++) {
+            final int current = (start + attempt) % size;
             ApiEndpoint api = apis.get(current);
             if (api.isFaulty()) {
                 skipMe = api.service();
                 continue;
             }
 
-            if (api.belongsTo(skipMe))
+            if (api.isOpen() || api.belongsTo(skipMe))
                 continue;
 
-            index = current + 1;
+            // moves the next turns past the endpoints skipped, unless
+            // someone else already moved on
+            if (attempt > 0)
+                index.compareAndSet(turn + 1, turn + 1 + attempt);
+
             result.add(api);
             break;
         }
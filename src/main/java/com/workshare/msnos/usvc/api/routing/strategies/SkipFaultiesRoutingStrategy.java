@@ -1,16 +1,29 @@
 package com.workshare.msnos.usvc.api.routing.strategies;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.workshare.msnos.usvc.IMicroservice;
 import com.workshare.msnos.usvc.RemoteMicroservice;
+import com.workshare.msnos.usvc.api.CircuitBreaker;
 import com.workshare.msnos.usvc.api.routing.ApiEndpoint;
+import com.workshare.msnos.usvc.api.routing.ApiListAware;
 import com.workshare.msnos.usvc.api.routing.RoutingStrategy;
 
-public class SkipFaultiesRoutingStrategy implements RoutingStrategy {
+/**
+ * Skips the endpoints of faulty services and the ones with an open circuit.
+ * Once attached to an api list, only the circuits it reports as not closed
+ * are checked, instead of all of them at every selection.
+ */
+public class SkipFaultiesRoutingStrategy implements RoutingStrategy, ApiListAware {
+
+    private final Set<ApiEndpoint> unclosed = Collections.newSetFromMap(new ConcurrentHashMap<ApiEndpoint, Boolean>());
+    private volatile boolean attached;
 
     @Override
     public List<ApiEndpoint> select(IMicroservice from, List<ApiEndpoint> apis) {
@@ -20,16 +33,51 @@ public class SkipFaultiesRoutingStrategy implements RoutingStrategy {
                 faulties.add(api.service());
         }
 
-        if (faulties.isEmpty())
+        final Set<ApiEndpoint> opens = findOpens(attached ? unclosed : apis);
+        if (faulties.isEmpty() && opens.isEmpty())
             return apis;
         
+        // a faulty api excludes its whole service, an open circuit only its endpoint
         final List<ApiEndpoint> result = new ArrayList<ApiEndpoint>();
         for (ApiEndpoint api : apis) {
-            if (!faulties.contains(api.service()))
+            if (!faulties.contains(api.service()) && !opens.contains(api))
                 result.add(api);
         }
 
         return result;
     }
 
+    @Override
+    public void onAdd(ApiEndpoint endpoint) {
+        attached = true;
+        if (!endpoint.isClosed())
+            unclosed.add(endpoint);
+    }
+
+    @Override
+    public void onRemove(ApiEndpoint endpoint) {
+        unclosed.remove(endpoint);
+    }
+
+    @Override
+    public void onCircuitChange(ApiEndpoint endpoint, CircuitBreaker.State state) {
+        if (state == CircuitBreaker.State.CLOSED)
+            unclosed.remove(endpoint);
+        else
+            unclosed.add(endpoint);
+    }
+
+    private Set<ApiEndpoint> findOpens(Collection<ApiEndpoint> candidates) {
+        Set<ApiEndpoint> opens = Collections.emptySet();
+        for (ApiEndpoint api : candidates) {
+            if (!api.isOpen())
+                continue;
+
+            if (opens.isEmpty())
+                opens = new HashSet<ApiEndpoint>();
+            opens.add(api);
+        }
+
+        return opens;
+    }
 }
@@ -29,6 +29,7 @@ import static org.mockito.Mockito.when;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -61,6 +62,8 @@ import com.workshare.msnos.core.protocols.ip.http.HttpGateway;
 import com.workshare.msnos.core.receipts.SingleReceipt;
 import com.workshare.msnos.core.security.KeysStore;
 import com.workshare.msnos.core.security.Signer;
+import com.workshare.msnos.core.serializers.WireJsonSerializer;
+import com.workshare.msnos.core.serializers.WireSerializer;
 import com.workshare.msnos.soup.json.Json;
 import com.workshare.msnos.soup.time.NTPClient;
 import com.workshare.msnos.soup.time.SystemTime;
@@ -276,6 +279,48 @@ public class CloudTest {
         assertEquals(thisCloud.getIden(), pingExpected.getFrom());
     }
 
+    @Test
+    public void shouldMeasureRoundTripWhenPingedAgentPongs() throws Exception {
+        fakeSystemTime(12345L);
+        RemoteAgent remoteAgent = newRemoteAgent(thisCloud);
+        simulateAgentJoiningCloud(remoteAgent, thisCloud);
+
+        fakeSystemTime(9999999999L);
+        forceRunCloudPeriodicCheck();
+        fakeElapseTime(42L);
+        simulateMessageFromNetwork(newPongMessage(remoteAgent, thisCloud));
+
+        assertEquals(42L, thisCloud.getLatencies().get(remoteAgent.getIden().getUUID()));
+    }
+
+    @Test
+    public void shouldPingActiveAgentsToMeasureTheirRoundTrip() throws Exception {
+        fakeSystemTime(12345L);
+        RemoteAgent remoteAgent = newRemoteAgent(thisCloud);
+        simulateAgentJoiningCloud(remoteAgent, thisCloud);
+
+        fakeElapseTime(1000L);
+        forceRunCloudPeriodicCheck();
+        fakeElapseTime(42L);
+        simulateMessageFromNetwork(newPongMessage(remoteAgent, thisCloud));
+
+        assertEquals(42L, thisCloud.getLatencies().get(remoteAgent.getIden().getUUID()));
+    }
+
+    @Test
+    public void shouldNotPingActiveAgentsWithAFreshRoundTrip() throws Exception {
+        fakeSystemTime(12345L);
+        RemoteAgent remoteAgent = newRemoteAgent(thisCloud);
+        simulateAgentJoiningCloud(remoteAgent, thisCloud);
+        thisCloud.getLatencies().record(remoteAgent.getIden().getUUID(), 42L, TimeUnit.MILLISECONDS);
+        final int before = getAllMessagesSent().size();
+
+        fakeElapseTime(1000L);
+        forceRunCloudPeriodicCheck();
+
+        assertEquals(before, getAllMessagesSent().size());
+    }
+
     @Test
     public void shouldRemoveAgentsThatDoNOTRespondToPing() throws Exception {
         fakeSystemTime(0L);
@@ -410,6 +455,25 @@ public class CloudTest {
         assertEquals(current.getUuid(), getLastMessageSentToCloudListeners().getUuid());
     }
 
+    @Test
+    public void shouldProcessExternalBatchOfMessages() throws Exception {
+        RemoteAgent agent = newRemoteAgent(thisCloud);
+        simulateAgentJoiningCloud(agent, thisCloud);
+        receivedMessages.clear();
+
+        Message one = new MessageBuilder(APP, agent, thisCloud).make();
+        Message two = new MessageBuilder(APP, agent, thisCloud).make();
+        WireSerializer sz = new WireJsonSerializer();
+        String batch = sz.toText(one) + "\n\n" + "{not a message" + "\n" + sz.toText(two) + "\n";
+
+        int total = thisCloud.process(new StringReader(batch), "HTTP");
+
+        assertEquals(2, total);
+        assertEquals(2, receivedMessages.size());
+        assertEquals(one.getUuid(), receivedMessages.get(0).getUuid());
+        assertEquals(two.getUuid(), receivedMessages.get(1).getUuid());
+    }
+
     @Test
     public void shouldEnquiryUponReceivingMessagesFromUnknownAgents() throws Exception {
         RemoteAgent smith = newRemoteAgent(thisCloud);
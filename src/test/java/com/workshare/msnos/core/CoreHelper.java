@@ -199,12 +199,19 @@ public class CoreHelper {
         when(cloud.getIden()).thenReturn(iden == null ? newCloudIden() : iden);
         when(cloud.getRing()).thenReturn(ring == null ? Ring.random() : ring);
 
-        Internal internal = mock(Cloud.Internal.class);
+        final Internal internal = mock(Cloud.Internal.class);
         when(internal.sign(any(Message.class))).thenAnswer(new Answer<Message>(){
             @Override
             public Message answer(InvocationOnMock invocation) throws Throwable {
                 return (Message) invocation.getArguments()[0];
             }});
+        when(internal.verify(any(Message.class))).thenAnswer(new Answer<Boolean>(){
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                final Message message = (Message) invocation.getArguments()[0];
+                final Message signed = internal.sign(message);
+                return parseNull(message.getSig()).equals(parseNull(signed.getSig()));
+            }});
 
         when(internal.localAgents()).thenReturn(new IdentifiablesList<LocalAgent>());
         when(internal.remoteAgents()).thenReturn(new IdentifiablesList<RemoteAgent>());
@@ -217,6 +224,10 @@ public class CoreHelper {
         return cloud;
     }
     
+    private static String parseNull(String signature) {
+        return (signature == null ? "" : signature);
+    }
+
     public static Agent createMockAgent() {
         return createMockAgent(newAgentIden());
     }
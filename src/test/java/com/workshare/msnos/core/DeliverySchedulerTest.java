@@ -0,0 +1,264 @@
+package com.workshare.msnos.core;
+
+import static com.workshare.msnos.core.CoreHelper.createMockCloud;
+import static com.workshare.msnos.core.CoreHelper.newAgentIden;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.workshare.msnos.core.DeliveryScheduler.Policy;
+import com.workshare.msnos.core.Message.Status;
+import com.workshare.msnos.core.Message.Type;
+import com.workshare.msnos.core.Sender.Transmission;
+import com.workshare.msnos.core.receipts.SingleReceipt;
+import com.workshare.msnos.core.routing.Router;
+
+public class DeliverySchedulerTest {
+
+    private static final Iden SMITH = newAgentIden();
+    private static final Iden JONES = newAgentIden();
+
+    private Cloud cloud;
+    private Router router;
+    private Sender sender;
+    private ManualExecutor executor;
+    private Map<Type, Policy> policies;
+
+    @Before
+    public void before() throws Exception {
+        cloud = createMockCloud();
+        router = mock(Router.class);
+        when(router.send(any(Message.class))).thenAnswer(new Answer<Receipt>() {
+            @Override
+            public Receipt answer(InvocationOnMock invocation) throws Throwable {
+                Message message = (Message) invocation.getArguments()[0];
+                return new SingleReceipt(Router.NOOP_GATE, Status.DELIVERED, message);
+            }
+        });
+
+        executor = new ManualExecutor();
+        sender = new Sender(router, executor, null);
+        policies = DeliveryScheduler.defaultPolicies();
+    }
+
+    @Test
+    public void shouldDrainDestinationsInRoundRobin() throws Exception {
+        DeliveryScheduler scheduler = scheduler(1, 10);
+        List<Message> smiths = submit(scheduler, Type.APP, SMITH, 3);
+        List<Message> joneses = submit(scheduler, Type.APP, JONES, 3);
+
+        executor.runAll();
+
+        List<Message> sent = sentMessages(6);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(smiths.get(i).getUuid(), sent.get(i * 2).getUuid());
+            assertEquals(joneses.get(i).getUuid(), sent.get(i * 2 + 1).getUuid());
+        }
+    }
+
+    @Test
+    public void shouldDeliverQueuedTransmissions() throws Exception {
+        DeliveryScheduler scheduler = scheduler(1, 10);
+        Transmission tx = transmission(Type.APP, SMITH);
+
+        scheduler.submit(tx);
+        assertEquals(Status.UNKNOWN, tx.receipt().getStatus());
+        executor.runAll();
+
+        assertEquals(Status.DELIVERED, tx.receipt().getStatus());
+        assertEquals(0, scheduler.depth());
+    }
+
+    @Test
+    public void shouldRejectWhenFullAndPolicyIsReject() throws Exception {
+        policies.put(Type.APP, Policy.REJECT);
+        DeliveryScheduler scheduler = scheduler(1, 2);
+        submit(scheduler, Type.APP, SMITH, 2);
+
+        Transmission tx = transmission(Type.APP, SMITH);
+        scheduler.submit(tx);
+
+        assertEquals(Status.FAILED, tx.receipt().getStatus());
+        assertEquals(1, scheduler.rejections().count());
+        assertEquals(2, scheduler.depth(SMITH));
+    }
+
+    @Test
+    public void shouldDropOldestOfSameTypeWhenFullAndPolicyIsDropOldest() throws Exception {
+        DeliveryScheduler scheduler = scheduler(1, 2);
+        Transmission stale = transmission(Type.PIN, SMITH);
+        scheduler.submit(stale);
+        submit(scheduler, Type.APP, SMITH, 1);
+
+        Transmission fresh = transmission(Type.PIN, SMITH);
+        scheduler.submit(fresh);
+        executor.runAll();
+
+        assertEquals(Status.FAILED, stale.receipt().getStatus());
+        assertEquals(Status.DELIVERED, fresh.receipt().getStatus());
+        assertEquals(1, scheduler.drops().count());
+        assertEquals(fresh.message().getUuid(), sentMessages(2).get(1).getUuid());
+    }
+
+    @Test
+    public void shouldRejectWhenFullAndNothingOfSameTypeToDrop() throws Exception {
+        DeliveryScheduler scheduler = scheduler(1, 1);
+        submit(scheduler, Type.APP, SMITH, 1);
+
+        Transmission tx = transmission(Type.PIN, SMITH);
+        scheduler.submit(tx);
+
+        assertEquals(Status.FAILED, tx.receipt().getStatus());
+        assertEquals(1, scheduler.rejections().count());
+    }
+
+    @Test
+    public void shouldSendOnCallerThreadWhenFullAndPolicyIsNeverDrop() throws Exception {
+        DeliveryScheduler scheduler = scheduler(1, 1);
+        submit(scheduler, Type.PRS, SMITH, 1);
+
+        Transmission tx = transmission(Type.PRS, SMITH);
+        scheduler.submit(tx);
+
+        assertEquals(Status.DELIVERED, tx.receipt().getStatus());
+        assertEquals(1, scheduler.callerRuns().count());
+        assertEquals(tx.message().getUuid(), sentMessages(1).get(0).getUuid());
+    }
+
+    @Test
+    public void shouldKeepDestinationsIndependent() throws Exception {
+        policies.put(Type.APP, Policy.REJECT);
+        DeliveryScheduler scheduler = scheduler(1, 1);
+        submit(scheduler, Type.APP, SMITH, 1);
+
+        Transmission tx = transmission(Type.APP, JONES);
+        scheduler.submit(tx);
+        executor.runAll();
+
+        assertEquals(Status.DELIVERED, tx.receipt().getStatus());
+        assertEquals(0, scheduler.rejections().count());
+    }
+
+    @Test
+    public void shouldQueueCloudMessagesByRing() throws Exception {
+        Transmission tx = sender.new Transmission(new MessageBuilder(Type.PRS, SMITH, cloud.getIden()).make(), cloud);
+
+        assertEquals(cloud.getRing(), DeliveryScheduler.keyOf(tx));
+    }
+
+    @Test
+    public void shouldLimitActiveDrainers() throws Exception {
+        DeliveryScheduler scheduler = scheduler(2, 10);
+
+        submit(scheduler, Type.APP, SMITH, 1);
+        submit(scheduler, Type.APP, JONES, 1);
+        submit(scheduler, Type.APP, newAgentIden(), 1);
+
+        assertEquals(2, executor.tasks.size());
+    }
+
+    @Test
+    public void shouldNotSendUntilDrained() throws Exception {
+        DeliveryScheduler scheduler = scheduler(1, 10);
+
+        submit(scheduler, Type.APP, SMITH, 3);
+
+        verifyZeroInteractions(router);
+        assertEquals(3, scheduler.depth());
+    }
+
+    @Test
+    public void shouldRecordWaitTimes() throws Exception {
+        DeliveryScheduler scheduler = scheduler(1, 10);
+        submit(scheduler, Type.APP, SMITH, 3);
+
+        executor.runAll();
+
+        assertEquals(3, scheduler.waits().count());
+    }
+
+    @Test
+    public void shouldNotLetASlowDestinationHoldAllDrainers() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        when(router.send(any(Message.class))).thenAnswer(new Answer<Receipt>() {
+            @Override
+            public Receipt answer(InvocationOnMock invocation) throws Throwable {
+                Message message = (Message) invocation.getArguments()[0];
+                if (message.getTo().equals(SMITH))
+                    release.await();
+                return new SingleReceipt(Router.NOOP_GATE, Status.DELIVERED, message);
+            }
+        });
+
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            DeliveryScheduler scheduler = new DeliveryScheduler(threads, 2, 10, policies);
+            submit(scheduler, Type.APP, SMITH, 3);
+            Transmission tx = transmission(Type.APP, JONES);
+            scheduler.submit(tx);
+
+            assertTrue(tx.receipt().waitForDelivery(1, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            threads.shutdown();
+        }
+    }
+
+    private DeliveryScheduler scheduler(int drainers, int capacity) {
+        return new DeliveryScheduler(executor, drainers, capacity, policies);
+    }
+
+    private List<Message> submit(DeliveryScheduler scheduler, Type type, Iden to, int count) {
+        List<Message> messages = new ArrayList<Message>();
+        for (int i = 0; i < count; i++) {
+            Transmission tx = transmission(type, to);
+            scheduler.submit(tx);
+            messages.add(tx.message());
+        }
+        return messages;
+    }
+
+    private Transmission transmission(Type type, Iden to) {
+        return sender.new Transmission(new MessageBuilder(type, newAgentIden(), to).make(), cloud);
+    }
+
+    private List<Message> sentMessages(int count) {
+        ArgumentCaptor<Message> captor = ArgumentCaptor.forClass(Message.class);
+        verify(router, times(count)).send(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private static class ManualExecutor implements Executor {
+        private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        public void runAll() {
+            while (!tasks.isEmpty())
+                tasks.remove(0).run();
+        }
+    }
+}
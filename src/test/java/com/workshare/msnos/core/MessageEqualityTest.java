@@ -0,0 +1,189 @@
+package com.workshare.msnos.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.workshare.msnos.core.Message.Payload;
+import com.workshare.msnos.core.payloads.FltPayload;
+import com.workshare.msnos.core.payloads.GenericPayload;
+import com.workshare.msnos.core.payloads.HealthcheckPayload;
+import com.workshare.msnos.core.payloads.Presence;
+import com.workshare.msnos.core.payloads.QnePayload;
+import com.workshare.msnos.core.payloads.TracePayload;
+import com.workshare.msnos.core.protocols.ip.BaseEndpoint;
+import com.workshare.msnos.core.protocols.ip.Endpoint;
+import com.workshare.msnos.core.protocols.ip.HttpEndpoint;
+import com.workshare.msnos.core.protocols.ip.Network;
+import com.workshare.msnos.core.protocols.ip.NullGateway;
+import com.workshare.msnos.soup.json.Json;
+import com.workshare.msnos.usvc.api.RestApi;
+
+/**
+ * Checks on a large corpus of generated messages that the structural
+ * equality always agrees with the json based one
+ */
+public class MessageEqualityTest {
+
+    private static final int CORPUS_SIZE = 2000;
+    private static final int FIELDS = 10;
+
+    private static final Message.Type[] TYPES = {
+        Message.Type.APP, Message.Type.PRS, Message.Type.PIN, Message.Type.PON,
+        Message.Type.FLT, Message.Type.QNE, Message.Type.HCK, Message.Type.TRC
+    };
+
+    private static final UUID[] UUIDS = new UUID[4];
+    static {
+        for (int i = 0; i < UUIDS.length; i++)
+            UUIDS[i] = new UUID(1234, i);
+    }
+
+    @BeforeClass
+    public static void useLocalTimeSource() {
+        System.setProperty("com.ws.nsnos.time.local", "true");
+    }
+
+    @Test
+    public void shouldAgreeWithJsonOnIdenticalMessages() {
+        for (long seed = 0; seed < CORPUS_SIZE; seed++) {
+            assertAgreement(generate(seed, -1), generate(seed, -1));
+        }
+    }
+
+    @Test
+    public void shouldAgreeWithJsonOnMutatedMessages() {
+        Random random = new Random(42);
+        for (long seed = 0; seed < CORPUS_SIZE; seed++) {
+            assertAgreement(generate(seed, -1), generate(seed, random.nextInt(FIELDS)));
+        }
+    }
+
+    @Test
+    public void shouldAgreeWithJsonOnUnrelatedMessages() {
+        Random random = new Random(42);
+        for (long seed = 0; seed < CORPUS_SIZE; seed++) {
+            assertAgreement(generate(seed, -1), generate(random.nextInt(CORPUS_SIZE), -1));
+        }
+    }
+
+    @Test
+    public void shouldAgreeWithJsonOnCopies() {
+        for (long seed = 0; seed < CORPUS_SIZE; seed++) {
+            Message message = generate(seed, -1);
+            assertAgreement(message, message.withHops(message.getHops() + 1).withHops(message.getHops()));
+            assertAgreement(message, message.data(message.getData()));
+            assertAgreement(message, message.hopped());
+        }
+    }
+
+    private void assertAgreement(Message one, Message two) {
+        final boolean expected = Json.toJsonString(one).equals(Json.toJsonString(two));
+
+        assertEquals(one + " vs " + two, expected, one.equals(two));
+        assertEquals(one + " vs " + two, expected, two.equals(one));
+        if (expected)
+            assertEquals(one.hashCode(), two.hashCode());
+    }
+
+    // every random choice is always drawn, so that the mutated field is
+    // the only one differing from the original message
+    private Message generate(long seed, int mutated) {
+        final Random random = new Random(seed);
+        final Random mutator = new Random(~seed);
+
+        Message.Type type = TYPES[random.nextInt(TYPES.length)];
+        Iden from = iden(Iden.Type.AGT, random);
+        Iden to = random.nextBoolean() ? iden(Iden.Type.CLD, random) : iden(Iden.Type.AGT, random);
+        int hops = random.nextInt(10);
+        boolean reliable = random.nextBoolean();
+        long when = 1000000L + random.nextInt(5);
+        UUID uuid = UUIDS[random.nextInt(UUIDS.length)];
+        String sig = random.nextBoolean() ? "key:" + random.nextInt(3) : null;
+        String gate = random.nextBoolean() ? "UDP" : null;
+        long payloadSeed = random.nextLong();
+
+        switch (mutated) {
+            case 0: type = TYPES[mutator.nextInt(TYPES.length)]; break;
+            case 1: from = iden(Iden.Type.AGT, mutator); break;
+            case 2: to = iden(to.getType(), mutator); break;
+            case 3: hops = hops + 1; break;
+            case 4: reliable = !reliable; break;
+            case 5: when = when + 1; break;
+            case 6: uuid = UUIDS[mutator.nextInt(UUIDS.length)]; break;
+            case 7: sig = (sig == null ? "key:0" : null); break;
+            case 8: gate = (gate == null ? "HTTP" : null); break;
+            case 9: payloadSeed = mutator.nextLong(); break;
+        }
+
+        if (to.getType() == Iden.Type.CLD)
+            reliable = false;
+
+        return new MessageBuilder(type, from, to)
+            .with(uuid)
+            .with(payload(type, from, new Random(payloadSeed)))
+            .withHops(hops)
+            .reliable(reliable)
+            .at(when)
+            .signed(sig, sig == null ? null : "rnd")
+            .withGateName(gate)
+            .make();
+    }
+
+    private Payload payload(Message.Type type, Iden from, Random random) {
+        switch (type) {
+            case PRS:
+                return new Presence(random.nextBoolean(), endpoints(random));
+            case QNE:
+                return new QnePayload("service" + random.nextInt(2), apis(random));
+            case FLT:
+                return new FltPayload(iden(Iden.Type.AGT, random));
+            case HCK:
+                return new HealthcheckPayload(new LocalAgent(UUIDS[random.nextInt(UUIDS.length)]), random.nextBoolean());
+            case TRC:
+                TracePayload trace = new TracePayload(from);
+                for (int i = random.nextInt(3); i > 0; i--)
+                    trace = trace.crumbed(UUIDS[random.nextInt(UUIDS.length)], UUIDS[random.nextInt(UUIDS.length)], new NullGateway(), random.nextInt(5));
+                return trace;
+            case APP:
+                if (random.nextBoolean())
+                    return null;
+                JsonObject data = new JsonObject();
+                data.addProperty("name", "name" + random.nextInt(3));
+                data.addProperty("size", random.nextInt(3));
+                return new GenericPayload(data);
+            default:
+                return null;
+        }
+    }
+
+    private Set<Endpoint> endpoints(Random random) {
+        Set<Endpoint> endpoints = new HashSet<Endpoint>();
+        for (int i = random.nextInt(3); i > 0; i--) {
+            Network network = new Network(new byte[] { 10, 0, 0, (byte) random.nextInt(250) }, (short) 24);
+            if (random.nextBoolean())
+                endpoints.add(new BaseEndpoint(Endpoint.Type.UDP, network, (short) (3000 + random.nextInt(100))));
+            else
+                endpoints.add(new HttpEndpoint(network, "http://10.0.0.1:" + (8000 + random.nextInt(100)) + "/path"));
+        }
+        return endpoints;
+    }
+
+    private RestApi[] apis(Random random) {
+        RestApi[] apis = new RestApi[random.nextInt(3)];
+        for (int i = 0; i < apis.length; i++)
+            apis[i] = new RestApi("/path" + random.nextInt(1000), 7000 + i, "host", RestApi.Type.PUBLIC, random.nextBoolean(), random.nextInt(3));
+        return apis;
+    }
+
+    private Iden iden(Iden.Type type, Random random) {
+        return new Iden(type, UUIDS[random.nextInt(UUIDS.length)]);
+    }
+}
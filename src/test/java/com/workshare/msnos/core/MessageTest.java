@@ -1,7 +1,9 @@
 package com.workshare.msnos.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
 import java.util.UUID;
 
@@ -9,6 +11,7 @@ import org.junit.Test;
 
 import com.workshare.msnos.core.payloads.PongPayload;
 import com.workshare.msnos.core.payloads.TracePayload;
+import com.workshare.msnos.core.serializers.WireJsonSerializer;
 
 public class MessageTest {
 
@@ -52,4 +55,69 @@ public class MessageTest {
         assertNotNull(msg.getData());
         assertEquals(TracePayload.class, msg.getData().getClass());
     }
+
+    @Test
+    public void shouldEncodeOnlyOncePerSerializer() {
+        CountingSerializer sz = new CountingSerializer();
+        Message msg = new MessageBuilder(Message.Type.APP, AGENT_IDEN, CLOUD_IDEN).make();
+
+        byte[] bytes = msg.toBytes(sz);
+        String text = msg.toText(sz);
+
+        assertSame(bytes, msg.toBytes(sz));
+        assertSame(text, msg.toText(sz));
+        assertEquals(1, sz.bytesCount);
+        assertEquals(1, sz.textCount);
+    }
+
+    @Test
+    public void shouldEncodeAgainWithAnotherSerializer() {
+        CountingSerializer one = new CountingSerializer();
+        CountingSerializer two = new CountingSerializer();
+        Message msg = new MessageBuilder(Message.Type.APP, AGENT_IDEN, CLOUD_IDEN).make();
+
+        msg.toBytes(one);
+        msg.toBytes(two);
+
+        assertEquals(1, one.bytesCount);
+        assertEquals(1, two.bytesCount);
+    }
+
+    @Test
+    public void shouldNotShareEncodingWithCopies() {
+        WireJsonSerializer sz = new WireJsonSerializer();
+        Message msg = new MessageBuilder(Message.Type.APP, AGENT_IDEN, CLOUD_IDEN).withHops(3).make();
+        String text = msg.toText(sz);
+
+        Message copy = msg.withHops(2);
+
+        assertFalse(text.equals(copy.toText(sz)));
+        assertEquals(sz.toText(copy), copy.toText(sz));
+    }
+
+    @Test
+    public void shouldBeEqualToAnIdenticalMessage() {
+        Message msg = new MessageBuilder(Message.Type.APP, AGENT_IDEN, CLOUD_IDEN).with(MSG_UUID).make();
+        Message copy = msg.withHops(msg.getHops() + 1).withHops(msg.getHops());
+
+        assertEquals(msg, copy);
+        assertFalse(msg.equals(msg.withHops(msg.getHops() + 1)));
+    }
+
+    private static class CountingSerializer extends WireJsonSerializer {
+        private int bytesCount;
+        private int textCount;
+
+        @Override
+        public byte[] toBytes(Object anyObject) {
+            bytesCount++;
+            return super.toBytes(anyObject);
+        }
+
+        @Override
+        public String toText(Object anyObject) {
+            textCount++;
+            return super.toText(anyObject);
+        }
+    }
 }
@@ -1,8 +1,12 @@
 package com.workshare.msnos.core;
 
+import static com.workshare.msnos.core.Message.Type.HCD;
 import static com.workshare.msnos.core.Message.Type.HCK;
 
+import java.util.Arrays;
+
 import com.workshare.msnos.core.payloads.FltPayload;
+import com.workshare.msnos.core.payloads.HealthDigestPayload;
 import com.workshare.msnos.core.payloads.HealthcheckPayload;
 import com.workshare.msnos.core.payloads.Presence;
 import com.workshare.msnos.core.payloads.QnePayload;
@@ -21,6 +25,14 @@ public class MessagesHelper {
                 .make();
     }
     
+    public static Message newHCDMessage(Iden from, RemoteMicroservice remote, boolean working) {
+        final Cloud cloud = remote.getAgent().getCloud();
+        final HealthDigestPayload.Entry entry = new HealthDigestPayload.Entry(remote.getAgent().getIden(), working);
+        return new MessageBuilder(HCD, from, cloud.getIden())
+                .with(new HealthDigestPayload(Arrays.asList(entry)))
+                .make();
+    }
+
     public static Message newPingMessage(Iden from) {
         return new MessageBuilder(Message.Type.PIN, from, from).make();
     }
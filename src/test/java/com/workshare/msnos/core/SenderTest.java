@@ -6,6 +6,7 @@ import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
@@ -16,6 +17,7 @@ import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
 import com.workshare.msnos.core.Message.Status;
+import com.workshare.msnos.core.Sender.Transmission;
 import com.workshare.msnos.core.receipts.SingleReceipt;
 import com.workshare.msnos.core.routing.Router;
 
@@ -69,6 +71,21 @@ public class SenderTest {
         assertEquals(message.getUuid(), receipt.getMessageUuid());
     }
 
+    @Test
+    public void shouldHandTransmissionsToSchedulerWhenConfigured() throws Exception {
+        DeliveryScheduler scheduler = mock(DeliveryScheduler.class);
+        sender = new Sender(router, executor, scheduler);
+        Message message = newPingMessage(cloud);
+
+        Receipt receipt = sender.send(cloud, message);
+
+        ArgumentCaptor<Transmission> captor = ArgumentCaptor.forClass(Transmission.class);
+        verify(scheduler).submit(captor.capture());
+        assertEquals(message.getUuid(), captor.getValue().message().getUuid());
+        assertEquals(receipt, captor.getValue().receipt());
+        verifyZeroInteractions(executor);
+    }
+
     private Message verifyMessageSent(final Message message) throws IOException {
         ArgumentCaptor<Message> runnableCaptor = ArgumentCaptor.forClass(Message.class);
         verify(router).send(runnableCaptor.capture());
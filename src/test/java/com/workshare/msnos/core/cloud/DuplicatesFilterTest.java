@@ -0,0 +1,134 @@
+package com.workshare.msnos.core.cloud;
+
+import static com.workshare.msnos.core.CoreHelper.fakeElapseTime;
+import static com.workshare.msnos.core.CoreHelper.fakeSystemTime;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.workshare.msnos.soup.time.SystemTime;
+
+public class DuplicatesFilterTest {
+
+    private static final long WINDOW = 60000L;
+
+    private DuplicatesFilter filter;
+
+    @Before
+    public void before() {
+        fakeSystemTime(1234567L);
+        filter = new DuplicatesFilter(WINDOW, 1024);
+    }
+
+    @After
+    public void after() {
+        SystemTime.reset();
+    }
+
+    @Test
+    public void shouldDetectDuplicates() {
+        UUID uuid = UUID.randomUUID();
+
+        assertFalse(filter.seen(uuid));
+        assertTrue(filter.seen(uuid));
+        assertFalse(filter.seen(UUID.randomUUID()));
+    }
+
+    @Test
+    public void shouldRememberForTheWholeWindow() {
+        UUID uuid = UUID.randomUUID();
+        filter.seen(uuid);
+
+        fakeElapseTime(WINDOW - 1);
+
+        assertTrue(filter.seen(uuid));
+    }
+
+    @Test
+    public void shouldForgetAfterTheWindow() {
+        UUID uuid = UUID.randomUUID();
+        filter.seen(uuid);
+
+        fakeElapseTime(WINDOW * 2);
+
+        assertFalse(filter.seen(uuid));
+    }
+
+    @Test
+    public void shouldNotForgetWhenClockGoesBack() {
+        UUID uuid = UUID.randomUUID();
+        filter.seen(uuid);
+
+        fakeElapseTime(-WINDOW * 10);
+
+        assertTrue(filter.seen(uuid));
+    }
+
+    @Test
+    public void shouldExposeOccupancyAndHitRate() {
+        UUID uuid = UUID.randomUUID();
+        filter.seen(uuid);
+        filter.seen(uuid);
+        filter.seen(UUID.randomUUID());
+        filter.seen(UUID.randomUUID());
+
+        assertEquals(3, filter.occupancy());
+        assertEquals(0.25, filter.hitRate(), 0.001);
+        assertEquals(4, filter.lookups().count());
+        assertEquals(1, filter.hits().count());
+    }
+
+    @Test
+    public void shouldNeverRejectNewMessagesWhenFull() {
+        filter = new DuplicatesFilter(WINDOW, 16);
+
+        for (int i = 0; i < 10000; i++)
+            assertFalse(filter.seen(UUID.randomUUID()));
+
+        assertTrue(filter.overflows() > 0);
+        assertTrue(filter.occupancy() <= filter.capacity());
+    }
+
+    @Test
+    public void shouldLetExactlyOneThreadSeeEachUuidFirst() throws Exception {
+        final int threads = 8;
+        final List<UUID> uuids = new ArrayList<UUID>();
+        for (int i = 0; i < 500; i++)
+            uuids.add(UUID.randomUUID());
+
+        final AtomicInteger firsts = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (UUID uuid : uuids)
+                            if (!filter.seen(uuid))
+                                firsts.incrementAndGet();
+                    } catch (InterruptedException ignore) {
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        start.countDown();
+        done.await();
+
+        assertEquals(uuids.size(), firsts.get());
+    }
+}
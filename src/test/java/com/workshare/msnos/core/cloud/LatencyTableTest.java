@@ -0,0 +1,121 @@
+package com.workshare.msnos.core.cloud;
+
+import static com.workshare.msnos.core.CoreHelper.fakeElapseTime;
+import static com.workshare.msnos.core.CoreHelper.fakeSystemTime;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.workshare.msnos.soup.time.SystemTime;
+
+public class LatencyTableTest {
+
+    private LatencyTable table;
+    private UUID agent;
+
+    @Before
+    public void setup() {
+        fakeSystemTime(12345L);
+        table = new LatencyTable();
+        agent = UUID.randomUUID();
+    }
+
+    @After
+    public void after() {
+        SystemTime.reset();
+    }
+
+    @Test
+    public void shouldBeUnknownWhenNeverMeasured() {
+        assertEquals(LatencyTable.UNKNOWN, table.get(agent));
+    }
+
+    @Test
+    public void shouldBeStaleWhenNeverMeasured() {
+        assertTrue(table.isStale(agent));
+    }
+
+    @Test
+    public void shouldNotBeStaleWhenJustMeasured() {
+        table.record(agent, 20, TimeUnit.MILLISECONDS);
+
+        assertFalse(table.isStale(agent));
+    }
+
+    @Test
+    public void shouldBeStaleWhenMeasureIsHalfwayToExpiring() {
+        table.record(agent, 20, TimeUnit.MILLISECONDS);
+        fakeElapseTime(3 * 60 * 1000L);
+
+        assertTrue(table.isStale(agent));
+        assertEquals(20L, table.get(agent));
+    }
+
+    @Test
+    public void shouldMeasureRoundTripFromPingToPong() {
+        table.pinged(agent);
+        fakeElapseTime(40L);
+        table.ponged(agent);
+
+        assertEquals(40L, table.get(agent));
+    }
+
+    @Test
+    public void shouldIgnorePongWithoutPing() {
+        table.ponged(agent);
+
+        assertEquals(LatencyTable.UNKNOWN, table.get(agent));
+    }
+
+    @Test
+    public void shouldMeasureFromFirstPendingPing() {
+        table.pinged(agent);
+        fakeElapseTime(30L);
+        table.pinged(agent);
+        fakeElapseTime(20L);
+        table.ponged(agent);
+
+        assertEquals(50L, table.get(agent));
+    }
+
+    @Test
+    public void shouldWeightNewSamplesMoreAsTimePasses() {
+        table.record(agent, 100, TimeUnit.MILLISECONDS);
+        fakeElapseTime(1000L);
+        table.record(agent, 20, TimeUnit.MILLISECONDS);
+        final long soon = table.get(agent);
+
+        fakeElapseTime(120000L);
+        table.record(agent, 20, TimeUnit.MILLISECONDS);
+        final long later = table.get(agent);
+
+        assertTrue(soon > 90 && soon < 100);
+        assertTrue(later < 40);
+    }
+
+    @Test
+    public void shouldForgetStaleMeasures() {
+        table.record(agent, 100, TimeUnit.MILLISECONDS);
+
+        fakeElapseTime(10 * 60 * 1000L);
+
+        assertEquals(LatencyTable.UNKNOWN, table.get(agent));
+    }
+
+    @Test
+    public void shouldForgetRemovedAgent() {
+        table.record(agent, 100, TimeUnit.MILLISECONDS);
+
+        table.remove(agent);
+
+        assertEquals(LatencyTable.UNKNOWN, table.get(agent));
+        assertEquals(0, table.size());
+    }
+}
@@ -0,0 +1,146 @@
+package com.workshare.msnos.core.geo;
+
+import static com.workshare.msnos.core.CoreHelper.fakeElapseTime;
+import static com.workshare.msnos.core.CoreHelper.fakeSystemTime;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.workshare.msnos.core.geo.Location.Place;
+import com.workshare.msnos.soup.threading.ExecutorServices;
+import com.workshare.msnos.soup.time.SystemTime;
+
+public class CachingLocationFactoryTest {
+
+    private static final long TTL = 10000L;
+    private static final long NEGATIVE_TTL = 1000L;
+
+    private static final Location ITALY = new Location(new Place(Place.Type.COUNTRY, "Italy", "IT"), null, null, null);
+    private static final Location FRANCE = new Location(new Place(Place.Type.COUNTRY, "France", "FR"), null, null, null);
+
+    private CountingFactory delegate;
+    private CachingLocationFactory factory;
+
+    @Before
+    public void setup() {
+        fakeSystemTime(12345L);
+        delegate = new CountingFactory();
+        factory = newFactory(ExecutorServices.newSynhcronousExecutor(), 100);
+    }
+
+    @After
+    public void after() {
+        SystemTime.reset();
+    }
+
+    @Test
+    public void shouldLookupOnlyOnceWhileNotExpired() {
+        delegate.locations.put("host", ITALY);
+
+        assertSame(ITALY, factory.make("host"));
+        assertSame(ITALY, factory.make("host"));
+
+        assertEquals(1, delegate.calls);
+        assertEquals(1, factory.misses());
+        assertEquals(1, factory.hits());
+    }
+
+    @Test
+    public void shouldReturnStaleLocationAndRefreshWhenExpired() {
+        delegate.locations.put("host", ITALY);
+        factory.make("host");
+
+        fakeElapseTime(TTL);
+        delegate.locations.put("host", FRANCE);
+
+        assertSame(ITALY, factory.make("host"));
+        assertSame(FRANCE, factory.make("host"));
+        assertEquals(1, factory.refreshes());
+    }
+
+    @Test
+    public void shouldRefreshOnlyOnceWhileRefreshing() {
+        final DeferredExecutor executor = new DeferredExecutor();
+        factory = newFactory(executor, 100);
+        delegate.locations.put("host", ITALY);
+        factory.make("host");
+
+        fakeElapseTime(TTL);
+        factory.make("host");
+        factory.make("host");
+
+        assertEquals(1, executor.tasks);
+        assertEquals(1, factory.refreshes());
+    }
+
+    @Test
+    public void shouldKeepUnknownLocationsForShorterTime() {
+        assertSame(Location.UNKNOWN, factory.make("host"));
+
+        fakeElapseTime(NEGATIVE_TTL);
+        delegate.locations.put("host", ITALY);
+        factory.make("host");
+
+        assertSame(ITALY, factory.make("host"));
+        assertEquals(2, delegate.calls);
+    }
+
+    @Test
+    public void shouldNotReplaceKnownLocationWhenRefreshFails() {
+        delegate.locations.put("host", ITALY);
+        factory.make("host");
+
+        fakeElapseTime(TTL);
+        delegate.locations.clear();
+        factory.make("host");
+
+        assertSame(ITALY, factory.make("host"));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedHosts() {
+        factory = newFactory(ExecutorServices.newSynhcronousExecutor(), 2);
+        factory.make("alfa");
+        factory.make("beta");
+        factory.make("alfa");
+
+        factory.make("gamma");
+
+        assertEquals(2, factory.size());
+        assertEquals(1, factory.evictions());
+        factory.make("alfa");
+        assertEquals(3, delegate.calls);
+    }
+
+    private CachingLocationFactory newFactory(Executor executor, int maxSize) {
+        return new CachingLocationFactory(delegate, executor, maxSize, TTL, NEGATIVE_TTL);
+    }
+
+    private static class CountingFactory implements LocationFactory {
+        private final Map<String, Location> locations = new HashMap<String, Location>();
+        private int calls;
+
+        @Override
+        public Location make(String host) {
+            calls++;
+            final Location location = locations.get(host);
+            return location == null ? Location.UNKNOWN : location;
+        }
+    }
+
+    private static class DeferredExecutor implements Executor {
+        private int tasks;
+
+        @Override
+        public void execute(Runnable command) {
+            tasks++;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.workshare.msnos.core.geo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+import com.workshare.msnos.core.geo.Location.Place;
+
+public class LocationIndexTest {
+
+    private static final Location EUROPE = new Location(continent("EU"), null, null, null);
+    private static final Location ITALY = new Location(continent("EU"), country("IT"), null, null);
+    private static final Location PARIS = new Location(continent("EU"), country("FR"), region("RS"), city("PA"));
+    private static final Location TURIN = new Location(continent("EU"), country("IT"), region("PI"), city("TO"));
+    private static final Location ASTI = new Location(continent("EU"), country("IT"), region("PI"), city("AT"));
+    private static final Location KONG = new Location(continent("AS"), country("HK"), region("HK"), city("HK"));
+
+    @Test
+    public void shouldGiveSameIdToEqualPlaces() {
+        assertEquals(LocationIndex.idOf(country("IT")), LocationIndex.idOf(country("IT")));
+        assertNotEquals(LocationIndex.idOf(country("IT")), LocationIndex.idOf(country("FR")));
+    }
+
+    @Test
+    public void shouldGiveZeroIdToNowhere() {
+        assertEquals(0, LocationIndex.idOf(Place.NOWHERE));
+        assertEquals(0, LocationIndex.idOf((Place) null));
+    }
+
+    @Test
+    public void shouldGiveSameIdToEqualLocations() {
+        Location turin = new Location(continent("EU"), country("IT"), region("PI"), city("TO"));
+
+        assertEquals(LocationIndex.idOf(TURIN), LocationIndex.idOf(turin));
+        assertNotEquals(LocationIndex.idOf(TURIN), LocationIndex.idOf(ASTI));
+    }
+
+    @Test
+    public void shouldScoreAsLocationMatch() {
+        Location[] all = {EUROPE, ITALY, PARIS, TURIN, ASTI, KONG, Location.UNKNOWN};
+        for (Location source : all)
+            for (Location target : all)
+                assertEquals(source + " vs " + target, source.match(target).value(), LocationIndex.score(source, target));
+    }
+
+    @Test
+    public void shouldNeverMatchUnknownLocations() {
+        assertEquals(0, LocationIndex.score(Location.UNKNOWN, Location.UNKNOWN));
+        assertEquals(0, LocationIndex.score(TURIN, null));
+    }
+
+    private static Place continent(String code) {
+        return new Place(Place.Type.CONTINENT, code, code);
+    }
+
+    private static Place country(String code) {
+        return new Place(Place.Type.COUNTRY, code, code);
+    }
+
+    private static Place region(String code) {
+        return new Place(Place.Type.REGION, code, code);
+    }
+
+    private static Place city(String code) {
+        return new Place(Place.Type.CITY, code, code);
+    }
+}
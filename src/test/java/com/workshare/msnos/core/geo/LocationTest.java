@@ -1,6 +1,7 @@
 package com.workshare.msnos.core.geo;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.when;
@@ -202,6 +203,22 @@ public class LocationTest {
         Location loc = Location.UNKNOWN;
         assertEquals("unknown", loc.toString());
     }
+
+    @Test
+    public void shouldComputeGreatCircleDistance() {
+        Location.GPS london = new Location.GPS(51.5074, -0.1278, 10);
+        Location.GPS paris = new Location.GPS(48.8566, 2.3522, 10);
+
+        assertEquals(344.0, london.distanceTo(paris), 1.0);
+        assertEquals(344.0, paris.distanceTo(london), 1.0);
+        assertEquals(0.0, london.distanceTo(london), 0.001);
+    }
+
+    @Test
+    public void shouldGpsBeInvalidWithoutCoordinates() {
+        assertTrue(new Location.GPS(51.5074, -0.1278, null).isValid());
+        assertFalse(new Location.GPS(null, -0.1278, 10).isValid());
+    }
     
     private OmniResponse response(Continent continent) {
         return response(continent, null, null, null);
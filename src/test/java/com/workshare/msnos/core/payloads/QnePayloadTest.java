@@ -9,6 +9,8 @@ import java.util.HashSet;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class QnePayloadTest {
 
@@ -37,6 +39,36 @@ public class QnePayloadTest {
         }
     }
 
+    @Test
+    public void shouldKeepVersionAndRemovalsOnSplit() {
+        Set<RestApi> removed = new HashSet<RestApi>();
+        removed.add(newApi("gamma"));
+        Set<RestApi> added = new HashSet<RestApi>();
+        added.add(newApi("alfa"));
+        added.add(newApi("beta"));
+        QnePayload payload = QnePayload.delta("foo", 42L, added, removed);
+
+        Payload[] loads = payload.split();
+
+        QnePayload one = (QnePayload) loads[0];
+        QnePayload two = (QnePayload) loads[1];
+        assertEquals(42L, one.getVersion());
+        assertEquals(42L, two.getVersion());
+        assertEquals(removed, one.getRemoved());
+        assertTrue(two.isDelta());
+        assertTrue(two.getRemoved().isEmpty());
+    }
+
+    @Test
+    public void shouldNotBeVersionedWhenLegacy() {
+        QnePayload payload = new QnePayload("foo", newApi("alfa"));
+
+        assertFalse(payload.isVersioned());
+        assertFalse(payload.isDelta());
+        assertEquals(0L, payload.getVersion());
+        assertTrue(payload.getRemoved().isEmpty());
+    }
+
     private RestApi newApi(final String path) {
         return new RestApi(path, (int) Math.random() * 1000);
     }
@@ -0,0 +1,144 @@
+package com.workshare.msnos.core.protocols.ip.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.workshare.msnos.core.CoreHelper;
+import com.workshare.msnos.core.Iden;
+import com.workshare.msnos.core.Message;
+import com.workshare.msnos.core.Message.Status;
+import com.workshare.msnos.core.MessageBuilder;
+import com.workshare.msnos.core.protocols.ip.HttpEndpoint;
+import com.workshare.msnos.core.receipts.SingleReceipt;
+import com.workshare.msnos.soup.threading.ExecutorServices;
+
+public class HttpBatcherTest {
+
+    private static final HttpEndpoint SMITH = new HttpEndpoint(CoreHelper.asPublicNetwork("25.25.25.25"), "http://smith", newIden());
+    private static final HttpEndpoint JONES = new HttpEndpoint(CoreHelper.asPublicNetwork("26.26.26.26"), "http://jones", newIden());
+
+    private ScheduledExecutorService scheduler;
+    private List<HttpEndpoint> endpoints;
+    private List<List<Message>> batches;
+    private CountDownLatch sent;
+
+    @Before
+    public void before() {
+        scheduler = ExecutorServices.newSingleThreadScheduledExecutor();
+        endpoints = new ArrayList<HttpEndpoint>();
+        batches = new ArrayList<List<Message>>();
+        sent = new CountDownLatch(1);
+    }
+
+    @After
+    public void after() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void shouldFlushAfterLingerTime() throws Exception {
+        HttpBatcher batcher = batcher(64, 10);
+
+        add(batcher, SMITH);
+        add(batcher, SMITH);
+
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        assertEquals(2, batches.get(0).size());
+    }
+
+    @Test
+    public void shouldFlushImmediatelyWhenFull() throws Exception {
+        HttpBatcher batcher = batcher(2, TimeUnit.MINUTES.toMillis(10));
+
+        add(batcher, SMITH);
+        add(batcher, SMITH);
+
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        assertEquals(2, batches.get(0).size());
+    }
+
+    @Test
+    public void shouldKeepOneBatchPerEndpoint() throws Exception {
+        HttpBatcher batcher = batcher(64, TimeUnit.MINUTES.toMillis(10));
+
+        add(batcher, SMITH);
+        add(batcher, JONES);
+        add(batcher, SMITH);
+        batcher.flush();
+
+        assertEquals(2, batches.size());
+        assertEquals(2, sizeOf(SMITH));
+        assertEquals(1, sizeOf(JONES));
+    }
+
+    @Test
+    public void shouldPreserveMessagesOrder() throws Exception {
+        HttpBatcher batcher = batcher(64, TimeUnit.MINUTES.toMillis(10));
+
+        Message one = add(batcher, SMITH);
+        Message two = add(batcher, SMITH);
+        batcher.flush();
+
+        assertEquals(one, batches.get(0).get(0));
+        assertEquals(two, batches.get(0).get(1));
+    }
+
+    @Test
+    public void shouldFlushPendingMessagesWhenEndpointRemoved() throws Exception {
+        HttpBatcher batcher = batcher(64, TimeUnit.MINUTES.toMillis(10));
+
+        add(batcher, SMITH);
+        batcher.remove(SMITH.getTarget());
+
+        assertEquals(1, batches.size());
+        assertEquals(SMITH, endpoints.get(0));
+    }
+
+    @Test
+    public void shouldNotSendEmptyBatches() throws Exception {
+        HttpBatcher batcher = batcher(64, TimeUnit.MINUTES.toMillis(10));
+
+        batcher.flush();
+
+        assertEquals(0, batches.size());
+    }
+
+    private int sizeOf(HttpEndpoint endpoint) {
+        return batches.get(endpoints.indexOf(endpoint)).size();
+    }
+
+    private Message add(HttpBatcher batcher, HttpEndpoint endpoint) {
+        Message message = new MessageBuilder(Message.Type.APP, newIden(), endpoint.getTarget()).make();
+        batcher.add(endpoint, message, SingleReceipt.unknown(message));
+        return message;
+    }
+
+    private HttpBatcher batcher(int size, long lingerMillis) {
+        return new HttpBatcher(size, lingerMillis, scheduler, new HttpBatcher.Sink() {
+            @Override
+            public synchronized void send(HttpEndpoint endpoint, List<Message> messages, List<SingleReceipt> receipts) {
+                for (SingleReceipt receipt : receipts)
+                    assertEquals(Status.UNKNOWN, receipt.getStatus());
+
+                endpoints.add(endpoint);
+                batches.add(messages);
+                sent.countDown();
+            }
+        });
+    }
+
+    private static Iden newIden() {
+        return new Iden(Iden.Type.AGT, UUID.randomUUID());
+    }
+}
@@ -1,24 +1,37 @@
 package com.workshare.msnos.core.protocols.ip.http;
 
+import static com.workshare.msnos.core.CoreHelper.fakeElapseTime;
+import static com.workshare.msnos.core.CoreHelper.fakeSystemTime;
 import static com.workshare.msnos.core.Iden.Type.AGT;
 import static com.workshare.msnos.core.Iden.Type.CLD;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpVersion;
 import org.apache.http.ParseException;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicStatusLine;
 import org.apache.http.util.EntityUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import com.workshare.msnos.core.Cloud;
 import com.workshare.msnos.core.CoreHelper;
@@ -36,6 +49,7 @@ import com.workshare.msnos.core.protocols.ip.Endpoints;
 import com.workshare.msnos.core.protocols.ip.HttpEndpoint;
 import com.workshare.msnos.core.protocols.ip.www.HttpClientHelper;
 import com.workshare.msnos.core.serializers.WireJsonSerializer;
+import com.workshare.msnos.soup.time.SystemTime;
 
 public class HttpGatewayTest {
 
@@ -157,6 +171,215 @@ public class HttpGatewayTest {
     }
 
 
+    @Test
+    public void shouldReturnPendingReceiptWhenAsync() throws Exception {
+        ManualExecutor executor = useAsyncGateway();
+
+        Receipt receipt = gate.send(cloud, newSampleMessage(newIden(AGT), AGENT_SMITH), null);
+
+        assertEquals(Message.Status.PENDING, receipt.getStatus());
+        assertEquals(1, executor.tasks.size());
+    }
+
+    @Test
+    public void shouldDeliverPendingReceiptWhenAsyncPostCompletes() throws Exception {
+        ManualExecutor executor = useAsyncGateway();
+        Message message = newSampleMessage(newIden(AGT), AGENT_SMITH);
+
+        Receipt receipt = gate.send(cloud, message, null);
+        executor.runAll();
+
+        assertEquals(Message.Status.DELIVERED, receipt.getStatus());
+        assertEquals(toText(message), toText(http.getLastPostToWWW().getEntity()));
+        assertEquals(0, gate.inflight(AGENT_SMITH));
+    }
+
+    @Test
+    public void shouldFailPendingReceiptWhenAsyncPostFails() throws Exception {
+        ManualExecutor executor = useAsyncGateway();
+        when(http.client().execute(any(HttpUriRequest.class))).thenThrow(new IOException("boom!"));
+
+        Receipt receipt = gate.send(cloud, newSampleMessage(newIden(AGT), AGENT_SMITH), null);
+        executor.runAll();
+
+        assertEquals(Message.Status.FAILED, receipt.getStatus());
+        assertEquals(0, gate.inflight(AGENT_SMITH));
+    }
+
+    @Test
+    public void shouldFailImmediatelyWhenTooManyMessagesInFlightToTheSameDestination() throws Exception {
+        ManualExecutor executor = useAsyncGateway();
+        for (int i = 0; i < 4; i++)
+            gate.send(cloud, newSampleMessage(newIden(AGT), AGENT_SMITH), null);
+
+        Receipt receipt = gate.send(cloud, newSampleMessage(newIden(AGT), AGENT_SMITH), null);
+
+        assertEquals(Message.Status.FAILED, receipt.getStatus());
+        assertEquals(4, gate.inflight(AGENT_SMITH));
+        assertEquals(4, executor.tasks.size());
+    }
+
+    @Test
+    public void shouldLimitInFlightMessagesPerDestination() throws Exception {
+        useAsyncGateway();
+        final Iden agentJones = newIden(AGT);
+        installEndpoint("26.26.26.26", agentJones, "http://agents.jones:123/foo");
+        for (int i = 0; i < 4; i++)
+            gate.send(cloud, newSampleMessage(newIden(AGT), AGENT_SMITH), null);
+
+        Receipt receipt = gate.send(cloud, newSampleMessage(newIden(AGT), agentJones), null);
+
+        assertEquals(Message.Status.PENDING, receipt.getStatus());
+    }
+
+    @Test
+    public void shouldHoldMessagesWhenBatching() throws Exception {
+        useBatchingGateway();
+
+        Receipt receipt = gate.send(cloud, newSampleMessage(newIden(AGT), AGENT_SMITH), null);
+
+        assertEquals(Message.Status.PENDING, receipt.getStatus());
+        assertNull(http.getLastPostToWWW());
+    }
+
+    @Test
+    public void shouldPostBatchedMessagesInOneRequest() throws Exception {
+        ScheduledExecutorService scheduler = useBatchingGateway();
+        Message one = newSampleMessage(newIden(AGT), AGENT_SMITH);
+        Message two = newSampleMessage(newIden(AGT), AGENT_SMITH);
+
+        Receipt receiptOne = gate.send(cloud, one, null);
+        Receipt receiptTwo = gate.send(cloud, two, null);
+        runScheduledFlush(scheduler);
+
+        HttpPost request = http.getLastPostToWWW();
+        assertEquals(1, http.getAllRequestToWWW(HttpPost.class).size());
+        assertEquals("2", request.getFirstHeader(HttpGateway.HEADER_BATCH).getValue());
+        assertEquals(toText(one) + "\n" + toText(two), toText(request.getEntity()));
+        assertEquals(Message.Status.DELIVERED, receiptOne.getStatus());
+        assertEquals(Message.Status.DELIVERED, receiptTwo.getStatus());
+    }
+
+    @Test
+    public void shouldPostSingleMessageBatchAsPlainRequest() throws Exception {
+        ScheduledExecutorService scheduler = useBatchingGateway();
+        Message message = newSampleMessage(newIden(AGT), AGENT_SMITH);
+
+        Receipt receipt = gate.send(cloud, message, null);
+        runScheduledFlush(scheduler);
+
+        HttpPost request = http.getLastPostToWWW();
+        assertNull(request.getFirstHeader(HttpGateway.HEADER_BATCH));
+        assertEquals(toText(message), toText(request.getEntity()));
+        assertEquals(Message.Status.DELIVERED, receipt.getStatus());
+    }
+
+    @Test
+    public void shouldFallbackToSingleMessagesWhenBatchRefused() throws Exception {
+        ScheduledExecutorService scheduler = useBatchingGateway();
+        when(http.response().getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 400, "Bad request"));
+
+        Receipt receiptOne = gate.send(cloud, newSampleMessage(newIden(AGT), AGENT_SMITH), null);
+        Receipt receiptTwo = gate.send(cloud, newSampleMessage(newIden(AGT), AGENT_SMITH), null);
+        runScheduledFlush(scheduler);
+
+        assertEquals(3, http.getAllRequestToWWW(HttpPost.class).size());
+        assertEquals(Message.Status.DELIVERED, receiptOne.getStatus());
+        assertEquals(Message.Status.DELIVERED, receiptTwo.getStatus());
+    }
+
+    @Test
+    public void shouldStopBatchingToPeersRefusingBatches() throws Exception {
+        ScheduledExecutorService scheduler = useBatchingGateway();
+        when(http.response().getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 400, "Bad request"));
+        gate.send(cloud, newSampleMessage(newIden(AGT), AGENT_SMITH), null);
+        gate.send(cloud, newSampleMessage(newIden(AGT), AGENT_SMITH), null);
+        runScheduledFlush(scheduler);
+
+        Receipt receipt = gate.send(cloud, newSampleMessage(newIden(AGT), AGENT_SMITH), null);
+
+        assertEquals(Message.Status.DELIVERED, receipt.getStatus());
+        assertEquals(4, http.getAllRequestToWWW(HttpPost.class).size());
+    }
+
+    @Test
+    public void shouldBatchAgainToRefusingPeersAfterAWhile() throws Exception {
+        fakeSystemTime(123456L);
+        try {
+            ScheduledExecutorService scheduler = useBatchingGateway();
+            when(http.response().getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 400, "Bad request"));
+            gate.send(cloud, newSampleMessage(newIden(AGT), AGENT_SMITH), null);
+            gate.send(cloud, newSampleMessage(newIden(AGT), AGENT_SMITH), null);
+            runScheduledFlush(scheduler);
+
+            fakeElapseTime(Long.getLong(HttpGateway.SYSP_BATCH_REFUSAL_TTL, 5*60*1000L));
+            Receipt receipt = gate.send(cloud, newSampleMessage(newIden(AGT), AGENT_SMITH), null);
+
+            assertEquals(Message.Status.PENDING, receipt.getStatus());
+            assertEquals(3, http.getAllRequestToWWW(HttpPost.class).size());
+        } finally {
+            SystemTime.reset();
+        }
+    }
+
+    @Test
+    public void shouldFailBatchWithoutResendingWhenPeerFailsIt() throws Exception {
+        ScheduledExecutorService scheduler = useBatchingGateway();
+        when(http.response().getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 503, "Unavailable"));
+
+        Receipt receiptOne = gate.send(cloud, newSampleMessage(newIden(AGT), AGENT_SMITH), null);
+        Receipt receiptTwo = gate.send(cloud, newSampleMessage(newIden(AGT), AGENT_SMITH), null);
+        runScheduledFlush(scheduler);
+
+        assertEquals(1, http.getAllRequestToWWW(HttpPost.class).size());
+        assertEquals(Message.Status.FAILED, receiptOne.getStatus());
+        assertEquals(Message.Status.FAILED, receiptTwo.getStatus());
+    }
+
+    @Test
+    public void shouldFailBatchedMessagesWhenPostFails() throws Exception {
+        ScheduledExecutorService scheduler = useBatchingGateway();
+        when(http.client().execute(any(HttpUriRequest.class))).thenThrow(new IOException("boom!"));
+
+        Receipt receiptOne = gate.send(cloud, newSampleMessage(newIden(AGT), AGENT_SMITH), null);
+        Receipt receiptTwo = gate.send(cloud, newSampleMessage(newIden(AGT), AGENT_SMITH), null);
+        runScheduledFlush(scheduler);
+
+        assertEquals(Message.Status.FAILED, receiptOne.getStatus());
+        assertEquals(Message.Status.FAILED, receiptTwo.getStatus());
+    }
+
+    @Test
+    public void shouldFlushBatchesOnClose() throws Exception {
+        useBatchingGateway();
+
+        Receipt receipt = gate.send(cloud, newSampleMessage(newIden(AGT), AGENT_SMITH), null);
+        gate.close();
+
+        assertEquals(Message.Status.DELIVERED, receipt.getStatus());
+    }
+
+    private ScheduledExecutorService useBatchingGateway() throws MsnosException {
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        when(http.response().getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+        gate = new HttpGateway(http.client(), sz, null, scheduler);
+        installEndpoint("25.25.25.25", AGENT_SMITH, AGENT_SMITH_URL);
+        return scheduler;
+    }
+
+    private void runScheduledFlush(ScheduledExecutorService scheduler) {
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(flush.capture(), anyLong(), any(TimeUnit.class));
+        flush.getValue().run();
+    }
+
+    private ManualExecutor useAsyncGateway() throws MsnosException {
+        ManualExecutor executor = new ManualExecutor();
+        gate = new HttpGateway(http.client(), sz, executor);
+        installEndpoint("25.25.25.25", AGENT_SMITH, AGENT_SMITH_URL);
+        return executor;
+    }
+
     private String toText(Message message) {
         return sz.toText(message);
     }
@@ -176,4 +399,43 @@ public class HttpGatewayTest {
     private Message newSampleMessage(Iden from, Iden to) {
         return new MessageBuilder(Type.APP, from, to).with(UUID.randomUUID()).make();
     }
+
+    private static class ManualExecutor extends AbstractExecutorService {
+        private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        public void runAll() {
+            for (Runnable task : tasks)
+                task.run();
+            tasks.clear();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return tasks;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
 }
@@ -0,0 +1,101 @@
+package com.workshare.msnos.core.protocols.ip.udp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class UDPBatchTest {
+
+    private static final byte[] ONE = "{\"one\":1}".getBytes();
+    private static final byte[] TWO = "{\"two\":2}".getBytes();
+
+    @Test
+    public void shouldPackAndUnpackFrames() {
+        UDPBatch batch = new UDPBatch(512);
+        batch.add(ONE);
+        batch.add(TWO);
+
+        byte[] data = batch.toBytes();
+
+        assertTrue(UDPBatch.isBatch(data, 0, data.length));
+        List<byte[]> frames = unpack(data);
+        assertEquals(2, frames.size());
+        assertArrayEquals(ONE, frames.get(0));
+        assertArrayEquals(TWO, frames.get(1));
+    }
+
+    @Test
+    public void shouldSendSingleFrameAsPlainPacket() {
+        UDPBatch batch = new UDPBatch(512);
+        batch.add(ONE);
+
+        byte[] data = batch.toBytes();
+
+        assertFalse(UDPBatch.isBatch(data, 0, data.length));
+        assertArrayEquals(ONE, data);
+    }
+
+    @Test
+    public void shouldNotFitFramesBeyondMaxSize() {
+        UDPBatch batch = new UDPBatch(ONE.length * 2);
+        batch.add(ONE);
+
+        assertFalse(batch.fits(TWO.length));
+    }
+
+    @Test
+    public void shouldHandleLongFrames() {
+        byte[] big = new byte[300];
+        big[299] = 42;
+        UDPBatch batch = new UDPBatch(1024);
+        batch.add(big);
+        batch.add(ONE);
+
+        List<byte[]> frames = unpack(batch.toBytes());
+
+        assertArrayEquals(big, frames.get(0));
+        assertArrayEquals(ONE, frames.get(1));
+    }
+
+    @Test
+    public void shouldStartEmptyAfterClear() {
+        UDPBatch batch = new UDPBatch(512);
+        batch.add(ONE);
+        batch.clear();
+
+        assertTrue(batch.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTruncatedBatches() {
+        UDPBatch batch = new UDPBatch(512);
+        batch.add(ONE);
+        batch.add(TWO);
+        byte[] data = batch.toBytes();
+
+        unpack(data, data.length - 1);
+    }
+
+    private List<byte[]> unpack(byte[] data) {
+        return unpack(data, data.length);
+    }
+
+    private List<byte[]> unpack(byte[] data, int length) {
+        final List<byte[]> frames = new ArrayList<byte[]>();
+        UDPBatch.unpack(data, 0, length, new UDPBatch.Visitor() {
+            @Override
+            public void frame(byte[] data, int offset, int length) {
+                byte[] frame = new byte[length];
+                System.arraycopy(data, offset, frame, 0, length);
+                frames.add(frame);
+            }
+        });
+        return frames;
+    }
+}
@@ -0,0 +1,153 @@
+package com.workshare.msnos.core.protocols.ip.udp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.workshare.msnos.soup.threading.ExecutorServices;
+
+public class UDPBatcherTest {
+
+    private static final byte[] FRAME = "{\"some\":\"message\"}".getBytes();
+
+    private ScheduledExecutorService scheduler;
+    private List<byte[]> datagrams;
+    private CountDownLatch sent;
+
+    @Before
+    public void before() {
+        scheduler = ExecutorServices.newSingleThreadScheduledExecutor();
+        datagrams = new ArrayList<byte[]>();
+        sent = new CountDownLatch(1);
+    }
+
+    @After
+    public void after() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void shouldFlushWhenNextFrameDoesNotFit() throws Exception {
+        UDPBatcher batcher = batcher(1 + 2 * (FRAME.length + 1), TimeUnit.SECONDS.toMicros(10));
+
+        batcher.add(FRAME);
+        batcher.add(FRAME);
+        assertEquals(0, datagrams.size());
+
+        batcher.add(FRAME);
+        assertEquals(1, datagrams.size());
+        assertEquals(2, count(datagrams.get(0)));
+    }
+
+    @Test
+    public void shouldFlushAfterLingerTime() throws Exception {
+        UDPBatcher batcher = batcher(512, 1000);
+
+        batcher.add(FRAME);
+        batcher.add(FRAME);
+
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        assertEquals(2, count(datagrams.get(0)));
+    }
+
+    @Test
+    public void shouldSendOversizedFramesAlone() throws Exception {
+        UDPBatcher batcher = batcher(FRAME.length, TimeUnit.SECONDS.toMicros(10));
+
+        batcher.add(FRAME);
+
+        assertEquals(1, datagrams.size());
+        assertArrayEquals(FRAME, datagrams.get(0));
+    }
+
+    @Test
+    public void shouldSendSingleFrameAsPlainPacketOnFlush() throws Exception {
+        UDPBatcher batcher = batcher(512, TimeUnit.SECONDS.toMicros(10));
+
+        batcher.add(FRAME);
+        batcher.flush();
+
+        assertArrayEquals(FRAME, datagrams.get(0));
+    }
+
+    @Test
+    public void shouldNotBlockProducersWhileSending() throws Exception {
+        final CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final UDPBatcher batcher = new UDPBatcher(512, TimeUnit.SECONDS.toMicros(10), scheduler, new UDPBatcher.Sink() {
+            @Override
+            public void send(byte[] datagram) throws IOException {
+                sending.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        batcher.add(FRAME);
+
+        Thread flusher = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    batcher.flush();
+                } catch (IOException ignore) {
+                }
+            }
+        };
+        flusher.start();
+        assertTrue(sending.await(1, TimeUnit.SECONDS));
+
+        final CountDownLatch added = new CountDownLatch(1);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    batcher.add(FRAME);
+                    added.countDown();
+                } catch (IOException ignore) {
+                }
+            }
+        }.start();
+
+        try {
+            assertTrue(added.await(1, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            flusher.join();
+        }
+    }
+
+    private UDPBatcher batcher(int packetSize, long lingerMicros) {
+        return new UDPBatcher(packetSize, lingerMicros, scheduler, new UDPBatcher.Sink() {
+            @Override
+            public void send(byte[] datagram) throws IOException {
+                datagrams.add(datagram);
+                sent.countDown();
+            }
+        });
+    }
+
+    private int count(byte[] datagram) {
+        final int[] count = new int[1];
+        UDPBatch.unpack(datagram, 0, datagram.length, new UDPBatch.Visitor() {
+            @Override
+            public void frame(byte[] data, int offset, int length) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+}
@@ -10,8 +10,10 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -22,7 +24,10 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicLong;
@@ -30,6 +35,8 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import com.workshare.msnos.core.Cloud;
 import com.workshare.msnos.core.Cloud.Internal;
@@ -41,6 +48,9 @@ import com.workshare.msnos.core.MessageBuilder;
 import com.workshare.msnos.core.Receipt;
 import com.workshare.msnos.core.protocols.ip.MulticastSocketFactory;
 import com.workshare.msnos.core.serializers.WireJsonSerializer;
+import com.workshare.msnos.soup.threading.ExecutorServices;
+import com.workshare.msnos.soup.threading.Multicaster;
+import com.workshare.msnos.soup.threading.ThreadFactories;
 
 public class UDPGatewayTest {
 
@@ -217,6 +227,98 @@ public class UDPGatewayTest {
         verify(socket).close();
     }
 
+    @Test
+    public void shouldBatchMessagesWhenLingerIsConfigured() throws Exception {
+        System.setProperty(UDPGateway.SYSP_PORT_WIDTH, "1");
+        System.setProperty(UDPGateway.SYSP_BATCH_LINGER, "10000000");
+        try {
+            Message one = newSampleMessage();
+            Message two = newSampleMessage(SOMEONE, ME);
+            gate().send(cloud, one, null);
+            gate().send(cloud, two, null);
+            verify(socket, never()).send(any(DatagramPacket.class));
+
+            gate().close();
+
+            List<DatagramPacket> packets = getSentPackets();
+            assertEquals(1, packets.size());
+            byte[] data = packets.get(0).getData();
+            assertTrue(UDPBatch.isBatch(data, 0, data.length));
+        } finally {
+            System.clearProperty(UDPGateway.SYSP_BATCH_LINGER);
+        }
+    }
+
+    @Test
+    public void shouldDeliverMessagesOfASenderInOrderWhenPipelined() throws Exception {
+        final List<Message> sent = new ArrayList<Message>();
+        for (int i = 0; i < 200; i++)
+            sent.add(newSampleMessage(SOMEONE, ME));
+        receiveFromSocket(sent);
+
+        System.setProperty(UDPServer.SYSP_WORKERS_NUM, "4");
+        try {
+            server = new UDPServer(ThreadFactories.DEFAULT, asynchronousGatewayMulticaster());
+        } finally {
+            System.clearProperty(UDPServer.SYSP_WORKERS_NUM);
+        }
+
+        gate = new UDPGateway(sockets, server, asynchronousGatewayMulticaster());
+        final List<Message> received = Collections.synchronizedList(messages);
+        gate.addListener(null, new Listener() {
+            @Override
+            public void onMessage(Message message) {
+                received.add(message);
+            }
+        });
+
+        try {
+            final long timeout = System.currentTimeMillis() + 5000L;
+            while (received.size() < sent.size() && System.currentTimeMillis() < timeout)
+                Thread.sleep(10L);
+        } finally {
+            gate.close();
+        }
+
+        assertEquals(sent, new ArrayList<Message>(received));
+    }
+
+    private void receiveFromSocket(List<Message> messages) throws IOException {
+        final WireJsonSerializer sz = new WireJsonSerializer();
+        final Iterator<Message> source = messages.iterator();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                final DatagramPacket packet = (DatagramPacket) invocation.getArguments()[0];
+                final byte[] data;
+                synchronized (source) {
+                    data = source.hasNext() ? sz.toBytes(source.next()) : null;
+                }
+
+                if (data == null) {
+                    try {
+                        Thread.sleep(10L);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new SocketTimeoutException();
+                }
+
+                System.arraycopy(data, 0, packet.getData(), packet.getOffset(), data.length);
+                packet.setLength(data.length);
+                return null;
+            }
+        }).when(socket).receive(any(DatagramPacket.class));
+    }
+
+    private Multicaster<Listener, Message> asynchronousGatewayMulticaster() {
+        return new Multicaster<Listener, Message>(ExecutorServices.newFixedDaemonThreadPool(4)) {
+            @Override
+            protected void dispatch(Listener listener, Message message) {
+                listener.onMessage(message);
+            }
+        };
+    }
 
     private Message getMessageWithPayload(final BigPayload payload) {
         return new MessageBuilder(Message.Type.PRS, SOMEONE, ME).with(payload).make();
@@ -15,6 +15,9 @@ import org.mockito.stubbing.Answer;
 
 import java.net.DatagramPacket;
 import java.net.MulticastSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ThreadFactory;
 
@@ -102,6 +105,117 @@ public class UDPServerTest {
         assertEquals(toJson(message), toJson(getLastMessage()));
     }
 
+    @Test
+    public void shouldCountPacketsAndBytes() throws Exception {
+        final byte[] data = server.serializer().toBytes(newSampleMessage());
+
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                DatagramPacket packet = (DatagramPacket) invocation.getArguments()[0];
+                packet.setData(data);
+                return null;
+            }
+        }).doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                DatagramPacket packet = (DatagramPacket) invocation.getArguments()[0];
+                packet.setData(data);
+                return null;
+            }
+        }).doThrow(new IllegalArgumentException()).when(socket).receive(any(DatagramPacket.class));
+
+        server.start(socket, 512);
+        try {
+            runnable().run();
+        } catch (IllegalArgumentException ignore) {
+        }
+
+        assertEquals(2, server.packets().count());
+        assertEquals(2 * data.length, server.bytes().count());
+    }
+
+    @Test
+    public void shouldRestorePacketLengthBeforeEachReceive() throws Exception {
+        final byte[] data = server.serializer().toBytes(newSampleMessage());
+        final List<Integer> lengths = new ArrayList<Integer>();
+
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                DatagramPacket packet = (DatagramPacket) invocation.getArguments()[0];
+                lengths.add(packet.getLength());
+                System.arraycopy(data, 0, packet.getData(), 0, data.length);
+                packet.setLength(data.length);
+                if (lengths.size() == 2)
+                    throw new IllegalArgumentException();
+                return null;
+            }
+        }).when(socket).receive(any(DatagramPacket.class));
+
+        server.start(socket, 512);
+        try {
+            runnable().run();
+        } catch (IllegalArgumentException ignore) {
+        }
+
+        assertEquals(Arrays.asList(512, 512), lengths);
+    }
+
+    @Test
+    public void shouldReceiveBatchedMessages() throws Exception {
+        final Message one = newSampleMessage();
+        final Message two = newSampleMessage().withHops(3);
+        final UDPBatch batch = new UDPBatch(512);
+        batch.add(server.serializer().toBytes(one));
+        batch.add(server.serializer().toBytes(two));
+
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                DatagramPacket packet = (DatagramPacket) invocation.getArguments()[0];
+                packet.setData(batch.toBytes());
+                return null;
+            }
+        }).doThrow(new IllegalArgumentException()).when(socket).receive(any(DatagramPacket.class));
+
+        server.start(socket, 512);
+        try {
+            runnable().run();
+        } catch (IllegalArgumentException ignore) {
+        }
+
+        List<Message> messages = messageCaptor.getAllValues();
+        assertEquals(2, messages.size());
+        assertEquals(toJson(one), toJson(messages.get(0)));
+        assertEquals(toJson(two), toJson(messages.get(1)));
+    }
+
+    @Test
+    public void shouldNotifyListenersAsynchronouslyWithoutWorkers() throws Exception {
+        Listener listener = mock(Listener.class);
+
+        server.addListener(listener);
+
+        verify(caster).addListener(listener);
+    }
+
+    @Test
+    public void shouldNotifyListenersOnWorkersWhenPipelined() throws Exception {
+        System.setProperty(UDPServer.SYSP_WORKERS_NUM, "2");
+        try {
+            server = new UDPServer(Mockito.mock(ThreadFactory.class), caster);
+        } finally {
+            System.clearProperty(UDPServer.SYSP_WORKERS_NUM);
+        }
+        Listener listener = mock(Listener.class);
+
+        server.addListener(listener);
+
+        verify(caster).addSynchronousListener(listener);
+        verify(caster, never()).addListener(listener);
+    }
+
     private String toJson(Message message) {
         return Json.toJsonString(message);
     }
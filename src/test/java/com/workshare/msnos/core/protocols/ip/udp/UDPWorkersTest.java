@@ -0,0 +1,104 @@
+package com.workshare.msnos.core.protocols.ip.udp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.workshare.msnos.soup.metrics.Meter;
+import com.workshare.msnos.soup.threading.ThreadFactories;
+
+public class UDPWorkersTest {
+
+    private UDPWorkers workers;
+    private Meter dropped = new Meter();
+    private Meter processed = new Meter();
+
+    @After
+    public void after() {
+        if (workers != null)
+            workers.stop();
+    }
+
+    @Test
+    public void shouldKeepOrderForTheSameSender() throws Exception {
+        final int total = 1000;
+        final List<Integer> received = new ArrayList<Integer>();
+        final CountDownLatch done = new CountDownLatch(total);
+        workers = new UDPWorkers(ThreadFactories.DEFAULT, 4, total, new UDPWorkers.Handler() {
+            @Override
+            public void handle(byte[] data, int length) {
+                synchronized (received) {
+                    received.add((int) data[0] << 8 | (data[1] & 0xff));
+                }
+                done.countDown();
+            }
+        }, dropped, processed);
+        workers.start();
+
+        for (int i = 0; i < total; i++)
+            workers.submit(new byte[] { (byte) (i >> 8), (byte) i }, 2, 42);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < total; i++)
+            assertEquals(Integer.valueOf(i), received.get(i));
+        awaitProcessed(total);
+        assertEquals(total, processed.count());
+    }
+
+    @Test
+    public void shouldDropOldestWhenQueueIsFull() throws Exception {
+        final List<Byte> received = new ArrayList<Byte>();
+        final CountDownLatch done = new CountDownLatch(2);
+        workers = new UDPWorkers(ThreadFactories.DEFAULT, 1, 2, new UDPWorkers.Handler() {
+            @Override
+            public void handle(byte[] data, int length) {
+                received.add(data[0]);
+                done.countDown();
+            }
+        }, dropped, processed);
+
+        workers.submit(new byte[] { 1 }, 1, 0);
+        workers.submit(new byte[] { 2 }, 1, 0);
+        workers.submit(new byte[] { 3 }, 1, 0);
+        assertEquals(1, dropped.count());
+        assertEquals(2, workers.backlog());
+
+        workers.start();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, received.get(0).intValue());
+        assertEquals(3, received.get(1).intValue());
+    }
+
+    @Test
+    public void shouldReuseReleasedBuffers() throws Exception {
+        workers = new UDPWorkers(ThreadFactories.DEFAULT, 1, 2, null, dropped, processed);
+
+        byte[] buffer = workers.acquire(512);
+        workers.release(buffer);
+
+        assertSame(buffer, workers.acquire(512));
+    }
+
+    @Test
+    public void shouldNotReuseBuffersOfDifferentSize() throws Exception {
+        workers = new UDPWorkers(ThreadFactories.DEFAULT, 1, 2, null, dropped, processed);
+
+        workers.release(new byte[256]);
+
+        assertEquals(512, workers.acquire(512).length);
+    }
+
+    private void awaitProcessed(int total) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (processed.count() < total && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+    }
+}
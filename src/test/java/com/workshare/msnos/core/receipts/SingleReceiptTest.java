@@ -6,6 +6,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -116,6 +117,41 @@ public class SingleReceiptTest {
         assertTrue(receipt.waitForDelivery(5, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void shouldRunCallbacksWhenCompleted() throws Exception {
+        SingleReceipt receipt = new SingleReceipt(gate, Status.PENDING, MESSAGE);
+        final AtomicInteger calls = new AtomicInteger();
+        receipt.onCompletion(newCounter(calls));
+
+        receipt.update(new SingleReceipt(gate, Status.PENDING, MESSAGE));
+        assertEquals(0, calls.get());
+
+        receipt.update(new SingleReceipt(gate, Status.FAILED, MESSAGE));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void shouldRunCallbacksImmediatelyWhenAlreadyCompleted() throws Exception {
+        SingleReceipt receipt = new SingleReceipt(gate, Status.DELIVERED, MESSAGE);
+        final AtomicInteger calls = new AtomicInteger();
+
+        receipt.onCompletion(newCounter(calls));
+
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void shouldFollowPendingReceipts() throws Exception {
+        SingleReceipt pending = new SingleReceipt(gate, Status.PENDING, MESSAGE);
+        SingleReceipt receipt = SingleReceipt.unknown(MESSAGE);
+
+        receipt.follow(pending);
+        assertEquals(Status.PENDING, receipt.getStatus());
+
+        pending.update(new SingleReceipt(gate, Status.DELIVERED, MESSAGE));
+        assertEquals(Status.DELIVERED, receipt.getStatus());
+    }
+
     @Test
     public void shouldStoreGatewayName() throws Exception {
         SingleReceipt receipt = new SingleReceipt(gate, Status.PENDING, MESSAGE);
@@ -153,4 +189,12 @@ public class SingleReceiptTest {
             }}).start();
     }
 
+    private Runnable newCounter(final AtomicInteger calls) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                calls.incrementAndGet();
+            }
+        };
+    }
 }
@@ -6,6 +6,7 @@ import static com.workshare.msnos.core.CoreHelper.newAPPMesage;
 import static com.workshare.msnos.core.CoreHelper.newAgentIden;
 import static com.workshare.msnos.core.Message.Type.TRC;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atMost;
@@ -173,6 +174,67 @@ public abstract class RouterAbstractTest {
         assertSentOnlyViaHTTP(message, 1, usaTwo);
     }
 
+    @Test
+    public void shouldAcceptPendingReceiptsFromHTTP() throws Exception {
+        connecMyselfViaHTTPTo(usaTwo);
+        Message message = newAPPMesage(asiaOne, usaTwo).withHops(10).make();
+        when(http.send(any(Cloud.class), any(Message.class), any(Identifiable.class))).thenReturn(new SingleReceipt(http, Message.Status.PENDING, message));
+        
+        process(message);
+        
+        assertSentOnlyViaHTTP(message, 0, usaTwo);
+    }
+
+    @Test
+    public void shouldFallBackToNextRoutesWhenPendingHTTPDeliveryFails() throws Exception {
+        connecMyselfViaHTTPTo(usaTwo);
+        Message message = newAPPMesage(asiaOne, usaTwo).withHops(10).make();
+        SingleReceipt pending = new SingleReceipt(http, Message.Status.PENDING, message);
+        when(http.send(any(Cloud.class), any(Message.class), any(Identifiable.class))).thenReturn(pending);
+        when(udp.send(any(Cloud.class), any(Message.class), any(Identifiable.class))).thenReturn(new SingleReceipt(udp, Message.Status.DELIVERED, message));
+
+        Receipt receipt = process(message);
+        assertEquals(Message.Status.PENDING, receipt.getStatus());
+        verifyZeroInteractions(udp);
+
+        pending.update(new SingleReceipt(http, Message.Status.FAILED, message));
+
+        assertEquals(1, anyMessagesOn(udp).size());
+        assertEquals(Message.Status.DELIVERED, receipt.getStatus());
+    }
+
+    @Test
+    public void shouldTryOtherRingAgentsWhenPendingHTTPDeliveryFails() throws Exception {
+        connecMyselfViaHTTPTo(usaTwo);
+        connecMyselfViaHTTPTo(usaTre);
+        Message message = newAPPMesage(asiaOne, usaOne).withHops(10).make();
+        SingleReceipt first = new SingleReceipt(http, Message.Status.PENDING, message);
+        SingleReceipt second = new SingleReceipt(http, Message.Status.PENDING, message);
+        when(http.send(any(Cloud.class), any(Message.class), any(Identifiable.class))).thenReturn(first, second);
+
+        Receipt receipt = process(message);
+        first.update(new SingleReceipt(http, Message.Status.FAILED, message));
+
+        assertEquals(2, anyMessagesOn(http).size());
+        verifyZeroInteractions(udp);
+        assertEquals(Message.Status.PENDING, receipt.getStatus());
+
+        second.update(new SingleReceipt(http, Message.Status.DELIVERED, message));
+
+        assertEquals(Message.Status.DELIVERED, receipt.getStatus());
+    }
+
+    @Test
+    public void shouldNotFollowPendingReceiptsFromUDP() throws Exception {
+        Message message = newAPPMesage(asiaOne, europeTwo).withHops(10).make();
+        SingleReceipt pending = new SingleReceipt(udp, Message.Status.PENDING, message);
+        when(udp.send(any(Cloud.class), any(Message.class), any(Identifiable.class))).thenReturn(pending);
+
+        Receipt receipt = process(message);
+
+        assertSame(pending, receipt);
+    }
+
     @Test
     public void shouldGoViaUDPOnWithZeroHopsIfTargetInMyRingAndNotConnectedToMe() throws Exception {
         connecMyselfViaHTTPTo(europeTwo);
@@ -4,7 +4,12 @@ import com.workshare.msnos.core.Iden;
 import com.workshare.msnos.core.Message;
 import com.workshare.msnos.core.Message.Type;
 import com.workshare.msnos.core.MessageBuilder;
+import com.workshare.msnos.core.payloads.FltPayload;
+import com.workshare.msnos.core.payloads.QnePayload;
+import com.workshare.msnos.core.serializers.WireJsonSerializer;
 import com.workshare.msnos.core.serializers.WireSerializer;
+import com.workshare.msnos.core.serializers.WireSerializers;
+import com.workshare.msnos.usvc.api.RestApi;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -14,7 +19,9 @@ import javax.xml.bind.DatatypeConverter;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
@@ -65,6 +72,117 @@ public class SignerTest {
         assertNull(result.getSig());
     }
 
+    @Test
+    public void shouldVerifyLegacySignatures() throws Exception {
+        Message signed = signer.signed(message, KEY_ID);
+
+        assertTrue(signer.verify(signed, KEY_ID));
+    }
+
+    @Test
+    public void shouldNotVerifyUnsignedMessages() throws Exception {
+        assertFalse(signer.verify(message, KEY_ID));
+    }
+
+    @Test
+    public void shouldVerifyAnythingWhenKeyIsMissing() throws Exception {
+        when(keys.get(anyString())).thenReturn(null);
+
+        assertTrue(signer.verify(message, KEY_ID));
+    }
+
+    @Test
+    public void shouldTagSha256Signatures() throws Exception {
+        signer = new Signer(new WireJsonSerializer(), keys, Signer.ALGO_SHA256);
+
+        Message result = signer.signed(message, KEY_ID);
+
+        assertTrue(result.getSig().startsWith(KEY_ID + ":S2."));
+    }
+
+    @Test
+    public void shouldVerifySha256Signatures() throws Exception {
+        signer = new Signer(new WireJsonSerializer(), keys, Signer.ALGO_SHA256);
+
+        Message signed = signer.signed(message, KEY_ID);
+
+        assertTrue(signer.verify(signed, KEY_ID));
+    }
+
+    @Test
+    public void shouldVerifySha256SignaturesAfterHopping() throws Exception {
+        signer = new Signer(new WireJsonSerializer(), keys, Signer.ALGO_SHA256);
+
+        Message signed = signer.signed(message, KEY_ID);
+
+        assertTrue(signer.verify(signed.hopped().fromGate("UDP"), KEY_ID));
+    }
+
+    @Test
+    public void shouldVerifySha256SignaturesWhenSigningLegacy() throws Exception {
+        Message signed = new Signer(new WireJsonSerializer(), keys, Signer.ALGO_SHA256).signed(message, KEY_ID);
+
+        assertTrue(new Signer(new WireJsonSerializer(), keys, Signer.ALGO_LEGACY).verify(signed, KEY_ID));
+    }
+
+    @Test
+    public void shouldRejectTamperedSha256Messages() throws Exception {
+        signer = new Signer(new WireJsonSerializer(), keys, Signer.ALGO_SHA256);
+        Message signed = signer.signed(message, KEY_ID);
+
+        Message tampered = signed.data(new FltPayload(message.getFrom()));
+
+        assertFalse(signer.verify(tampered, KEY_ID));
+    }
+
+    @Test
+    public void shouldRejectSha256SignaturesMadeWithAnotherKey() throws Exception {
+        signer = new Signer(new WireJsonSerializer(), keys, Signer.ALGO_SHA256);
+        Message signed = signer.signed(message, KEY_ID);
+
+        when(keys.get(KEY_ID)).thenReturn("another-key");
+
+        assertFalse(signer.verify(signed, KEY_ID));
+    }
+
+    @Test
+    public void shouldRecordLatencies() throws Exception {
+        Message signed = signer.signed(message, KEY_ID);
+        signer.verify(signed, KEY_ID);
+
+        assertEquals(1, signer.signLatency().count());
+        assertEquals(1, signer.verifyLatency().count());
+    }
+
+    @Test
+    public void shouldVerifySha256SignaturesOfQnesAfterJsonRoundTrip() throws Exception {
+        assertQneVerifiedAfterRoundTrip(WireSerializers.getWireSerializer(WireSerializers.FORMAT_JSON));
+    }
+
+    @Test
+    public void shouldVerifySha256SignaturesOfQnesAfterBinaryRoundTrip() throws Exception {
+        assertQneVerifiedAfterRoundTrip(WireSerializers.getWireSerializer(WireSerializers.FORMAT_BINARY));
+    }
+
+    private void assertQneVerifiedAfterRoundTrip(WireSerializer sz) throws Exception {
+        signer = new Signer(sz, keys, Signer.ALGO_SHA256);
+        final RestApi faulty = new RestApi("/one", 8881, "10.0.0.1");
+        faulty.markTempFault();
+        final Message qne = new MessageBuilder(Type.QNE, message.getFrom(), message.getTo())
+                .with(UUID.randomUUID())
+                .with(new QnePayload("name", faulty, new RestApi("/two", 8882, "10.0.0.2"), new RestApi("/three", 8883, "10.0.0.3")))
+                .make();
+
+        Message signed = signer.signed(qne, KEY_ID);
+        Message received = sz.fromBytes(sz.toBytes(signed), Message.class);
+
+        assertTrue(signer.verify(received, KEY_ID));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownAlgorithms() throws Exception {
+        new Signer(serializer, keys, "ROT13");
+    }
 
     private String sign(String key, String text) throws Exception {
         byte[] keyBytes = key.getBytes("UTF-8");
@@ -0,0 +1,64 @@
+package com.workshare.msnos.core.serializers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+public class Utf8BytesReaderTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void shouldReadAsciiText() throws Exception {
+        assertDecoded("{\"name\":\"alfa\"}");
+    }
+
+    @Test
+    public void shouldReadMultibyteText() throws Exception {
+        assertDecoded("caf\u00E9 costs 3\u20AC");
+    }
+
+    @Test
+    public void shouldReadSupplementaryCharacters() throws Exception {
+        assertDecoded("smile \uD83D\uDE00 please");
+    }
+
+    @Test
+    public void shouldReadOnlyTheRequestedPortion() throws Exception {
+        byte[] data = "xxhelloyy".getBytes(UTF8);
+
+        assertEquals("hello", readAll(new Utf8BytesReader(data, 2, 5)));
+    }
+
+    @Test
+    public void shouldReplaceTruncatedSequences() throws Exception {
+        byte[] data = "a\u20AC".getBytes(UTF8);
+
+        assertEquals("a\uFFFD", readAll(new Utf8BytesReader(data, 0, data.length - 1)));
+    }
+
+    @Test
+    public void shouldReplaceInvalidLeadBytes() throws Exception {
+        byte[] data = {(byte) 0xF8, (byte) 0x88, (byte) 0x80, (byte) 0x80};
+
+        assertEquals("\uFFFD\uFFFD\uFFFD\uFFFD", readAll(new Utf8BytesReader(data, 0, data.length)));
+    }
+
+    private void assertDecoded(String text) throws IOException {
+        byte[] data = text.getBytes(UTF8);
+        assertEquals(text, readAll(new Utf8BytesReader(data, 0, data.length)));
+    }
+
+    private String readAll(Reader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[3];
+        int len;
+        while ((len = reader.read(buffer, 0, buffer.length)) != -1)
+            sb.append(buffer, 0, len);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,235 @@
+package com.workshare.msnos.core.serializers;
+
+import static com.workshare.msnos.core.CoreHelper.asSet;
+import static com.workshare.msnos.core.CoreHelper.randomUUID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.workshare.msnos.core.Iden;
+import com.workshare.msnos.core.Message;
+import com.workshare.msnos.core.Message.Payload;
+import com.workshare.msnos.core.MessageBuilder;
+import com.workshare.msnos.core.payloads.EnqPayload;
+import com.workshare.msnos.core.payloads.FltPayload;
+import com.workshare.msnos.core.payloads.GenericPayload;
+import com.workshare.msnos.core.payloads.HealthDigestPayload;
+import com.workshare.msnos.core.payloads.HealthcheckPayload;
+import com.workshare.msnos.core.payloads.Presence;
+import com.workshare.msnos.core.payloads.QnePayload;
+import com.workshare.msnos.core.payloads.TracePayload;
+import com.workshare.msnos.core.protocols.ip.BaseEndpoint;
+import com.workshare.msnos.core.protocols.ip.Endpoint;
+import com.workshare.msnos.core.protocols.ip.HttpEndpoint;
+import com.workshare.msnos.core.protocols.ip.Network;
+import com.workshare.msnos.core.protocols.ip.NullGateway;
+import com.workshare.msnos.core.LocalAgent;
+import com.workshare.msnos.usvc.api.RestApi;
+
+public class WireBinarySerializerTest {
+
+    private static final Iden A_CLOUD_IDEN = new Iden(Iden.Type.CLD, UUID.randomUUID());
+    private static final Iden A_AGENT_IDEN = new Iden(Iden.Type.AGT, UUID.randomUUID());
+    private static final Iden ANOTHER_AGENT_IDEN = new Iden(Iden.Type.AGT, UUID.randomUUID());
+
+    private static final Network SAMPLE_NETWORK = new Network(new byte[]{10,10,10,1}, (short)25);
+
+    private WireJsonSerializer json = new WireJsonSerializer();
+    private WireBinarySerializer sz = new WireBinarySerializer(json);
+
+    @BeforeClass
+    public static void useLocalTimeSource() {
+        System.setProperty("com.ws.nsnos.time.local", "true");
+    }
+
+    @Test
+    public void shouldRoundTripPresenceMessage() throws Exception {
+        Endpoint udp = new BaseEndpoint(Endpoint.Type.UDP, SAMPLE_NETWORK, (short) 3728);
+        Endpoint http = new HttpEndpoint(SAMPLE_NETWORK, "http://10.10.10.1:9999/msnos");
+        Payload payload = new Presence(true, new HashSet<Endpoint>(asSet(udp, http)));
+
+        assertRoundTrip(message(Message.Type.PRS, payload));
+    }
+
+    @Test
+    public void shouldCarryWireVersionInPresence() throws Exception {
+        Message source = message(Message.Type.PRS, new Presence(true, new HashSet<Endpoint>()));
+
+        Presence decoded = (Presence) sz.fromBytes(sz.toBytes(source), Message.class).getData();
+
+        assertEquals(WireSerializers.WIRE_VERSION, decoded.getWireVersion());
+    }
+
+    @Test
+    public void shouldReadPresenceOfOlderNodesAsJsonOnly() throws Exception {
+        Message source = message(Message.Type.PRS, new Presence(true, new HashSet<Endpoint>(), null));
+
+        Presence decoded = (Presence) sz.fromBytes(json.toBytes(source), Message.class).getData();
+
+        assertEquals(WireSerializers.WIRE_JSON, decoded.getWireVersion());
+    }
+
+    @Test
+    public void shouldRoundTripQNEMessage() throws Exception {
+        RestApi one = new RestApi("/one", 7070);
+        RestApi two = new RestApi("/two", 7071, "host", RestApi.Type.INTERNAL, true, 3);
+
+        assertRoundTrip(message(Message.Type.QNE, new QnePayload("test", one, two)));
+    }
+
+    @Test
+    public void shouldRoundTripVersionedQNEMessages() throws Exception {
+        Set<RestApi> added = asSet(new RestApi("/one", 7070));
+        Set<RestApi> removed = asSet(new RestApi("/two", 7071));
+
+        assertRoundTrip(message(Message.Type.QNE, QnePayload.full("test", 1234567890123L, added)));
+        assertRoundTrip(message(Message.Type.QNE, QnePayload.delta("test", 1234567890124L, added, removed)));
+        assertRoundTrip(message(Message.Type.QNE, QnePayload.delta("test", 1234567890125L, new HashSet<RestApi>(), new HashSet<RestApi>())));
+    }
+
+    @Test
+    public void shouldRoundTripENQMessage() throws Exception {
+        assertRoundTrip(message(Message.Type.ENQ, new EnqPayload(1234567890123L)));
+    }
+
+    @Test
+    public void shouldRoundTripFLTMessage() throws Exception {
+        assertRoundTrip(message(Message.Type.FLT, new FltPayload(ANOTHER_AGENT_IDEN)));
+    }
+
+    @Test
+    public void shouldRoundTripHCKMessage() throws Exception {
+        assertRoundTrip(message(Message.Type.HCK, new HealthcheckPayload(new LocalAgent(UUID.randomUUID()), true)));
+    }
+
+    @Test
+    public void shouldRoundTripHCDMessage() throws Exception {
+        HealthDigestPayload.Entry one = new HealthDigestPayload.Entry(ANOTHER_AGENT_IDEN, true);
+        HealthDigestPayload.Entry two = new HealthDigestPayload.Entry(new Iden(Iden.Type.AGT, UUID.randomUUID()), false);
+        assertRoundTrip(message(Message.Type.HCD, new HealthDigestPayload(Arrays.asList(one, two))));
+    }
+
+    @Test
+    public void shouldRoundTripPONMessage() throws Exception {
+        assertRoundTrip(message(Message.Type.PON, null));
+    }
+
+    @Test
+    public void shouldRoundTripTRCMessage() throws Exception {
+        Payload payload = new TracePayload(A_CLOUD_IDEN).crumbed(randomUUID(), randomUUID(), new NullGateway(), 3);
+        assertRoundTrip(message(Message.Type.TRC, payload));
+    }
+
+    @Test
+    public void shouldRoundTripACKMessage() throws Exception {
+        Payload payload = new TracePayload(A_AGENT_IDEN).crumbed(randomUUID(), randomUUID(), new NullGateway(), 3);
+        assertRoundTrip(message(Message.Type.ACK, payload));
+        assertRoundTrip(message(Message.Type.ACK, null));
+    }
+
+    @Test
+    public void shouldRoundTripGenericPayload() throws Exception {
+        JsonObject data = new JsonObject();
+        data.addProperty("name", "alfa");
+        data.addProperty("size", 42);
+
+        assertRoundTrip(message(Message.Type.APP, new GenericPayload(data)));
+    }
+
+    @Test
+    public void shouldRoundTripSignedReliableMessage() throws Exception {
+        Message source = new MessageBuilder(Message.Type.APP, A_AGENT_IDEN, ANOTHER_AGENT_IDEN)
+            .reliable(true)
+            .withHops(7)
+            .signed("key:signature", "random")
+            .make();
+
+        assertRoundTrip(source);
+    }
+
+    @Test
+    public void shouldJsonSerializerDecodeBinaryFrames() throws Exception {
+        Message source = message(Message.Type.QNE, new QnePayload("test", new RestApi("/test", 7070)));
+
+        Message decoded = json.fromBytes(sz.toBytes(source), Message.class);
+
+        assertEquals(json.toText(source), json.toText(decoded));
+    }
+
+    @Test
+    public void shouldBinarySerializerDecodeJsonFrames() throws Exception {
+        Message source = message(Message.Type.FLT, new FltPayload(ANOTHER_AGENT_IDEN));
+
+        Message decoded = sz.fromBytes(json.toBytes(source), Message.class);
+
+        assertEquals(json.toText(source), json.toText(decoded));
+    }
+
+    @Test
+    public void shouldStartWithVersionByte() throws Exception {
+        byte[] data = sz.toBytes(message(Message.Type.PIN, null));
+
+        assertEquals(WireBinarySerializer.VERSION_1, data[0]);
+    }
+
+    @Test
+    public void shouldBeMoreCompactThanJson() throws Exception {
+        Message source = message(Message.Type.QNE, new QnePayload("test", new RestApi("/one", 7070), new RestApi("/two", 7071)));
+
+        assertTrue(sz.toBytes(source).length < json.toBytes(source).length);
+    }
+
+    @Test
+    public void shouldUseJsonAsTextForm() throws Exception {
+        Message source = message(Message.Type.PIN, null);
+
+        assertEquals(json.toText(source), sz.toText(source));
+    }
+
+    @Test
+    public void shouldHandleOffsetAndLength() throws Exception {
+        Message source = message(Message.Type.FLT, new FltPayload(ANOTHER_AGENT_IDEN));
+        byte[] data = sz.toBytes(source);
+        byte[] padded = new byte[data.length + 10];
+        System.arraycopy(data, 0, padded, 5, data.length);
+
+        Message decoded = sz.fromBytes(padded, 5, data.length, Message.class);
+
+        assertEquals(json.toText(source), json.toText(decoded));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownMessageType() throws Exception {
+        byte[] data = sz.toBytes(message(Message.Type.PIN, null));
+        data[3] = (byte) 0xF0;
+
+        sz.fromBytes(data, Message.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownIdenType() throws Exception {
+        byte[] data = sz.toBytes(message(Message.Type.PIN, null));
+        data[5] = (byte) 0xF0;
+
+        sz.fromBytes(data, Message.class);
+    }
+
+    private Message message(Message.Type type, Payload payload) {
+        return new MessageBuilder(type, A_AGENT_IDEN, A_CLOUD_IDEN).with(payload).with(UUID.randomUUID()).make();
+    }
+
+    private void assertRoundTrip(Message source) {
+        Message decoded = sz.fromBytes(sz.toBytes(source), Message.class);
+
+        assertEquals(source, decoded);
+        assertEquals(json.toText(source), json.toText(decoded));
+    }
+}
@@ -6,6 +6,7 @@ import static com.workshare.msnos.core.CoreHelper.*;
 
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Set;
 import java.util.UUID;
 
 import org.junit.Before;
@@ -22,7 +23,9 @@ import com.workshare.msnos.core.MessageBuilder;
 import com.workshare.msnos.core.RemoteAgent;
 import com.workshare.msnos.core.RemoteEntity;
 import com.workshare.msnos.core.Version;
+import com.workshare.msnos.core.payloads.EnqPayload;
 import com.workshare.msnos.core.payloads.FltPayload;
+import com.workshare.msnos.core.payloads.HealthDigestPayload;
 import com.workshare.msnos.core.payloads.HealthcheckPayload;
 import com.workshare.msnos.core.payloads.Presence;
 import com.workshare.msnos.core.payloads.QnePayload;
@@ -181,6 +184,40 @@ public class WireJsonSerializerTest {
         assertEquals(source.getData(), decoded.getData());
     }
 
+    @Test
+    public void shouldCorrectlyDeserializeHCDMessage() throws Exception {
+        HealthDigestPayload.Entry entry = new HealthDigestPayload.Entry(localAgent.getIden(), false);
+        Payload payload = new HealthDigestPayload(Arrays.asList(entry));
+        Message source = new MessageBuilder(Message.Type.HCD, A_CLOUD_IDEN, A_CLOUD_IDEN).with(payload).with(UUID.randomUUID()).make();
+
+        byte[] data = sz.toBytes(source);
+        Message decoded = sz.fromBytes(data, Message.class);
+
+        assertEquals(source.getData(), decoded.getData());
+    }
+
+    @Test
+    public void shouldCorrectlyDeserializeENQMessage() throws Exception {
+        Message source = new MessageBuilder(Message.Type.ENQ, A_CLOUD_IDEN, localAgent.getIden()).with(new EnqPayload(123L)).with(UUID.randomUUID()).make();
+
+        byte[] data = sz.toBytes(source);
+        Message decoded = sz.fromBytes(data, Message.class);
+
+        assertEquals(source.getData(), decoded.getData());
+    }
+
+    @Test
+    public void shouldCorrectlyDeserializeVersionedQNEMessage() throws Exception {
+        Set<RestApi> removed = new HashSet<RestApi>(Arrays.asList(new RestApi("/old", 9999)));
+        Payload payload = QnePayload.delta("name", 42L, new HashSet<RestApi>(Arrays.asList(new RestApi("/new", 9999))), removed);
+        Message source = new MessageBuilder(Message.Type.QNE, A_CLOUD_IDEN, A_CLOUD_IDEN).with(payload).with(UUID.randomUUID()).make();
+
+        byte[] data = sz.toBytes(source);
+        Message decoded = sz.fromBytes(data, Message.class);
+
+        assertEquals(source.getData(), decoded.getData());
+    }
+
     @Test
     public void shouldCorrectlyDeserializePONMessage() throws Exception {
         Message source = new MessageBuilder(Message.Type.PON, A_CLOUD_IDEN, A_CLOUD_IDEN).make();
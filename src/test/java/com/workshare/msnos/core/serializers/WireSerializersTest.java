@@ -0,0 +1,118 @@
+package com.workshare.msnos.core.serializers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.workshare.msnos.core.Iden;
+import com.workshare.msnos.core.Message;
+import com.workshare.msnos.core.MessageBuilder;
+import com.workshare.msnos.core.RemoteAgent;
+
+public class WireSerializersTest {
+
+    private static final Iden A_CLOUD_IDEN = new Iden(Iden.Type.CLD, UUID.randomUUID());
+    private static final Iden A_AGENT_IDEN = new Iden(Iden.Type.AGT, UUID.randomUUID());
+    private static final Iden ANOTHER_AGENT_IDEN = new Iden(Iden.Type.AGT, UUID.randomUUID());
+
+    @BeforeClass
+    public static void useLocalTimeSource() {
+        System.setProperty("com.ws.nsnos.time.local", "true");
+    }
+
+    @Test
+    public void shouldBuildJsonSerializerByDefault() {
+        assertTrue(WireSerializers.getWireSerializer(null) instanceof WireJsonSerializer);
+    }
+
+    @Test
+    public void shouldBuildBinarySerializerWhenRequested() {
+        assertTrue(WireSerializers.getWireSerializer("binary") instanceof WireBinarySerializer);
+    }
+
+    @Test
+    public void shouldShareSerializersOfTheSameFormat() {
+        assertSame(WireSerializers.getWireSerializer(WireSerializers.FORMAT_JSON), WireSerializers.getWireSerializer());
+        assertSame(WireSerializers.getWireSerializer(WireSerializers.FORMAT_BINARY), WireSerializers.forAgents(WireSerializers.FORMAT_BINARY, agents(WireSerializers.WIRE_VERSION)));
+    }
+
+    @Test
+    public void shouldReuseEncodingOfAMessageAcrossComponents() {
+        Message message = message(A_AGENT_IDEN);
+
+        byte[] bytes = message.toBytes(WireSerializers.getWireSerializer());
+
+        assertSame(bytes, message.toBytes(WireSerializers.getWireSerializer()));
+    }
+
+    @Test
+    public void shouldSendJsonWhenBinaryIsNotChosen() {
+        assertTrue(WireSerializers.forAgents(WireSerializers.FORMAT_JSON, agents(WireSerializers.WIRE_VERSION)) instanceof WireJsonSerializer);
+    }
+
+    @Test
+    public void shouldSendBinaryWhenEveryAgentReadsIt() {
+        assertTrue(WireSerializers.forAgents(WireSerializers.FORMAT_BINARY, agents(WireSerializers.WIRE_VERSION, WireSerializers.WIRE_VERSION)) instanceof WireBinarySerializer);
+    }
+
+    @Test
+    public void shouldSendJsonWhenAnyAgentReadsJsonOnly() {
+        assertTrue(WireSerializers.forAgents(WireSerializers.FORMAT_BINARY, agents(WireSerializers.WIRE_VERSION, WireSerializers.WIRE_JSON)) instanceof WireJsonSerializer);
+    }
+
+    @Test
+    public void shouldSendJsonWhenNoAgentIsKnown() {
+        assertTrue(WireSerializers.forAgents(WireSerializers.FORMAT_BINARY, agents()) instanceof WireJsonSerializer);
+    }
+
+    @Test
+    public void shouldComputeSenderHashOnJsonFrames() {
+        assertSenderHash(WireSerializers.getWireSerializer(WireSerializers.FORMAT_JSON));
+    }
+
+    @Test
+    public void shouldComputeSenderHashOnBinaryFrames() {
+        assertSenderHash(WireSerializers.getWireSerializer(WireSerializers.FORMAT_BINARY));
+    }
+
+    @Test
+    public void shouldReturnZeroWhenSenderIsUnknown() {
+        byte[] data = "{\"foo\":\"bar\"}".getBytes();
+
+        assertEquals(0, WireSerializers.senderHash(data, 0, data.length));
+    }
+
+    private void assertSenderHash(WireSerializer sz) {
+        byte[] one = sz.toBytes(message(A_AGENT_IDEN));
+        byte[] two = sz.toBytes(message(A_AGENT_IDEN));
+        byte[] other = sz.toBytes(message(ANOTHER_AGENT_IDEN));
+
+        int hash = WireSerializers.senderHash(one, 0, one.length);
+        assertFalse(hash == 0);
+        assertEquals(hash, WireSerializers.senderHash(two, 0, two.length));
+        assertFalse(hash == WireSerializers.senderHash(other, 0, other.length));
+    }
+
+    private List<RemoteAgent> agents(int... versions) {
+        List<RemoteAgent> agents = new ArrayList<RemoteAgent>();
+        for (int version : versions) {
+            RemoteAgent agent = new RemoteAgent(UUID.randomUUID(), null, RemoteAgent.NO_ENDPOINTS);
+            agent.setWireVersion(version);
+            agents.add(agent);
+        }
+
+        return agents;
+    }
+
+    private Message message(Iden from) {
+        return new MessageBuilder(Message.Type.PIN, from, A_CLOUD_IDEN).with(UUID.randomUUID()).make();
+    }
+}
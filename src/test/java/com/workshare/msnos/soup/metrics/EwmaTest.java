@@ -0,0 +1,73 @@
+package com.workshare.msnos.soup.metrics;
+
+import static com.workshare.msnos.core.CoreHelper.fakeElapseTime;
+import static com.workshare.msnos.core.CoreHelper.fakeSystemTime;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.workshare.msnos.soup.time.SystemTime;
+
+public class EwmaTest {
+
+    private Ewma ewma;
+
+    @Before
+    public void before() {
+        fakeSystemTime(123456L);
+        ewma = new Ewma(1, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void after() {
+        SystemTime.reset();
+    }
+
+    @Test
+    public void shouldBeZeroAtStart() {
+        assertEquals(0.0, ewma.value(), 0.001);
+    }
+
+    @Test
+    public void shouldTakePeaksStraightAway() {
+        ewma.update(10);
+        ewma.update(100);
+
+        assertEquals(100.0, ewma.value(), 0.001);
+    }
+
+    @Test
+    public void shouldBlendLowerSamplesDependingOnElapsedTime() {
+        ewma.update(100);
+        fakeElapseTime(1000L);
+        ewma.update(0);
+
+        assertEquals(100.0 / Math.E, ewma.value(), 0.001);
+    }
+
+    @Test
+    public void shouldIgnoreLowerSamplesReceivedAtTheSameTime() {
+        ewma.update(100);
+        ewma.update(10);
+
+        assertEquals(100.0, ewma.value(), 0.001);
+    }
+
+    @Test
+    public void shouldDecayWithoutSamples() {
+        ewma.update(100);
+        fakeElapseTime(5000L);
+
+        assertTrue(ewma.value() < 1.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveDecay() {
+        new Ewma(0, TimeUnit.SECONDS);
+    }
+}
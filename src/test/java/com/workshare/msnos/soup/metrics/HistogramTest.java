@@ -0,0 +1,49 @@
+package com.workshare.msnos.soup.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+    private Histogram histogram = new Histogram();
+
+    @Test
+    public void shouldBeEmptyAtStart() {
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(0.99));
+        assertEquals(0.0, histogram.mean(), 0.001);
+    }
+
+    @Test
+    public void shouldComputeCountMeanAndMax() {
+        histogram.update(10);
+        histogram.update(20);
+        histogram.update(30);
+
+        assertEquals(3, histogram.count());
+        assertEquals(20.0, histogram.mean(), 0.001);
+        assertEquals(30, histogram.max());
+    }
+
+    @Test
+    public void shouldApproximatePercentilesWithinTwiceTheValue() {
+        for (int i = 1; i <= 1000; i++)
+            histogram.update(i);
+
+        long p50 = histogram.percentile(0.50);
+        long p99 = histogram.percentile(0.99);
+
+        assertTrue(p50 >= 500 && p50 < 1000);
+        assertTrue(p99 >= 990 && p99 <= 1000);
+    }
+
+    @Test
+    public void shouldTreatNegativeValuesAsZero() {
+        histogram.update(-5);
+
+        assertEquals(0, histogram.max());
+        assertEquals(1, histogram.count());
+    }
+}
@@ -0,0 +1,62 @@
+package com.workshare.msnos.soup.metrics;
+
+import static com.workshare.msnos.core.CoreHelper.fakeElapseTime;
+import static com.workshare.msnos.core.CoreHelper.fakeSystemTime;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.workshare.msnos.soup.time.SystemTime;
+
+public class MeterTest {
+
+    private Meter meter;
+
+    @Before
+    public void before() {
+        fakeSystemTime(123456L);
+        meter = new Meter();
+    }
+
+    @After
+    public void after() {
+        SystemTime.reset();
+    }
+
+    @Test
+    public void shouldCountEvents() {
+        meter.mark();
+        meter.mark(9);
+
+        assertEquals(10, meter.count());
+    }
+
+    @Test
+    public void shouldComputeRatePerSecond() {
+        meter.mark(10);
+        fakeElapseTime(2000L);
+
+        assertEquals(5.0, meter.rate(), 0.001);
+    }
+
+    @Test
+    public void shouldRateBeZeroWithinFirstWindow() {
+        meter.mark(10);
+
+        assertEquals(0.0, meter.rate(), 0.001);
+    }
+
+    @Test
+    public void shouldComputeRateOnLastWindowOnly() {
+        meter.mark(10);
+        fakeElapseTime(1000L);
+        meter.rate();
+
+        meter.mark(2);
+        fakeElapseTime(1000L);
+
+        assertEquals(2.0, meter.rate(), 0.001);
+    }
+}
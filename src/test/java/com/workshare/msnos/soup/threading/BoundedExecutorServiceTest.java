@@ -0,0 +1,79 @@
+package com.workshare.msnos.soup.threading;
+
+import static com.workshare.msnos.core.CoreHelper.sleep;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BoundedExecutorServiceTest {
+
+    private ExecutorService delegate;
+    private BoundedExecutorService executor;
+
+    @Before
+    public void before() {
+        delegate = ExecutorServices.newCachedDaemonThreadPool();
+        executor = new BoundedExecutorService(delegate, 2);
+    }
+
+    @After
+    public void after() {
+        delegate.shutdownNow();
+    }
+
+    @Test
+    public void shouldRunAllTasks() throws Exception {
+        final CountDownLatch done = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++)
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldRunAtMostSizeTasksAtOnce() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger most = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(20);
+        for (int i = 0; i < 20; i++)
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final int current = running.incrementAndGet();
+                    int previous;
+                    while ((previous = most.get()) < current && !most.compareAndSet(previous, current))
+                        ;
+                    sleep(5, TimeUnit.MILLISECONDS);
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(most.get() <= 2);
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void shouldRejectTasksOnceShutdown() throws Exception {
+        executor.shutdown();
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
+}
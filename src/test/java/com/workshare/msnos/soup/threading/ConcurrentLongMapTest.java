@@ -0,0 +1,107 @@
+package com.workshare.msnos.soup.threading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ConcurrentLongMapTest {
+
+    private ConcurrentLongMap<String> map = new ConcurrentLongMap<String>();
+
+    @Test
+    public void shouldReturnNullWhenKeyMissing() {
+        assertNull(map.get(42));
+        assertFalse(map.containsKey(42));
+    }
+
+    @Test
+    public void shouldStoreValues() {
+        map.put(0, "zero");
+        map.put(1, "one");
+        map.put(-1, "minus");
+
+        assertEquals("zero", map.get(0));
+        assertEquals("one", map.get(1));
+        assertEquals("minus", map.get(-1));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    public void shouldReplaceValueOfSameKey() {
+        map.put(7, "old");
+
+        assertEquals("old", map.put(7, "new"));
+        assertEquals("new", map.get(7));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void shouldRemoveValues() {
+        map.put(7, "seven");
+
+        assertEquals("seven", map.remove(7));
+        assertNull(map.get(7));
+        assertNull(map.remove(7));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void shouldKeepFindingAllKeysWhileGrowingAndShrinking() {
+        for (long i = 0; i < 10000; i++)
+            map.put(i, Long.toString(i));
+
+        for (long i = 0; i < 10000; i += 2)
+            map.remove(i);
+
+        assertEquals(5000, map.size());
+        for (long i = 0; i < 10000; i++) {
+            if (i % 2 == 0)
+                assertNull(map.get(i));
+            else
+                assertEquals(Long.toString(i), map.get(i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNullValues() {
+        map.put(1, null);
+    }
+
+    @Test
+    public void shouldClear() {
+        map.put(1, "one");
+        map.clear();
+
+        assertEquals(0, map.size());
+        assertNull(map.get(1));
+    }
+
+    @Test
+    public void shouldSupportConcurrentWriters() throws Exception {
+        final int threads = 8;
+        final int perThread = 5000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final long base = t * perThread;
+            new Thread() {
+                @Override
+                public void run() {
+                    for (long i = base; i < base + perThread; i++)
+                        map.put(i, Long.toString(i));
+                    done.countDown();
+                }
+            }.start();
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(threads * perThread, map.size());
+        for (long i = 0; i < threads * perThread; i++)
+            assertEquals(Long.toString(i), map.get(i));
+    }
+}
@@ -1,11 +1,14 @@
 package com.workshare.msnos.soup.threading;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.junit.Test;
 
@@ -21,6 +24,49 @@ public class ExecutorServicesTest {
         assertDaemonThreads(ExecutorServices.newCachedDaemonThreadPool());
     }
     
+    @Test
+    public void shouldVirtualThreadPerTaskExecutorCreateDaemonThreads() throws Exception {
+        assertDaemonThreads(ExecutorServices.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Test
+    public void shouldNotUseVirtualThreadsByDefault() throws Exception {
+        assertFalse(ExecutorServices.isUsingVirtualThreads());
+    }
+
+    @Test
+    public void shouldFallBackToPlatformThreadsWhenVirtualThreadsAreNotSupported() throws Exception {
+        ExecutorService pool = ExecutorServices.newVirtualThreadPerTaskExecutor(null);
+
+        assertTrue(pool instanceof ThreadPoolExecutor);
+        assertDaemonThreads(pool);
+    }
+
+    @Test
+    public void shouldFallBackToPlatformThreadsWhenVirtualExecutorCannotBeCreated() throws Exception {
+        ExecutorService pool = ExecutorServices.newVirtualThreadPerTaskExecutor(ExecutorServicesTest.class.getMethod("brokenFactory"));
+
+        assertTrue(pool instanceof ThreadPoolExecutor);
+        assertDaemonThreads(pool);
+    }
+
+    @Test
+    public void shouldNotUseVirtualThreadsWhenNotSupported() throws Exception {
+        assertFalse(ExecutorServices.useVirtualThreads(true, null));
+    }
+
+    @Test
+    public void shouldUseVirtualThreadsOnlyWhenRequested() throws Exception {
+        Method factory = ExecutorServicesTest.class.getMethod("brokenFactory");
+
+        assertFalse(ExecutorServices.useVirtualThreads(false, factory));
+        assertTrue(ExecutorServices.useVirtualThreads(true, factory));
+    }
+
+    public static ExecutorService brokenFactory() {
+        throw new UnsupportedOperationException("boom!");
+    }
+
     private void assertDaemonThreads(final ExecutorService pool) throws InterruptedException, ExecutionException {
         Future<Boolean> daemon = pool.submit(new Callable<Boolean>(){
             @Override
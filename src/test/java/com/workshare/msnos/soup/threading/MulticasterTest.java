@@ -12,6 +12,10 @@ import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
 
 public class MulticasterTest {
 
@@ -103,6 +107,22 @@ public class MulticasterTest {
         assertEquals("PRIORITY-STANDARD-STANDARD", trace.toString());
     }
 
+    @Test
+    public void shouldDispatchWithTraceEnabledOnAnyExecutor() throws Exception {
+        Logger logger = (Logger) LoggerFactory.getLogger(Multicaster.class);
+        Level level = logger.getLevel();
+        logger.setLevel(Level.TRACE);
+        try {
+            caster().addListener(newTraceAppendingListener());
+
+            caster().dispatch("one");
+
+            assertTraceContains("one");
+        } finally {
+            logger.setLevel(level);
+        }
+    }
+
     private void shutdown(ExecutorService executor) throws InterruptedException {
         executor.shutdown();
         executor.awaitTermination(10, TimeUnit.SECONDS);
@@ -0,0 +1,88 @@
+package com.workshare.msnos.usvc;
+
+import static com.workshare.msnos.core.CoreHelper.newAgentIden;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.workshare.msnos.core.Iden;
+
+public class HealthcheckRingTest {
+
+    @Test
+    public void shouldReturnNoOwnerWhenEmpty() {
+        HealthcheckRing ring = new HealthcheckRing(Collections.<Iden>emptyList());
+
+        assertNull(ring.ownerOf(newAgentIden()));
+    }
+
+    @Test
+    public void shouldAssignSameOwnerWhateverTheOrderOfNodes() {
+        List<Iden> nodes = newIdens(5);
+        List<Iden> reversed = new ArrayList<Iden>(nodes);
+        Collections.reverse(reversed);
+
+        HealthcheckRing one = new HealthcheckRing(nodes);
+        HealthcheckRing two = new HealthcheckRing(reversed);
+
+        for (Iden service : newIdens(100))
+            assertEquals(one.ownerOf(service), two.ownerOf(service));
+    }
+
+    @Test
+    public void shouldSpreadServicesOverNodes() {
+        List<Iden> nodes = newIdens(4);
+        HealthcheckRing ring = new HealthcheckRing(nodes);
+
+        Map<Iden, Integer> counts = new HashMap<Iden, Integer>();
+        for (Iden service : newIdens(4000)) {
+            Iden owner = ring.ownerOf(service);
+            Integer count = counts.get(owner);
+            counts.put(owner, count == null ? 1 : count + 1);
+        }
+
+        assertEquals(4, counts.size());
+        for (Integer count : counts.values())
+            assertTrue("Unbalanced ring: " + counts.values(), count > 500 && count < 1500);
+    }
+
+    @Test
+    public void shouldMoveOnlyServicesOfTheNewNodeWhenNodeAdded() {
+        List<Iden> nodes = newIdens(4);
+        HealthcheckRing before = new HealthcheckRing(nodes);
+
+        Iden added = newAgentIden();
+        List<Iden> more = new ArrayList<Iden>(nodes);
+        more.add(added);
+        HealthcheckRing after = new HealthcheckRing(more);
+
+        for (Iden service : newIdens(1000)) {
+            Iden owner = after.ownerOf(service);
+            if (!owner.equals(added))
+                assertEquals(before.ownerOf(service), owner);
+        }
+    }
+
+    @Test
+    public void shouldCountNodes() {
+        HealthcheckRing ring = new HealthcheckRing(Arrays.asList(newAgentIden(), newAgentIden()));
+
+        assertEquals(2, ring.size());
+    }
+
+    private static List<Iden> newIdens(int count) {
+        List<Iden> idens = new ArrayList<Iden>();
+        for (int i = 0; i < count; i++)
+            idens.add(newAgentIden());
+        return idens;
+    }
+}
@@ -10,19 +10,23 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -38,9 +42,14 @@ import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import com.workshare.msnos.core.Cloud;
+import com.workshare.msnos.core.Iden;
+import com.workshare.msnos.core.LocalAgent;
 import com.workshare.msnos.core.Message;
 import com.workshare.msnos.core.RemoteAgent;
+import com.workshare.msnos.core.payloads.HealthDigestPayload;
 import com.workshare.msnos.core.payloads.HealthcheckPayload;
+import com.workshare.msnos.core.protocols.ip.HttpClientFactory;
+import com.workshare.msnos.soup.threading.ExecutorServices;
 import com.workshare.msnos.soup.time.SystemTime;
 import com.workshare.msnos.usvc.api.RestApi;
 
@@ -67,7 +76,7 @@ public class HealthcheckerTest {
         when(microcloud.getCloud()).thenReturn(cloud);
         
         scheduler = mock(ScheduledExecutorService.class);
-        healthchecker = new Healthchecker(microcloud, scheduler);
+        healthchecker = newHealthchecker(ExecutorServices.newSynhcronousExecutor());
         httpServer = null;
     }
 
@@ -137,7 +146,7 @@ public class HealthcheckerTest {
         fakeSystemTime(100000);
         RemoteMicroservice remote = setupRemoteMicroservice();
         setupHealthcheck(200);
-        healthchecker = new Healthchecker(microcloud, scheduler);
+        healthchecker = newHealthchecker(ExecutorServices.newSynhcronousExecutor());
         healthchecker.start();
 
         fakeSystemTime(SystemTime.asMillis()+2*Healthchecker.ENQ_PERIOD);
@@ -153,7 +162,7 @@ public class HealthcheckerTest {
         fakeSystemTime(100000);
         RemoteMicroservice remote = setupRemoteMicroservice();
         setupHealthcheck(200);
-        healthchecker = new Healthchecker(microcloud, scheduler);
+        healthchecker = newHealthchecker(ExecutorServices.newSynhcronousExecutor());
         healthchecker.start();
 
         fakeSystemTime(100000+(int)(Healthchecker.ENQ_PERIOD*0.75));
@@ -170,7 +179,7 @@ public class HealthcheckerTest {
     public void shouldSkipRecentlyCheckedServices() throws Exception {
         RemoteMicroservice remote = setupRemoteMicroservice();
         when(remote.getLastChecked()).thenReturn(123456L);
-        healthchecker = new Healthchecker(microcloud, scheduler);
+        healthchecker = newHealthchecker(ExecutorServices.newSynhcronousExecutor());
         healthchecker.start();
 
         fakeSystemTime(remote.getLastChecked()+1000);
@@ -203,6 +212,137 @@ public class HealthcheckerTest {
         assertTrue(allApisWorking(remote));
     }
     
+    @Test
+    public void shouldShortenIntervalOfFaultyServices() throws Exception {
+        RemoteMicroservice remote = setupRemoteMicroservice();
+        setupHealthcheck(500);
+
+        startAndRunCheck();
+
+        assertEquals(Healthchecker.CHECK_PERIOD_MIN, healthchecker.interval(remote));
+    }
+
+    @Test
+    public void shouldBackoffIntervalOfServicesWorkingRepeatedly() throws Exception {
+        fakeSystemTime(100000);
+        RemoteMicroservice remote = setupRemoteMicroservice();
+        setupHealthcheck(200);
+
+        startAndRunCheck();
+        assertEquals(Healthchecker.CHECK_PERIOD, healthchecker.interval(remote));
+
+        fakeSystemTime(SystemTime.asMillis() + 2 * Healthchecker.CHECK_PERIOD);
+        runCheck();
+        assertEquals(Math.min(2 * Healthchecker.CHECK_PERIOD, Healthchecker.CHECK_PERIOD_MAX), healthchecker.interval(remote));
+    }
+
+    @Test
+    public void shouldNotCheckServicesBeforeTheyAreDue() throws Exception {
+        fakeSystemTime(100000);
+        RemoteMicroservice remote = setupRemoteMicroservice();
+        setupHealthcheck(200);
+
+        startAndRunCheck();
+        runCheck();
+
+        verify(remote, times(1)).markWorking();
+    }
+
+    @Test
+    public void shouldRecordCheckLatencyAndSweepDuration() throws Exception {
+        RemoteMicroservice remote = setupRemoteMicroservice();
+        setupHealthcheck(200);
+
+        startAndRunCheck();
+
+        assertEquals(1, healthchecker.latency(remote).count());
+        assertEquals(1, healthchecker.sweepDuration().count());
+    }
+
+    @Test
+    public void shouldScheduleSweepsAtMinimumInterval() throws Exception {
+        healthchecker.start();
+
+        verify(scheduler).scheduleAtFixedRate(any(Runnable.class), eq(Healthchecker.CHECK_PERIOD_MIN), eq(Healthchecker.CHECK_PERIOD_MIN), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void shouldSendDigestInsteadOfHCKWhenCooperative() throws Exception {
+        RemoteMicroservice remote = setupRemoteMicroservice();
+        setupHealthcheck(200);
+        Iden self = setupCooperativeHealthchecker();
+
+        startAndRunCheck();
+
+        assertNull(getLastMessageSent(Message.Type.HCK));
+        Message message = getLastMessageSent(Message.Type.HCD);
+        assertNotNull(message);
+        assertEquals(self, message.getFrom());
+        HealthDigestPayload payload = (HealthDigestPayload) message.getData();
+        assertEquals(new HealthDigestPayload.Entry(remote.getAgent().getIden(), true), payload.getEntries().get(0));
+    }
+
+    @Test
+    public void shouldNotCheckServicesOwnedByCooperatingPeers() throws Exception {
+        RemoteMicroservice remote = setupRemoteMicroservice();
+        setupHealthcheck(200);
+        Iden self = setupCooperativeHealthchecker();
+        healthchecker.onDigest(newPeerOwning(self, remote));
+
+        startAndRunCheck();
+
+        verify(remote, never()).markWorking();
+        HealthDigestPayload payload = (HealthDigestPayload) getLastMessageSent(Message.Type.HCD).getData();
+        assertTrue(payload.getEntries().isEmpty());
+    }
+
+    @Test
+    public void shouldCheckServicesNotReportedByTheirOwnerForLong() throws Exception {
+        fakeSystemTime(100000);
+        RemoteMicroservice remote = setupRemoteMicroservice();
+        setupHealthcheck(200);
+        Iden self = setupCooperativeHealthchecker();
+        Iden peer = newPeerOwning(self, remote);
+        healthchecker.onDigest(peer);
+        startAndRunCheck();
+
+        fakeSystemTime(SystemTime.asMillis() + 2 * Healthchecker.CHECK_PERIOD_MAX + 1);
+        healthchecker.onDigest(peer);
+        runCheck();
+
+        verify(remote).markWorking();
+    }
+
+    @Test
+    public void shouldNotWaitForChecksOnTheScheduler() throws Exception {
+        RemoteMicroservice remote = setupRemoteMicroservice();
+        setupHealthcheck(200);
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        healthchecker = newHealthchecker(collectingExecutor(tasks));
+
+        startAndRunCheck();
+
+        verify(remote, never()).markWorking();
+        assertEquals(0, healthchecker.sweepDuration().count());
+    }
+
+    @Test
+    public void shouldNotCheckServiceAgainWhileItsCheckIsPending() throws Exception {
+        fakeSystemTime(100000);
+        RemoteMicroservice remote = setupRemoteMicroservice();
+        setupHealthcheck(200);
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        healthchecker = newHealthchecker(collectingExecutor(tasks));
+
+        startAndRunCheck();
+        fakeSystemTime(SystemTime.asMillis() + 2 * Healthchecker.CHECK_PERIOD_MAX);
+        runCheck();
+        for (Runnable task : new ArrayList<Runnable>(tasks))
+            task.run();
+
+        verify(remote, times(1)).markWorking();
+    }
+
     protected void startAndRunCheck() {
         healthchecker.start();
         runCheck();
@@ -300,6 +440,36 @@ public class HealthcheckerTest {
         return setupRemoteMicroservice(name, alfa, beta, thre, four);
     }
 
+    private Healthchecker newHealthchecker(Executor checkers) {
+        return new Healthchecker(microcloud, scheduler, checkers, HttpClientFactory.sharedHttpClient());
+    }
+
+    private Executor collectingExecutor(final List<Runnable> tasks) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        };
+    }
+
+    private Iden setupCooperativeHealthchecker() {
+        LocalAgent agent = mock(LocalAgent.class);
+        when(agent.getIden()).thenReturn(newAgentIden());
+        when(microcloud.getCloud().getLocalAgents()).thenReturn(Arrays.asList(agent));
+
+        healthchecker = new Healthchecker(microcloud, scheduler, ExecutorServices.newSynhcronousExecutor(), HttpClientFactory.sharedHttpClient(), true);
+        return agent.getIden();
+    }
+
+    private Iden newPeerOwning(Iden self, RemoteMicroservice remote) {
+        while (true) {
+            Iden peer = newAgentIden();
+            if (peer.equals(new HealthcheckRing(Arrays.asList(self, peer)).ownerOf(remote.getAgent().getIden())))
+                return peer;
+        }
+    }
+
     private RemoteMicroservice setupRemoteMicroservice(String name, RestApi... apis) {
         RemoteAgent agent = mock(RemoteAgent.class);
         when(agent.getIden()).thenReturn(newAgentIden());
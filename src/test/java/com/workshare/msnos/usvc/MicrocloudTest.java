@@ -8,6 +8,7 @@ import static com.workshare.msnos.core.CoreHelper.randomUUID;
 import static com.workshare.msnos.core.CoreHelper.runScheduledTasks;
 import static com.workshare.msnos.core.MessagesHelper.newAPPMessage;
 import static com.workshare.msnos.core.MessagesHelper.newFaultMessage;
+import static com.workshare.msnos.core.MessagesHelper.newHCDMessage;
 import static com.workshare.msnos.core.MessagesHelper.newHCKMessage;
 import static com.workshare.msnos.core.MessagesHelper.newPresenceMessage;
 import static com.workshare.msnos.core.MessagesHelper.newQNEMessage;
@@ -29,7 +30,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -44,10 +48,12 @@ import com.workshare.msnos.core.Cloud.Listener;
 import com.workshare.msnos.core.Iden;
 import com.workshare.msnos.core.LocalAgent;
 import com.workshare.msnos.core.Message;
+import com.workshare.msnos.core.MessageBuilder;
 import com.workshare.msnos.core.MsnosException;
 import com.workshare.msnos.core.RemoteAgent;
 import com.workshare.msnos.core.RemoteEntity;
 import com.workshare.msnos.core.Ring;
+import com.workshare.msnos.core.payloads.EnqPayload;
 import com.workshare.msnos.core.payloads.QnePayload;
 import com.workshare.msnos.core.protocols.ip.BaseEndpoint;
 import com.workshare.msnos.core.protocols.ip.Endpoint;
@@ -55,6 +61,7 @@ import com.workshare.msnos.core.protocols.ip.Endpoint.Type;
 import com.workshare.msnos.core.protocols.ip.HttpEndpoint;
 import com.workshare.msnos.core.protocols.ip.Network;
 import com.workshare.msnos.soup.time.SystemTime;
+import com.workshare.msnos.usvc.api.CircuitBreaker;
 import com.workshare.msnos.usvc.api.RestApi;
 import com.workshare.msnos.usvc.api.routing.strategies.CachingRoutingStrategy;
 
@@ -110,6 +117,85 @@ public class MicrocloudTest {
         assertEquals(123456789, remote.getLastChecked());
     }
 
+    @Test
+    public void shouldUpdateStatusOfRemoteMicroserviceOnHCD() throws IOException {
+        RemoteMicroservice remote = setupRemoteMicroservice("10.10.10.10", "remote", "/endpoint");
+
+        fakeSystemTime(123456789);
+        simulateMessageFromCloud(newHCDMessage(newAgentIden(), remote, false));
+
+        remote = microcloud.getMicroServices().get(0);
+        assertEquals(123456789, remote.getLastChecked());
+        assertTrue(remote.isFaulty());
+    }
+
+    @Test
+    public void shouldApplyVersionedDeltasInSequence() throws Exception {
+        RemoteAgent agent = newRemoteAgent();
+        RestApi alfa = createRestApi("remote", "alfa");
+        RestApi beta = createRestApi("remote", "beta");
+
+        simulateMessageFromCloud(newCatalogMessage(agent, QnePayload.full("remote", 10L, asSet(alfa))));
+        simulateMessageFromCloud(newCatalogMessage(agent, QnePayload.delta("remote", 11L, asSet(beta), asSet(alfa))));
+
+        assertNull(microcloud.searchApi(local, "alfa"));
+        assertEquals(beta, microcloud.searchApi(local, "beta"));
+        assertEquals(11L, microcloud.getMicroServices().get(0).getVersion());
+    }
+
+    @Test
+    public void shouldIgnoreStaleDeltas() throws Exception {
+        RemoteAgent agent = newRemoteAgent();
+        RestApi alfa = createRestApi("remote", "alfa");
+
+        simulateMessageFromCloud(newCatalogMessage(agent, QnePayload.full("remote", 10L, asSet(alfa))));
+        simulateMessageFromCloud(newCatalogMessage(agent, QnePayload.delta("remote", 9L, new HashSet<RestApi>(), asSet(alfa))));
+
+        assertEquals(alfa, microcloud.searchApi(local, "alfa"));
+    }
+
+    @Test
+    public void shouldAskForWholeCatalogOnGap() throws Exception {
+        RemoteAgent agent = newRemoteAgent();
+        RestApi alfa = createRestApi("remote", "alfa");
+        RestApi beta = createRestApi("remote", "beta");
+
+        simulateMessageFromCloud(newCatalogMessage(agent, QnePayload.full("remote", 10L, asSet(alfa))));
+        simulateMessageFromCloud(newCatalogMessage(agent, QnePayload.delta("remote", 12L, asSet(beta), new HashSet<RestApi>())));
+
+        Message enq = assertMesageSent(Message.Type.ENQ, cloud.getIden());
+        assertEquals(agent.getIden(), enq.getTo());
+        assertEquals(10L, ((EnqPayload) enq.getData()).getVersion());
+        assertNull(microcloud.searchApi(local, "beta"));
+    }
+
+    @Test
+    public void shouldReplaceCatalogOnNewerFullAnnouncement() throws Exception {
+        RemoteAgent agent = newRemoteAgent();
+        RestApi alfa = createRestApi("remote", "alfa");
+        RestApi beta = createRestApi("remote", "beta");
+
+        simulateMessageFromCloud(newCatalogMessage(agent, QnePayload.full("remote", 10L, asSet(alfa))));
+        simulateMessageFromCloud(newCatalogMessage(agent, QnePayload.full("remote", 20L, asSet(beta))));
+
+        assertNull(microcloud.searchApi(local, "alfa"));
+        assertEquals(beta, microcloud.searchApi(local, "beta"));
+    }
+
+    @Test
+    public void shouldSendVersionedDeltaOnUnpublish() throws Exception {
+        RestApi api = createRestApi("name", "path");
+        local.publish(api);
+        final long version = local.getVersion();
+
+        local.unpublish(api);
+
+        QnePayload payload = (QnePayload) sentMessages().get(sentMessages().size() - 1).getData();
+        assertEquals(version + 1, payload.getVersion());
+        assertEquals(asSet(api), payload.getRemoved());
+        assertTrue(payload.getApis().isEmpty());
+    }
+
     @Test
     public void shouldCreateBoundRestApisWhenRestApiNotBound() throws Exception {
         RemoteEntity remoteAgent = newRemoteAgentWithFakeHosts("10.10.10.10");
@@ -372,6 +458,40 @@ public class MicrocloudTest {
         assertTrue(microcloud.canServe("/foo"));
     }
 
+    @Test
+    public void shouldNotifyCircuitChangesOfRemoteApis() throws Exception {
+        final BlockingQueue<CircuitBreaker.Event> events = new LinkedBlockingQueue<CircuitBreaker.Event>();
+        microcloud.addCircuitListener(new CircuitBreaker.Listener() {
+            @Override
+            public void onStateChange(CircuitBreaker.Event event) {
+                events.add(event);
+            }
+        });
+
+        RestApi api = getFirstRestApi(setupRemoteMicroservice("10.10.10.10", "content", "/foo"));
+        tripCircuit(api);
+
+        CircuitBreaker.Event event = events.poll(1, TimeUnit.SECONDS);
+        assertEquals(api, event.getApi());
+        assertEquals(CircuitBreaker.State.OPEN, event.getTo());
+    }
+
+    @Test
+    public void shouldSkipApisWithOpenCircuit() throws Exception {
+        RestApi tripped = getFirstRestApi(setupRemoteMicroservice("10.10.10.10", "content", "/foo"));
+        RestApi working = getFirstRestApi(setupRemoteMicroservice("11.11.11.11", "content", "/foo"));
+
+        tripCircuit(tripped);
+
+        for (int i = 0; i < 5; i++)
+            assertEquals(working, microcloud.searchApi(local, "/foo"));
+    }
+
+    private void tripCircuit(RestApi api) {
+        for (int i = 0; i < 10; i++)
+            api.markStarted().markFailed(10, TimeUnit.MILLISECONDS);
+    }
+
     
     private Message assertMesageSent(final Message.Type type, final Iden iden) throws MsnosException {
         for (Message message : sentMessages()) {
@@ -430,6 +550,10 @@ public class MicrocloudTest {
         return apis.iterator().next();
     }
 
+    private Message newCatalogMessage(RemoteAgent from, QnePayload payload) {
+        return new MessageBuilder(Message.Type.QNE, from.getIden(), cloud.getIden()).with(payload).make();
+    }
+
     private RestApi createRestApi(String name, String path) {
         return new RestApi(path, 9999).onHost("24.24.24.24");
     }
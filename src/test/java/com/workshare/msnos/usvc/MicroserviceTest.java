@@ -39,6 +39,7 @@ import com.workshare.msnos.core.Receipt;
 import com.workshare.msnos.core.RemoteAgent;
 import com.workshare.msnos.core.RemoteEntity;
 import com.workshare.msnos.core.Ring;
+import com.workshare.msnos.core.payloads.EnqPayload;
 import com.workshare.msnos.core.payloads.FltPayload;
 import com.workshare.msnos.core.payloads.QnePayload;
 import com.workshare.msnos.core.protocols.ip.BaseEndpoint;
@@ -139,6 +140,74 @@ public class MicroserviceTest {
         assertEquals(cloud.getIden(), msg.getTo());
     }
 
+    @Test
+    public void shouldSendEmptyDeltaOnEnquiryWhenCatalogUnchanged() throws Exception {
+        localMicroservice.publish(createRestApi("name", "/foo"));
+        RemoteMicroservice remoteMicroservice = setupRemoteMicroservice("remote", "/endpoint");
+
+        final EnqPayload enquiry = new EnqPayload(localMicroservice.getVersion(), localMicroservice.getApis());
+        simulateMessageFromCloud(new MockMessageHelper(Message.Type.ENQ, remoteMicroservice.getAgent().getIden(), localMicroservice.getAgent().getIden()).data(enquiry).make());
+
+        QnePayload payload = (QnePayload) getLastMessageSent().getData();
+        assertTrue(payload.isDelta());
+        assertTrue(payload.getApis().isEmpty());
+        assertEquals(localMicroservice.getVersion(), payload.getVersion());
+    }
+
+    @Test
+    public void shouldSendWholeCatalogOnEnquiryWhenCatalogIsIncomplete() throws Exception {
+        RestApi one = createRestApi("name", "/one");
+        RestApi two = createRestApi("name", "/two");
+        localMicroservice.publish(one, two);
+        RemoteMicroservice remoteMicroservice = setupRemoteMicroservice("remote", "/endpoint");
+
+        final EnqPayload enquiry = new EnqPayload(localMicroservice.getVersion(), toSet(one));
+        simulateMessageFromCloud(new MockMessageHelper(Message.Type.ENQ, remoteMicroservice.getAgent().getIden(), localMicroservice.getAgent().getIden()).data(enquiry).make());
+
+        QnePayload payload = (QnePayload) getLastMessageSent().getData();
+        assertFalse(payload.isDelta());
+        assertEquals(toSet(one, two), payload.getApis());
+    }
+
+    @Test
+    public void shouldSendWholeCatalogOnEnquiryWithoutDigest() throws Exception {
+        RestApi api = createRestApi("name", "/foo");
+        localMicroservice.publish(api);
+        RemoteMicroservice remoteMicroservice = setupRemoteMicroservice("remote", "/endpoint");
+
+        final EnqPayload enquiry = new EnqPayload(localMicroservice.getVersion());
+        simulateMessageFromCloud(new MockMessageHelper(Message.Type.ENQ, remoteMicroservice.getAgent().getIden(), localMicroservice.getAgent().getIden()).data(enquiry).make());
+
+        QnePayload payload = (QnePayload) getLastMessageSent().getData();
+        assertFalse(payload.isDelta());
+        assertEquals(toSet(api), payload.getApis());
+    }
+
+    @Test
+    public void shouldSendWholeCatalogOnEnquiryWhenVersionIsOld() throws Exception {
+        RestApi api = createRestApi("name", "/foo");
+        localMicroservice.publish(api);
+        RemoteMicroservice remoteMicroservice = setupRemoteMicroservice("remote", "/endpoint");
+
+        final EnqPayload enquiry = new EnqPayload(localMicroservice.getVersion() - 1);
+        simulateMessageFromCloud(new MockMessageHelper(Message.Type.ENQ, remoteMicroservice.getAgent().getIden(), localMicroservice.getAgent().getIden()).data(enquiry).make());
+
+        QnePayload payload = (QnePayload) getLastMessageSent().getData();
+        assertFalse(payload.isDelta());
+        assertEquals(toSet(api), payload.getApis());
+    }
+
+    @Test
+    public void shouldIncreaseVersionOnPublish() throws Exception {
+        final long before = localMicroservice.getVersion();
+
+        localMicroservice.publish(createRestApi("name", "/foo"));
+
+        QnePayload payload = (QnePayload) getLastMessageSent().getData();
+        assertEquals(before + 1, localMicroservice.getVersion());
+        assertEquals(before + 1, payload.getVersion());
+    }
+
     @Test
     public void shouldNotProcessMessagesFromSelf() throws Exception {
         simulateMessageFromCloud(newENQMessage(localMicroservice.getAgent(), localMicroservice.getAgent()));
@@ -79,6 +79,41 @@ public class RemoteMicroserviceTest {
         verify(ring).onMicroserviceJoin(micro);
     }
 
+    @Test
+    public void shouldApplyDeltaOfApis() {
+        RemoteMicroservice micro = createRemoteMicroservice();
+        RestApi added = new RestApi("other", 2222).onHost("25.25.25.25");
+        RestApi removed = new RestApi("path", 1234).onHost("25.25.25.25");
+
+        Set<RestApi> gone = micro.updateApis(5L, asSet(added), asSet(removed));
+
+        assertEquals(asSet(added), micro.getApis());
+        assertEquals(asSet(removed), gone);
+        assertEquals(5L, micro.getVersion());
+    }
+
+    @Test
+    public void shouldReplaceApisReturningTheOnesRemoved() {
+        RemoteMicroservice micro = createRemoteMicroservice();
+        RestApi other = new RestApi("other", 2222);
+
+        Set<RestApi> gone = micro.replaceApis(7L, asSet(other));
+
+        assertEquals("other", first(micro.getApis()).getPath());
+        assertEquals("path", first(gone).getPath());
+        assertEquals(7L, micro.getVersion());
+    }
+
+    @Test
+    public void shouldNeverMoveVersionBack() {
+        RemoteMicroservice micro = createRemoteMicroservice();
+
+        micro.updateApis(9L, new HashSet<RestApi>(), new HashSet<RestApi>());
+        micro.updateApis(3L, new HashSet<RestApi>(), new HashSet<RestApi>());
+
+        assertEquals(9L, micro.getVersion());
+    }
+
     @Test
     public void shouldUseRingLocationIfAvailable() {
         RemoteMicroservice micro = createRemoteMicroservice();
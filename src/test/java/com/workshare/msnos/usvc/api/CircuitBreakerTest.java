@@ -0,0 +1,209 @@
+package com.workshare.msnos.usvc.api;
+
+import static com.workshare.msnos.core.CoreHelper.fakeElapseTime;
+import static com.workshare.msnos.core.CoreHelper.fakeSystemTime;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.workshare.msnos.soup.time.SystemTime;
+import com.workshare.msnos.usvc.api.CircuitBreaker.State;
+
+public class CircuitBreakerTest {
+
+    private RestApi api;
+    private List<CircuitBreaker.Event> events;
+
+    @Before
+    public void before() {
+        fakeSystemTime(123456L);
+        api = new RestApi("/path", 8080, "10.0.0.1");
+
+        events = new ArrayList<CircuitBreaker.Event>();
+        api.setCircuitListener(new CircuitBreaker.Listener() {
+            @Override
+            public void onStateChange(CircuitBreaker.Event event) {
+                events.add(event);
+            }
+        });
+    }
+
+    @After
+    public void after() {
+        SystemTime.reset();
+    }
+
+    @Test
+    public void shouldBeClosedAtStart() {
+        assertEquals(State.CLOSED, api.getCircuit().getState());
+        assertFalse(api.isCircuitOpen());
+    }
+
+    @Test
+    public void shouldStayClosedWithTooFewCalls() {
+        fail(9);
+
+        assertEquals(State.CLOSED, api.getCircuit().getState());
+    }
+
+    @Test
+    public void shouldStayClosedWhenErrorRateBelowThreshold() {
+        succeed(6);
+        fail(4);
+
+        assertEquals(State.CLOSED, api.getCircuit().getState());
+    }
+
+    @Test
+    public void shouldOpenWhenErrorRateReachesThreshold() {
+        succeed(5);
+        fail(5);
+
+        assertEquals(State.OPEN, api.getCircuit().getState());
+        assertTrue(api.isCircuitOpen());
+    }
+
+    @Test
+    public void shouldForgetCallsOutsideTheWindow() {
+        succeed(5);
+        fail(4);
+        fakeElapseTime(11000L);
+
+        fail(1);
+
+        assertEquals(State.CLOSED, api.getCircuit().getState());
+    }
+
+    @Test
+    public void shouldBecomeHalfOpenAfterOpenTime() {
+        open();
+        fakeElapseTime(5000L);
+
+        assertEquals(State.HALF_OPEN, api.getCircuit().getState());
+        assertFalse(api.isCircuitOpen());
+    }
+
+    @Test
+    public void shouldLetOnlyLimitedTrialCallsThroughWhenHalfOpen() {
+        open();
+        fakeElapseTime(5000L);
+
+        api.markSelected();
+        api.markSelected();
+        assertFalse(api.isCircuitOpen());
+
+        api.markSelected();
+        assertTrue(api.isCircuitOpen());
+    }
+
+    @Test
+    public void shouldCloseWhenTrialCallsSucceed() {
+        open();
+        fakeElapseTime(5000L);
+
+        succeed(3);
+
+        assertEquals(State.CLOSED, api.getCircuit().getState());
+    }
+
+    @Test
+    public void shouldCloseWhenFoundWorkingWhileHalfOpen() {
+        open();
+        fakeElapseTime(5000L);
+        api.markSelected().markSelected().markSelected();
+
+        api.markWorking();
+
+        assertEquals(State.CLOSED, api.getCircuit().getState());
+        assertFalse(api.isCircuitOpen());
+    }
+
+    @Test
+    public void shouldStayOpenWhenFoundWorkingBeforeOpenTime() {
+        open();
+
+        api.markWorking();
+
+        assertEquals(State.OPEN, api.getCircuit().getState());
+    }
+
+    @Test
+    public void shouldOpenAgainWhenTrialCallFails() {
+        open();
+        fakeElapseTime(5000L);
+
+        succeed(1);
+        fail(1);
+
+        assertEquals(State.OPEN, api.getCircuit().getState());
+    }
+
+    @Test
+    public void shouldAllowNewTrialsWhenOutcomesNeverReported() {
+        open();
+        fakeElapseTime(5000L);
+        api.markSelected().markSelected().markSelected();
+
+        fakeElapseTime(5000L);
+
+        assertFalse(api.isCircuitOpen());
+    }
+
+    @Test
+    public void shouldNotifyTransitions() {
+        open();
+        fakeElapseTime(5000L);
+        succeed(3);
+
+        assertEquals(3, events.size());
+        assertTransition(events.get(0), State.CLOSED, State.OPEN);
+        assertTransition(events.get(1), State.OPEN, State.HALF_OPEN);
+        assertTransition(events.get(2), State.HALF_OPEN, State.CLOSED);
+    }
+
+    @Test
+    public void shouldNotifyTransitionsToAddedListeners() {
+        final List<CircuitBreaker.Event> watched = new ArrayList<CircuitBreaker.Event>();
+        api.addCircuitListener(new CircuitBreaker.Listener() {
+            @Override
+            public void onStateChange(CircuitBreaker.Event event) {
+                watched.add(event);
+            }
+        });
+
+        open();
+
+        assertEquals(1, events.size());
+        assertEquals(1, watched.size());
+        assertTransition(watched.get(0), State.CLOSED, State.OPEN);
+    }
+
+    private void assertTransition(CircuitBreaker.Event event, State from, State to) {
+        assertEquals(api, event.getApi());
+        assertEquals(from, event.getFrom());
+        assertEquals(to, event.getTo());
+    }
+
+    private void open() {
+        fail(10);
+        assertEquals(State.OPEN, api.getCircuit().getState());
+    }
+
+    private void succeed(int times) {
+        for (int i = 0; i < times; i++)
+            api.markStarted().markCompleted(10, TimeUnit.MILLISECONDS);
+    }
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++)
+            api.markStarted().markFailed(10, TimeUnit.MILLISECONDS);
+    }
+}
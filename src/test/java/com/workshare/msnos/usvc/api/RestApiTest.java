@@ -2,6 +2,8 @@ package com.workshare.msnos.usvc.api;
 
 import static org.junit.Assert.*;
 
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Test;
 
 import com.workshare.msnos.usvc.api.RestApi.Type;
@@ -30,4 +32,45 @@ public class RestApiTest {
         assertEquals("http://host:8888/path", new RestApi("/path", 8888, "host").getUrl());
     }
     
+    @Test
+    public void shouldTrackCallsInFlight() {
+        RestApi api = new RestApi("path", 8888, "host");
+
+        api.markStarted();
+        api.markStarted();
+        assertEquals(2, api.getInFlight());
+
+        api.markCompleted(10, TimeUnit.MILLISECONDS);
+        api.markFailed(10, TimeUnit.MILLISECONDS);
+        api.markCompleted(10, TimeUnit.MILLISECONDS);
+        assertEquals(0, api.getInFlight());
+    }
+
+    @Test
+    public void shouldTrackLatencyOfCompletedCalls() {
+        RestApi api = new RestApi("path", 8888, "host");
+
+        api.markStarted().markCompleted(50, TimeUnit.MILLISECONDS);
+
+        assertEquals(50.0, api.getLatency(), 1.0);
+    }
+
+    @Test
+    public void shouldPenalizeFailedCalls() {
+        RestApi api = new RestApi("path", 8888, "host");
+
+        api.markStarted().markFailed(1, TimeUnit.MILLISECONDS);
+
+        assertTrue(api.getLatency() > 500.0);
+        assertEquals(1, api.getTempFaults());
+    }
+
+    @Test
+    public void shouldNotSerializeFeedbackState() {
+        RestApi api = new RestApi("path", 8888, "host");
+        api.markStarted().markCompleted(50, TimeUnit.MILLISECONDS);
+
+        assertFalse(api.toString().contains("inFlight"));
+        assertFalse(api.toString().contains("latency"));
+    }
 }
@@ -0,0 +1,125 @@
+package com.workshare.msnos.usvc.api.routing;
+
+import static com.workshare.msnos.core.CoreHelper.fakeElapseTime;
+import static com.workshare.msnos.core.CoreHelper.fakeSystemTime;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.workshare.msnos.soup.time.SystemTime;
+import com.workshare.msnos.usvc.IMicroservice;
+import com.workshare.msnos.usvc.api.RestApi;
+
+public class AffinityTableTest {
+
+    private AffinityTable table;
+
+    private IMicroservice one;
+    private IMicroservice two;
+
+    private RestApi alfa;
+    private RestApi beta;
+
+    @Before
+    public void before() {
+        fakeSystemTime(123456L);
+        table = new AffinityTable(1000, 60000L);
+
+        one = mock(IMicroservice.class);
+        two = mock(IMicroservice.class);
+
+        alfa = new RestApi("/path", 8080, "10.0.0.1");
+        beta = new RestApi("/path", 8080, "10.0.0.2");
+    }
+
+    @After
+    public void after() {
+        SystemTime.reset();
+    }
+
+    @Test
+    public void shouldRememberApiOfEachCaller() {
+        table.put(one, null, alfa);
+        table.put(two, null, beta);
+
+        assertEquals(alfa, table.get(one, null));
+        assertEquals(beta, table.get(two, null));
+    }
+
+    @Test
+    public void shouldKeepSessionsOfSameCallerApart() {
+        table.put(one, "s1", alfa);
+        table.put(one, "s2", beta);
+
+        assertEquals(alfa, table.get(one, "s1"));
+        assertEquals(beta, table.get(one, "s2"));
+        assertNull(table.get(one, null));
+    }
+
+    @Test
+    public void shouldExpireEntriesNotUsed() {
+        table.put(one, null, alfa);
+        fakeElapseTime(60001L);
+
+        assertNull(table.get(one, null));
+        assertEquals(1, table.evictions());
+    }
+
+    @Test
+    public void shouldNotExpireEntriesInUse() {
+        table.put(one, null, alfa);
+        fakeElapseTime(40000L);
+        table.get(one, null);
+        fakeElapseTime(40000L);
+
+        assertEquals(alfa, table.get(one, null));
+    }
+
+    @Test
+    public void shouldStayWithinMaximumSize() {
+        table = new AffinityTable(16, 60000L);
+        for (int i = 0; i < 100; i++)
+            table.put(mock(IMicroservice.class), null, alfa);
+
+        assertTrue(table.size() <= 16);
+        assertEquals(100 - table.size(), table.evictions());
+    }
+
+    @Test
+    public void shouldForgetCallersOfRemovedApi() {
+        table.put(one, null, alfa);
+        table.put(two, null, beta);
+
+        table.remove(alfa);
+
+        assertNull(table.get(one, null));
+        assertEquals(beta, table.get(two, null));
+    }
+
+    @Test
+    public void shouldRebalanceWhenApisJoin() {
+        for (int i = 0; i < 10; i++)
+            table.put(mock(IMicroservice.class), null, alfa);
+
+        table.rebalance(2);
+
+        assertEquals(5, table.size());
+    }
+
+    @Test
+    public void shouldCountHitsAndMisses() {
+        table.put(one, null, alfa);
+
+        table.get(one, null);
+        table.get(one, null);
+        table.get(two, null);
+
+        assertEquals(2, table.hits());
+        assertEquals(1, table.misses());
+    }
+}
@@ -9,6 +9,7 @@ import static org.mockito.Mockito.when;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Before;
@@ -68,6 +69,32 @@ public class ApiListTest {
         assertEquals(rest, apiList().get(svc));
     }
 
+    @Test
+    public void shouldRemoveSingleApiOfMicroservice() {
+        RestApi alfa = newRestApi("alfa");
+        RestApi beta = newRestApi("beta");
+        Mockito.when(alfa.getUrl()).thenReturn("http://127.0.0.1/alfa");
+        Mockito.when(beta.getUrl()).thenReturn("http://127.0.0.1/beta");
+        RemoteMicroservice remote = newRemoteMicroservice();
+        apiList().add(remote, alfa);
+        apiList().add(remote, beta);
+
+        apiList().remove(remote, alfa);
+
+        assertEquals(1, apiList().size());
+        assertEquals(beta, apiList().get(svc));
+    }
+
+    @Test
+    public void shouldMarkSelectedApis() {
+        RestApi rest = newRestApi("alfa");
+        apiList().add(newRemoteMicroservice(), rest);
+
+        apiList().get(svc);
+
+        verify(rest).markSelected();
+    }
+
     @Test
     public void shouldNotReturnFaultyApis() {
         RestApi rest = newRestApi("alfa");
@@ -124,6 +151,90 @@ public class ApiListTest {
         assertEquals(beta, apiList().get(svc));
     }
 
+    @Test
+    public void shouldHonourAffinityOfEachCaller() {
+        RestApi alfa = newRestApiWithAffinity("alfa");
+        RestApi beta = newRestApiWithAffinity("beta");
+        Microservice other = Mockito.mock(Microservice.class);
+        when(other.getLocation()).thenReturn(Location.UNKNOWN);
+
+        apiList().add(newRemoteMicroservice(), alfa);
+        apiList().add(newRemoteMicroservice(), beta);
+
+        assertEquals(alfa, apiList().get(svc));
+        assertEquals(beta, apiList().get(other));
+        assertEquals(alfa, apiList().get(svc));
+        assertEquals(beta, apiList().get(other));
+    }
+
+    @Test
+    public void shouldHonourAffinityOfEachSession() {
+        RestApi alfa = newRestApiWithAffinity("alfa");
+        RestApi beta = newRestApiWithAffinity("beta");
+
+        apiList().add(newRemoteMicroservice(), alfa);
+        apiList().add(newRemoteMicroservice(), beta);
+
+        assertEquals(alfa, apiList().get(svc, "one"));
+        assertEquals(beta, apiList().get(svc, "two"));
+        assertEquals(alfa, apiList().get(svc, "one"));
+        assertEquals(beta, apiList().get(svc, "two"));
+    }
+
+    @Test
+    public void shouldSelectSameApiForSameKey() {
+        RestApi alfa = newRestApi("alfa");
+        RestApi beta = newRestApi("beta");
+        apiList().add(newRemoteMicroservice(), alfa);
+        apiList().add(newRemoteMicroservice(), beta);
+
+        RestApi owner = apiList().getByKey(svc, "user-42");
+
+        assertEquals(owner, apiList().getByKey(svc, "user-42"));
+        assertEquals(owner, apiList().getByKey(svc, "user-42"));
+    }
+
+    @Test
+    public void shouldSelectOtherApiForKeyWhenOwnerRemoved() {
+        RemoteMicroservice alfaMicro = newRemoteMicroservice();
+        RemoteMicroservice betaMicro = newRemoteMicroservice();
+        RestApi alfa = newRestApi("alfa");
+        RestApi beta = newRestApi("beta");
+        apiList().add(alfaMicro, alfa);
+        apiList().add(betaMicro, beta);
+        RestApi owner = apiList().getByKey(svc, "user-42");
+
+        apiList().remove(owner == alfa ? alfaMicro : betaMicro);
+
+        assertEquals(owner == alfa ? beta : alfa, apiList().getByKey(svc, "user-42"));
+    }
+
+    @Test
+    public void shouldNotLookUpAffinitiesWithoutApisWithAffinity() {
+        apiList().add(newRemoteMicroservice(), newRestApi("alfa"));
+        apiList().add(newRemoteMicroservice(), newRestApi("beta"));
+
+        apiList().get(svc);
+        apiList().get(svc, "one");
+
+        assertEquals(0, apiList().getAffinities().hits());
+        assertEquals(0, apiList().getAffinities().misses());
+    }
+
+    @Test
+    public void shouldSelectApiAddedAfterFirstLookupByKey() {
+        RemoteMicroservice alfaMicro = newRemoteMicroservice();
+        RestApi alfa = newRestApi("alfa");
+        RestApi beta = newRestApi("beta");
+        apiList().add(alfaMicro, alfa);
+        assertEquals(alfa, apiList().getByKey(svc, "user-42"));
+
+        apiList().add(newRemoteMicroservice(), beta);
+        apiList().remove(alfaMicro);
+
+        assertEquals(beta, apiList().getByKey(svc, "user-42"));
+    }
+
     @Test
     public void shouldRemoveAffinityWhenMicroserviceRemoved() {
         RemoteMicroservice alfaMicro = newRemoteMicroservice();
@@ -261,6 +372,20 @@ public class ApiListTest {
         assertEquals(alfa, apiList().get(svc));
     }
 
+    @Test
+    public void shouldNotSelectApiWhoseCircuitOpenedOnceListed() {
+        RestApi alfa = new RestApi("/alfa", 8080, "10.0.0.1");
+        RestApi beta = new RestApi("/beta", 8080, "10.0.0.2");
+        apiList().add(newRemoteMicroservice(), alfa);
+        apiList().add(newRemoteMicroservice(), beta);
+
+        for (int i = 0; i < 10; i++)
+            alfa.markStarted().markFailed(10, TimeUnit.MILLISECONDS);
+
+        assertEquals(beta, apiList().get(svc));
+        assertEquals(beta, apiList().get(svc));
+    }
+
     private RemoteMicroservice newRemoteMicroservice() {
         final RemoteMicroservice micro = Mockito.mock(RemoteMicroservice.class);
         Mockito.when(micro.getName()).thenReturn("usvc");
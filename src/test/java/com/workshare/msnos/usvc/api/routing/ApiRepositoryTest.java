@@ -0,0 +1,140 @@
+package com.workshare.msnos.usvc.api.routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.workshare.msnos.core.geo.Location;
+import com.workshare.msnos.usvc.Microservice;
+import com.workshare.msnos.usvc.RemoteMicroservice;
+import com.workshare.msnos.usvc.api.RestApi;
+import com.workshare.msnos.usvc.api.routing.strategies.CachingRoutingStrategy;
+
+public class ApiRepositoryTest {
+
+    private ApiRepository repository;
+    private Microservice from;
+
+    @BeforeClass
+    public static void disableCaching() {
+        System.setProperty(CachingRoutingStrategy.SYSP_TIMEOUT, "0");
+    }
+
+    @Before
+    public void before() {
+        repository = new ApiRepository();
+        from = Mockito.mock(Microservice.class);
+        when(from.getLocation()).thenReturn(Location.UNKNOWN);
+    }
+
+    @Test
+    public void shouldFindApiById() {
+        RestApi alfa = new RestApi("/alfa", 8080, "10.0.0.1");
+        RestApi beta = new RestApi("/beta", 8080, "10.0.0.1");
+        repository.register(newRemoteMicroservice(alfa, beta));
+
+        assertEquals(alfa, repository.searchApiById(alfa.getId()));
+        assertEquals(beta, repository.searchApiById(beta.getId()));
+        assertNull(repository.searchApiById(-1));
+    }
+
+    @Test
+    public void shouldForgetIdsOfUnregisteredMicroservice() {
+        RestApi alfa = new RestApi("/alfa", 8080, "10.0.0.1");
+        RemoteMicroservice remote = newRemoteMicroservice(alfa);
+        repository.register(remote);
+
+        repository.unregister(remote);
+
+        assertNull(repository.searchApiById(alfa.getId()));
+        assertNull(repository.searchApi(from, "/alfa"));
+        assertTrue(alfa.isFaulty());
+    }
+
+    @Test
+    public void shouldForgetOnlyTheUnregisteredApis() {
+        RestApi alfa = new RestApi("/alfa", 8080, "10.0.0.1");
+        RestApi beta = new RestApi("/beta", 8080, "10.0.0.1");
+        RemoteMicroservice remote = newRemoteMicroservice(alfa, beta);
+        repository.register(remote);
+
+        repository.unregister(remote, Collections.singleton(new RestApi("/alfa", 8080, "10.0.0.1")));
+
+        assertNull(repository.searchApiById(alfa.getId()));
+        assertNull(repository.searchApi(from, "/alfa"));
+        assertEquals(beta, repository.searchApi(from, "/beta"));
+        assertEquals(Collections.singleton(beta), repository.getApis(remote));
+    }
+
+    @Test
+    public void shouldIndexApisByMicroservice() {
+        RestApi alfa = new RestApi("/alfa", 8080, "10.0.0.1");
+        RestApi beta = new RestApi("/beta", 8080, "10.0.0.2");
+        RemoteMicroservice one = newRemoteMicroservice(alfa);
+        RemoteMicroservice two = newRemoteMicroservice(beta);
+
+        repository.register(one);
+        repository.register(two);
+
+        assertEquals(Collections.singleton(alfa), repository.getApis(one));
+        assertEquals(Collections.singleton(beta), repository.getApis(two));
+
+        repository.unregister(one);
+        assertTrue(repository.getApis(one).isEmpty());
+    }
+
+    @Test
+    public void shouldSearchTemplatedPaths() {
+        RestApi user = new RestApi("/users/{id}", 8080, "10.0.0.1");
+        repository.register(newRemoteMicroservice(user));
+
+        assertEquals(user, repository.searchApi(from, "/users/42"));
+        assertTrue(repository.canServe("/users/42"));
+        assertFalse(repository.canServe("/users"));
+    }
+
+    @Test
+    public void shouldSearchPrefixPaths() {
+        RestApi files = new RestApi("/files/*", 8080, "10.0.0.1");
+        repository.register(newRemoteMicroservice(files));
+
+        assertEquals(files, repository.searchApi(from, "/files/docs/report.pdf"));
+    }
+
+    @Test
+    public void shouldPreferExactPathOverTemplates() {
+        RestApi user = new RestApi("/users/{id}", 8080, "10.0.0.1");
+        RestApi me = new RestApi("/users/me", 8080, "10.0.0.2");
+        repository.register(newRemoteMicroservice(user, me));
+
+        assertEquals(me, repository.searchApi(from, "/users/me"));
+    }
+
+    @Test
+    public void shouldNotServeUnknownPaths() {
+        assertFalse(repository.canServe("/unknown"));
+        assertNull(repository.searchApi(from, "/unknown"));
+        assertTrue(repository.getRemoteApis().isEmpty());
+    }
+
+    private RemoteMicroservice newRemoteMicroservice(RestApi... apis) {
+        final RemoteMicroservice micro = Mockito.mock(RemoteMicroservice.class);
+        when(micro.getName()).thenReturn("usvc");
+        when(micro.getLocation()).thenReturn(Location.UNKNOWN);
+        when(micro.getUuid()).thenReturn(UUID.randomUUID());
+        when(micro.getApis()).thenReturn(new HashSet<RestApi>(Arrays.asList(apis)));
+        return micro;
+    }
+}
@@ -1,6 +1,9 @@
 package com.workshare.msnos.usvc.api.routing;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
@@ -8,12 +11,15 @@ import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import com.workshare.msnos.usvc.Microservice;
+import com.workshare.msnos.usvc.api.CircuitBreaker;
 import com.workshare.msnos.usvc.api.routing.strategies.CachingRoutingStrategy;
 
 public class CachingRoutingStrategyTest {
@@ -87,6 +93,77 @@ public class CachingRoutingStrategyTest {
         verify(delegateStrategy).select(from, endpoints);
     }
     
+    @Test
+    public void shouldInvokeUnderlyingStrategyIfEndpointsChanged() throws Exception {
+        strategy.select(from, endpoints);
+        verify(delegateStrategy).select(from, endpoints);
+        reinitialize();
+
+        List<ApiEndpoint> changed = Arrays.asList(api, mock(ApiEndpoint.class));
+        strategy.select(from, changed);
+        verify(delegateStrategy).select(from, changed);
+    }
+
+    @Test
+    public void shouldInvokeUnderlyingStrategyIfACircuitChanged() throws Exception {
+        strategy.select(from, endpoints);
+        verify(delegateStrategy).select(from, endpoints);
+        reinitialize();
+
+        strategy.onCircuitChange(api, CircuitBreaker.State.OPEN);
+        strategy.select(from, endpoints);
+
+        verify(delegateStrategy).select(from, endpoints);
+    }
+
+    @Test
+    public void shouldNotCheckClosedCircuitsWhenHittingTheCache() throws Exception {
+        when(api.isClosed()).thenReturn(true);
+        strategy.onAdd(api);
+        strategy.select(from, endpoints);
+
+        strategy.select(from, endpoints);
+
+        verify(api, never()).isOpen();
+    }
+
+    @Test
+    public void shouldInvokeUnderlyingStrategyIfAHalfOpenCircuitRunsOutOfTrials() throws Exception {
+        strategy.onCircuitChange(api, CircuitBreaker.State.HALF_OPEN);
+        strategy.select(from, endpoints);
+        reinitialize();
+
+        when(api.isOpen()).thenReturn(true);
+        strategy.select(from, endpoints);
+
+        verify(delegateStrategy).select(from, endpoints);
+    }
+
+    @Test
+    public void shouldServeSameSelectionToConcurrentCallers() throws Exception {
+        strategy.withTimeout(5, TimeUnit.SECONDS);
+        final List<ApiEndpoint> first = strategy.select(from, endpoints);
+        reinitialize();
+
+        final AtomicInteger mismatches = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(16);
+        for (int i = 0; i < 16; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100; j++)
+                        if (strategy.select(from, endpoints) != first)
+                            mismatches.incrementAndGet();
+                    done.countDown();
+                }
+            }.start();
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, mismatches.get());
+        verifyZeroInteractions(delegateStrategy);
+    }
+
     public void reinitialize() {
         reset(delegateStrategy);
         when(delegateStrategy.select(from, endpoints)).thenReturn(endpoints);
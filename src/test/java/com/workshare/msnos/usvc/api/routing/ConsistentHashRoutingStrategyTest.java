@@ -0,0 +1,162 @@
+package com.workshare.msnos.usvc.api.routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.workshare.msnos.usvc.Microservice;
+import com.workshare.msnos.usvc.RemoteMicroservice;
+import com.workshare.msnos.usvc.api.RestApi;
+import com.workshare.msnos.usvc.api.routing.strategies.ConsistentHashRoutingStrategy;
+
+public class ConsistentHashRoutingStrategyTest {
+
+    private Microservice from;
+    private ConsistentHashRoutingStrategy strategy;
+    private List<ApiEndpoint> endpoints;
+
+    @Before
+    public void setup() {
+        from = mock(Microservice.class);
+        strategy = new ConsistentHashRoutingStrategy();
+        endpoints = new ArrayList<ApiEndpoint>();
+    }
+
+    @Test
+    public void shouldReturnNothingWhenNoEndpoints() {
+        assertTrue(strategy.select(from, endpoints, "key").isEmpty());
+    }
+
+    @Test
+    public void shouldReturnEndpointsUnchangedWithoutKey() {
+        addEndpoints(3);
+
+        assertSame(endpoints, strategy.select(from, endpoints));
+    }
+
+    @Test
+    public void shouldAlwaysSelectSameEndpointForSameKey() {
+        addEndpoints(5);
+
+        ApiEndpoint first = select("user-42");
+        for (int i = 0; i < 100; i++)
+            assertEquals(first, select("user-42"));
+    }
+
+    @Test
+    public void shouldSpreadKeysOverAllEndpoints() {
+        addEndpoints(4);
+
+        Map<ApiEndpoint, Integer> counts = countSelections(4000);
+
+        assertEquals(4, counts.size());
+        for (Integer count : counts.values())
+            assertTrue("unbalanced: " + counts, count > 500);
+    }
+
+    @Test
+    public void shouldMoveOnlyKeysOfRemovedEndpoint() {
+        addEndpoints(5);
+        Map<String, ApiEndpoint> before = selectionsByKey(1000);
+
+        ApiEndpoint removed = endpoints.remove(2);
+        strategy.onRemove(removed);
+
+        Map<String, ApiEndpoint> after = selectionsByKey(1000);
+        for (String key : before.keySet()) {
+            if (before.get(key) != removed)
+                assertEquals(before.get(key), after.get(key));
+            else
+                assertNotEquals(removed, after.get(key));
+        }
+    }
+
+    @Test
+    public void shouldMoveOnlyKeysToAddedEndpoint() {
+        addEndpoints(4);
+        Map<String, ApiEndpoint> before = selectionsByKey(1000);
+
+        ApiEndpoint added = addEndpoint("10.0.0.99");
+
+        Map<String, ApiEndpoint> after = selectionsByKey(1000);
+        for (String key : before.keySet()) {
+            if (after.get(key) != added)
+                assertEquals(before.get(key), after.get(key));
+        }
+    }
+
+    @Test
+    public void shouldSkipFaultyEndpoint() {
+        addEndpoints(3);
+        ApiEndpoint owner = select("user-42");
+
+        owner.api().markFaulty();
+
+        assertNotEquals(owner, select("user-42"));
+    }
+
+    @Test
+    public void shouldSkipOverloadedEndpoint() {
+        addEndpoints(3);
+        ApiEndpoint owner = select("user-42");
+
+        for (int i = 0; i < 10; i++)
+            owner.api().markStarted();
+
+        assertNotEquals(owner, select("user-42"));
+    }
+
+    @Test
+    public void shouldSelectOwnerWhenAllEndpointsFaulty() {
+        addEndpoints(3);
+        ApiEndpoint owner = select("user-42");
+
+        for (ApiEndpoint endpoint : endpoints)
+            endpoint.api().markFaulty();
+
+        assertEquals(owner, select("user-42"));
+    }
+
+    private Map<ApiEndpoint, Integer> countSelections(int keys) {
+        Map<ApiEndpoint, Integer> counts = new HashMap<ApiEndpoint, Integer>();
+        for (int i = 0; i < keys; i++) {
+            ApiEndpoint selected = select("key-" + i);
+            Integer count = counts.get(selected);
+            counts.put(selected, count == null ? 1 : count + 1);
+        }
+        return counts;
+    }
+
+    private Map<String, ApiEndpoint> selectionsByKey(int keys) {
+        Map<String, ApiEndpoint> selections = new HashMap<String, ApiEndpoint>();
+        for (int i = 0; i < keys; i++)
+            selections.put("key-" + i, select("key-" + i));
+        return selections;
+    }
+
+    private ApiEndpoint select(String key) {
+        return strategy.select(from, endpoints, key).get(0);
+    }
+
+    private void addEndpoints(int count) {
+        for (int i = 1; i <= count; i++)
+            addEndpoint("10.0.0." + i);
+    }
+
+    private ApiEndpoint addEndpoint(String host) {
+        ApiEndpoint endpoint = new ApiEndpoint(mock(RemoteMicroservice.class), new RestApi("/path", 8080, host));
+        endpoints.add(endpoint);
+        strategy.onAdd(endpoint);
+        return endpoint;
+    }
+}
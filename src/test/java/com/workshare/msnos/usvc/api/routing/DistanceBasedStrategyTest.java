@@ -0,0 +1,133 @@
+package com.workshare.msnos.usvc.api.routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.workshare.msnos.core.Cloud;
+import com.workshare.msnos.core.Iden;
+import com.workshare.msnos.core.RemoteAgent;
+import com.workshare.msnos.core.cloud.LatencyTable;
+import com.workshare.msnos.core.geo.Location;
+import com.workshare.msnos.core.geo.Location.GPS;
+import com.workshare.msnos.usvc.Microservice;
+import com.workshare.msnos.usvc.RemoteMicroservice;
+import com.workshare.msnos.usvc.api.RestApi;
+import com.workshare.msnos.usvc.api.routing.strategies.DistanceBasedStrategy;
+
+public class DistanceBasedStrategyTest {
+
+    private static final GPS LONDON = new GPS(51.5074, -0.1278, 10);
+    private static final GPS PARIS = new GPS(48.8566, 2.3522, 10);
+    private static final GPS BRUSSELS = new GPS(50.8503, 4.3517, 10);
+    private static final GPS TOKYO = new GPS(35.6762, 139.6503, 10);
+
+    private Microservice from;
+    private LatencyTable latencies;
+    private Cloud cloud;
+    private DistanceBasedStrategy strategy;
+
+    @Before
+    public void setup() {
+        from = mock(Microservice.class);
+        when(from.getLocation()).thenReturn(locatedAt(LONDON));
+
+        latencies = new LatencyTable();
+        cloud = mock(Cloud.class);
+        when(cloud.getLatencies()).thenReturn(latencies);
+
+        strategy = new DistanceBasedStrategy();
+    }
+
+    @Test
+    public void shouldSelectNearestFirst() {
+        ApiEndpoint tokyo = newEndpoint(TOKYO);
+        ApiEndpoint paris = newEndpoint(PARIS);
+
+        List<ApiEndpoint> result = strategy.select(from, Arrays.asList(tokyo, paris));
+
+        assertEquals(Arrays.asList(paris), result);
+    }
+
+    @Test
+    public void shouldSelectAllWithinTolerance() {
+        ApiEndpoint paris = newEndpoint(PARIS);
+        ApiEndpoint brussels = newEndpoint(BRUSSELS);
+        ApiEndpoint tokyo = newEndpoint(TOKYO);
+
+        List<ApiEndpoint> result = strategy.select(from, Arrays.asList(tokyo, paris, brussels));
+
+        assertEquals(Arrays.asList(brussels, paris), result);
+    }
+
+    @Test
+    public void shouldPreferMeasuredRoundTripToDistance() {
+        ApiEndpoint paris = newEndpoint(PARIS);
+        ApiEndpoint tokyo = newEndpoint(TOKYO);
+        latencies.record(uuidOf(paris), 300, TimeUnit.MILLISECONDS);
+        latencies.record(uuidOf(tokyo), 10, TimeUnit.MILLISECONDS);
+
+        List<ApiEndpoint> result = strategy.select(from, Arrays.asList(paris, tokyo));
+
+        assertEquals(Arrays.asList(tokyo), result);
+    }
+
+    @Test
+    public void shouldNotCompareMeasuredRoundTripWithDistance() {
+        ApiEndpoint paris = newEndpoint(PARIS);
+        ApiEndpoint brussels = newEndpoint(BRUSSELS);
+        latencies.record(uuidOf(paris), 30, TimeUnit.MILLISECONDS);
+
+        List<ApiEndpoint> result = strategy.select(from, Arrays.asList(brussels, paris));
+
+        assertEquals(Arrays.asList(paris), result);
+    }
+
+    @Test
+    public void shouldSkipEndpointsWithNothingKnown() {
+        ApiEndpoint nowhere = newEndpoint(null);
+        ApiEndpoint tokyo = newEndpoint(TOKYO);
+
+        List<ApiEndpoint> result = strategy.select(from, Arrays.asList(nowhere, tokyo));
+
+        assertEquals(Arrays.asList(tokyo), result);
+    }
+
+    @Test
+    public void shouldSelectAllWhenNothingKnown() {
+        when(from.getLocation()).thenReturn(Location.UNKNOWN);
+        List<ApiEndpoint> endpoints = Arrays.asList(newEndpoint(PARIS), newEndpoint(TOKYO));
+
+        List<ApiEndpoint> result = strategy.select(from, endpoints);
+
+        assertEquals(endpoints, result);
+    }
+
+    private UUID uuidOf(ApiEndpoint endpoint) {
+        return endpoint.service().getAgent().getIden().getUUID();
+    }
+
+    private ApiEndpoint newEndpoint(GPS gps) {
+        RemoteAgent agent = mock(RemoteAgent.class);
+        when(agent.getIden()).thenReturn(new Iden(Iden.Type.AGT, UUID.randomUUID()));
+        when(agent.getCloud()).thenReturn(cloud);
+
+        RemoteMicroservice remote = mock(RemoteMicroservice.class);
+        when(remote.getAgent()).thenReturn(agent);
+        when(remote.getLocation()).thenReturn(gps == null ? Location.UNKNOWN : locatedAt(gps));
+
+        return new ApiEndpoint(remote, new RestApi("/path", 8080));
+    }
+
+    private static Location locatedAt(GPS gps) {
+        return new Location(null, null, null, null, gps);
+    }
+}
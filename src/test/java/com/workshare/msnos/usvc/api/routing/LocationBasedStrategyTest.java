@@ -109,6 +109,73 @@ public class LocationBasedStrategyTest {
         assertEquals(result, endpoints);
     }
 
+    @Test
+    public void shouldSelectSameCityFromIndexedEndpoints() {
+        Microservice micro = Mockito.mock(Microservice.class);
+        when(micro.getLocation()).thenReturn(TURIN);
+
+        LocationBasedStrategy strategy = new LocationBasedStrategy();
+        List<ApiEndpoint> endpoints = makeEndpoints(PARIS, MILAN, ASTI, TURIN, KONG);
+        for (ApiEndpoint endpoint : endpoints)
+            strategy.onAdd(endpoint);
+
+        List<ApiEndpoint> result = strategy.select(micro, endpoints);
+        assertEquals(1, result.size());
+        assertResultContainsLocation(result, TURIN);
+    }
+
+    @Test
+    public void shouldSelectNextBestWhenIndexedEndpointRemoved() {
+        Microservice micro = Mockito.mock(Microservice.class);
+        when(micro.getLocation()).thenReturn(TURIN);
+
+        LocationBasedStrategy strategy = new LocationBasedStrategy();
+        List<ApiEndpoint> endpoints = makeEndpoints(PARIS, MILAN, ASTI, CUNEO, TURIN);
+        for (ApiEndpoint endpoint : endpoints)
+            strategy.onAdd(endpoint);
+
+        ApiEndpoint turin = endpoints.remove(4);
+        strategy.onRemove(turin);
+
+        List<ApiEndpoint> result = strategy.select(micro, endpoints);
+        assertEquals(2, result.size());
+        assertResultContainsLocation(result, ASTI);
+        assertResultContainsLocation(result, CUNEO);
+    }
+
+    @Test
+    public void shouldSelectOnlyAmongReceivedEndpointsWhenFiltered() {
+        Microservice micro = Mockito.mock(Microservice.class);
+        when(micro.getLocation()).thenReturn(TURIN);
+
+        LocationBasedStrategy strategy = new LocationBasedStrategy();
+        List<ApiEndpoint> endpoints = makeEndpoints(PARIS, MILAN, TURIN);
+        for (ApiEndpoint endpoint : endpoints)
+            strategy.onAdd(endpoint);
+
+        List<ApiEndpoint> result = strategy.select(micro, endpoints.subList(0, 2));
+        assertEquals(1, result.size());
+        assertResultContainsLocation(result, MILAN);
+    }
+
+    @Test
+    public void shouldSelectOnlyAmongReceivedEndpointsWhenAsManyAsIndexed() {
+        Microservice micro = Mockito.mock(Microservice.class);
+        when(micro.getLocation()).thenReturn(TURIN);
+
+        LocationBasedStrategy strategy = new LocationBasedStrategy();
+        List<ApiEndpoint> endpoints = makeEndpoints(PARIS, MILAN, TURIN);
+        for (ApiEndpoint endpoint : endpoints)
+            strategy.onAdd(endpoint);
+
+        List<ApiEndpoint> received = new ArrayList<ApiEndpoint>(endpoints.subList(0, 2));
+        received.addAll(makeEndpoints(KONG));
+        List<ApiEndpoint> result = strategy.select(micro, received);
+
+        assertEquals(1, result.size());
+        assertResultContainsLocation(result, MILAN);
+    }
+
     private void assertResultContainsLocation(List<ApiEndpoint> result, final Location location) {
         boolean found = false;
         for (ApiEndpoint api : result) {
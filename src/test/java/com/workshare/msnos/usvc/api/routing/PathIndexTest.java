@@ -0,0 +1,114 @@
+package com.workshare.msnos.usvc.api.routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.workshare.msnos.core.geo.Location;
+import com.workshare.msnos.usvc.RemoteMicroservice;
+import com.workshare.msnos.usvc.api.RestApi;
+
+public class PathIndexTest {
+
+    private PathIndex index;
+
+    @Before
+    public void before() {
+        index = new PathIndex();
+    }
+
+    @Test
+    public void shouldSplitPathInSegments() {
+        assertEquals(Arrays.asList("users", "42", "files"), PathIndex.segments("/users/42//files/"));
+        assertEquals(Arrays.asList("users"), PathIndex.segments("users?name=joe"));
+        assertEquals(Collections.emptyList(), PathIndex.segments("/"));
+    }
+
+    @Test
+    public void shouldMatchExactPath() {
+        ApiList users = put("/users");
+
+        assertSame(users, index.match("/users"));
+        assertSame(users, index.match("users/"));
+        assertNull(index.match("/users/42"));
+    }
+
+    @Test
+    public void shouldMatchTemplatedPath() {
+        ApiList user = put("/users/{id}");
+
+        assertSame(user, index.match("/users/42"));
+        assertNull(index.match("/users"));
+        assertNull(index.match("/users/42/files"));
+    }
+
+    @Test
+    public void shouldMatchPrefixPath() {
+        ApiList files = put("/files/*");
+
+        assertSame(files, index.match("/files"));
+        assertSame(files, index.match("/files/a"));
+        assertSame(files, index.match("/files/a/b/c"));
+        assertNull(index.match("/other"));
+    }
+
+    @Test
+    public void shouldPreferLiteralOverTemplateOverPrefix() {
+        ApiList prefix = put("/users/*");
+        ApiList template = put("/users/{id}");
+        ApiList literal = put("/users/me");
+
+        assertSame(literal, index.match("/users/me"));
+        assertSame(template, index.match("/users/42"));
+        assertSame(prefix, index.match("/users/42/files"));
+    }
+
+    @Test
+    public void shouldPreferLongestPrefix() {
+        ApiList root = put("/*");
+        ApiList files = put("/files/*");
+
+        assertSame(files, index.match("/files/a"));
+        assertSame(root, index.match("/users/a"));
+    }
+
+    @Test
+    public void shouldBacktrackWhenLiteralBranchDoesNotMatch() {
+        ApiList literal = put("/users/me/profile");
+        ApiList template = put("/users/{id}/files");
+
+        assertSame(literal, index.match("/users/me/profile"));
+        assertSame(template, index.match("/users/me/files"));
+    }
+
+    @Test
+    public void shouldSkipListsWithoutEndpoints() {
+        ApiList template = put("/users/{id}");
+        index.put("/users/me", new ApiList());
+
+        assertSame(template, index.match("/users/me"));
+    }
+
+    private ApiList put(String path) {
+        ApiList list = new ApiList();
+        list.add(newRemoteMicroservice(), new RestApi(path, 8080, "10.0.0.1"));
+        index.put(path, list);
+        return list;
+    }
+
+    private RemoteMicroservice newRemoteMicroservice() {
+        final RemoteMicroservice micro = Mockito.mock(RemoteMicroservice.class);
+        Mockito.when(micro.getName()).thenReturn("usvc");
+        Mockito.when(micro.getLocation()).thenReturn(Location.UNKNOWN);
+        Mockito.when(micro.getUuid()).thenReturn(UUID.randomUUID());
+        return micro;
+    }
+}
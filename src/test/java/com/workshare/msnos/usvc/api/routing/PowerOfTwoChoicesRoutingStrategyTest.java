@@ -0,0 +1,109 @@
+package com.workshare.msnos.usvc.api.routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.workshare.msnos.usvc.Microservice;
+import com.workshare.msnos.usvc.RemoteMicroservice;
+import com.workshare.msnos.usvc.api.RestApi;
+import com.workshare.msnos.usvc.api.routing.strategies.PowerOfTwoChoicesRoutingStrategy;
+
+public class PowerOfTwoChoicesRoutingStrategyTest {
+
+    private Microservice from;
+    private PowerOfTwoChoicesRoutingStrategy strategy;
+
+    @Before
+    public void setup() {
+        from = mock(Microservice.class);
+        strategy = new PowerOfTwoChoicesRoutingStrategy();
+    }
+
+    @Test
+    public void shouldReturnNothingWhenNoEndpoints() {
+        assertTrue(strategy.select(from, new ArrayList<ApiEndpoint>()).isEmpty());
+    }
+
+    @Test
+    public void shouldReturnTheOnlyEndpoint() {
+        ApiEndpoint only = newEndpoint("10.0.0.1");
+
+        assertEquals(only, select(Arrays.asList(only)));
+    }
+
+    @Test
+    public void shouldPreferFasterEndpoint() {
+        ApiEndpoint fast = newEndpoint("10.0.0.1");
+        ApiEndpoint slow = newEndpoint("10.0.0.2");
+        fast.api().markStarted().markCompleted(10, TimeUnit.MILLISECONDS);
+        slow.api().markStarted().markCompleted(500, TimeUnit.MILLISECONDS);
+
+        List<ApiEndpoint> endpoints = Arrays.asList(fast, slow);
+        for (int i = 0; i < 100; i++)
+            assertEquals(fast, select(endpoints));
+    }
+
+    @Test
+    public void shouldPreferEndpointWithLessCallsInFlight() {
+        ApiEndpoint busy = newEndpoint("10.0.0.1");
+        ApiEndpoint idle = newEndpoint("10.0.0.2");
+        busy.api().markStarted().markStarted().markStarted();
+
+        List<ApiEndpoint> endpoints = Arrays.asList(busy, idle);
+        for (int i = 0; i < 100; i++)
+            assertEquals(idle, select(endpoints));
+    }
+
+    @Test
+    public void shouldAvoidFaultyEndpoints() {
+        ApiEndpoint faulty = newEndpoint("10.0.0.1");
+        ApiEndpoint working = newEndpoint("10.0.0.2");
+        faulty.api().markFaulty();
+
+        List<ApiEndpoint> endpoints = Arrays.asList(faulty, working);
+        for (int i = 0; i < 100; i++)
+            assertEquals(working, select(endpoints));
+    }
+
+    @Test
+    public void shouldSendNoTrafficToSlowestEndpoint() {
+        ApiEndpoint slow = newEndpoint("10.0.0.1");
+        slow.api().markStarted().markCompleted(500, TimeUnit.MILLISECONDS);
+
+        List<ApiEndpoint> endpoints = new ArrayList<ApiEndpoint>(Arrays.asList(slow));
+        for (int i = 2; i <= 4; i++) {
+            ApiEndpoint endpoint = newEndpoint("10.0.0." + i);
+            endpoint.api().markStarted().markCompleted(10, TimeUnit.MILLISECONDS);
+            endpoints.add(endpoint);
+        }
+
+        Map<ApiEndpoint, Integer> counts = new HashMap<ApiEndpoint, Integer>();
+        for (int i = 0; i < 1000; i++) {
+            ApiEndpoint selected = select(endpoints);
+            Integer count = counts.get(selected);
+            counts.put(selected, count == null ? 1 : count + 1);
+        }
+
+        assertEquals(null, counts.get(slow));
+        assertEquals(3, counts.size());
+    }
+
+    private ApiEndpoint select(List<ApiEndpoint> endpoints) {
+        return strategy.select(from, endpoints).get(0);
+    }
+
+    private ApiEndpoint newEndpoint(String host) {
+        return new ApiEndpoint(mock(RemoteMicroservice.class), new RestApi("/path", 8080, host));
+    }
+}
@@ -0,0 +1,108 @@
+package com.workshare.msnos.usvc.api.routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.workshare.msnos.usvc.Microservice;
+import com.workshare.msnos.usvc.RemoteMicroservice;
+import com.workshare.msnos.usvc.api.routing.strategies.RoundRobinRoutingStrategy;
+
+public class RoundRobinRoutingStrategyTest {
+
+    private Microservice from;
+    private RoundRobinRoutingStrategy strategy;
+
+    @Before
+    public void setup() {
+        from = mock(Microservice.class);
+        strategy = new RoundRobinRoutingStrategy();
+    }
+
+    @Test
+    public void shouldRotateOverEndpoints() {
+        List<ApiEndpoint> endpoints = newEndpoints(3);
+
+        assertEquals(endpoints.get(0), select(endpoints));
+        assertEquals(endpoints.get(1), select(endpoints));
+        assertEquals(endpoints.get(2), select(endpoints));
+        assertEquals(endpoints.get(0), select(endpoints));
+    }
+
+    @Test
+    public void shouldSkipFaultyEndpoints() {
+        List<ApiEndpoint> endpoints = newEndpoints(3);
+        when(endpoints.get(1).isFaulty()).thenReturn(true);
+
+        assertEquals(endpoints.get(0), select(endpoints));
+        assertEquals(endpoints.get(2), select(endpoints));
+        assertEquals(endpoints.get(0), select(endpoints));
+    }
+
+    @Test
+    public void shouldReturnNothingWhenNoEndpoints() {
+        assertTrue(strategy.select(from, new ArrayList<ApiEndpoint>()).isEmpty());
+    }
+
+    @Test
+    public void shouldDistributeEvenlyAmongConcurrentCallers() throws Exception {
+        final int threads = 64;
+        final int calls = 1000;
+        final List<ApiEndpoint> endpoints = newEndpoints(8);
+
+        final Map<ApiEndpoint, AtomicInteger> counts = new ConcurrentHashMap<ApiEndpoint, AtomicInteger>();
+        for (ApiEndpoint endpoint : endpoints)
+            counts.put(endpoint, new AtomicInteger());
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < calls; j++)
+                            counts.get(select(endpoints)).incrementAndGet();
+                    } catch (InterruptedException ignore) {
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        start.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        for (AtomicInteger count : counts.values())
+            assertEquals(threads * calls / endpoints.size(), count.get());
+    }
+
+    private ApiEndpoint select(List<ApiEndpoint> endpoints) {
+        return strategy.select(from, endpoints).get(0);
+    }
+
+    private List<ApiEndpoint> newEndpoints(int count) {
+        List<ApiEndpoint> endpoints = new ArrayList<ApiEndpoint>();
+        for (int i = 0; i < count; i++) {
+            ApiEndpoint endpoint = mock(ApiEndpoint.class);
+            when(endpoint.service()).thenReturn(mock(RemoteMicroservice.class));
+            endpoints.add(endpoint);
+        }
+
+        return endpoints;
+    }
+}
@@ -3,6 +3,8 @@ package com.workshare.msnos.usvc.api.routing;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
@@ -13,6 +15,7 @@ import org.junit.Test;
 
 import com.workshare.msnos.usvc.Microservice;
 import com.workshare.msnos.usvc.RemoteMicroservice;
+import com.workshare.msnos.usvc.api.CircuitBreaker;
 import com.workshare.msnos.usvc.api.routing.strategies.SkipFaultiesRoutingStrategy;
 
 @SuppressWarnings("unused")
@@ -66,6 +69,50 @@ public class SkipFaultiesRoutingStrategyTest {
         
     }
 
+    @Test
+    public void shouldSkipOnlyEndpointsWithOpenCircuit() {
+        ApiEndpoint oneA = add(endpointOk(one));
+        ApiEndpoint oneB = add(endpointOpen(one));
+        ApiEndpoint twoA = add(endpointOk(two));
+        
+        List<ApiEndpoint> result = strategy.select(from, endpoints);
+       
+        assertEquals(2, result.size());
+        assertTrue(result.contains(oneA));
+        assertTrue(result.contains(twoA));
+    }
+
+    @Test
+    public void shouldCheckOnlyCircuitsNotClosedOnceAttached() {
+        ApiEndpoint oneA = attach(endpointOk(one));
+        ApiEndpoint twoA = attach(endpointOk(two));
+
+        List<ApiEndpoint> result = strategy.select(from, endpoints);
+
+        assertEquals(2, result.size());
+        verify(oneA, never()).isOpen();
+        verify(twoA, never()).isOpen();
+    }
+
+    @Test
+    public void shouldSkipEndpointsWhoseCircuitOpenedOnceAttached() {
+        ApiEndpoint oneA = attach(endpointOk(one));
+        ApiEndpoint twoA = attach(endpointOk(two));
+
+        when(oneA.isOpen()).thenReturn(true);
+        strategy.onCircuitChange(oneA, CircuitBreaker.State.OPEN);
+        List<ApiEndpoint> result = strategy.select(from, endpoints);
+
+        assertEquals(1, result.size());
+        assertTrue(result.contains(twoA));
+    }
+
+    private ApiEndpoint attach(final ApiEndpoint endpoint) {
+        when(endpoint.isClosed()).thenReturn(true);
+        strategy.onAdd(endpoint);
+        return add(endpoint);
+    }
+
     private ApiEndpoint add(final ApiEndpoint endpoint) {
         endpoints.add(endpoint);
         return endpoint;
@@ -78,6 +125,12 @@ public class SkipFaultiesRoutingStrategyTest {
         return ep;
     }
     
+    public ApiEndpoint endpointOpen(RemoteMicroservice micro) {
+        ApiEndpoint ep = endpointOk(micro);
+        when(ep.isOpen()).thenReturn(true);
+        return ep;
+    }
+    
     public ApiEndpoint endpointOk(RemoteMicroservice micro) {
         ApiEndpoint endpoint = mock(ApiEndpoint.class);
         when(endpoint.service()).thenReturn(micro);